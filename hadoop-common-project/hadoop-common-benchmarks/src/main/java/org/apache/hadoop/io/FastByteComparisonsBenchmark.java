@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the comparison of byte arrays by {@link FastByteComparisons},
+ * against a plain byte by byte comparison. The arrays differ in their last
+ * byte only, so that all the bytes are compared.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FastByteComparisonsBenchmark {
+  @Param({"8", "64", "1024"})
+  private int length;
+
+  private byte[] b1;
+  private byte[] b2;
+
+  @Setup
+  public void setup() {
+    b1 = new byte[length];
+    new Random(0).nextBytes(b1);
+    b2 = b1.clone();
+    b2[length - 1]++;
+  }
+
+  @Benchmark
+  public int fastByteComparisons() {
+    return FastByteComparisons.compareTo(b1, 0, length, b2, 0, length);
+  }
+
+  @Benchmark
+  public int writableComparator() {
+    return WritableComparator.compareBytes(b1, 0, length, b2, 0, length);
+  }
+
+  @Benchmark
+  public int byteByByte() {
+    for (int i = 0; i < length; i++) {
+      int a = b1[i] & 0xff;
+      int b = b2[i] & 0xff;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return 0;
+  }
+}
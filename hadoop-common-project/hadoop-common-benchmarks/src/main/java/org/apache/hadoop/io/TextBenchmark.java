@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the UTF-8 encoding, decoding, serialization and comparison of
+ * {@link Text}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TextBenchmark {
+  @Param({"16", "256"})
+  private int length;
+
+  /** Whether the strings have characters encoded on several bytes. */
+  @Param({"false", "true"})
+  private boolean multiByte;
+
+  private String string;
+  private Text text;
+  private Text other;
+  private final Text reused = new Text();
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private final WritableComparator comparator =
+      WritableComparator.get(Text.class);
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      sb.append(multiByte && i % 4 == 0 ?
+          (char) (0x4e00 + random.nextInt(0x100)) :
+          (char) ('a' + random.nextInt(26)));
+    }
+    string = sb.toString();
+    text = new Text(string);
+    // differs from text in its last character only.
+    other = new Text(string.substring(0, length - 1) + '~');
+  }
+
+  @Benchmark
+  public Text encode() {
+    reused.set(string);
+    return reused;
+  }
+
+  @Benchmark
+  public String decode() {
+    return text.toString();
+  }
+
+  @Benchmark
+  public Text writeAndReadFields() throws IOException {
+    out.reset();
+    text.write(out);
+    in.reset(out.getData(), out.getLength());
+    reused.readFields(in);
+    return reused;
+  }
+
+  @Benchmark
+  public int compare() {
+    return text.compareTo(other);
+  }
+
+  @Benchmark
+  public int compareSerialized() throws IOException {
+    out.reset();
+    text.write(out);
+    int l1 = out.getLength();
+    other.write(out);
+    return comparator.compare(
+        out.getData(), 0, l1, out.getData(), l1, out.getLength() - l1);
+  }
+}
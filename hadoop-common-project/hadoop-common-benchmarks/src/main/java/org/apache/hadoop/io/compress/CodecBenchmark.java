@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Benchmark the compression and the decompression of a buffer by the
+ * codecs, with compressors and decompressors of the {@link CodecPool}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CodecBenchmark {
+  private static final int DATA_SIZE = 256 * 1024;
+
+  @Param({"DefaultCodec", "GzipCodec", "Lz4Codec", "SnappyCodec",
+      "BZip2Codec"})
+  private String codecName;
+
+  private CompressionCodec codec;
+  private byte[] data;
+  private byte[] compressed;
+  private final byte[] buffer = new byte[64 * 1024];
+  private final DataOutputBuffer out = new DataOutputBuffer(DATA_SIZE);
+
+  @Setup
+  public void setup() throws IOException, ClassNotFoundException {
+    Configuration conf = new Configuration();
+    codec = (CompressionCodec) ReflectionUtils.newInstance(
+        conf.getClassByName(
+            "org.apache.hadoop.io.compress." + codecName), conf);
+    // text-like data: words of a small vocabulary.
+    Random random = new Random(0);
+    String[] words = new String[1024];
+    for (int i = 0; i < words.length; i++) {
+      StringBuilder word = new StringBuilder();
+      for (int j = 2 + random.nextInt(8); j > 0; j--) {
+        word.append((char) ('a' + random.nextInt(26)));
+      }
+      words[i] = word.append(' ').toString();
+    }
+    StringBuilder sb = new StringBuilder(DATA_SIZE);
+    while (sb.length() < DATA_SIZE) {
+      sb.append(words[random.nextInt(words.length)]);
+    }
+    data = sb.substring(0, DATA_SIZE).getBytes("UTF-8");
+    compress();
+    compressed = Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  @Benchmark
+  public DataOutputBuffer compress() throws IOException {
+    out.reset();
+    Compressor compressor = CodecPool.getCompressor(codec);
+    try {
+      CompressionOutputStream cout = codec.createOutputStream(out, compressor);
+      cout.write(data, 0, data.length);
+      cout.finish();
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+    return out;
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    long total = 0;
+    Decompressor decompressor = CodecPool.getDecompressor(codec);
+    try {
+      InputStream in = codec.createInputStream(
+          new ByteArrayInputStream(compressed), decompressor);
+      int n;
+      while ((n = in.read(buffer, 0, buffer.length)) > 0) {
+        total += n;
+      }
+      IOUtils.closeStream(in);
+    } finally {
+      CodecPool.returnDecompressor(decompressor);
+    }
+    return total;
+  }
+}
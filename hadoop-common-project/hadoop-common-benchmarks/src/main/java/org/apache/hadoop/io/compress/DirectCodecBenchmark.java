@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Benchmark the compression and the decompression of a block between direct
+ * buffers by the codec's {@link DirectCompressor} and
+ * {@link DirectDecompressor}, against the same block going
+ * through the byte arrays of the pooled {@link Compressor} and
+ * {@link Decompressor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DirectCodecBenchmark {
+
+  @Param({"Lz4Codec", "SnappyCodec"})
+  private String codecName;
+
+  @Param({"4096", "65536", "1048576"})
+  private int blockSize;
+
+  private CompressionCodec codec;
+  private DirectCompressor directCompressor;
+  private DirectDecompressor directDecompressor;
+  private ByteBuffer data;
+  private ByteBuffer compressed;
+  private ByteBuffer out;
+  private byte[] heapData;
+  private byte[] heapBuffer;
+
+  @Setup
+  public void setup() throws IOException, ClassNotFoundException {
+    Configuration conf = new Configuration();
+    codec = (CompressionCodec) ReflectionUtils.newInstance(
+        conf.getClassByName(
+            "org.apache.hadoop.io.compress." + codecName), conf);
+    Random random = new Random(0);
+    heapData = new byte[blockSize];
+    for (int i = 0; i < blockSize; i++) {
+      heapData[i] = (byte) ('a' + random.nextInt(16));
+    }
+    data = ByteBuffer.allocateDirect(blockSize);
+    data.put(heapData).flip();
+    directCompressor =
+        ((DirectCompressionCodec) codec).createDirectCompressor();
+    directDecompressor =
+        ((DirectDecompressionCodec) codec).createDirectDecompressor();
+    out = ByteBuffer.allocateDirect(Math.max(blockSize,
+        directCompressor.maxCompressedLength(blockSize)));
+    compressed = ByteBuffer.allocateDirect(
+        directCompressor.maxCompressedLength(blockSize));
+    directCompressor.compress(data.duplicate(), compressed);
+    compressed.flip();
+    heapBuffer = new byte[2 * blockSize + 1024];
+  }
+
+  @Benchmark
+  public int directCompress() throws IOException {
+    out.clear();
+    directCompressor.compress(data.duplicate(), out);
+    return out.position();
+  }
+
+  @Benchmark
+  public int directDecompress() throws IOException {
+    out.clear();
+    out.limit(blockSize);
+    directDecompressor.decompress(compressed.duplicate(), out);
+    return out.position();
+  }
+
+  @Benchmark
+  public int compressorCompress() throws IOException {
+    Compressor compressor = CodecPool.getCompressor(codec);
+    try {
+      compressor.setInput(heapData, 0, heapData.length);
+      compressor.finish();
+      int n = 0;
+      while (!compressor.finished()) {
+        n += compressor.compress(heapBuffer, 0, heapBuffer.length);
+      }
+      return n;
+    } finally {
+      CodecPool.returnCompressor(compressor);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.ProcessingDetails.Timing;
+import org.apache.hadoop.security.UserGroupInformation;
+
+/**
+ * Benchmark the cost computation and the prioritization of the calls by the
+ * {@link DecayRpcScheduler}, from several handler threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class DecayRpcSchedulerBenchmark {
+  private static final String NAMESPACE = "ipc.benchmark";
+
+  @Param({"10", "10000"})
+  private int numUsers;
+
+  private DecayRpcScheduler scheduler;
+  private Schedulable[] calls;
+
+  /** The processing details of the calls of a handler. */
+  @State(Scope.Thread)
+  public static class HandlerState {
+    private final ProcessingDetails details =
+        new ProcessingDetails(TimeUnit.NANOSECONDS);
+
+    @Setup
+    public void setup() {
+      details.set(Timing.QUEUE, TimeUnit.MICROSECONDS.toNanos(100));
+      details.set(Timing.PROCESSING, TimeUnit.MICROSECONDS.toNanos(500));
+    }
+  }
+
+  @Setup
+  public void setup() {
+    scheduler = new DecayRpcScheduler(4, NAMESPACE, new Configuration());
+    calls = new Schedulable[numUsers];
+    for (int i = 0; i < numUsers; i++) {
+      final UserGroupInformation ugi =
+          UserGroupInformation.createRemoteUser("user" + i);
+      calls[i] = new Schedulable() {
+        @Override
+        public UserGroupInformation getUserGroupInformation() {
+          return ugi;
+        }
+
+        @Override
+        public int getPriorityLevel() {
+          return 0;
+        }
+      };
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    scheduler.stop();
+  }
+
+  private Schedulable randomCall() {
+    return calls[ThreadLocalRandom.current().nextInt(numUsers)];
+  }
+
+  @Benchmark
+  public int getPriorityLevel() {
+    return scheduler.getPriorityLevel(randomCall());
+  }
+
+  @Benchmark
+  public Schedulable addResponseTime(HandlerState state) {
+    Schedulable call = randomCall();
+    scheduler.addResponseTime("benchmark", call, state.details);
+    return call;
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.util.ProtoUtil;
+
+/**
+ * Benchmark the serialization of the rpc requests by {@link RpcWritable}:
+ * a protobuf request header, as sent with every call, and a Writable
+ * payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RpcWritableBenchmark {
+  @Param({"64", "4096"})
+  private int payloadLength;
+
+  private RpcRequestHeaderProto header;
+  private Text payload;
+  private final Text readPayload = new Text();
+  private final ResponseBuffer buffer = new ResponseBuffer();
+  private byte[] serialized;
+
+  @Setup
+  public void setup() throws IOException {
+    header = ProtoUtil.makeRpcRequestHeader(RPC.RpcKind.RPC_PROTOCOL_BUFFER,
+        RpcRequestHeaderProto.OperationProto.RPC_FINAL_PACKET, 1, 0,
+        ClientId.getClientId());
+    StringBuilder sb = new StringBuilder(payloadLength);
+    for (int i = 0; i < payloadLength; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    payload = new Text(sb.toString());
+    serialized = write().toByteArray();
+  }
+
+  @Benchmark
+  public ResponseBuffer write() throws IOException {
+    buffer.reset();
+    RpcWritable.wrap(header).writeTo(buffer);
+    RpcWritable.wrap(payload).writeTo(buffer);
+    return buffer;
+  }
+
+  @Benchmark
+  public Text read() throws IOException {
+    // skip the framing length, as the server does.
+    ByteBuffer bb = ByteBuffer.wrap(serialized, 4, serialized.length - 4);
+    RpcRequestHeaderProto readHeader =
+        RpcWritable.wrap(RpcRequestHeaderProto.getDefaultInstance())
+            .readFrom(bb);
+    if (readHeader.getCallId() != header.getCallId()) {
+      throw new IllegalStateException("Unexpected header " + readHeader);
+    }
+    return RpcWritable.wrap(readPayload).readFrom(bb);
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.hadoop.fs.ChecksumException;
+
+/**
+ * Benchmark the computation and the verification of the chunked checksums
+ * of a packet by {@link DataChecksum}, as done by the DataNode and the
+ * clients, on heap and direct buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DataChecksumBenchmark {
+  private static final int PACKET_SIZE = 64 * 1024;
+
+  @Param({"CRC32", "CRC32C"})
+  private DataChecksum.Type type;
+
+  @Param({"512"})
+  private int bytesPerChecksum;
+
+  @Param({"false", "true"})
+  private boolean direct;
+
+  private DataChecksum checksum;
+  private ByteBuffer data;
+  private ByteBuffer sums;
+
+  @Setup
+  public void setup() {
+    checksum = DataChecksum.newDataChecksum(type, bytesPerChecksum);
+    byte[] bytes = new byte[PACKET_SIZE];
+    new Random(0).nextBytes(bytes);
+    int sumsLength = checksum.getChecksumSize(PACKET_SIZE);
+    if (direct) {
+      data = ByteBuffer.allocateDirect(PACKET_SIZE);
+      sums = ByteBuffer.allocateDirect(sumsLength);
+    } else {
+      data = ByteBuffer.allocate(PACKET_SIZE);
+      sums = ByteBuffer.allocate(sumsLength);
+    }
+    data.put(bytes);
+    data.flip();
+    checksum.calculateChunkedSums(data, sums);
+  }
+
+  @Benchmark
+  public ByteBuffer calculateChunkedSums() {
+    checksum.calculateChunkedSums(data, sums);
+    return sums;
+  }
+
+  @Benchmark
+  public ByteBuffer verifyChunkedSums() throws ChecksumException {
+    checksum.verifyChunkedSums(data, sums, "benchmark", 0);
+    return data;
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the lookups and the updates of a {@link LightWeightGSet}, as
+ * used for the blocks map of the NameNode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LightWeightGSetBenchmark {
+  @Param({"65536", "4194304"})
+  private int size;
+
+  private LightWeightGSet<Key, Key> set;
+  private Key[] keys;
+
+  /** An element of the set, found by its id. */
+  private static final class Key implements LightWeightGSet.LinkedElement {
+    private final long id;
+    private LightWeightGSet.LinkedElement next;
+
+    private Key(long id) {
+      this.id = id;
+    }
+
+    @Override
+    public void setNext(LightWeightGSet.LinkedElement next) {
+      this.next = next;
+    }
+
+    @Override
+    public LightWeightGSet.LinkedElement getNext() {
+      return next;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && ((Key) obj).id == id;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    set = new LightWeightGSet<>(size);
+    keys = new Key[size];
+    for (int i = 0; i < size; i++) {
+      // spread the ids like the block ids.
+      keys[i] = new Key(ThreadLocalRandom.current().nextLong());
+      set.put(keys[i]);
+    }
+  }
+
+  private Key randomKey() {
+    return keys[ThreadLocalRandom.current().nextInt(size)];
+  }
+
+  @Benchmark
+  public Key get() {
+    return set.get(randomKey());
+  }
+
+  @Benchmark
+  public Key removeAndPut() {
+    Key key = randomKey();
+    set.remove(key);
+    return set.put(key);
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the pure Java CRC implementations against the JDK CRC32 of a
+ * buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PureJavaCrc32CBenchmark {
+  @Param({"512", "65536"})
+  private int length;
+
+  private byte[] bytes;
+  private final Checksum pureJavaCrc32C = new PureJavaCrc32C();
+  private final Checksum pureJavaCrc32 = new PureJavaCrc32();
+  private final Checksum jdkCrc32 = new CRC32();
+
+  @Setup
+  public void setup() {
+    bytes = new byte[length];
+    new Random(0).nextBytes(bytes);
+  }
+
+  private long update(Checksum checksum) {
+    checksum.reset();
+    checksum.update(bytes, 0, length);
+    return checksum.getValue();
+  }
+
+  @Benchmark
+  public long pureJavaCrc32C() {
+    return update(pureJavaCrc32C);
+  }
+
+  @Benchmark
+  public long pureJavaCrc32() {
+    return update(pureJavaCrc32);
+  }
+
+  @Benchmark
+  public long jdkCrc32() {
+    return update(jdkCrc32);
+  }
+}
@@ -71,6 +71,27 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   /** Default value for IPC_SERVER_RPC_READ_THREADS_KEY */
   public static final int     IPC_SERVER_RPC_READ_THREADS_DEFAULT = 1;
   
+  /** Number of threads in RPC server writing the responses to the socket */
+  public static final String  IPC_SERVER_RPC_RESPONDER_THREADS_KEY =
+    "ipc.server.responder.threadpool.size";
+  /** Default value for IPC_SERVER_RPC_RESPONDER_THREADS_KEY */
+  public static final int     IPC_SERVER_RPC_RESPONDER_THREADS_DEFAULT = 1;
+
+  /**
+   * If true, the RPC server runs each call on a new virtual thread, when the
+   * JVM supports virtual threads, instead of a fixed number of handler threads.
+   */
+  public static final String IPC_SERVER_HANDLER_VIRTUAL_THREADS_ENABLED_KEY =
+      "ipc.server.handler.virtual-threads.enabled";
+  public static final boolean
+      IPC_SERVER_HANDLER_VIRTUAL_THREADS_ENABLED_DEFAULT = false;
+  /** The maximum number of calls running on virtual threads at a time. */
+  public static final String
+      IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_KEY =
+      "ipc.server.handler.virtual-threads.max-concurrency";
+  public static final int
+      IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_DEFAULT = 1000;
+
   /** Number of pending connections that may be queued per socket reader */
   public static final String IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_KEY =
       "ipc.server.read.connection-queue.size";
@@ -78,6 +99,21 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final int IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_DEFAULT =
       100;
 
+  /**
+   * Whether the RPC server reads requests and writes responses with pooled
+   * buffers.
+   */
+  public static final String IPC_SERVER_BUFFER_POOL_ENABLED_KEY =
+      "ipc.server.buffer.pool.enabled";
+  /** Default value for IPC_SERVER_BUFFER_POOL_ENABLED_KEY. */
+  public static final boolean IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT = false;
+  /** Maximum number of bytes of the idle buffers of the RPC server pool. */
+  public static final String IPC_SERVER_BUFFER_POOL_CAPACITY_KEY =
+      "ipc.server.buffer.pool.capacity";
+  /** Default value for IPC_SERVER_BUFFER_POOL_CAPACITY_KEY. */
+  public static final long IPC_SERVER_BUFFER_POOL_CAPACITY_DEFAULT =
+      64 * 1024 * 1024;
+
   /** Max request size a server will accept. */
   public static final String IPC_MAXIMUM_DATA_LENGTH =
       "ipc.maximum.data.length";
@@ -114,6 +150,9 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
       "callqueue.overflow.trigger.failover";
   public static final boolean IPC_CALLQUEUE_SERVER_FAILOVER_ENABLE_DEFAULT =
       false;
+  /** Number of shards of each priority level of ShardedFairCallQueue. */
+  public static final String IPC_CALLQUEUE_SHARDS_KEY = "callqueue.shards";
+  public static final int IPC_CALLQUEUE_SHARDS_DEFAULT = 4;
   /** Callqueue subqueue capacity weights. */
   public static final String IPC_CALLQUEUE_CAPACITY_WEIGHTS_KEY =
       "callqueue.capacity.weights";
@@ -184,6 +223,16 @@ public class CommonConfigurationKeys extends CommonConfigurationKeysPublic {
   public static final boolean IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT =
       false;
 
+  /**
+   * Number of threads compressing the blocks of a stream in parallel, for the
+   * block based codecs (lz4, snappy). 1 compresses on the writing thread.
+   */
+  public static final String IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY =
+      "io.compression.codec.parallel.threads";
+
+  /** Default value for IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY */
+  public static final int IO_COMPRESSION_CODEC_PARALLEL_THREADS_DEFAULT = 1;
+
 
 
   /**
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Specification of a ByteBuffer 'compressor', which compresses a whole
+ * block at a time without copying it to intermediate buffers. It is used by
+ * the {@link ParallelBlockCompressorStream} to compress its blocks.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public interface DirectCompressor {
+  /**
+   * Compress the remaining bytes of src into dst, as a single block that
+   * the {@link DirectDecompressor} of the same codec decompresses in one
+   * call.
+   *
+   * The operation is modelled around dst.put(src): src.position() is moved
+   * to src.limit() and dst.position() by the bytes written. The limits of
+   * the buffers are not modified. The buffers may be direct or heap buffers,
+   * direct buffers are read and written without copies.
+   *
+   * @param src Source {@link ByteBuffer} to compress.
+   * @param dst Destination {@link ByteBuffer}, with at least
+   *            {@link #maxCompressedLength(int)} of src.remaining() bytes
+   *            remaining.
+   * @throws IOException if dst is too small or compression fails
+   */
+  void compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+
+  /**
+   * @param uncompressedLength the length of the block to compress.
+   * @return the maximum length of the compressed block.
+   */
+  int maxCompressedLength(int uncompressedLength);
+}
@@ -31,7 +31,8 @@
 /**
  * This class creates lz4 compressors/decompressors.
  */
-public class Lz4Codec implements Configurable, CompressionCodec {
+public class Lz4Codec implements Configurable, CompressionCodec,
+    DirectCompressionCodec, DirectDecompressionCodec {
 
   Configuration conf;
 
@@ -89,6 +90,14 @@ public CompressionOutputStream createOutputStream(OutputStream out,
 
     int compressionOverhead = bufferSize/255 + 16;
 
+    int threads = conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_DEFAULT);
+    if (threads > 1) {
+      return new ParallelBlockCompressorStream(out, this, compressor,
+          bufferSize, compressionOverhead, threads);
+    }
+
     return new BlockCompressorStream(out, compressor, bufferSize,
         compressionOverhead);
   }
@@ -175,6 +184,25 @@ public Decompressor createDecompressor() {
     return new Lz4Decompressor(bufferSize);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    boolean useLz4HC = conf.getBoolean(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_USELZ4HC_DEFAULT);
+    return new Lz4Compressor.Lz4DirectCompressor(useLz4HC);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectDecompressor createDirectDecompressor() {
+    return new Lz4Decompressor.Lz4DirectDecompressor();
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
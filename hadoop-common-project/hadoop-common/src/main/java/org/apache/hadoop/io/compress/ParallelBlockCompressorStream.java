@@ -0,0 +1,314 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.io.compress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A {@link CompressionOutputStream} writing the same format as the
+ * {@link BlockCompressorStream}, but compressing the blocks on a pool of
+ * threads. The data is cut into blocks of at most the maximum input size,
+ * each block is compressed independently by a {@link Compressor} of its own
+ * and the compressed blocks are written in order, so the stream can be read
+ * by a {@link BlockDecompressorStream}. If the codec is a
+ * {@link DirectCompressionCodec}, the blocks are compressed by its
+ * {@link DirectCompressor} straight from and into their arrays instead.
+ *
+ * At most <code>threads</code> blocks are compressed at a time; writing
+ * blocks further waits for the oldest block to be compressed and written.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class ParallelBlockCompressorStream extends CompressionOutputStream {
+
+  /**
+   * The threads compressing the blocks of all the streams. The number of
+   * blocks compressed at a time is bounded by each stream, idle threads
+   * exit after a minute.
+   */
+  private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(
+      0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+      new SynchronousQueue<Runnable>(),
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("Block Compressor #%d")
+          .build());
+
+  private final CompressionCodec codec;
+  private final int maxInputSize;
+  private final int bufferSize;
+  private final int threads;
+
+  /** Compressors owned by the stream, the other come from the CodecPool. */
+  private final Queue<Compressor> compressors =
+      new ConcurrentLinkedQueue<Compressor>();
+  /** Blocks being compressed, in the order they are to be written. */
+  private final Queue<Block> pending = new ArrayDeque<Block>();
+  /** Blocks free to be filled. */
+  private final Queue<Block> free = new ArrayDeque<Block>();
+  private int allocatedBlocks;
+  private Block current;
+  private int blocksSinceReset;
+  private boolean finished;
+
+  /** A block of uncompressed data and its compressed form. */
+  private final class Block {
+    private final byte[] data = new byte[maxInputSize];
+    private int length;
+    private final DataOutputBuffer compressed = new DataOutputBuffer();
+    private final byte[] buffer = new byte[bufferSize];
+    // null if the codec cannot compress a block in place
+    private final DirectCompressor directCompressor =
+        codec instanceof DirectCompressionCodec ?
+        ((DirectCompressionCodec) codec).createDirectCompressor() : null;
+    private Future<?> future;
+
+    private void compress() throws IOException {
+      if (directCompressor != null
+          && directCompressor.maxCompressedLength(length) <= buffer.length) {
+        compressDirect();
+        return;
+      }
+      Compressor compressor = compressors.poll();
+      final boolean pooled = compressor == null;
+      if (pooled) {
+        compressor = CodecPool.getCompressor(codec);
+      }
+      try {
+        compressor.reset();
+        compressed.reset();
+        compressed.writeInt(length);
+        compressor.setInput(data, 0, length);
+        compressor.finish();
+        while (!compressor.finished()) {
+          int len = compressor.compress(buffer, 0, buffer.length);
+          if (len > 0) {
+            compressed.writeInt(len);
+            compressed.write(buffer, 0, len);
+          }
+        }
+      } finally {
+        if (pooled) {
+          CodecPool.returnCompressor(compressor);
+        } else {
+          compressors.offer(compressor);
+        }
+      }
+    }
+
+    /**
+     * Compress the block as a single chunk, which is what the
+     * {@link Compressor} of the codec writes for a block that fits in the
+     * buffer.
+     */
+    private void compressDirect() throws IOException {
+      compressed.reset();
+      compressed.writeInt(length);
+      if (length > 0) {
+        ByteBuffer dst = ByteBuffer.wrap(buffer);
+        directCompressor.compress(ByteBuffer.wrap(data, 0, length), dst);
+        compressed.writeInt(dst.position());
+        compressed.write(buffer, 0, dst.position());
+      }
+    }
+  }
+
+  /**
+   * Create a {@link ParallelBlockCompressorStream}.
+   *
+   * @param out stream
+   * @param codec codec to get more compressors from
+   * @param compressor compressor to be used
+   * @param bufferSize size of buffer
+   * @param compressionOverhead maximum 'overhead' of the compression
+   *                            algorithm with given bufferSize
+   * @param threads maximum number of blocks compressed at a time
+   */
+  public ParallelBlockCompressorStream(OutputStream out,
+      CompressionCodec codec, Compressor compressor, int bufferSize,
+      int compressionOverhead, int threads) {
+    super(out);
+    if (threads < 1) {
+      throw new IllegalArgumentException("Illegal number of threads: "
+          + threads);
+    }
+    this.codec = codec;
+    this.maxInputSize = bufferSize - compressionOverhead;
+    this.bufferSize = bufferSize;
+    this.threads = threads;
+    if (compressor != null) {
+      compressors.offer(compressor);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    byte[] oneByte = new byte[] {(byte) b};
+    write(oneByte, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (finished) {
+      throw new IOException("write beyond end of stream");
+    }
+    if (b == null) {
+      throw new NullPointerException();
+    } else if ((off < 0) || (off > b.length) || (len < 0) ||
+               ((off + len) > b.length)) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      if (current == null) {
+        current = nextBlock();
+      }
+      int n = Math.min(len, maxInputSize - current.length);
+      System.arraycopy(b, off, current.data, current.length, n);
+      current.length += n;
+      off += n;
+      len -= n;
+      if (current.length == maxInputSize) {
+        submit();
+      }
+    }
+  }
+
+  /**
+   * Write the compressed blocks and flush the underlying stream. The data of
+   * the block being filled is not flushed, as by {@link BlockCompressorStream}.
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty()) {
+      writeOldest();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    // an empty stream still has an empty block, as in BlockCompressorStream.
+    if (current != null || blocksSinceReset == 0) {
+      if (current == null) {
+        current = nextBlock();
+      }
+      submit();
+    }
+    while (!pending.isEmpty()) {
+      writeOldest();
+    }
+    finished = true;
+  }
+
+  @Override
+  public void resetState() throws IOException {
+    finished = false;
+    blocksSinceReset = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      // wait for the blocks still being compressed after a failure, so that
+      // their compressors are no longer in use.
+      for (Block block : pending) {
+        try {
+          block.future.get();
+        } catch (InterruptedException | ExecutionException e) {
+          // ignored, the failure has already been reported.
+        }
+      }
+      pending.clear();
+      compressors.clear();
+    }
+  }
+
+  private Block nextBlock() throws IOException {
+    Block block = free.poll();
+    if (block == null) {
+      if (allocatedBlocks < threads) {
+        allocatedBlocks++;
+        return new Block();
+      }
+      writeOldest();
+      block = free.poll();
+    }
+    block.length = 0;
+    return block;
+  }
+
+  /** @return the number of blocks allocated by the stream. */
+  @VisibleForTesting
+  int getAllocatedBlocks() {
+    return allocatedBlocks;
+  }
+
+  private void submit() {
+    final Block block = current;
+    current = null;
+    block.future = EXECUTOR.submit(() -> {
+      block.compress();
+      return null;
+    });
+    pending.add(block);
+    blocksSinceReset++;
+  }
+
+  private void writeOldest() throws IOException {
+    Block block = pending.peek();
+    try {
+      block.future.get();
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while compressing").initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to compress a block", cause);
+    }
+    pending.remove();
+    out.write(block.compressed.getData(), 0, block.compressed.getLength());
+    free.add(block);
+  }
+}
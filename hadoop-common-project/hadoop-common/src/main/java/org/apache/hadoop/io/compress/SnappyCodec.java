@@ -25,6 +25,7 @@
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.snappy.SnappyCompressor;
+import org.apache.hadoop.io.compress.snappy.SnappyCompressor.SnappyDirectCompressor;
 import org.apache.hadoop.io.compress.snappy.SnappyDecompressor;
 import org.apache.hadoop.io.compress.snappy.SnappyDecompressor.SnappyDirectDecompressor;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
@@ -32,7 +33,8 @@
 /**
  * This class creates snappy compressors/decompressors.
  */
-public class SnappyCodec implements Configurable, CompressionCodec, DirectDecompressionCodec {
+public class SnappyCodec implements Configurable, CompressionCodec,
+    DirectCompressionCodec, DirectDecompressionCodec {
   Configuration conf;
 
   /**
@@ -89,6 +91,14 @@ public CompressionOutputStream createOutputStream(OutputStream out,
 
     int compressionOverhead = (bufferSize / 6) + 32;
 
+    int threads = conf.getInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY,
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_DEFAULT);
+    if (threads > 1) {
+      return new ParallelBlockCompressorStream(out, this, compressor,
+          bufferSize, compressionOverhead, threads);
+    }
+
     return new BlockCompressorStream(out, compressor, bufferSize,
         compressionOverhead);
   }
@@ -180,6 +190,14 @@ public DirectDecompressor createDirectDecompressor() {
     return new SnappyDirectDecompressor();
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public DirectCompressor createDirectCompressor() {
+    return new SnappyDirectCompressor();
+  }
+
   /**
    * Get the default filename extension for this kind of compression.
    *
@@ -22,11 +22,13 @@
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
+import net.jpountz.lz4.LZ4Exception;
 import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.lz4.LZ4Compressor;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -324,4 +326,43 @@ private int compressDirectBuf() {
       return size;
     }
   }
+
+  /**
+   * A {@link DirectCompressor} compressing a block with lz4, reading and
+   * writing the buffers in place.
+   */
+  public static class Lz4DirectCompressor implements DirectCompressor {
+    private final LZ4Compressor lz4Compressor;
+
+    public Lz4DirectCompressor(boolean useLz4HC) {
+      try {
+        LZ4Factory lz4Factory = LZ4Factory.fastestInstance();
+        lz4Compressor = useLz4HC ? lz4Factory.highCompressor()
+            : lz4Factory.fastCompressor();
+      } catch (AssertionError t) {
+        throw new RuntimeException("lz4-java library is not available: " +
+            "Lz4DirectCompressor has not been loaded. You need to add " +
+            "lz4-java.jar to your CLASSPATH. " + t, t);
+      }
+    }
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+      final int n;
+      try {
+        n = lz4Compressor.compress(src, src.position(), src.remaining(),
+            dst, dst.position(), dst.remaining());
+      } catch (LZ4Exception e) {
+        throw new IOException("Failed to compress " + src.remaining()
+            + " bytes into " + dst.remaining() + " bytes", e);
+      }
+      src.position(src.limit());
+      dst.position(dst.position() + n);
+    }
+
+    @Override
+    public int maxCompressedLength(int uncompressedLength) {
+      return lz4Compressor.maxCompressedLength(uncompressedLength);
+    }
+  }
 }
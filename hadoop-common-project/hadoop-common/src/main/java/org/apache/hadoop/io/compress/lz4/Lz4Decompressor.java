@@ -22,10 +22,12 @@
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
+import net.jpountz.lz4.LZ4Exception;
 import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.lz4.LZ4SafeDecompressor;
 
 import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DirectDecompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -284,4 +286,40 @@ private int decompressDirectBuf() {
       return size;
     }
   }
+
+  /**
+   * A {@link DirectDecompressor} decompressing a block compressed by the
+   * {@link Lz4Compressor.Lz4DirectCompressor}, reading and writing the
+   * buffers in place. The whole block must be in src, and dst must have
+   * room for the whole uncompressed block.
+   */
+  public static class Lz4DirectDecompressor implements DirectDecompressor {
+    private final LZ4SafeDecompressor lz4Decompressor;
+
+    public Lz4DirectDecompressor() {
+      try {
+        lz4Decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+      } catch (AssertionError t) {
+        throw new RuntimeException("lz4-java library is not available: " +
+            "Lz4DirectDecompressor has not been loaded. You need to add " +
+            "lz4-java.jar to your CLASSPATH. " + t, t);
+      }
+    }
+
+    @Override
+    public void decompress(ByteBuffer src, ByteBuffer dst)
+        throws IOException {
+      final int n;
+      try {
+        n = lz4Decompressor.decompress(src, src.position(), src.remaining(),
+            dst, dst.position(), dst.remaining());
+      } catch (LZ4Exception e) {
+        throw new IOException("Failed to decompress " + src.remaining()
+            + " bytes into " + dst.remaining() + " bytes", e);
+      }
+      // lz4 always consumes the whole block or throws an exception
+      src.position(src.limit());
+      dst.position(dst.position() + n);
+    }
+  }
 }
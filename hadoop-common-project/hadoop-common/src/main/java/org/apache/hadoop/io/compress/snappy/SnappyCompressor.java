@@ -24,6 +24,7 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.DirectCompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
@@ -285,4 +286,42 @@ private int compressDirectBuf() throws IOException {
       return size;
     }
   }
+
+  /**
+   * A {@link DirectCompressor} compressing a block with snappy, reading and
+   * writing the buffers in place. The buffers must be both direct or both
+   * heap buffers.
+   */
+  public static class SnappyDirectCompressor implements DirectCompressor {
+
+    @Override
+    public void compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+      // snappy does not check the size of the destination.
+      if (dst.remaining() < maxCompressedLength(src.remaining())) {
+        throw new IOException("Cannot compress " + src.remaining()
+            + " bytes into " + dst.remaining() + " bytes");
+      }
+      final int n;
+      if (src.isDirect() && dst.isDirect()) {
+        final int limit = dst.limit();
+        n = Snappy.compress(src, dst);
+        // snappy sets the limit of dst to the end of the compressed block.
+        dst.limit(limit);
+      } else if (src.hasArray() && dst.hasArray()) {
+        n = Snappy.compress(src.array(), src.arrayOffset() + src.position(),
+            src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+      } else {
+        throw new IOException("Cannot compress from a "
+            + (src.isDirect() ? "direct" : "heap") + " buffer to a "
+            + (dst.isDirect() ? "direct" : "heap") + " buffer");
+      }
+      src.position(src.limit());
+      dst.position(dst.position() + n);
+    }
+
+    @Override
+    public int maxCompressedLength(int uncompressedLength) {
+      return Snappy.maxCompressedLength(uncompressedLength);
+    }
+  }
 }
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer queue backed by a ring
+ * of slots.
+ *
+ * Each slot has a sequence number telling whether it is free for the
+ * producer of a given position, or holds the element of a given position
+ * for a consumer. Producers and consumers claim their positions with a CAS on
+ * the tail and the head of the queue, they only contend with each other on
+ * a nearly empty queue.
+ *
+ * An element is visible to the consumers once {@link #offer(Object)} returns.
+ * {@link #poll()} may return null while an element is being added.
+ *
+ * @param <E> The type of the queue elements.
+ */
+@InterfaceAudience.Private
+class BoundedMpmcQueue<E> {
+  private final int capacity;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  BoundedMpmcQueue(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "capacity = %s <= 0", capacity);
+    this.capacity = capacity;
+    this.elements = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  private int slot(long position) {
+    return (int) (position % capacity);
+  }
+
+  /**
+   * Add an element at the tail of the queue.
+   * @return false if the queue is full.
+   */
+  boolean offer(E e) {
+    long position = tail.get();
+    while (true) {
+      final int slot = slot(position);
+      final long diff = sequences.get(slot) - position;
+      if (diff == 0) {
+        // the slot is free for this position
+        if (tail.compareAndSet(position, position + 1)) {
+          elements.set(slot, e);
+          sequences.set(slot, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (diff < 0) {
+        // the slot still holds the element of the previous lap
+        return false;
+      } else {
+        // another producer took the position
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Remove the element at the head of the queue.
+   * @return the element, or null if the queue is empty.
+   */
+  E poll() {
+    long position = head.get();
+    while (true) {
+      final int slot = slot(position);
+      final long diff = sequences.get(slot) - (position + 1);
+      if (diff == 0) {
+        // the slot holds the element of this position
+        if (head.compareAndSet(position, position + 1)) {
+          final E e = elements.get(slot);
+          elements.set(slot, null);
+          sequences.set(slot, position + capacity);
+          return e;
+        }
+        position = head.get();
+      } else if (diff < 0) {
+        // the element of this position has not been added yet
+        return null;
+      } else {
+        // another consumer took the position
+        position = head.get();
+      }
+    }
+  }
+
+  /**
+   * @return the element at the head of the queue, without removing it, or
+   *         null if the queue is empty. The element may be removed
+   *         concurrently.
+   */
+  E peek() {
+    final long position = head.get();
+    final int slot = slot(position);
+    if (sequences.get(slot) == position + 1) {
+      return elements.get(slot);
+    }
+    return null;
+  }
+
+  /** @return the approximate number of elements of the queue. */
+  int size() {
+    final long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, capacity));
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
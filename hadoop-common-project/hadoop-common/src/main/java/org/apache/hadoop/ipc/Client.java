@@ -156,6 +156,25 @@ public static void setCallIdAndRetryCount(int cid, int rc,
    * calling code.
    */
   private final ExecutorService sendParamsExecutor;
+
+  /**
+   * The maximum number of rpc requests written to a connection before it is
+   * flushed.
+   */
+  private static final int MAX_REQUESTS_PER_FLUSH = 64;
+
+  /** A serialized rpc request waiting to be sent. */
+  private static final class PendingRequest {
+    private final Call call;
+    private final ResponseBuffer buf;
+    // completed once the request is written, or failed to be written
+    private final CompletableFuture<Void> sent = new CompletableFuture<>();
+
+    PendingRequest(Call call, ResponseBuffer buf) {
+      this.call = call;
+      this.buf = buf;
+    }
+  }
   private final static ClientExecutorServiceFactory clientExcecutorFactory =
       new ClientExecutorServiceFactory();
 
@@ -446,7 +465,11 @@ private class Connection extends Thread {
     private AtomicBoolean shouldCloseConnection = new AtomicBoolean();  // indicate if the connection is closed
     private IOException closeException; // close reason
     
-    private final Object sendRpcRequestLock = new Object();
+    // serialized requests waiting to be sent by the sender task
+    private final Queue<PendingRequest> pendingRequests =
+        new ConcurrentLinkedQueue<>();
+    // whether a sender task is scheduled or running
+    private final AtomicBoolean senderScheduled = new AtomicBoolean();
 
     private AtomicReference<Thread> connectingThread = new AtomicReference<>();
     private final Consumer<Connection> removeMethod;
@@ -1184,50 +1207,96 @@ public void sendRpcRequest(final Call call)
       header.writeDelimitedTo(buf);
       RpcWritable.wrap(call.rpcRequest).writeTo(buf);
 
-      synchronized (sendRpcRequestLock) {
-        Future<?> senderFuture = sendParamsExecutor.submit(new Runnable() {
-          @Override
-          public void run() {
-            try {
-              synchronized (ipcStreams.out) {
-                if (shouldCloseConnection.get()) {
-                  return;
-                }
+      // The requests of concurrent callers are queued and written by a single
+      // sender task, which flushes all the requests queued at the time of
+      // its write at once, instead of flushing each of them in turn.
+      final PendingRequest request = new PendingRequest(call, buf);
+      pendingRequests.add(request);
+      if (senderScheduled.compareAndSet(false, true)) {
+        try {
+          sendParamsExecutor.execute(this::sendPendingRequests);
+        } catch (RejectedExecutionException e) {
+          senderScheduled.set(false);
+          pendingRequests.remove(request);
+          throw e;
+        }
+      }
+
+      try {
+        request.sent.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+
+        // cause should only be a RuntimeException or an Error as the sender
+        // task catches IOException
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        } else {
+          throw new RuntimeException("unexpected checked exception", cause);
+        }
+      }
+    }
+
+    /**
+     * Write the pending requests to the connection, until none is left.
+     * This runs on the sendParamsExecutor, with at most one task per
+     * connection at a time.
+     */
+    private void sendPendingRequests() {
+      final List<PendingRequest> batch = new ArrayList<>();
+      do {
+        PendingRequest request;
+        while (batch.size() < MAX_REQUESTS_PER_FLUSH
+            && (request = pendingRequests.poll()) != null) {
+          batch.add(request);
+        }
+        Throwable failure = null;
+        try {
+          synchronized (ipcStreams.out) {
+            if (!shouldCloseConnection.get()) {
+              for (PendingRequest r : batch) {
                 if (LOG.isDebugEnabled()) {
-                  LOG.debug(getName() + " sending #" + call.id
-                      + " " + call.rpcRequest);
+                  LOG.debug(getName() + " sending #" + r.call.id
+                      + " " + r.call.rpcRequest);
                 }
                 // RpcRequestHeader + RpcRequest
-                ipcStreams.sendRequest(buf.toByteArray());
-                ipcStreams.flush();
+                ipcStreams.sendRequest(r.buf.toByteArray());
               }
-            } catch (IOException e) {
-              // exception at this point would leave the connection in an
-              // unrecoverable state (eg half a call left on the wire).
-              // So, close the connection, killing any outstanding calls
-              markClosed(e);
-            } finally {
-              //the buffer is just an in-memory buffer, but it is still polite to
-              // close early
-              IOUtils.closeStream(buf);
+              ipcStreams.flush();
             }
           }
-        });
-      
-        try {
-          senderFuture.get();
-        } catch (ExecutionException e) {
-          Throwable cause = e.getCause();
-          
-          // cause should only be a RuntimeException as the Runnable above
-          // catches IOException
-          if (cause instanceof RuntimeException) {
-            throw (RuntimeException) cause;
-          } else {
-            throw new RuntimeException("unexpected checked exception", cause);
+        } catch (IOException e) {
+          // exception at this point would leave the connection in an
+          // unrecoverable state (eg half a call left on the wire).
+          // So, close the connection, killing any outstanding calls
+          markClosed(e);
+        } catch (RuntimeException | Error e) {
+          failure = e;
+        } finally {
+          for (PendingRequest r : batch) {
+            //the buffer is just an in-memory buffer, but it is still polite to
+            // close early
+            IOUtils.closeStream(r.buf);
+            if (failure == null) {
+              r.sent.complete(null);
+            } else {
+              r.sent.completeExceptionally(failure);
+            }
           }
+          batch.clear();
         }
-      }
+        if (pendingRequests.isEmpty()) {
+          senderScheduled.set(false);
+          // a request queued before the flag was cleared would not have
+          // scheduled a new task: send it from this one.
+          if (pendingRequests.isEmpty()
+              || !senderScheduled.compareAndSet(false, true)) {
+            return;
+          }
+        }
+      } while (true);
     }
 
     /* Receive a response.
@@ -50,7 +50,7 @@
  * A queue with multiple levels for each priority.
  */
 public class FairCallQueue<E extends Schedulable> extends AbstractQueue<E>
-    implements BlockingQueue<E> {
+    implements BlockingQueue<E>, CallQueueStats {
   @Deprecated
   public static final int    IPC_CALLQUEUE_PRIORITY_LEVELS_DEFAULT = 4;
   @Deprecated
@@ -379,14 +379,14 @@ public int remainingCapacity() {
    * MetricsProxy is a singleton because we may init multiple
    * FairCallQueues, but the metrics system cannot unregister beans cleanly.
    */
-  private static final class MetricsProxy implements FairCallQueueMXBean,
+  static final class MetricsProxy implements FairCallQueueMXBean,
       MetricsSource {
     // One singleton per namespace
     private static final HashMap<String, MetricsProxy> INSTANCES =
       new HashMap<String, MetricsProxy>();
 
     // Weakref for delegate, so we don't retain it forever if it can be GC'd
-    private WeakReference<FairCallQueue<? extends Schedulable>> delegate;
+    private WeakReference<CallQueueStats> delegate;
 
     // Keep track of how many objects we registered
     private int revisionNumber = 0;
@@ -410,9 +410,8 @@ public static synchronized MetricsProxy getInstance(String namespace) {
       return mp;
     }
 
-    public void setDelegate(FairCallQueue<? extends Schedulable> obj) {
-      this.delegate
-          = new WeakReference<FairCallQueue<? extends Schedulable>>(obj);
+    public void setDelegate(CallQueueStats obj) {
+      this.delegate = new WeakReference<CallQueueStats>(obj);
       this.revisionNumber++;
     }
 
@@ -420,8 +419,8 @@ public void setDelegate(FairCallQueue<? extends Schedulable> obj) {
      * Fetch the current call queue from the weak reference delegate. If there
      * is no delegate, or the delegate is empty, this will return null.
      */
-    private FairCallQueue<? extends Schedulable> getCallQueue() {
-      WeakReference<FairCallQueue<? extends Schedulable>> ref = this.delegate;
+    private CallQueueStats getCallQueue() {
+      WeakReference<CallQueueStats> ref = this.delegate;
       if (ref == null) {
         return null;
       }
@@ -430,7 +429,7 @@ private FairCallQueue<? extends Schedulable> getCallQueue() {
 
     @Override
     public int[] getQueueSizes() {
-      FairCallQueue<? extends Schedulable> obj = getCallQueue();
+      CallQueueStats obj = getCallQueue();
       if (obj == null) {
         return new int[]{};
       }
@@ -440,7 +439,7 @@ public int[] getQueueSizes() {
 
     @Override
     public long[] getOverflowedCalls() {
-      FairCallQueue<? extends Schedulable> obj = getCallQueue();
+      CallQueueStats obj = getCallQueue();
       if (obj == null) {
         return new long[]{};
       }
@@ -471,6 +470,7 @@ public void getMetrics(MetricsCollector collector, boolean all) {
   }
 
   // FairCallQueueMXBean
+  @Override
   public int[] getQueueSizes() {
     int numQueues = queues.size();
     int[] sizes = new int[numQueues];
@@ -480,6 +480,7 @@ public int[] getQueueSizes() {
     return sizes;
   }
 
+  @Override
   public long[] getOverflowedCalls() {
     int numQueues = queues.size();
     long[] calls = new long[numQueues];
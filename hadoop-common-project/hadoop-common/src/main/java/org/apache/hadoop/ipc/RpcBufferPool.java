@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A bounded pool of the heap buffers used by the {@link Server} to read rpc
+ * requests and to write rpc responses.
+ *
+ * Buffers are pooled in power of two size classes, from
+ * {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE} bytes. Larger buffers
+ * are allocated on demand and left to the garbage collector. Each size class
+ * keeps at most its share of the pool capacity, the buffers released to a
+ * full size class are dropped.
+ *
+ * The buffers are heap buffers since requests are parsed from, and responses
+ * are serialized to, their backing arrays.
+ */
+@InterfaceAudience.Private
+class RpcBufferPool {
+  static final int MIN_BUFFER_SIZE = 512;
+  static final int MAX_BUFFER_SIZE = 1024 * 1024;
+  private static final int MIN_SHIFT =
+      Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+  private static final int NUM_CLASSES =
+      Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+  private final Queue<ByteBuffer>[] buffers;
+  private final AtomicInteger[] numBuffers;
+  private final int[] maxBuffers;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bytesInFlight = new LongAdder();
+
+  /**
+   * @param capacity the maximum number of bytes of the idle pooled buffers.
+   */
+  @SuppressWarnings("unchecked")
+  RpcBufferPool(long capacity) {
+    buffers = new Queue[NUM_CLASSES];
+    numBuffers = new AtomicInteger[NUM_CLASSES];
+    maxBuffers = new int[NUM_CLASSES];
+    for (int i = 0; i < NUM_CLASSES; i++) {
+      buffers[i] = new ConcurrentLinkedQueue<>();
+      numBuffers[i] = new AtomicInteger();
+      maxBuffers[i] = (int) Math.min(Integer.MAX_VALUE,
+          capacity / NUM_CLASSES / getClassSize(i));
+    }
+  }
+
+  private static int getClassSize(int sizeClass) {
+    return 1 << (sizeClass + MIN_SHIFT);
+  }
+
+  /** @return the size class of a buffer of the given length. */
+  private static int getSizeClass(int length) {
+    if (length <= MIN_BUFFER_SIZE) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SHIFT;
+  }
+
+  /**
+   * Get a buffer for the given number of bytes.
+   * @return a buffer with its position at 0 and its limit at length.
+   */
+  ByteBuffer getBuffer(int length) {
+    if (length > MAX_BUFFER_SIZE) {
+      misses.increment();
+      return ByteBuffer.allocate(length);
+    }
+    final int sizeClass = getSizeClass(length);
+    ByteBuffer buffer = buffers[sizeClass].poll();
+    if (buffer != null) {
+      numBuffers[sizeClass].decrementAndGet();
+      hits.increment();
+      buffer.clear();
+    } else {
+      misses.increment();
+      buffer = ByteBuffer.allocate(getClassSize(sizeClass));
+    }
+    bytesInFlight.add(buffer.capacity());
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Release a buffer returned by {@link #getBuffer(int)}. The buffer must not
+   * be used after it is released.
+   */
+  void putBuffer(ByteBuffer buffer) {
+    final int capacity = buffer.capacity();
+    if (capacity > MAX_BUFFER_SIZE) {
+      return;
+    }
+    bytesInFlight.add(-capacity);
+    final int sizeClass = getSizeClass(capacity);
+    if (numBuffers[sizeClass].incrementAndGet() <= maxBuffers[sizeClass]) {
+      buffers[sizeClass].offer(buffer);
+    } else {
+      numBuffers[sizeClass].decrementAndGet();
+    }
+  }
+
+  /** @return the number of buffers taken from the pool. */
+  long getHits() {
+    return hits.sum();
+  }
+
+  /** @return the number of buffers allocated since the pool had none. */
+  long getMisses() {
+    return misses.sum();
+  }
+
+  /** @return the number of bytes of the pooled buffers in use. */
+  long getBytesInFlight() {
+    return bytesInFlight.sum();
+  }
+}
@@ -42,6 +42,7 @@
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.Channels;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -65,6 +66,8 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -460,7 +463,10 @@ public static int getPriorityLevel() {
   private String bindAddress;
   private int port;                               // port we listen on
   private int handlerCount;                       // number of handler threads
+  // max number of calls run on virtual threads, 0 to use handler threads
+  private final int virtualHandlerConcurrency;
   private int readThreads;                        // number of read threads
+  private int responderThreads;                   // number of responder threads
   private int readerPendingConnectionQueue;         // number of connections to queue per read thread
   private Class<? extends Writable> rpcRequestClass;   // class used for deserializing the rpc request
   final protected RpcMetrics rpcMetrics;
@@ -474,6 +480,8 @@ public static int getPriorityLevel() {
 
   private int maxQueueSize;
   private final int maxRespSize;
+  // pool of the buffers of the requests and responses, null if disabled
+  private final RpcBufferPool bufferPool;
   private final ThreadLocal<ResponseBuffer> responseBuffer =
       new ThreadLocal<ResponseBuffer>(){
         @Override
@@ -497,7 +505,8 @@ protected ResponseBuffer initialValue() {
   // arbitrary number of of auxiliary listeners. A map from
   // the port to the listener binding to it.
   private Map<Integer, Listener> auxiliaryListenerMap;
-  private Responder responder = null;
+  private Responder[] responders = null;
+  private final AtomicInteger nextResponder = new AtomicInteger();
   private Handler[] handlers = null;
   private final AtomicInteger numInProcessHandler = new AtomicInteger();
 
@@ -788,7 +797,9 @@ static Class<? extends RpcScheduler> getSchedulerClass(
       Class<?> queueClass = conf.getClass(queueKeyName, null);
       if (queueClass != null) {
         if (queueClass.getCanonicalName().equals(
-            FairCallQueue.class.getCanonicalName())) {
+            FairCallQueue.class.getCanonicalName()) ||
+            queueClass.getCanonicalName().equals(
+            ShardedFairCallQueue.class.getCanonicalName())) {
           conf.setClass(schedulerKeyname, DecayRpcScheduler.class,
               RpcScheduler.class);
         }
@@ -830,7 +841,9 @@ static Class<? extends RpcScheduler> getSchedulerClass(
       Class<?> queueClass = conf.getClass(queueKeyNameWithPort, null);
       if (queueClass != null) {
         if (queueClass.getCanonicalName().equals(
-            FairCallQueue.class.getCanonicalName())) {
+            FairCallQueue.class.getCanonicalName()) ||
+            queueClass.getCanonicalName().equals(
+            ShardedFairCallQueue.class.getCanonicalName())) {
           conf.setClass(schedulerKeyNameWithPort, DecayRpcScheduler.class,
               RpcScheduler.class);
         }
@@ -1045,6 +1058,13 @@ void doResponse(Throwable t) throws IOException {
 
     void doResponse(Throwable t, RpcStatusProto proto) throws IOException {}
 
+    /**
+     * Release the buffer holding the request once the call has been
+     * processed.
+     */
+    void releaseRequest() {
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1098,6 +1118,10 @@ private class RpcCall extends Call {
     final Connection connection;  // connection to client
     final Writable rpcRequest;    // Serialized Rpc request from client
     ByteBuffer rpcResponse;       // the response for this call
+    // whether the response is a buffer of the pool
+    private boolean pooledResponse;
+    // the pooled buffer the request is read from, until it is processed
+    private ByteBuffer requestBuffer;
 
     private ResponseParams responseParams; // the response params
     private Writable rv;                   // the byte response
@@ -1231,7 +1255,36 @@ private void populateResponseParamsOnError(Throwable t,
     }
 
     void setResponse(ByteBuffer response) throws IOException {
+      setResponse(response, false);
+    }
+
+    /**
+     * Set the response of the call, releasing the previous one.
+     * @param response the response
+     * @param pooled whether the response is a buffer of the pool
+     */
+    void setResponse(ByteBuffer response, boolean pooled) {
+      releaseResponse();
       this.rpcResponse = response;
+      this.pooledResponse = pooled;
+    }
+
+    /** Release the response once it has been sent. */
+    void releaseResponse() {
+      if (pooledResponse) {
+        releaseBuffer(rpcResponse);
+        pooledResponse = false;
+      }
+      rpcResponse = null;
+    }
+
+    @Override
+    void releaseRequest() {
+      final ByteBuffer buffer = requestBuffer;
+      if (buffer != null) {
+        requestBuffer = null;
+        releaseBuffer(buffer);
+      }
     }
 
     @Override
@@ -1628,11 +1681,19 @@ Reader getReader() {
 
   // Sends responses of RPC back to clients.
   private class Responder extends Thread {
+    private final int index;
     private final Selector writeSelector;
     private int pending;         // connections waiting to register
-
-    Responder() throws IOException {
-      this.setName("IPC Server Responder");
+    // the buffers of the responses gathered into a single write
+    private final ByteBuffer[] gatheredBuffers =
+        new ByteBuffer[MAX_GATHERED_RESPONSES];
+    // responses waiting to be sent, updated periodically for the metrics
+    private volatile int queueLength;
+
+    Responder(int index) throws IOException {
+      this.index = index;
+      this.setName(responderThreads == 1 ? "IPC Server Responder" :
+          "IPC Server Responder " + index);
       this.setDaemon(true);
       writeSelector = Selector.open(); // create a selector
       pending = 0;
@@ -1656,12 +1717,14 @@ public void run() {
     
     private void doRunLoop() {
       long lastPurgeTimeNanos = 0;   // last check for old calls.
+      long lastQueueLengthTimeNanos = 0;
+      final long selectTimeoutMs = Math.min(QUEUE_LENGTH_INTERVAL_MS,
+          TimeUnit.NANOSECONDS.toMillis(purgeIntervalNanos));
 
       while (running) {
         try {
           waitPending();     // If a channel is being registered, wait.
-          writeSelector.select(
-              TimeUnit.NANOSECONDS.toMillis(purgeIntervalNanos));
+          writeSelector.select(selectTimeoutMs);
           Iterator<SelectionKey> iter = writeSelector.selectedKeys().iterator();
           while (iter.hasNext()) {
             SelectionKey key = iter.next();
@@ -1684,6 +1747,11 @@ private void doRunLoop() {
             }
           }
           long nowNanos = Time.monotonicNowNanos();
+          if (nowNanos >= lastQueueLengthTimeNanos
+              + TimeUnit.MILLISECONDS.toNanos(QUEUE_LENGTH_INTERVAL_MS)) {
+            lastQueueLengthTimeNanos = nowNanos;
+            updateQueueLength();
+          }
           if (nowNanos < lastPurgeTimeNanos + purgeIntervalNanos) {
             continue;
           }
@@ -1727,6 +1795,25 @@ private void doRunLoop() {
       }
     }
 
+    //
+    // Count the responses queued on the connections of this responder. The
+    // responses which could not be written right away are only queued on
+    // the connections registered with the write selector.
+    //
+    private void updateQueueLength() {
+      int length = 0;
+      synchronized (writeSelector.keys()) {
+        for (SelectionKey key : writeSelector.keys()) {
+          RpcCall call = (RpcCall)key.attachment();
+          if (call != null && key.isValid()) {
+            length += call.connection.responseQueueLength.get();
+          }
+        }
+      }
+      queueLength = length;
+      rpcMetrics.setResponderQueueLength(index, length);
+    }
+
     private void doAsyncWrite(SelectionKey key) throws IOException {
       RpcCall call = (RpcCall)key.attachment();
       if (call == null) {
@@ -1770,8 +1857,9 @@ private void doPurge(RpcCall call, long now) {
       }
     }
 
-    // Processes one response. Returns true if there are no more pending
-    // data for this channel.
+    // Processes the pending responses, writing as many of them as possible
+    // in a single write. Returns true if there are no more pending data for
+    // this channel.
     //
     private boolean processResponse(LinkedList<RpcCall> responseQueue,
                                     boolean inHandler) throws IOException {
@@ -1790,9 +1878,9 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
             return true;              // no more data for this channel.
           }
           //
-          // Extract the first call
+          // The first call is the one being sent
           //
-          call = responseQueue.removeFirst();
+          call = responseQueue.getFirst();
           SocketChannel channel = call.connection.channel;
           if (LOG.isDebugEnabled()) {
             LOG.debug(Thread.currentThread().getName() + ": responding to " + call);
@@ -1800,46 +1888,55 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
           //
           // Send as much data as we can in the non-blocking fashion
           //
-          int numBytes = channelWrite(channel, call.rpcResponse);
+          final long startNanos = Time.monotonicNowNanos();
+          long numBytes = writeResponses(channel, responseQueue);
+          rpcMetrics.addResponderWriteTime(index,
+              Time.monotonicNowNanos() - startNanos);
           if (numBytes < 0) {
+            responseQueue.removeFirst().releaseResponse();
+            call.connection.responseQueueLength.set(responseQueue.size());
             return true;
           }
-          if (!call.rpcResponse.hasRemaining()) {
-            //Clear out the response buffer so it can be collected
-            call.rpcResponse = null;
+          //
+          // Remove the calls which have been fully written
+          //
+          while (!responseQueue.isEmpty()
+              && !responseQueue.getFirst().rpcResponse.hasRemaining()) {
+            call = responseQueue.removeFirst();
+            // Release the response buffer, it is not used anymore
+            call.releaseResponse();
             call.connection.decRpcCount();
-            if (numElements == 1) {    // last call fully processes.
-              done = true;             // no more data for this channel.
-            } else {
-              done = false;            // more calls pending to be sent.
-            }
             if (LOG.isDebugEnabled()) {
-              LOG.debug(Thread.currentThread().getName() + ": responding to " + call
-                  + " Wrote " + numBytes + " bytes.");
+              LOG.debug(Thread.currentThread().getName() + ": responding to "
+                  + call + " Wrote " + numBytes + " bytes.");
             }
+          }
+          call.connection.responseQueueLength.set(responseQueue.size());
+          if (responseQueue.isEmpty()) {
+            done = true;               // no more data for this channel.
+          } else if (!inHandler) {
+            done = false;              // more calls pending to be sent.
           } else {
             //
             // If we were unable to write the entire response out, then 
             // insert in Selector queue. 
             //
-            call.connection.responseQueue.addFirst(call);
-            
-            if (inHandler) {
-              // set the serve time when the response has to be sent later
-              call.responseTimestampNanos = Time.monotonicNowNanos();
-              
-              incPending();
-              try {
-                // Wakeup the thread blocked on select, only then can the call 
-                // to channel.register() complete.
-                writeSelector.wakeup();
-                channel.register(writeSelector, SelectionKey.OP_WRITE, call);
-              } catch (ClosedChannelException e) {
-                //Its ok. channel might be closed else where.
-                done = true;
-              } finally {
-                decPending();
-              }
+            call = responseQueue.getFirst();
+
+            // set the serve time when the response has to be sent later
+            call.responseTimestampNanos = Time.monotonicNowNanos();
+
+            incPending();
+            try {
+              // Wakeup the thread blocked on select, only then can the call 
+              // to channel.register() complete.
+              writeSelector.wakeup();
+              channel.register(writeSelector, SelectionKey.OP_WRITE, call);
+            } catch (ClosedChannelException e) {
+              //Its ok. channel might be closed else where.
+              done = true;
+            } finally {
+              decPending();
             }
             if (LOG.isDebugEnabled()) {
               LOG.debug(Thread.currentThread().getName() + ": responding to " + call
@@ -1858,6 +1955,38 @@ private boolean processResponse(LinkedList<RpcCall> responseQueue,
       return done;
     }
 
+    //
+    // Write the responses at the head of the queue. Small responses queued
+    // behind each other, e.g. while the client was not reading, are gathered
+    // into a single write rather than a write per response.
+    //
+    private long writeResponses(SocketChannel channel,
+        LinkedList<RpcCall> responseQueue) throws IOException {
+      ByteBuffer first = responseQueue.getFirst().rpcResponse;
+      if (responseQueue.size() == 1
+          || first.remaining() > NIO_BUFFER_LIMIT) {
+        rpcMetrics.addResponderWriteResponses(index, 1);
+        return channelWrite(channel, first);
+      }
+      int numBuffers = 0;
+      long numBytes = 0;
+      for (RpcCall queued : responseQueue) {
+        ByteBuffer buffer = queued.rpcResponse;
+        if (numBuffers == gatheredBuffers.length ||
+            numBytes + buffer.remaining() > MAX_GATHERED_BYTES) {
+          break;
+        }
+        gatheredBuffers[numBuffers++] = buffer;
+        numBytes += buffer.remaining();
+      }
+      rpcMetrics.addResponderWriteResponses(index, numBuffers);
+      try {
+        return channelWrite(channel, gatheredBuffers, numBuffers);
+      } finally {
+        Arrays.fill(gatheredBuffers, 0, numBuffers, null);
+      }
+    }
+
     //
     // Enqueue a response from the application.
     //
@@ -1869,6 +1998,8 @@ void doRespond(RpcCall call) throws IOException {
           wrapWithSasl(call);
         }
         call.connection.responseQueue.addLast(call);
+        call.connection.responseQueueLength.set(
+            call.connection.responseQueue.size());
         if (call.connection.responseQueue.size() == 1) {
           processResponse(call.connection.responseQueue, true);
         }
@@ -1951,6 +2082,8 @@ public class Connection {
     private ByteBuffer data;
     private final ByteBuffer dataLengthBuffer;
     private LinkedList<RpcCall> responseQueue;
+    // size of the responseQueue, readable without its lock
+    private final AtomicInteger responseQueueLength = new AtomicInteger();
     // number of outstanding rpcs
     private AtomicInteger rpcCount = new AtomicInteger();
     private long lastContact;
@@ -1986,10 +2119,13 @@ public class Connection {
 
     private boolean sentNegotiate = false;
     private boolean useWrap = false;
+    // the responder sending the responses of this connection
+    private final Responder responder;
     
     public Connection(SocketChannel channel, long lastContact,
         int ingressPort, boolean isOnAuxiliaryPort) {
       this.channel = channel;
+      this.responder = getResponder();
       this.lastContact = lastContact;
       this.data = null;
       
@@ -2082,6 +2218,18 @@ private void decRpcCount() {
     private void incRpcCount() {
       rpcCount.incrementAndGet();
     }
+
+    /* Drop the queued responses, releasing their buffers */
+    private void releaseResponses() {
+      synchronized (responseQueue) {
+        for (RpcCall call : responseQueue) {
+          call.releaseResponse();
+          decRpcCount();
+        }
+        responseQueue.clear();
+        responseQueueLength.set(0);
+      }
+    }
     
     private UserGroupInformation getAuthorizedUgi(String authorizedId)
         throws InvalidToken, AccessControlException {
@@ -2454,7 +2602,7 @@ public int readAndProcess() throws IOException, InterruptedException {
           dataLength = dataLengthBuffer.getInt();
           checkDataLength(dataLength);
           // Set buffer for reading EXACTLY the RPC-packet length and no more.
-          data = ByteBuffer.allocate(dataLength);
+          data = allocateBuffer(dataLength);
         }
         // Now read the RPC packet
         count = channelRead(channel, data);
@@ -2465,7 +2613,7 @@ public int readAndProcess() throws IOException, InterruptedException {
           ByteBuffer requestData = data;
           data = null; // null out in case processOneRpc throws.
           boolean isHeaderRead = connectionContextRead;
-          processOneRpc(requestData);
+          processRequestBuffer(requestData);
           // the last rpc-request we processed could have simply been the
           // connectionContext; if so continue to read the first RPC.
           if (!isHeaderRead) {
@@ -2664,7 +2812,7 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
         if (unwrappedData == null) {
           unwrappedDataLengthBuffer.flip();
           int unwrappedDataLength = unwrappedDataLengthBuffer.getInt();
-          unwrappedData = ByteBuffer.allocate(unwrappedDataLength);
+          unwrappedData = allocateBuffer(unwrappedDataLength);
         }
 
         count = channelRead(ch, unwrappedData);
@@ -2676,7 +2824,7 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
           unwrappedData.flip();
           ByteBuffer requestData = unwrappedData;
           unwrappedData = null; // null out in case processOneRpc throws.
-          processOneRpc(requestData);
+          processRequestBuffer(requestData);
         }
       }
     }
@@ -2693,17 +2841,20 @@ private void unwrapPacketAndProcessRpcs(byte[] inBuf)
      * has been unwrapped from SASL.
      * 
      * @param bb - contains the RPC request header and the rpc request
+     * @return true if bb is retained by a queued call, which releases it once
+     *         the call is processed.
      * @throws IOException - internal error that should not be returned to
      *         client, typically failure to respond to client
      * @throws InterruptedException
      */
-    private void processOneRpc(ByteBuffer bb)
+    private boolean processOneRpc(ByteBuffer bb)
         throws IOException, InterruptedException {
       // exceptions that escape this method are fatal to the connection.
       // setupResponse will use the rpc status to determine if the connection
       // should be closed.
       int callId = -1;
       int retry = RpcConstants.INVALID_RETRY_COUNT;
+      boolean retained = false;
       try {
         final RpcWritable.Buffer buffer = RpcWritable.Buffer.wrap(bb);
         final RpcRequestHeaderProto header =
@@ -2722,7 +2873,7 @@ private void processOneRpc(ByteBuffer bb)
               RpcErrorCodeProto.FATAL_INVALID_RPC_HEADER,
               "Connection context not established");
         } else {
-          processRpcRequest(header, buffer);
+          retained = processRpcRequest(header, buffer);
         }
       } catch (RpcServerException rse) {
         // inform client of error, but do not rethrow else non-fatal
@@ -2740,6 +2891,23 @@ private void processOneRpc(ByteBuffer bb)
             t.getClass().getName(), t.getMessage());
         sendResponse(call);
       }
+      return retained;
+    }
+
+    /**
+     * Process a request read into a buffer of the pool, and release the
+     * buffer unless it is retained by a call.
+     */
+    private void processRequestBuffer(ByteBuffer requestData)
+        throws IOException, InterruptedException {
+      boolean retained = false;
+      try {
+        retained = processOneRpc(requestData);
+      } finally {
+        if (!retained) {
+          releaseBuffer(requestData);
+        }
+      }
     }
 
     /**
@@ -2779,6 +2947,7 @@ private void checkRpcHeaders(RpcRequestHeaderProto header)
      *     its response will be sent later when the request is processed.
      * @param header - RPC request header
      * @param buffer - stream to request payload
+     * @return true if the buffer is retained by the queued call.
      * @throws RpcServerException - generally due to fatal rpc layer issues
      *   such as invalid header or deserialization error.  The call queue
      *   may also throw a fatal or non-fatal exception on overflow.
@@ -2786,7 +2955,7 @@ private void checkRpcHeaders(RpcRequestHeaderProto header)
      *   be sent to client.
      * @throws InterruptedException
      */
-    private void processRpcRequest(RpcRequestHeaderProto header,
+    private boolean processRpcRequest(RpcRequestHeaderProto header,
         RpcWritable.Buffer buffer) throws RpcServerException,
         InterruptedException {
       Class<? extends Writable> rpcRequestClass = 
@@ -2875,6 +3044,12 @@ private void processRpcRequest(RpcRequestHeaderProto header,
         }
       }
 
+      // the request may be parsed from the buffer until the call is
+      // processed, so the call releases it.
+      final boolean retained = bufferPool != null;
+      if (retained) {
+        call.requestBuffer = buffer.getByteBuffer();
+      }
       try {
         internalQueueCall(call);
       } catch (RpcServerException rse) {
@@ -2884,6 +3059,7 @@ private void processRpcRequest(RpcRequestHeaderProto header,
             RpcErrorCodeProto.ERROR_RPC_SERVER, ioe);
       }
       incRpcCount();  // Increment the rpc count
+      return retained;
     }
 
     /**
@@ -3054,10 +3230,29 @@ private void internalQueueCall(Call call, boolean blocking)
 
   /** Handles queued calls . */
   private class Handler extends Thread {
+    // if not null, the calls are run on the threads of this factory
+    private final ThreadFactory callThreadFactory;
+    // limits the number of calls run on the threads of callThreadFactory
+    private final Semaphore callPermits;
+
     public Handler(int instanceNumber) {
       this.setDaemon(true);
       this.setName("IPC Server handler "+ instanceNumber +
           " on default port " + port);
+      this.callThreadFactory = null;
+      this.callPermits = null;
+    }
+
+    /**
+     * Create a handler taking the calls from the call queue and running each
+     * of them on a new thread of the given factory, with at most
+     * maxConcurrency calls running at a time.
+     */
+    Handler(ThreadFactory callThreadFactory, int maxConcurrency) {
+      this.setDaemon(true);
+      this.setName("IPC Server handler dispatcher on default port " + port);
+      this.callThreadFactory = callThreadFactory;
+      this.callPermits = new Semaphore(maxConcurrency);
     }
 
     @Override
@@ -3065,83 +3260,130 @@ public void run() {
       LOG.debug(Thread.currentThread().getName() + ": starting");
       SERVER.set(Server.this);
       while (running) {
-        TraceScope traceScope = null;
-        Call call = null;
-        long startTimeNanos = 0;
-        // True iff the connection for this call has been dropped.
-        // Set to true by default and update to false later if the connection
-        // can be succesfully read.
-        boolean connDropped = true;
-
+        final Call call;
+        boolean acquired = false;
         try {
-          call = callQueue.take(); // pop the queue; maybe blocked here
-          numInProcessHandler.incrementAndGet();
-          startTimeNanos = Time.monotonicNowNanos();
-          if (alignmentContext != null && call.isCallCoordinated() &&
-              call.getClientStateId() > alignmentContext.getLastSeenStateId()) {
-            /*
-             * The call processing should be postponed until the client call's
-             * state id is aligned (<=) with the server state id.
-
-             * NOTE:
-             * Inserting the call back to the queue can change the order of call
-             * execution comparing to their original placement into the queue.
-             * This is not a problem, because Hadoop RPC does not have any
-             * constraints on ordering the incoming rpc requests.
-             * In case of Observer, it handles only reads, which are
-             * commutative.
-             */
-            // Re-queue the call and continue
-            requeueCall(call);
-            call = null;
-            continue;
-          }
-          if (LOG.isDebugEnabled()) {
-            LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
-          }
-          CurCall.set(call);
-          if (call.span != null) {
-            traceScope = tracer.activateSpan(call.span);
-            call.span.addTimelineAnnotation("called");
-          }
-          // always update the current call context
-          CallerContext.setCurrent(call.callerContext);
-          UserGroupInformation remoteUser = call.getRemoteUser();
-          connDropped = !call.isOpen();
-          if (remoteUser != null) {
-            remoteUser.doAs(call);
-          } else {
-            call.run();
+          if (callPermits != null) {
+            // wait for a running call to complete before taking the next
+            // one, so that the call queue still decides which call runs next.
+            callPermits.acquire();
+            acquired = true;
           }
+          call = callQueue.take(); // pop the queue; maybe blocked here
         } catch (InterruptedException e) {
+          if (acquired) {
+            callPermits.release();
+          }
           if (running) {                          // unexpected -- log it
             LOG.info(Thread.currentThread().getName() + " unexpectedly interrupted", e);
-            if (traceScope != null) {
-              traceScope.addTimelineAnnotation("unexpectedly interrupted: " +
-                  StringUtils.stringifyException(e));
-            }
           }
-        } catch (Exception e) {
-          LOG.info(Thread.currentThread().getName() + " caught an exception", e);
-          if (traceScope != null) {
-            traceScope.addTimelineAnnotation("Exception: " +
-                StringUtils.stringifyException(e));
+          continue;
+        }
+        if (callThreadFactory == null) {
+          handleCall(call);
+        } else {
+          dispatchCall(call);
+        }
+      }
+      LOG.debug(Thread.currentThread().getName() + ": exiting");
+    }
+
+    private void dispatchCall(final Call call) {
+      try {
+        callThreadFactory.newThread(() -> {
+          try {
+            SERVER.set(Server.this);
+            handleCall(call);
+          } finally {
+            callPermits.release();
           }
+        }).start();
+      } catch (RuntimeException | OutOfMemoryError e) {
+        LOG.warn(Thread.currentThread().getName() + " could not start a"
+            + " thread for " + call + ", running it on this thread", e);
+        try {
+          handleCall(call);
         } finally {
-          CurCall.set(null);
-          numInProcessHandler.decrementAndGet();
-          IOUtils.cleanupWithLogger(LOG, traceScope);
-          if (call != null) {
-            updateMetrics(call, startTimeNanos, connDropped);
-            ProcessingDetails.LOG.debug(
-                "Served: [{}]{} name={} user={} details={}",
-                call, (call.isResponseDeferred() ? ", deferred" : ""),
-                call.getDetailedMetricsName(), call.getRemoteUser(),
-                call.getProcessingDetails());
+          callPermits.release();
+        }
+      }
+    }
+
+    private void handleCall(Call call) {
+      TraceScope traceScope = null;
+      long startTimeNanos = 0;
+      // True iff the connection for this call has been dropped.
+      // Set to true by default and update to false later if the connection
+      // can be succesfully read.
+      boolean connDropped = true;
+
+      try {
+        numInProcessHandler.incrementAndGet();
+        startTimeNanos = Time.monotonicNowNanos();
+        if (alignmentContext != null && call.isCallCoordinated() &&
+            call.getClientStateId() > alignmentContext.getLastSeenStateId()) {
+          /*
+           * The call processing should be postponed until the client call's
+           * state id is aligned (<=) with the server state id.
+
+           * NOTE:
+           * Inserting the call back to the queue can change the order of call
+           * execution comparing to their original placement into the queue.
+           * This is not a problem, because Hadoop RPC does not have any
+           * constraints on ordering the incoming rpc requests.
+           * In case of Observer, it handles only reads, which are
+           * commutative.
+           */
+          // Re-queue the call and continue
+          requeueCall(call);
+          call = null;
+          return;
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
+        }
+        CurCall.set(call);
+        if (call.span != null) {
+          traceScope = tracer.activateSpan(call.span);
+          call.span.addTimelineAnnotation("called");
+        }
+        // always update the current call context
+        CallerContext.setCurrent(call.callerContext);
+        UserGroupInformation remoteUser = call.getRemoteUser();
+        connDropped = !call.isOpen();
+        if (remoteUser != null) {
+          remoteUser.doAs(call);
+        } else {
+          call.run();
+        }
+      } catch (InterruptedException e) {
+        if (running) {                          // unexpected -- log it
+          LOG.info(Thread.currentThread().getName() + " unexpectedly interrupted", e);
+          if (traceScope != null) {
+            traceScope.addTimelineAnnotation("unexpectedly interrupted: " +
+                StringUtils.stringifyException(e));
           }
         }
+      } catch (Exception e) {
+        LOG.info(Thread.currentThread().getName() + " caught an exception", e);
+        if (traceScope != null) {
+          traceScope.addTimelineAnnotation("Exception: " +
+              StringUtils.stringifyException(e));
+        }
+      } finally {
+        CurCall.set(null);
+        numInProcessHandler.decrementAndGet();
+        IOUtils.cleanupWithLogger(LOG, traceScope);
+        if (call != null) {
+          updateMetrics(call, startTimeNanos, connDropped);
+          ProcessingDetails.LOG.debug(
+              "Served: [{}]{} name={} user={} details={}",
+              call, (call.isResponseDeferred() ? ", deferred" : ""),
+              call.getDetailedMetricsName(), call.getRemoteUser(),
+              call.getProcessingDetails());
+          call.releaseRequest();
+        }
       }
-      LOG.debug(Thread.currentThread().getName() + ": exiting");
     }
 
     private void requeueCall(Call call)
@@ -3150,6 +3392,7 @@ private void requeueCall(Call call)
         internalQueueCall(call, false);
       } catch (RpcServerException rse) {
         call.doResponse(rse.getCause(), rse.getRpcStatusProto());
+        call.releaseRequest();
       }
     }
 
@@ -3246,6 +3489,15 @@ protected Server(String bindAddress, int port,
     this.maxRespSize = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_MAX_RESPONSE_SIZE_DEFAULT);
+    if (conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+        CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_DEFAULT)) {
+      this.bufferPool = new RpcBufferPool(conf.getLongBytes(
+          CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_CAPACITY_KEY,
+          CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_CAPACITY_DEFAULT));
+    } else {
+      this.bufferPool = null;
+    }
     if (numReaders != -1) {
       this.readThreads = numReaders;
     } else {
@@ -3253,6 +3505,31 @@ protected Server(String bindAddress, int port,
           CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_KEY,
           CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_DEFAULT);
     }
+    if (conf.getBoolean(
+        CommonConfigurationKeys.IPC_SERVER_HANDLER_VIRTUAL_THREADS_ENABLED_KEY,
+        CommonConfigurationKeys.
+            IPC_SERVER_HANDLER_VIRTUAL_THREADS_ENABLED_DEFAULT)) {
+      this.virtualHandlerConcurrency = conf.getInt(
+          CommonConfigurationKeys.
+              IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_KEY,
+          CommonConfigurationKeys.
+              IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_DEFAULT);
+      if (this.virtualHandlerConcurrency < 1) {
+        throw new IllegalArgumentException(CommonConfigurationKeys.
+            IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_KEY + " = "
+            + this.virtualHandlerConcurrency + " < 1");
+      }
+    } else {
+      this.virtualHandlerConcurrency = 0;
+    }
+    this.responderThreads = conf.getInt(
+        CommonConfigurationKeys.IPC_SERVER_RPC_RESPONDER_THREADS_KEY,
+        CommonConfigurationKeys.IPC_SERVER_RPC_RESPONDER_THREADS_DEFAULT);
+    if (this.responderThreads < 1) {
+      throw new IllegalArgumentException(
+          CommonConfigurationKeys.IPC_SERVER_RPC_RESPONDER_THREADS_KEY + " = "
+          + this.responderThreads + " < 1");
+    }
     this.readerPendingConnectionQueue = conf.getInt(
         CommonConfigurationKeys.IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_KEY,
         CommonConfigurationKeys.IPC_SERVER_RPC_READ_CONNECTION_QUEUE_SIZE_DEFAULT);
@@ -3293,8 +3570,11 @@ protected Server(String bindAddress, int port,
         CommonConfigurationKeysPublic.IPC_SERVER_PURGE_INTERVAL_MINUTES_KEY,
         CommonConfigurationKeysPublic.IPC_SERVER_PURGE_INTERVAL_MINUTES_DEFAULT));
 
-    // Create the responder here
-    responder = new Responder();
+    // Create the responders here
+    responders = new Responder[responderThreads];
+    for (int i = 0; i < responderThreads; i++) {
+      responders[i] = new Responder(i);
+    }
     
     if (secretManager != null || UserGroupInformation.isSecurityEnabled()) {
       SaslRpcServer.init(conf);
@@ -3375,6 +3655,8 @@ private List<AuthMethod> getAuthMethods(SecretManager<?> secretManager,
   
   private void closeConnection(Connection connection) {
     connectionManager.close(connection);
+    // the queued responses will never be sent, give their buffers back.
+    connection.releaseResponses();
   }
 
   /**
@@ -3431,20 +3713,20 @@ private void setupResponse(
 
   private void setupResponse(RpcCall call,
       RpcResponseHeaderProto header, Writable rv) throws IOException {
-    final byte[] response;
+    final ByteBuffer response;
     if (rv == null || (rv instanceof RpcWritable.ProtobufWrapper)) {
       response = setupResponseForProtobuf(header, rv);
     } else {
       response = setupResponseForWritable(header, rv);
     }
-    if (response.length > maxRespSize) {
-      LOG.warn("Large response size " + response.length + " for call "
+    if (response.remaining() > maxRespSize) {
+      LOG.warn("Large response size " + response.remaining() + " for call "
           + call.toString());
     }
-    call.setResponse(ByteBuffer.wrap(response));
+    call.setResponse(response, bufferPool != null);
   }
 
-  private byte[] setupResponseForWritable(
+  private ByteBuffer setupResponseForWritable(
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     ResponseBuffer buf = responseBuffer.get().reset();
     try {
@@ -3452,7 +3734,10 @@ private byte[] setupResponseForWritable(
       if (rv != null) {
         RpcWritable.wrap(rv).writeTo(buf);
       }
-      return buf.toByteArray();
+      ByteBuffer response = allocateBuffer(buf.framedLength());
+      buf.writeTo(response);
+      response.flip();
+      return response;
     } finally {
       // Discard a large buf and reset it back to smaller size
       // to free up heap.
@@ -3465,7 +3750,7 @@ private byte[] setupResponseForWritable(
 
   // writing to a pre-allocated array is the most efficient way to construct
   // a protobuf response.
-  private byte[] setupResponseForProtobuf(
+  private ByteBuffer setupResponseForProtobuf(
       RpcResponseHeaderProto header, Writable rv) throws IOException {
     Message payload = (rv != null)
         ? ((RpcWritable.ProtobufWrapper)rv).getMessage() : null;
@@ -3473,8 +3758,9 @@ private byte[] setupResponseForProtobuf(
     if (payload != null) {
       length += getDelimitedLength(payload);
     }
-    byte[] buf = new byte[length + 4];
-    CodedOutputStream cos = CodedOutputStream.newInstance(buf);
+    ByteBuffer buf = allocateBuffer(length + 4);
+    CodedOutputStream cos = CodedOutputStream.newInstance(
+        buf.array(), buf.arrayOffset(), length + 4);
     // the stream only supports little endian ints
     cos.writeRawByte((byte)((length >>> 24) & 0xFF));
     cos.writeRawByte((byte)((length >>> 16) & 0xFF));
@@ -3489,6 +3775,25 @@ private byte[] setupResponseForProtobuf(
     return buf;
   }
 
+  /**
+   * Allocate a buffer for a request or a response, from the pool if it is
+   * enabled.
+   * @return a heap buffer with its position at 0 and its limit at length.
+   */
+  private ByteBuffer allocateBuffer(int length) {
+    return bufferPool != null ?
+        bufferPool.getBuffer(length) : ByteBuffer.allocate(length);
+  }
+
+  /**
+   * Release a buffer returned by {@link #allocateBuffer(int)}.
+   */
+  private void releaseBuffer(ByteBuffer buffer) {
+    if (bufferPool != null) {
+      bufferPool.putBuffer(buffer);
+    }
+  }
+
   private static int getDelimitedLength(Message message) {
     int length = message.getSerializedSize();
     return length + CodedOutputStream.computeUInt32SizeNoTag(length);
@@ -3523,11 +3828,14 @@ private void setupResponseOldVersionFatal(ByteArrayOutputStream response,
 
   private void wrapWithSasl(RpcCall call) throws IOException {
     if (call.connection.saslServer != null) {
-      byte[] token = call.rpcResponse.array();
+      final ByteBuffer response = call.rpcResponse;
+      byte[] token;
       // synchronization may be needed since there can be multiple Handler
       // threads using saslServer to wrap responses.
       synchronized (call.connection.saslServer) {
-        token = call.connection.saslServer.wrap(token, 0, token.length);
+        token = call.connection.saslServer.wrap(response.array(),
+            response.arrayOffset() + response.position(),
+            response.remaining());
       }
       if (LOG.isDebugEnabled())
         LOG.debug("Adding saslServer wrapped token of size " + token.length
@@ -3561,7 +3869,9 @@ public void setTracer(Tracer t) {
 
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
-    responder.start();
+    for (Responder responder : responders) {
+      responder.start();
+    }
     listener.start();
     if (auxiliaryListenerMap != null && auxiliaryListenerMap.size() > 0) {
       for (Listener newListener : auxiliaryListenerMap.values()) {
@@ -3569,6 +3879,19 @@ public synchronized void start() {
       }
     }
 
+    if (virtualHandlerConcurrency > 0) {
+      ThreadFactory factory = newVirtualThreadFactory(
+          "IPC Server virtual handler on default port " + port + " #");
+      if (factory != null) {
+        handlers = new Handler[] {
+            new Handler(factory, virtualHandlerConcurrency)};
+        handlers[0].start();
+        return;
+      }
+      LOG.warn("Virtual threads are not supported by this JVM, using "
+          + handlerCount + " handler threads.");
+    }
+
     handlers = new Handler[handlerCount];
     
     for (int i = 0; i < handlerCount; i++) {
@@ -3577,14 +3900,36 @@ public synchronized void start() {
     }
   }
 
+  /**
+   * Create a factory of virtual threads, named with the given prefix and a
+   * counter. Virtual threads are looked up by reflection since they are only
+   * available from Java 21.
+   * @return the thread factory, or null if virtual threads are not
+   *         supported.
+   */
+  @VisibleForTesting
+  static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, namePrefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory")
+          .invoke(builder);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      LOG.debug("Virtual threads are not supported", e);
+      return null;
+    }
+  }
+
   /** Stops the service.  No new calls will be handled after this is called. */
   public synchronized void stop() {
     LOG.info("Stopping server on " + port);
     running = false;
     if (handlers != null) {
-      for (int i = 0; i < handlerCount; i++) {
-        if (handlers[i] != null) {
-          handlers[i].interrupt();
+      for (Handler handler : handlers) {
+        if (handler != null) {
+          handler.interrupt();
         }
       }
     }
@@ -3596,7 +3941,9 @@ public synchronized void stop() {
         newListener.doStop();
       }
     }
-    responder.interrupt();
+    for (Responder responder : responders) {
+      responder.interrupt();
+    }
     notifyAll();
     this.rpcMetrics.shutdown();
     this.rpcDetailedMetrics.shutdown();
@@ -3731,6 +4078,33 @@ public long getNumDroppedConnections() {
 
   }
 
+  /**
+   * The number of request and response buffers taken from the rpc buffer
+   * pool.
+   * @return the number of buffer pool hits, 0 if the pool is disabled
+   */
+  public long getBufferPoolHits() {
+    return bufferPool == null ? 0 : bufferPool.getHits();
+  }
+
+  /**
+   * The number of request and response buffers allocated because the rpc
+   * buffer pool had none of the right size.
+   * @return the number of buffer pool misses, 0 if the pool is disabled
+   */
+  public long getBufferPoolMisses() {
+    return bufferPool == null ? 0 : bufferPool.getMisses();
+  }
+
+  /**
+   * The number of bytes of the pooled buffers held by requests being read
+   * or processed and by responses being sent.
+   * @return the number of bytes in flight, 0 if the pool is disabled
+   */
+  public long getBufferPoolBytesInFlight() {
+    return bufferPool == null ? 0 : bufferPool.getBytesInFlight();
+  }
+
   /**
    * The number of rpc calls in the queue.
    * @return The number of rpc calls in the queue.
@@ -3763,12 +4137,49 @@ public int getNumReaders() {
     return readThreads;
   }
 
+  /**
+   * The number of responder threads for this server.
+   * @return The number of responder threads.
+   */
+  public int getNumResponders() {
+    return responderThreads;
+  }
+
+  /**
+   * The number of responses queued on the connections of a responder.
+   * @param responder the index of the responder.
+   * @return The number of responses waiting to be sent.
+   */
+  @VisibleForTesting
+  int getResponderQueueLength(int responder) {
+    return responders[responder].queueLength;
+  }
+
+  /**
+   * Get the responder of a new connection. Connections are assigned to the
+   * responders in a round robin fashion.
+   */
+  private Responder getResponder() {
+    int i = nextResponder.getAndIncrement() & Integer.MAX_VALUE;
+    return responders[i % responders.length];
+  }
+
   /**
    * When the read or write buffer size is larger than this limit, i/o will be 
    * done in chunks of this size. Most RPC requests and responses would be
    * be smaller.
    */
   private static int NIO_BUFFER_LIMIT = 8*1024; //should not be more than 64KB.
+
+  /**
+   * The maximum number of responses, and of bytes, written to a channel
+   * with a single gathering write.
+   */
+  private static final int MAX_GATHERED_RESPONSES = 16;
+  private static final int MAX_GATHERED_BYTES = 64*1024;
+
+  /** How often the responders count their queued responses. */
+  private static final long QUEUE_LENGTH_INTERVAL_MS = 1000;
   
   /**
    * This is a wrapper around {@link WritableByteChannel#write(ByteBuffer)}.
@@ -3792,6 +4203,20 @@ private int channelWrite(WritableByteChannel channel,
   }
   
   
+  /**
+   * This is a wrapper around
+   * {@link GatheringByteChannel#write(ByteBuffer[], int, int)}, writing the
+   * given number of buffers, starting at the first one.
+   */
+  private long channelWrite(GatheringByteChannel channel,
+      ByteBuffer[] buffers, int length) throws IOException {
+    long count = channel.write(buffers, 0, length);
+    if (count > 0) {
+      rpcMetrics.incrSentBytes(count);
+    }
+    return count;
+  }
+
   /**
    * This is a wrapper around {@link ReadableByteChannel#read(ByteBuffer)}.
    * If the amount of data is large, it writes to channel in smaller chunks. 
@@ -0,0 +1,436 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.lang3.NotImplementedException;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FairCallQueue} whose priority levels are split into shards.
+ *
+ * Each level is made of several lock-free bounded queues. A thread adds to
+ * and takes from the shard it is assigned on its first use of the queue, so
+ * that the reader threads adding calls and the handler threads taking them
+ * are spread over the shards. A thread takes from the other shards of a
+ * level when its own shard is empty, and adds to them when its own shard is
+ * full.
+ *
+ * The levels are scheduled by the same {@link WeightedRoundRobinMultiplexer},
+ * and the calls overflow to the lower priority levels in the same way as in
+ * the FairCallQueue. Calls of the same level are taken in order within a
+ * shard, but not across shards.
+ */
+public class ShardedFairCallQueue<E extends Schedulable>
+    extends AbstractQueue<E>
+    implements BlockingQueue<E>, CallQueueStats {
+  public static final Logger LOG =
+      LoggerFactory.getLogger(ShardedFairCallQueue.class);
+
+  /** How long a put waits before trying again to add to a full queue. */
+  private static final long FULL_QUEUE_WAIT_NANOS =
+      TimeUnit.MICROSECONDS.toNanos(100);
+
+  /** queues[level][shard] */
+  private final BoundedMpmcQueue<E>[][] queues;
+  private final int numShards;
+
+  /* Counts the queued calls, see FairCallQueue. */
+  private final Semaphore semaphore = new Semaphore(0);
+
+  /* Multiplexer picks which queue to draw from */
+  private RpcMultiplexer multiplexer;
+
+  /* Statistic tracking */
+  private final AtomicLong[] overflowedCalls;
+
+  /* Failover if queue is filled up */
+  private final boolean serverFailOverEnabled;
+
+  private final AtomicInteger nextShard = new AtomicInteger();
+  private final ThreadLocal<Integer> threadShard;
+
+  @VisibleForTesting
+  public ShardedFairCallQueue(int priorityLevels, int capacity, String ns,
+      Configuration conf) {
+    this(priorityLevels, capacity, ns,
+        CallQueueManager.getDefaultQueueCapacityWeights(priorityLevels), conf);
+  }
+
+  /**
+   * Create a ShardedFairCallQueue.
+   * @param priorityLevels the number of priority levels
+   * @param capacity the total size of all sub-queues
+   * @param ns the prefix to use for configuration
+   * @param capacityWeights the weights array for capacity allocation
+   *                        among the levels
+   * @param conf the configuration to read from
+   * Notes: The capacity of each level is split evenly among its shards. A
+   * level has at most as many shards as calls.
+   */
+  @SuppressWarnings("unchecked")
+  public ShardedFairCallQueue(int priorityLevels, int capacity, String ns,
+      int[] capacityWeights, Configuration conf) {
+    if (priorityLevels < 1) {
+      throw new IllegalArgumentException("Number of Priority Levels must be " +
+          "at least 1");
+    }
+    int totalWeights = 0;
+    for (int i = 0; i < capacityWeights.length; i++) {
+      totalWeights += capacityWeights[i];
+    }
+    int residueCapacity = capacity % totalWeights;
+    int unitCapacity = capacity / totalWeights;
+    int[] levelCapacities = new int[priorityLevels];
+    int minLevelCapacity = Integer.MAX_VALUE;
+    for (int i = 0; i < priorityLevels; i++) {
+      levelCapacities[i] = unitCapacity * capacityWeights[i]
+          + (i == 0 ? residueCapacity : 0);
+      minLevelCapacity = Math.min(minLevelCapacity, levelCapacities[i]);
+    }
+    if (minLevelCapacity < 1) {
+      throw new IllegalArgumentException("Capacity " + capacity
+          + " is too small for " + priorityLevels + " priority levels");
+    }
+    int shards = conf.getInt(
+        ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY,
+        CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_DEFAULT);
+    if (shards < 1) {
+      throw new IllegalArgumentException("Number of shards must be at least 1"
+          + " but was " + shards);
+    }
+    this.numShards = Math.min(shards, minLevelCapacity);
+    LOG.info("ShardedFairCallQueue is in use with " + priorityLevels +
+        " queues of " + numShards + " shards with total capacity of " +
+        capacity);
+
+    this.queues = new BoundedMpmcQueue[priorityLevels][numShards];
+    this.overflowedCalls = new AtomicLong[priorityLevels];
+    for (int i = 0; i < priorityLevels; i++) {
+      for (int j = 0; j < numShards; j++) {
+        // the first shards get the residue of the level capacity
+        int shardCapacity = levelCapacities[i] / numShards
+            + (j < levelCapacities[i] % numShards ? 1 : 0);
+        queues[i][j] = new BoundedMpmcQueue<>(shardCapacity);
+      }
+      overflowedCalls[i] = new AtomicLong(0);
+    }
+    this.threadShard = ThreadLocal.withInitial(
+        () -> (nextShard.getAndIncrement() & Integer.MAX_VALUE) % numShards);
+    this.serverFailOverEnabled = conf.getBoolean(
+        ns + "." +
+        CommonConfigurationKeys.IPC_CALLQUEUE_SERVER_FAILOVER_ENABLE,
+        CommonConfigurationKeys.IPC_CALLQUEUE_SERVER_FAILOVER_ENABLE_DEFAULT);
+
+    this.multiplexer = new WeightedRoundRobinMultiplexer(priorityLevels, ns,
+        conf);
+    // Make this the active source of metrics
+    FairCallQueue.MetricsProxy.getInstance(ns).setDelegate(this);
+  }
+
+  /**
+   * Poll the shards of a level, starting with the shard of the given index.
+   */
+  private E pollLevel(int priority, int shard) {
+    final BoundedMpmcQueue<E>[] level = queues[priority];
+    for (int i = 0; i < numShards; i++) {
+      E e = level[(shard + i) % numShards].poll();
+      if (e != null) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns an element of the level returned by the multiplexer, or of the
+   * first non-empty level, from highest to lowest priority.
+   *
+   * Caller must always acquire a semaphore permit before invoking.
+   */
+  private E removeNextElement() {
+    final int shard = threadShard.get();
+    int priority = multiplexer.getAndAdvanceCurrentIndex();
+    E e = pollLevel(priority, shard);
+    // a semaphore permit has been acquired, so an element MUST be extracted,
+    // see FairCallQueue.
+    while (e == null) {
+      for (int idx = 0; e == null && idx < queues.length; idx++) {
+        e = pollLevel(idx, shard);
+      }
+    }
+    return e;
+  }
+
+  /* AbstractQueue and BlockingQueue methods */
+
+  /**
+   * Add, put, and offer follow the same pattern as in the FairCallQueue:
+   * - Add will move on to the next queue, throw on last queue overflow
+   * - Put will move on to the next queue, block on last queue overflow
+   * - Offer does not attempt other queues on overflow
+   */
+
+  @Override
+  public boolean add(E e) {
+    final int priorityLevel = e.getPriorityLevel();
+    // try offering to all queues.
+    if (!offerQueues(priorityLevel, e, true)) {
+      CallQueueOverflowException ex;
+      if (serverFailOverEnabled) {
+        // Signal clients to failover and try a separate server.
+        ex = CallQueueOverflowException.FAILOVER;
+      } else if (priorityLevel == queues.length - 1) {
+        // only disconnect the lowest priority users that overflow the queue.
+        ex = CallQueueOverflowException.DISCONNECT;
+      } else {
+        ex = CallQueueOverflowException.KEEPALIVE;
+      }
+      throw ex;
+    }
+    return true;
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    final int priorityLevel = e.getPriorityLevel();
+    // try offering to all but last queue, put on last.
+    if (!offerQueues(priorityLevel, e, false)) {
+      putQueue(queues.length - 1, e);
+    }
+  }
+
+  /**
+   * Put the element in a queue of a specific priority, waiting for space to
+   * become available.
+   * @param priority - queue priority
+   * @param e - element to add
+   */
+  @VisibleForTesting
+  void putQueue(int priority, E e) throws InterruptedException {
+    while (!offerQueue(priority, e)) {
+      waitForSpace();
+    }
+  }
+
+  private static void waitForSpace() throws InterruptedException {
+    LockSupport.parkNanos(FULL_QUEUE_WAIT_NANOS);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  /**
+   * Offer the element to the shards of the queue of a specific priority,
+   * starting with the shard of the current thread.
+   * @param priority - queue priority
+   * @param e - element to add
+   * @return boolean if added to the given queue
+   */
+  @VisibleForTesting
+  boolean offerQueue(int priority, E e) {
+    final BoundedMpmcQueue<E>[] level = queues[priority];
+    final int shard = threadShard.get();
+    for (int i = 0; i < numShards; i++) {
+      if (level[(shard + i) % numShards].offer(e)) {
+        semaphore.release();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Offer the element to queue of the given or lower priority.
+   * @param priority - starting queue priority
+   * @param e - element to add
+   * @param includeLast - whether to attempt last queue
+   * @return boolean if added to a queue
+   */
+  private boolean offerQueues(int priority, E e, boolean includeLast) {
+    int lastPriority = queues.length - (includeLast ? 1 : 2);
+    for (int i = priority; i <= lastPriority; i++) {
+      if (offerQueue(i, e)) {
+        return true;
+      }
+      // Update stats
+      overflowedCalls[i].getAndIncrement();
+    }
+    return false;
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    final int priorityLevel = e.getPriorityLevel();
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offerQueue(priorityLevel, e)) {
+      if (deadline - System.nanoTime() <= 0) {
+        return false;
+      }
+      waitForSpace();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    return offerQueue(e.getPriorityLevel(), e);
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    semaphore.acquire();
+    return removeNextElement();
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return semaphore.tryAcquire(timeout, unit) ? removeNextElement() : null;
+  }
+
+  /**
+   * poll() provides no strict consistency: it is possible for poll to return
+   * null even though an element is in the queue.
+   */
+  @Override
+  public E poll() {
+    return semaphore.tryAcquire() ? removeNextElement() : null;
+  }
+
+  /**
+   * Peek, like poll, provides no strict consistency.
+   */
+  @Override
+  public E peek() {
+    for (BoundedMpmcQueue<E>[] level : queues) {
+      for (BoundedMpmcQueue<E> q : level) {
+        E e = q.peek();
+        if (e != null) {
+          return e;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Note: size provides no strict consistency, and should not be used to
+   * control queue IO.
+   */
+  @Override
+  public int size() {
+    return semaphore.availablePermits();
+  }
+
+  /**
+   * Iterator is not implemented, as it is not needed.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    throw new NotImplementedException("Code is not implemented");
+  }
+
+  /**
+   * drainTo polls each sub-queue in turn, see FairCallQueue.
+   */
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    // initially take all permits to stop consumers from modifying queues
+    // while draining.  will restore any excess when done draining.
+    final int permits = semaphore.drainPermits();
+    final int numElements = Math.min(maxElements, permits);
+    int drained = 0;
+    for (int i = 0; drained < numElements && i < queues.length; i++) {
+      for (int j = 0; drained < numElements && j < numShards; j++) {
+        E e;
+        while (drained < numElements && (e = queues[i][j].poll()) != null) {
+          c.add(e);
+          drained++;
+        }
+      }
+    }
+    if (permits > drained) { // restore unused permits.
+      semaphore.release(permits - drained);
+    }
+    return drained;
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns maximum remaining capacity, see FairCallQueue.
+   */
+  @Override
+  public int remainingCapacity() {
+    int sum = 0;
+    for (BoundedMpmcQueue<E>[] level : queues) {
+      for (BoundedMpmcQueue<E> q : level) {
+        sum += q.capacity() - q.size();
+      }
+    }
+    return sum;
+  }
+
+  @Override
+  public int[] getQueueSizes() {
+    int[] sizes = new int[queues.length];
+    for (int i = 0; i < queues.length; i++) {
+      for (BoundedMpmcQueue<E> q : queues[i]) {
+        sizes[i] += q.size();
+      }
+    }
+    return sizes;
+  }
+
+  @Override
+  public long[] getOverflowedCalls() {
+    long[] calls = new long[overflowedCalls.length];
+    for (int i = 0; i < calls.length; i++) {
+      calls[i] = overflowedCalls[i].get();
+    }
+    return calls;
+  }
+
+  @VisibleForTesting
+  int getNumShards() {
+    return numShards;
+  }
+
+  @VisibleForTesting
+  public void setMultiplexer(RpcMultiplexer newMux) {
+    this.multiplexer = newMux;
+  }
+}
@@ -31,8 +31,10 @@
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +98,23 @@ public class RpcMetrics {
             "latency", interval);
       }
     }
+    int numResponders = server.getNumResponders();
+    rpcResponderQueueLength = new MutableGaugeInt[numResponders];
+    rpcResponderWriteTime = new MutableRate[numResponders];
+    rpcResponderWriteResponses = new MutableStat[numResponders];
+    for (int i = 0; i < numResponders; i++) {
+      rpcResponderQueueLength[i] = registry.newGauge(
+          "RpcResponder" + i + "QueueLength",
+          "Number of responses queued on responder " + i, 0);
+      rpcResponderWriteTime[i] = registry.newRate(
+          "RpcResponder" + i + "WriteTime",
+          "Time of the response writes of responder " + i + " in "
+          + TimeUnit.MICROSECONDS, false);
+      rpcResponderWriteResponses[i] = registry.newStat(
+          "RpcResponder" + i + "WriteResponses",
+          "Number of responses gathered into a write of responder " + i,
+          "Ops", "Responses", true);
+    }
     LOG.debug("Initialized " + registry);
   }
 
@@ -129,6 +148,10 @@ public static RpcMetrics create(Server server, Configuration conf) {
   @Metric("Number of Slow RPC calls")
   MutableCounterLong rpcSlowCalls;
 
+  MutableGaugeInt[] rpcResponderQueueLength;
+  MutableRate[] rpcResponderWriteTime;
+  MutableStat[] rpcResponderWriteResponses;
+
   @Metric("Number of open connections") public int numOpenConnections() {
     return server.getNumOpenConnections();
   }
@@ -151,6 +174,23 @@ public String numOpenConnectionsPerUser() {
     return server.getNumDroppedConnections();
   }
 
+  @Metric(value = "Number of buffers taken from the rpc buffer pool",
+      type = Metric.Type.COUNTER)
+  public long rpcBufferPoolHits() {
+    return server.getBufferPoolHits();
+  }
+
+  @Metric(value = "Number of buffers allocated outside the rpc buffer pool",
+      type = Metric.Type.COUNTER)
+  public long rpcBufferPoolMisses() {
+    return server.getBufferPoolMisses();
+  }
+
+  @Metric("Number of bytes of the rpc buffer pool in use")
+  public long rpcBufferPoolBytesInFlight() {
+    return server.getBufferPoolBytesInFlight();
+  }
+
   public TimeUnit getMetricsTimeUnit() {
     return metricsTimeUnit;
   }
@@ -222,10 +262,38 @@ public void shutdown() {
    * @param count to increment
    */
   //@Override
-  public void incrSentBytes(int count) {
+  public void incrSentBytes(long count) {
     sentBytes.incr(count);
   }
 
+  /**
+   * Set the number of responses queued on a responder.
+   * @param responder the index of the responder
+   * @param length the number of queued responses
+   */
+  public void setResponderQueueLength(int responder, int length) {
+    rpcResponderQueueLength[responder].set(length);
+  }
+
+  /**
+   * Add a response write time sample of a responder.
+   * @param responder the index of the responder
+   * @param writeTimeNanos the write time in nanoseconds
+   */
+  public void addResponderWriteTime(int responder, long writeTimeNanos) {
+    rpcResponderWriteTime[responder].add(
+        TimeUnit.NANOSECONDS.toMicros(writeTimeNanos));
+  }
+
+  /**
+   * Add the number of responses gathered into a write of a responder.
+   * @param responder the index of the responder
+   * @param numResponses the number of responses passed to the write
+   */
+  public void addResponderWriteResponses(int responder, int numResponses) {
+    rpcResponderWriteResponses[responder].add(numResponses);
+  }
+
   /**
    * Increment received bytes by count
    * @param count to increment
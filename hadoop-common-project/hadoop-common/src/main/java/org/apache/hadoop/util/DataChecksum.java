@@ -22,6 +22,7 @@
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -52,6 +53,13 @@ public class DataChecksum implements Checksum {
 
   private static final Logger LOG = LoggerFactory.getLogger(DataChecksum.class);
   private static volatile boolean useJava9Crc32C = Shell.isJavaVersionAtLeast(9);
+
+  /**
+   * System property choosing between the libhadoop and the JDK checksum
+   * implementations for the bulk operations: "native", "java", or "auto" to
+   * pick the fastest on this machine. The JDK is used without libhadoop.
+   */
+  public static final String CRC_IMPL_PROPERTY = "hadoop.datachecksum.impl";
  
   /** The checksum types */
   public enum Type {
@@ -406,7 +414,7 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
       final int dataOffset = data.arrayOffset() + data.position();
       final int crcsOffset = checksums.arrayOffset() + checksums.position();
 
-      if (NativeCrc32.isAvailable()) {
+      if (useNativeCrc(type)) {
         NativeCrc32.verifyChunkedSumsByteArray(bytesPerChecksum, type.id,
                 checksums.array(), crcsOffset, data.array(), dataOffset,
                 data.remaining(), fileName, basePos);
@@ -417,7 +425,7 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
       }
       return;
     }
-    if (NativeCrc32.isAvailable() && data.isDirect()) {
+    if (useNativeCrc(type) && data.isDirect() && checksums.isDirect()) {
       NativeCrc32.verifyChunkedSums(bytesPerChecksum, type.id, checksums, data,
           fileName, basePos);
     } else {
@@ -429,38 +437,22 @@ public void verifyChunkedSums(ByteBuffer data, ByteBuffer checksums,
   static void verifyChunked(final Type type, final Checksum algorithm,
       final ByteBuffer data, final int bytesPerCrc, final ByteBuffer crcs,
       final String filename, final long basePos) throws ChecksumException {
-    final byte[] bytes = new byte[bytesPerCrc];
+    final byte[] bytes = newChunkBuffer(algorithm, data, bytesPerCrc);
     final int dataOffset = data.position();
-    final int dataLength = data.remaining();
     data.mark();
     crcs.mark();
 
     try {
-      int i = 0;
-      for(final int n = dataLength - bytesPerCrc + 1; i < n; i += bytesPerCrc) {
-        data.get(bytes);
+      while (data.hasRemaining()) {
+        final int chunkOffset = data.position();
+        final int n = Math.min(data.remaining(), bytesPerCrc);
         algorithm.reset();
-        algorithm.update(bytes, 0, bytesPerCrc);
+        updateChunk(algorithm, data, n, bytes);
         final int computed = (int)algorithm.getValue();
         final int expected = crcs.getInt();
 
         if (computed != expected) {
-          long errPos = basePos + data.position() - dataOffset - bytesPerCrc;
-          throwChecksumException(type, algorithm, filename, errPos, expected,
-              computed);
-        }
-      }
-
-      final int remainder = dataLength - i;
-      if (remainder > 0) {
-        data.get(bytes, 0, remainder);
-        algorithm.reset();
-        algorithm.update(bytes, 0, remainder);
-        final int computed = (int)algorithm.getValue();
-        final int expected = crcs.getInt();
-
-        if (computed != expected) {
-          long errPos = basePos + data.position() - dataOffset - remainder;
+          long errPos = basePos + chunkOffset - dataOffset;
           throwChecksumException(type, algorithm, filename, errPos, expected,
               computed);
         }
@@ -540,21 +532,20 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
       return;
     }
 
-    if (NativeCrc32.isAvailable()) {
+    if (useNativeCrc(type) && data.isDirect() && checksums.isDirect()) {
       NativeCrc32.calculateChunkedSums(bytesPerChecksum, type.id,
           checksums, data);
       return;
     }
     
+    final byte[] buf = newChunkBuffer(summer, data, bytesPerChecksum);
     data.mark();
     checksums.mark();
     try {
-      byte[] buf = new byte[bytesPerChecksum];
-      while (data.remaining() > 0) {
+      while (data.hasRemaining()) {
         int n = Math.min(data.remaining(), bytesPerChecksum);
-        data.get(buf, 0, n);
         summer.reset();
-        summer.update(buf, 0, n);
+        updateChunk(summer, data, n, buf);
         checksums.putInt((int)summer.getValue());
       }
     } finally {
@@ -563,6 +554,57 @@ public void calculateChunkedSums(ByteBuffer data, ByteBuffer checksums) {
     }
   }
 
+  /**
+   * @return a buffer to copy the chunks of the data to, or null if the
+   *         algorithm reads them directly from the data buffer.
+   */
+  private static byte[] newChunkBuffer(Checksum algorithm, ByteBuffer data,
+      int bytesPerCrc) {
+    return data.hasArray() || canUpdateByteBuffer(algorithm) ?
+        null : new byte[bytesPerCrc];
+  }
+
+  /**
+   * Update the checksum with the next length bytes of the data, advancing
+   * its position.
+   * @param bytes the buffer returned by newChunkBuffer.
+   */
+  private static void updateChunk(Checksum algorithm, ByteBuffer data,
+      int length, byte[] bytes) {
+    if (data.hasArray()) {
+      algorithm.update(data.array(), data.arrayOffset() + data.position(),
+          length);
+      data.position(data.position() + length);
+    } else if (bytes == null) {
+      // the JDK CRCs read direct buffers without copying them to the heap.
+      final int limit = data.limit();
+      data.limit(data.position() + length);
+      updateByteBuffer(algorithm, data);
+      data.limit(limit);
+    } else {
+      data.get(bytes, 0, length);
+      algorithm.update(bytes, 0, length);
+    }
+  }
+
+  private static boolean canUpdateByteBuffer(Checksum algorithm) {
+    return algorithm instanceof CRC32 ||
+        ByteBufferUpdateHolder.UPDATE_BYTE_BUFFER_MH != null;
+  }
+
+  private static void updateByteBuffer(Checksum algorithm, ByteBuffer data) {
+    if (algorithm instanceof CRC32) {
+      ((CRC32) algorithm).update(data);
+      return;
+    }
+    try {
+      ByteBufferUpdateHolder.UPDATE_BYTE_BUFFER_MH.invokeExact(algorithm, data);
+    } catch (Throwable t) {
+      throw (t instanceof RuntimeException) ? (RuntimeException) t
+          : new RuntimeException(t);
+    }
+  }
+
   /**
    * Implementation of chunked calculation specifically on byte arrays. This
    * is to avoid the copy when dealing with ByteBuffers that have array backing.
@@ -578,7 +620,7 @@ public void calculateChunkedSums(
       byte[] sums, int sumsOffset) {
     if (type.size == 0) return;
 
-    if (NativeCrc32.isAvailable()) {
+    if (useNativeCrc(type)) {
       NativeCrc32.calculateChunkedSumsByteArray(bytesPerChecksum, type.id,
           sums, sumsOffset, data, dataOffset, dataLength);
       return;
@@ -671,4 +713,113 @@ public static Checksum createChecksum() {
       }
     }
   };
+
+  /**
+   * Holds the handle of Checksum#update(ByteBuffer), added in Java 9, which
+   * the JDK CRC32C implements without copying direct buffers.
+   */
+  private static class ByteBufferUpdateHolder {
+    private static final MethodHandle UPDATE_BYTE_BUFFER_MH;
+
+    static {
+      MethodHandle update = null;
+      if (Shell.isJavaVersionAtLeast(9)) {
+        try {
+          update = MethodHandles.publicLookup().findVirtual(Checksum.class,
+              "update", MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+          LOG.debug("Checksum#update(ByteBuffer) is not available", e);
+        }
+      }
+      UPDATE_BYTE_BUFFER_MH = update;
+    }
+  }
+
+  /**
+   * @return whether to compute the checksums of the given type with
+   *         libhadoop rather than with the JDK.
+   */
+  static boolean useNativeCrc(Type type) {
+    return NativeCrc32.isAvailable() && NativeCrcSelector.USE_NATIVE[type.id];
+  }
+
+  /**
+   * Chooses, on first use, between the libhadoop and the JDK checksum
+   * implementations of each type. With the "auto" {@link #CRC_IMPL_PROPERTY},
+   * both compute the sums of the same data a few times and the fastest one is
+   * kept: the JDK intrinsics are as fast as libhadoop on recent JVMs, without
+   * crossing JNI for each call.
+   */
+  private static class NativeCrcSelector {
+    private static final int DATA_LENGTH = 64 * 1024;
+    private static final int BYTES_PER_CHECKSUM = 512;
+    private static final int ITERATIONS = 16;
+    private static final int ROUNDS = 4;
+
+    private static final boolean[] USE_NATIVE =
+        new boolean[Type.values().length];
+
+    static {
+      final String impl = StringUtils.toLowerCase(
+          System.getProperty(CRC_IMPL_PROPERTY, "auto").trim());
+      for (Type type : new Type[] {Type.CRC32, Type.CRC32C}) {
+        switch (impl) {
+        case "native":
+          USE_NATIVE[type.id] = true;
+          break;
+        case "java":
+          USE_NATIVE[type.id] = false;
+          break;
+        default:
+          if (!impl.equals("auto")) {
+            LOG.warn("Unknown {} {}, using auto", CRC_IMPL_PROPERTY, impl);
+          }
+          USE_NATIVE[type.id] =
+              NativeCrc32.isAvailable() && isNativeFaster(type);
+        }
+      }
+    }
+
+    private static boolean isNativeFaster(Type type) {
+      final byte[] data = new byte[DATA_LENGTH];
+      final byte[] sums = new byte[
+          (DATA_LENGTH / BYTES_PER_CHECKSUM) * type.size];
+      new Random(0).nextBytes(data);
+      final Checksum algorithm =
+          type == Type.CRC32 ? newCrc32() : newCrc32C();
+      long nativeNanos = Long.MAX_VALUE;
+      long javaNanos = Long.MAX_VALUE;
+      try {
+        // keep the best round of each, the first ones warm up.
+        for (int round = 0; round < ROUNDS; round++) {
+          long start = System.nanoTime();
+          for (int i = 0; i < ITERATIONS; i++) {
+            NativeCrc32.calculateChunkedSumsByteArray(BYTES_PER_CHECKSUM,
+                type.id, sums, 0, data, 0, DATA_LENGTH);
+          }
+          nativeNanos = Math.min(nativeNanos, System.nanoTime() - start);
+
+          start = System.nanoTime();
+          for (int i = 0; i < ITERATIONS; i++) {
+            for (int off = 0; off < DATA_LENGTH; off += BYTES_PER_CHECKSUM) {
+              algorithm.reset();
+              algorithm.update(data, off, BYTES_PER_CHECKSUM);
+              sums[off / BYTES_PER_CHECKSUM] = (byte) algorithm.getValue();
+            }
+          }
+          javaNanos = Math.min(javaNanos, System.nanoTime() - start);
+        }
+      } catch (RuntimeException | UnsatisfiedLinkError e) {
+        LOG.warn("Failed to compare the {} implementations, using {}",
+            type, algorithm.getClass().getSimpleName(), e);
+        return false;
+      }
+      final boolean useNative = nativeNanos < javaNanos;
+      LOG.debug("{} of {} bytes: native {} ns, {} {} ns, using {}", type,
+          DATA_LENGTH * ITERATIONS, nativeNanos,
+          algorithm.getClass().getSimpleName(), javaNanos,
+          useNative ? "native" : algorithm.getClass().getSimpleName());
+      return useNative;
+    }
+  }
 }
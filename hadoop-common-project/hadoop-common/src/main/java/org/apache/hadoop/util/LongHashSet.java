@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A set of primitive longs, using open addressing with linear probing in a
+ * single table of longs, so that an element costs 8 to 16 bytes instead of
+ * the boxed key and the entry object of a {@link java.util.HashSet}.
+ *
+ * This class is not thread safe.
+ */
+@InterfaceAudience.Private
+public class LongHashSet {
+  static final int MIN_CAPACITY = 8;
+  static final int MAX_CAPACITY = 1 << 30;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** 0 marks the free slots of the table, it is stored apart. */
+  private static final long FREE = 0L;
+
+  private long[] table;
+  private int mask;
+  private int shift;
+  private int threshold;
+  /** The number of elements in the table, without the 0 element. */
+  private int tableSize;
+  private boolean containsZero;
+
+  /** Create an empty set. */
+  public LongHashSet() {
+    this(MIN_CAPACITY);
+  }
+
+  /**
+   * Create an empty set.
+   *
+   * @param expectedSize the number of elements expected in the set.
+   */
+  public LongHashSet(int expectedSize) {
+    if (expectedSize < 0) {
+      throw new HadoopIllegalArgumentException(
+          "expectedSize = " + expectedSize + " < 0");
+    }
+    allocate(tableCapacity(expectedSize));
+  }
+
+  /**
+   * @param expectedSize the number of elements.
+   * @return the power of two capacity of a table holding expectedSize
+   * elements below the load factor.
+   */
+  static int tableCapacity(int expectedSize) {
+    long needed = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1;
+    if (needed > MAX_CAPACITY) {
+      throw new HadoopIllegalArgumentException(
+          "Too many elements: " + expectedSize);
+    }
+    int capacity = MIN_CAPACITY;
+    while (capacity < needed) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Spread the bits of the key, since block and inode ids are sequential.
+   * @param key the key.
+   * @param shift 64 - log2(table capacity).
+   * @return the slot of the key in the table.
+   */
+  static int slot(long key, int shift) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+  }
+
+  private void allocate(int capacity) {
+    table = new long[capacity];
+    mask = capacity - 1;
+    shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /** @return the number of elements. */
+  public int size() {
+    return containsZero ? tableSize + 1 : tableSize;
+  }
+
+  /** @return true if the set has no element. */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * @param key the element to look for.
+   * @return true if the set contains the element.
+   */
+  public boolean contains(long key) {
+    if (key == FREE) {
+      return containsZero;
+    }
+    return find(key) >= 0;
+  }
+
+  /** @return the slot of the key, or -1. */
+  private int find(long key) {
+    for (int i = slot(key, shift); ; i = (i + 1) & mask) {
+      long k = table[i];
+      if (k == key) {
+        return i;
+      } else if (k == FREE) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * Add an element.
+   *
+   * @param key the element.
+   * @return true if the set did not contain the element.
+   */
+  public boolean add(long key) {
+    if (key == FREE) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      return true;
+    }
+    for (int i = slot(key, shift); ; i = (i + 1) & mask) {
+      long k = table[i];
+      if (k == key) {
+        return false;
+      } else if (k == FREE) {
+        table[i] = key;
+        if (++tableSize > threshold) {
+          resize(2 * (mask + 1));
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Remove an element.
+   *
+   * @param key the element.
+   * @return true if the set contained the element.
+   */
+  public boolean remove(long key) {
+    if (key == FREE) {
+      boolean contained = containsZero;
+      containsZero = false;
+      return contained;
+    }
+    int i = find(key);
+    if (i < 0) {
+      return false;
+    }
+    // shift back the following elements of the run, so that no lookup stops
+    // at the freed slot before reaching its element.
+    for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+      long k = table[j];
+      if (k == FREE) {
+        break;
+      }
+      int home = slot(k, shift);
+      // move k to the free slot i unless its home is cyclically in (i, j].
+      boolean stays = i <= j ? (i < home && home <= j)
+          : (i < home || home <= j);
+      if (!stays) {
+        table[i] = k;
+        i = j;
+      }
+    }
+    table[i] = FREE;
+    tableSize--;
+    return true;
+  }
+
+  /** Remove all the elements, keeping the capacity of the table. */
+  public void clear() {
+    Arrays.fill(table, FREE);
+    tableSize = 0;
+    containsZero = false;
+  }
+
+  /**
+   * Call the consumer on each element, in no particular order.
+   * The set must not be modified meanwhile.
+   *
+   * @param consumer the consumer.
+   */
+  public void forEach(LongConsumer consumer) {
+    if (containsZero) {
+      consumer.accept(FREE);
+    }
+    for (int i = 0; i <= mask; i++) {
+      long k = table[i];
+      if (k != FREE) {
+        consumer.accept(k);
+      }
+    }
+  }
+
+  /** @return a new array of the elements, in no particular order. */
+  public long[] toArray() {
+    final long[] array = new long[size()];
+    int n = 0;
+    if (containsZero) {
+      array[n++] = FREE;
+    }
+    for (int i = 0; i <= mask; i++) {
+      long k = table[i];
+      if (k != FREE) {
+        array[n++] = k;
+      }
+    }
+    return array;
+  }
+
+  private void resize(int capacity) {
+    if (capacity > MAX_CAPACITY) {
+      throw new IllegalStateException("Too many elements: " + size());
+    }
+    long[] old = table;
+    int oldCapacity = mask + 1;
+    allocate(capacity);
+    for (int i = 0; i < oldCapacity; i++) {
+      long k = old[i];
+      if (k != FREE) {
+        int j = slot(k, shift);
+        while (table[j] != FREE) {
+          j = (j + 1) & mask;
+        }
+        table[j] = k;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + size()
+        + ", capacity=" + (mask + 1) + ")";
+  }
+}
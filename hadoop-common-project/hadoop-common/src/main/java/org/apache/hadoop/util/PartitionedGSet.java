@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+
+/**
+ * A {@link GSet} implementation which stripes its elements over a fixed
+ * number of {@link LightWeightResizableGSet} partitions.
+ *
+ * An element is assigned to a partition by a range of its hash code:
+ * elements whose hash codes only differ in the lowest rangeBits bits are
+ * kept in the same partition, while consecutive ranges are spread round
+ * robin over all the partitions. Keys allocated sequentially, such as INode
+ * ids, therefore keep their locality and are still evenly distributed.
+ *
+ * Each partition starts small and grows on its own once it exceeds the load
+ * factor, so memory follows the actual number of elements and a resize only
+ * rehashes the elements of one partition rather than the whole set.
+ *
+ * Each partition is guarded by its own monitor, hence single element
+ * operations on different partitions do not contend with each other.
+ * Iteration is not thread safe and has to be synchronized externally
+ * against concurrent modifications.
+ *
+ * This class does not support null element.
+ *
+ * @param <K> Key type for looking up the elements
+ * @param <E> Element type, which must be
+ *       (1) a subclass of K, and
+ *       (2) implementing {@link LightWeightGSet.LinkedElement} interface.
+ */
+@InterfaceAudience.Private
+public class PartitionedGSet<K, E extends K> implements GSet<K, E> {
+
+  /** The default number of partitions - MUST be a power of two. */
+  public static final int DEFAULT_NUM_PARTITIONS = 256;
+
+  /** The default number of low hash code bits sharing a partition. */
+  public static final int DEFAULT_RANGE_BITS = 10;
+
+  private final LightWeightResizableGSet<K, E>[] partitions;
+  private final int partitionMask;
+  private final int rangeBits;
+
+  private Collection<E> values;
+
+  public PartitionedGSet() {
+    this(DEFAULT_NUM_PARTITIONS, DEFAULT_RANGE_BITS,
+        LightWeightResizableGSet.DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param numPartitions number of partitions, must be a power of two.
+   * @param rangeBits number of low hash code bits which are mapped to the
+   *                  same partition.
+   * @param initPartitionCapacity initial capacity of each partition.
+   */
+  @SuppressWarnings("unchecked")
+  public PartitionedGSet(int numPartitions, int rangeBits,
+      int initPartitionCapacity) {
+    if (numPartitions <= 0 || Integer.bitCount(numPartitions) != 1) {
+      throw new HadoopIllegalArgumentException(
+          "Number of partitions must be a positive power of two: " +
+          numPartitions);
+    }
+    if (rangeBits < 0 || rangeBits >= Integer.SIZE) {
+      throw new HadoopIllegalArgumentException("Illegal range bits: " +
+          rangeBits);
+    }
+    this.partitionMask = numPartitions - 1;
+    this.rangeBits = rangeBits;
+    this.partitions = new LightWeightResizableGSet[numPartitions];
+    for (int i = 0; i < numPartitions; i++) {
+      partitions[i] = new LightWeightResizableGSet<>(initPartitionCapacity);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("partitions=" + numPartitions + ", rangeBits=" + rangeBits
+          + ", initPartitionCapacity=" + initPartitionCapacity);
+    }
+  }
+
+  @VisibleForTesting
+  int getPartitionIndex(final K key) {
+    return (key.hashCode() >>> rangeBits) & partitionMask;
+  }
+
+  private LightWeightResizableGSet<K, E> getPartition(final K key) {
+    //validate key
+    if (key == null) {
+      throw new NullPointerException("key == null");
+    }
+    return partitions[getPartitionIndex(key)];
+  }
+
+  /**
+   * @return The number of partitions of this set.
+   */
+  public int getNumPartitions() {
+    return partitions.length;
+  }
+
+  /**
+   * @param index index of the partition.
+   * @return The number of elements stored in the given partition.
+   */
+  public int getPartitionSize(int index) {
+    return partitions[index].size();
+  }
+
+  @Override
+  public int size() {
+    long size = 0;
+    for (LightWeightResizableGSet<K, E> partition : partitions) {
+      size += partition.size();
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public boolean contains(final K key) {
+    return getPartition(key).contains(key);
+  }
+
+  @Override
+  public E get(final K key) {
+    return getPartition(key).get(key);
+  }
+
+  @Override
+  public E put(final E element) {
+    // validate element
+    if (element == null) {
+      throw new NullPointerException("Null element is not supported.");
+    }
+    return getPartition(element).put(element);
+  }
+
+  @Override
+  public E remove(final K key) {
+    return getPartition(key).remove(key);
+  }
+
+  @Override
+  public void clear() {
+    for (LightWeightResizableGSet<K, E> partition : partitions) {
+      synchronized (partition) {
+        partition.clear();
+      }
+    }
+  }
+
+  @Override
+  public Collection<E> values() {
+    if (values == null) {
+      values = new Values();
+    }
+    return values;
+  }
+
+  private final class Values extends AbstractCollection<E> {
+    @Override
+    public Iterator<E> iterator() {
+      return PartitionedGSet.this.iterator();
+    }
+
+    @Override
+    public int size() {
+      return PartitionedGSet.this.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean contains(Object o) {
+      return PartitionedGSet.this.contains((K)o);
+    }
+
+    @Override
+    public void clear() {
+      PartitionedGSet.this.clear();
+    }
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new PartitionIterator();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder b = new StringBuilder(getClass().getSimpleName());
+    b.append("(size=").append(size())
+     .append(", partitions=").append(partitions.length)
+     .append(", rangeBits=").append(rangeBits)
+     .append(")");
+    return b.toString();
+  }
+
+  /**
+   * Iterates over the partitions in order, delegating to the fail-fast
+   * iterator of each partition.
+   */
+  private class PartitionIterator implements Iterator<E> {
+    private int index = 0;
+    private Iterator<E> current = partitions[0].iterator();
+    private Iterator<E> last = null;
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        if (++index >= partitions.length) {
+          return false;
+        }
+        current = partitions[index].iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = current;
+      return current.next();
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      last.remove();
+      last = null;
+    }
+  }
+}
@@ -164,6 +164,7 @@ public void initializeMemberVariables() {
     xmlPropsToSkipCompare.add("ipc.[port_number].scheduler.priority.levels");
     xmlPropsToSkipCompare.add(
         "ipc.[port_number].faircallqueue.multiplexer.weights");
+    xmlPropsToSkipCompare.add("ipc.[port_number].callqueue.shards");
     xmlPropsToSkipCompare.add("ipc.[port_number].identity-provider.impl");
     xmlPropsToSkipCompare.add("ipc.identity-provider.impl");
     xmlPropsToSkipCompare.add("ipc.[port_number].cost-provider.impl");
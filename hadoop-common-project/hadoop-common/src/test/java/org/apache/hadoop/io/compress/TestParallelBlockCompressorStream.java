@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.io.compress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link ParallelBlockCompressorStream}: what it writes must be read
+ * back by the {@link BlockDecompressorStream} of the codecs.
+ */
+public class TestParallelBlockCompressorStream {
+  private static final int BUFFER_SIZE = 4096;
+  /** The block size of the Lz4Codec streams, less the overhead. */
+  private static final int MAX_INPUT_SIZE =
+      BUFFER_SIZE - (BUFFER_SIZE / 255 + 16);
+
+  private Configuration conf;
+  private Lz4Codec codec;
+
+  @Before
+  public void setup() {
+    conf = new Configuration();
+    conf.setInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY, 4);
+    conf.setInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_LZ4_BUFFERSIZE_KEY,
+        BUFFER_SIZE);
+    codec = new Lz4Codec();
+    codec.setConf(conf);
+  }
+
+  private static byte[] generate(int size, long seed) {
+    Random r = new Random(seed);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + r.nextInt(10));
+    }
+    return data;
+  }
+
+  private byte[] decompress(byte[] compressed) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputStream in = codec.createInputStream(
+        new ByteArrayInputStream(compressed));
+    try {
+      IOUtils.copyBytes(in, out, 1024, false);
+    } finally {
+      in.close();
+    }
+    return out.toByteArray();
+  }
+
+  @Test(timeout = 60000)
+  public void testRoundTrip() throws IOException {
+    Random r = new Random(0);
+    for (int size : new int[] {1, 100, BUFFER_SIZE, 10 * BUFFER_SIZE + 7,
+        200 * BUFFER_SIZE}) {
+      byte[] data = generate(size, size);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      CompressionOutputStream out = codec.createOutputStream(bytes);
+      assertTrue(out instanceof ParallelBlockCompressorStream);
+      // write in chunks of random sizes, crossing the block boundaries.
+      int off = 0;
+      while (off < size) {
+        int len = Math.min(size - off, 1 + r.nextInt(3 * BUFFER_SIZE));
+        if (len == 1) {
+          out.write(data[off]);
+        } else {
+          out.write(data, off, len);
+        }
+        off += len;
+      }
+      out.close();
+      assertArrayEquals("size " + size, data, decompress(bytes.toByteArray()));
+      // a block per thread at most, blocks being reused once all are in use.
+      int numBlocks = (size + MAX_INPUT_SIZE - 1) / MAX_INPUT_SIZE;
+      assertEquals("size " + size, Math.min(4, numBlocks),
+          ((ParallelBlockCompressorStream) out).getAllocatedBlocks());
+    }
+  }
+
+  /**
+   * The blocks compressed by the {@link DirectCompressor} of the codec are
+   * the ones its {@link Compressor} writes in a {@link BlockCompressorStream}.
+   */
+  @Test(timeout = 60000)
+  public void testSameBytesAsBlockCompressorStream() throws IOException {
+    Configuration serialConf = new Configuration(conf);
+    serialConf.setInt(
+        CommonConfigurationKeys.IO_COMPRESSION_CODEC_PARALLEL_THREADS_KEY, 1);
+    Lz4Codec serialCodec = new Lz4Codec();
+    serialCodec.setConf(serialConf);
+    byte[] data = generate(10 * MAX_INPUT_SIZE + 100, 3);
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    CompressionOutputStream serialOut =
+        serialCodec.createOutputStream(expected);
+    CompressionOutputStream parallelOut = codec.createOutputStream(actual);
+    assertTrue(serialOut instanceof BlockCompressorStream);
+    assertTrue(parallelOut instanceof ParallelBlockCompressorStream);
+    // write a block at a time, for both streams to cut the same blocks.
+    for (int off = 0; off < data.length; off += MAX_INPUT_SIZE) {
+      int len = Math.min(MAX_INPUT_SIZE, data.length - off);
+      serialOut.write(data, off, len);
+      parallelOut.write(data, off, len);
+    }
+    serialOut.close();
+    parallelOut.close();
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
+  @Test(timeout = 60000)
+  public void testEmptyStream() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out = codec.createOutputStream(bytes);
+    out.close();
+    // the same empty block as written by the BlockCompressorStream.
+    assertEquals(4, bytes.size());
+    assertEquals(0, decompress(bytes.toByteArray()).length);
+  }
+
+  @Test(timeout = 60000)
+  public void testFinishAndResetState() throws IOException {
+    byte[] first = generate(5 * BUFFER_SIZE, 1);
+    byte[] second = generate(3 * BUFFER_SIZE + 1, 2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CompressionOutputStream out = codec.createOutputStream(bytes);
+    out.write(first, 0, first.length);
+    out.finish();
+    try {
+      out.write(second, 0, second.length);
+      throw new AssertionError("write after finish must fail");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("write beyond end", e);
+    }
+    out.resetState();
+    out.write(second, 0, second.length);
+    out.close();
+
+    byte[] expected = new byte[first.length + second.length];
+    System.arraycopy(first, 0, expected, 0, first.length);
+    System.arraycopy(second, 0, expected, first.length, second.length);
+    assertArrayEquals(expected, decompress(bytes.toByteArray()));
+  }
+
+  @Test(timeout = 60000)
+  public void testBlockCompressedSequenceFile() throws IOException {
+    Path file = new Path(GenericTestUtils.getTestDir(
+        "TestParallelBlockCompressorStream").getAbsolutePath(), "seq");
+    FileSystem fs = FileSystem.getLocal(conf);
+    fs.delete(file, false);
+    Text value = new Text(new String(generate(1000, 3), "UTF-8"));
+    SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(file),
+        SequenceFile.Writer.keyClass(IntWritable.class),
+        SequenceFile.Writer.valueClass(Text.class),
+        SequenceFile.Writer.compression(
+            SequenceFile.CompressionType.BLOCK, codec));
+    try {
+      for (int i = 0; i < 5000; i++) {
+        writer.append(new IntWritable(i), value);
+      }
+    } finally {
+      writer.close();
+    }
+
+    SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+        SequenceFile.Reader.file(file));
+    try {
+      IntWritable key = new IntWritable();
+      Text readValue = new Text();
+      int count = 0;
+      while (reader.next(key, readValue)) {
+        assertEquals(count, key.get());
+        assertEquals(value, readValue);
+        count++;
+      }
+      assertEquals(5000, count);
+    } finally {
+      reader.close();
+      fs.delete(file, false);
+    }
+  }
+}
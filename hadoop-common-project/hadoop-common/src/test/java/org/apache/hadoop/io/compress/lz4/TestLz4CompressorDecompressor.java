@@ -25,6 +25,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -360,4 +361,49 @@ public void testLz4Compatibility() throws Exception {
     }
     assertEquals(lines, lc);
   }
+
+  @Test
+  public void testLz4DirectCompressDecompress() throws IOException {
+    byte[] rawData = generate(64 * 1024);
+    for (boolean useLz4HC : new boolean[] {false, true}) {
+      for (boolean directSrc : new boolean[] {false, true}) {
+        for (boolean directDst : new boolean[] {false, true}) {
+          Lz4Compressor.Lz4DirectCompressor compressor =
+              new Lz4Compressor.Lz4DirectCompressor(useLz4HC);
+          ByteBuffer src = allocate(rawData.length, directSrc);
+          src.put(rawData).flip();
+          // leave some bytes before and after the block to check that only
+          // the positions move.
+          ByteBuffer compressed = allocate(
+              compressor.maxCompressedLength(rawData.length) + 20, directDst);
+          compressed.position(10);
+          int limit = compressed.limit();
+          compressor.compress(src, compressed);
+          assertFalse(src.hasRemaining());
+          assertEquals(limit, compressed.limit());
+          compressed.limit(compressed.position()).position(10);
+
+          Lz4Decompressor.Lz4DirectDecompressor decompressor =
+              new Lz4Decompressor.Lz4DirectDecompressor();
+          ByteBuffer dst = allocate(rawData.length, directSrc);
+          decompressor.decompress(compressed, dst);
+          assertFalse(compressed.hasRemaining());
+          assertFalse(dst.hasRemaining());
+          dst.flip();
+          assertEquals(ByteBuffer.wrap(rawData), dst);
+        }
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testLz4DirectCompressDstTooSmall() throws IOException {
+    byte[] rawData = generate(1024);
+    new Lz4Compressor.Lz4DirectCompressor(false).compress(
+        ByteBuffer.wrap(rawData), ByteBuffer.allocateDirect(10));
+  }
+
+  private static ByteBuffer allocate(int size, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+  }
 }
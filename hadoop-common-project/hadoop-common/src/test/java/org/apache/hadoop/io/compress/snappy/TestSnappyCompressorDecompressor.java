@@ -365,6 +365,45 @@ public void testSnappyDirectBlockCompression() {
     }
   }
 
+  @Test
+  public void testSnappyDirectCompressor() throws IOException {
+    int[] size = new int[] {
+        4 * 1024, 64 * 1024, 1024 * 1024
+    };
+    for (int rawDataSize : size) {
+      for (boolean direct : new boolean[] {false, true}) {
+        byte[] rawData = BytesGenerator.get(rawDataSize);
+        SnappyCompressor.SnappyDirectCompressor compressor =
+            new SnappyCompressor.SnappyDirectCompressor();
+        ByteBuffer src = direct ? ByteBuffer.allocateDirect(rawDataSize)
+            : ByteBuffer.allocate(rawDataSize);
+        src.put(rawData).flip();
+        int maxLength = compressor.maxCompressedLength(rawDataSize) + 10;
+        ByteBuffer compressed = direct ? ByteBuffer.allocateDirect(maxLength)
+            : ByteBuffer.allocate(maxLength);
+        compressed.position(10);
+        compressor.compress(src, compressed);
+        assertEquals(0, src.remaining());
+        assertEquals(maxLength, compressed.limit());
+        compressed.limit(compressed.position()).position(10);
+
+        // the direct decompressor only handles direct buffers.
+        ByteBuffer inBuf = ByteBuffer.allocateDirect(compressed.remaining());
+        inBuf.put(compressed).flip();
+        ByteBuffer outBuf = ByteBuffer.allocateDirect(rawDataSize);
+        new SnappyDirectDecompressor().decompress(inBuf, outBuf);
+        outBuf.flip();
+        assertEquals(ByteBuffer.wrap(rawData), outBuf);
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testSnappyDirectCompressorMixedBuffers() throws IOException {
+    new SnappyCompressor.SnappyDirectCompressor().compress(
+        ByteBuffer.allocateDirect(1024), ByteBuffer.allocate(2048));
+  }
+
   @Test
   public void testSnappyCompressorDecopressorLogicWithCompressionStreams() {
     int BYTE_SIZE = 1024 * 100;
@@ -0,0 +1,302 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark for the put and take throughput of the RPC call queues, without
+ * the RPC server around them.
+ * Run with --help option for usage.
+ */
+public class CallQueueBenchmark implements Tool {
+  private Configuration conf;
+  private final AtomicLong takeCount = new AtomicLong(0);
+
+  private static class MyOptions {
+    private boolean failed = false;
+    private String queue = "sharded";
+    private int producers = 8;
+    private int consumers = 8;
+    private int levels = 4;
+    private int capacity = 1024;
+    private int shards =
+        CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_DEFAULT;
+    private int secondsToRun = 10;
+
+    private MyOptions(String[] args) {
+      try {
+        Options opts = buildOptions();
+        CommandLineParser parser = new GnuParser();
+        CommandLine line = parser.parse(opts, args, true);
+        processOptions(line, opts);
+        validateOptions();
+      } catch (ParseException | NumberFormatException e) {
+        System.err.println(e.getMessage());
+        System.err.println("Try \"--help\" option for details.");
+        failed = true;
+      }
+    }
+
+    private void validateOptions() throws ParseException {
+      if (producers <= 0 || consumers <= 0) {
+        throw new ParseException("Must specify at least one producer and " +
+            "one consumer");
+      }
+      if (!queue.equals("linked") && !queue.equals("fair") &&
+          !queue.equals("sharded")) {
+        throw new ParseException("Unknown queue: " + queue);
+      }
+    }
+
+    @SuppressWarnings("static-access")
+    private Options buildOptions() {
+      Options opts = new Options();
+      opts.addOption(
+          OptionBuilder.withLongOpt("queue").hasArg(true)
+          .withArgName("linked|fair|sharded")
+          .withDescription("call queue to benchmark")
+          .create('q'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("producers").hasArg(true)
+          .withArgName("numthreads")
+          .withDescription("number of threads putting calls (readers)")
+          .create('p'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("consumers").hasArg(true)
+          .withArgName("numthreads")
+          .withDescription("number of threads taking calls (handlers)")
+          .create('c'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("levels").hasArg(true)
+          .withArgName("levels")
+          .withDescription("number of priority levels of the fair queues")
+          .create('l'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("capacity").hasArg(true)
+          .withArgName("calls")
+          .withDescription("total capacity of the queue")
+          .create('n'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("shards").hasArg(true)
+          .withArgName("shards")
+          .withDescription("number of shards of the sharded queue")
+          .create('s'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("time").hasArg(true)
+          .withArgName("seconds")
+          .withDescription("number of seconds to run for")
+          .create('t'));
+      opts.addOption(
+          OptionBuilder.withLongOpt("help").hasArg(false)
+          .withDescription("show this screen")
+          .create('?'));
+      return opts;
+    }
+
+    private void processOptions(CommandLine line, Options opts) {
+      if (line.hasOption("help") || line.hasOption('?')) {
+        HelpFormatter formatter = new HelpFormatter();
+        System.out.println("RPC call queue benchmark.");
+        System.out.println();
+        formatter.printHelp(100,
+            "java ... CallQueueBenchmark [options]",
+            "\nSupported options:", opts, "");
+        return;
+      }
+
+      if (line.hasOption('q')) {
+        queue = line.getOptionValue('q');
+      }
+      if (line.hasOption('p')) {
+        producers = Integer.parseInt(line.getOptionValue('p'));
+      }
+      if (line.hasOption('c')) {
+        consumers = Integer.parseInt(line.getOptionValue('c'));
+      }
+      if (line.hasOption('l')) {
+        levels = Integer.parseInt(line.getOptionValue('l'));
+      }
+      if (line.hasOption('n')) {
+        capacity = Integer.parseInt(line.getOptionValue('n'));
+      }
+      if (line.hasOption('s')) {
+        shards = Integer.parseInt(line.getOptionValue('s'));
+      }
+      if (line.hasOption('t')) {
+        secondsToRun = Integer.parseInt(line.getOptionValue('t'));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "queue=" + queue + "\nproducers=" + producers +
+          "\nconsumers=" + consumers + "\nlevels=" + levels +
+          "\ncapacity=" + capacity + "\nshards=" + shards +
+          "\nsecondsToRun=" + secondsToRun;
+    }
+  }
+
+  /** A call of a fixed priority level. */
+  private static class BenchmarkCall implements Schedulable {
+    private final int priority;
+
+    BenchmarkCall(int priority) {
+      this.priority = priority;
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return null;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return priority;
+    }
+  }
+
+  private BlockingQueue<Schedulable> createQueue(MyOptions opts) {
+    final String ns = "ipc.benchmark";
+    Configuration queueConf = new Configuration(conf);
+    queueConf.setInt(ns + "." + CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY,
+        opts.shards);
+    switch (opts.queue) {
+    case "linked":
+      return new LinkedBlockingQueue<>(opts.capacity);
+    case "fair":
+      return new FairCallQueue<>(opts.levels, opts.capacity, ns, queueConf);
+    default:
+      return new ShardedFairCallQueue<>(opts.levels, opts.capacity, ns,
+          queueConf);
+    }
+  }
+
+  private List<Thread> startThreads(final BlockingQueue<Schedulable> queue,
+      MyOptions opts) {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < opts.producers; i++) {
+      // the producers put calls of all the priority levels.
+      final Schedulable[] calls = new Schedulable[opts.levels];
+      for (int j = 0; j < calls.length; j++) {
+        calls[j] = new BenchmarkCall(j);
+      }
+      threads.add(new Thread(() -> {
+        try {
+          for (int n = 0; ; n++) {
+            queue.put(calls[n % calls.length]);
+          }
+        } catch (InterruptedException ie) {
+          // stopped
+        }
+      }, "Producer " + i));
+    }
+    for (int i = 0; i < opts.consumers; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          while (true) {
+            queue.take();
+            takeCount.incrementAndGet();
+          }
+        } catch (InterruptedException ie) {
+          // stopped
+        }
+      }, "Consumer " + i));
+    }
+    for (Thread t : threads) {
+      t.setDaemon(true);
+      t.start();
+    }
+    return threads;
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    MyOptions opts = new MyOptions(args);
+    if (opts.failed) {
+      return -1;
+    }
+
+    BlockingQueue<Schedulable> queue = createQueue(opts);
+    long totalCalls = 0;
+    long veryStart = System.nanoTime();
+    List<Thread> threads = startThreads(queue, opts);
+
+    // Loop printing results every second until the specified
+    // time has elapsed
+    for (int i = 0; i < opts.secondsToRun; i++) {
+      long st = System.nanoTime();
+      Thread.sleep(1000);
+      long et = System.nanoTime();
+      long ct = takeCount.getAndSet(0);
+      totalCalls += ct;
+      double callsPerSec = (ct * 1000000000.0) / (et - st);
+      System.out.println("Calls per second: " + callsPerSec);
+    }
+    long veryEnd = System.nanoTime();
+
+    for (Thread t : threads) {
+      t.interrupt();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    System.out.println("====== Results ======");
+    System.out.println("Options:\n" + opts);
+    if (totalCalls > 0) {
+      double callsPerSec = (totalCalls * 1000000000.0) / (veryEnd - veryStart);
+      System.out.println("Total calls per second: " + callsPerSec);
+    } else {
+      System.out.println("No calls!");
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int rc = ToolRunner.run(new CallQueueBenchmark(), args);
+    System.exit(rc);
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+}
@@ -40,6 +40,7 @@
 import org.apache.hadoop.util.ToolRunner;
 
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
@@ -65,6 +66,7 @@ private static class MyOptions {
     private int port = 0;
     public int secondsToRun = 15;
     private int msgSize = 1024;
+    private boolean bufferPool = false;
     public Class<? extends RpcEngine> rpcEngine =
         ProtobufRpcEngine2.class;
     
@@ -137,6 +139,12 @@ private Options buildOptions() {
           .withDescription("engine to use")
           .create('e'));
       
+      opts.addOption(
+          OptionBuilder.withLongOpt("bufferPool").hasArg(false)
+          .withDescription("read requests and write responses with pooled "
+              + "buffers on the server")
+          .create('b'));
+
       opts.addOption(
           OptionBuilder.withLongOpt("help").hasArg(false)
           .withDescription("show this screen")
@@ -178,6 +186,9 @@ private void processOptions(CommandLine line, Options opts)
       if (line.hasOption('h')) {
         host = line.getOptionValue('h');
       }
+      if (line.hasOption('b')) {
+        bufferPool = true;
+      }
       if (line.hasOption('e')) {
         String eng = line.getOptionValue('e');
         if ("protobuf".equals(eng)) {
@@ -209,7 +220,8 @@ public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
           + clientThreads + "\nhost=" + host + "\nport=" + getPort()
-          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
+          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize
+          + "\nbufferPool=" + bufferPool;
     }
   }
 
@@ -221,6 +233,8 @@ private Server startServer(MyOptions opts) throws IOException {
     }
     conf.setInt(CommonConfigurationKeys.IPC_SERVER_RPC_READ_THREADS_KEY,
         opts.serverReaderThreads);
+    conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+        opts.bufferPool);
     
     RPC.Server server;
     // Get RPC server for server side implementation
@@ -249,6 +263,24 @@ private long getTotalCpuTime(Iterable<? extends Thread> threads) {
     return total;
   }
   
+  private static long getTotalGcCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(gc.getCollectionCount(), 0);
+    }
+    return total;
+  }
+
+  private static long getTotalGcTime() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(gc.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
   @Override
   public int run(String[] args) throws Exception {
     MyOptions opts = new MyOptions(args);
@@ -267,6 +299,8 @@ public int run(String[] args) throws Exception {
         long totalCalls = 0;
         ctx.startThreads();
         long veryStart = System.nanoTime();
+        long gcCountStart = getTotalGcCount();
+        long gcTimeStart = getTotalGcTime();
 
         // Loop printing results every second until the specified
         // time has elapsed
@@ -299,7 +333,14 @@ public int run(String[] args) throws Exception {
           if (server != null) {
             System.out.println("CPU time per call on server: " +
                 (cpuNanosServer / totalCalls) + " ns");
+            System.out.println("Server buffer pool hits: " +
+                server.getBufferPoolHits() + ", misses: " +
+                server.getBufferPoolMisses());
           }
+          // the client and the server share the JVM when both are run.
+          System.out.println("GC collections: " +
+              (getTotalGcCount() - gcCountStart) + ", GC time: " +
+              (getTotalGcTime() - gcTimeStart) + " ms");
         } else {
           System.out.println("No calls!");
         }
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test {@link BoundedMpmcQueue}.
+ */
+public class TestBoundedMpmcQueue {
+
+  @Test
+  public void testOfferAndPoll() {
+    BoundedMpmcQueue<Integer> q = new BoundedMpmcQueue<>(3);
+    assertEquals(3, q.capacity());
+    assertNull(q.poll());
+    assertNull(q.peek());
+
+    // go around the ring a few times.
+    for (int lap = 0; lap < 5; lap++) {
+      assertTrue(q.offer(lap));
+      assertTrue(q.offer(lap + 1));
+      assertTrue(q.offer(lap + 2));
+      assertFalse(q.offer(-1));
+      assertEquals(3, q.size());
+      assertEquals(Integer.valueOf(lap), q.peek());
+      assertEquals(Integer.valueOf(lap), q.poll());
+      assertEquals(Integer.valueOf(lap + 1), q.poll());
+      assertEquals(1, q.size());
+      assertEquals(Integer.valueOf(lap + 2), q.poll());
+      assertNull(q.poll());
+      assertEquals(0, q.size());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroCapacity() {
+    new BoundedMpmcQueue<Integer>(0);
+  }
+}
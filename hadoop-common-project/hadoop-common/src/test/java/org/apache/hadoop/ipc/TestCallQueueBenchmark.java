@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.util.ToolRunner;
+import org.junit.Test;
+
+public class TestCallQueueBenchmark {
+
+  private static int runBenchmark(String queue) throws Exception {
+    return ToolRunner.run(new CallQueueBenchmark(),
+        new String[] {
+            "--queue", queue,
+            "--producers", "8",
+            "--consumers", "16",
+            "--levels", "4",
+            "--capacity", "256",
+            "--time", "2"});
+  }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithFairCallQueue() throws Exception {
+    assertEquals(0, runBenchmark("fair"));
+  }
+
+  @Test(timeout=20000)
+  public void testBenchmarkWithShardedFairCallQueue() throws Exception {
+    assertEquals(0, runBenchmark("sharded"));
+  }
+
+  @Test
+  public void testUnknownQueue() throws Exception {
+    assertEquals(-1, runBenchmark("unknown"));
+  }
+}
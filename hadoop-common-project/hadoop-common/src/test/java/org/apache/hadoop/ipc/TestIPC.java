@@ -30,11 +30,15 @@
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
+import static org.apache.hadoop.test.MetricsAsserts.getDoubleGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -60,6 +64,7 @@
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -69,6 +74,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Writable;
@@ -1452,6 +1458,288 @@ public void run() {
     }
   }
 
+  /**
+   * Tests that the requests of concurrent callers, which are written to the
+   * connection in batches, are all sent over a single connection.
+   */
+  @Test(timeout=60000)
+  public void testConcurrentCallsOnOneConnection() throws Exception {
+    final int callerCount = 50;
+    final TestServer server = new TestServer(5, false);
+    final AtomicInteger numCalls = new AtomicInteger();
+    server.callListener = numCalls::incrementAndGet;
+    Client client = new Client(LongWritable.class, conf);
+    try {
+      InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      server.start();
+      SerialCaller[] callers = new SerialCaller[callerCount];
+      for (int i = 0; i < callerCount; i++) {
+        callers[i] = new SerialCaller(client, addr, 200);
+        callers[i].start();
+      }
+      for (int i = 0; i < callerCount; i++) {
+        callers[i].join();
+        assertFalse(callers[i].failed);
+      }
+      assertEquals(callerCount * 200, numCalls.get());
+      assertEquals(1, server.getNumOpenConnections());
+    } finally {
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * A socket counting the flushes of its output stream. A flush can be made
+   * to wait for a latch, to hold the writer of a connection.
+   */
+  static class FlushCountingSocket extends Socket {
+    private final AtomicInteger flushes = new AtomicInteger();
+    private volatile CountDownLatch flushGate;
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+      return new FilterOutputStream(super.getOutputStream()) {
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          CountDownLatch gate = flushGate;
+          if (gate != null) {
+            try {
+              gate.await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+          }
+          flushes.incrementAndGet();
+          super.flush();
+        }
+      };
+    }
+  }
+
+  /**
+   * Tests that the requests queued while the connection is being written
+   * are sent together, with a single flush.
+   */
+  @Test(timeout=60000)
+  public void testRequestsBatchedPerFlush() throws Exception {
+    final int callerCount = 10;
+    final FlushCountingSocket socket = new FlushCountingSocket();
+    SocketFactory mockFactory = mock(SocketFactory.class);
+    doAnswer(invocation -> socket).when(mockFactory).createSocket();
+    final TestServer server = new TestServer(1, false);
+    Client client = new Client(LongWritable.class, conf, mockFactory);
+    try {
+      InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      server.start();
+      // set up the connection.
+      call(client, RANDOM.nextLong(), addr, conf);
+
+      // hold the writer in the flush of the first request.
+      socket.flushGate = new CountDownLatch(1);
+      final int flushes = socket.flushes.get();
+      final SerialCaller[] callers = new SerialCaller[callerCount];
+      callers[0] = new SerialCaller(client, addr, 1);
+      callers[0].start();
+      GenericTestUtils.waitFor(
+          () -> callers[0].getState() == Thread.State.WAITING, 10, 10000);
+      for (int i = 1; i < callerCount; i++) {
+        callers[i] = new SerialCaller(client, addr, 1);
+        callers[i].start();
+      }
+      // the other callers wait for their queued request to be sent.
+      GenericTestUtils.waitFor(() -> {
+        for (SerialCaller caller : callers) {
+          if (caller.getState() != Thread.State.WAITING) {
+            return false;
+          }
+        }
+        return true;
+      }, 10, 10000);
+      socket.flushGate.countDown();
+      for (SerialCaller caller : callers) {
+        caller.join();
+        assertFalse(caller.failed);
+      }
+      // one flush for the first request and one for all the queued ones.
+      assertEquals(2, socket.flushes.get() - flushes);
+    } finally {
+      socket.flushGate = null;
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /** A response large enough to fill the socket buffers quickly. */
+  public static class LargeResponse implements Writable {
+    static final int LENGTH = 512 * 1024;
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.write(new byte[LENGTH]);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      in.readFully(new byte[LENGTH]);
+    }
+  }
+
+  /**
+   * A socket whose reads can be made to wait for a latch, to stop the
+   * client from reading the responses.
+   */
+  static class ReadGatedSocket extends Socket {
+    private volatile CountDownLatch readGate;
+
+    private void awaitGate() throws IOException {
+      CountDownLatch gate = readGate;
+      if (gate != null) {
+        try {
+          gate.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return new FilterInputStream(super.getInputStream()) {
+        @Override
+        public int read() throws IOException {
+          awaitGate();
+          return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          awaitGate();
+          return super.read(b, off, len);
+        }
+      };
+    }
+  }
+
+  /**
+   * Tests that the pooled buffers of the responses still queued on a
+   * connection are released when the connection is closed.
+   */
+  @Test(timeout=60000)
+  public void testQueuedResponsesReleasedOnClose() throws Exception {
+    final int numCalls = 40;
+    conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+        true);
+    final ReadGatedSocket socket = new ReadGatedSocket();
+    SocketFactory mockFactory = mock(SocketFactory.class);
+    doAnswer(invocation -> socket).when(mockFactory).createSocket();
+    final TestServer server = new TestServer(5, false, LongWritable.class,
+        LargeResponse.class, conf);
+    final AtomicInteger callsServed = new AtomicInteger();
+    server.callListener = callsServed::incrementAndGet;
+    final Client client = new Client(LargeResponse.class, conf, mockFactory);
+    ExecutorService callers = Executors.newFixedThreadPool(numCalls);
+    try {
+      InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      server.start();
+      final ConnectionId remoteId = getConnectionId(addr, 0, conf);
+      client.call(RPC.RpcKind.RPC_BUILTIN, new LongWritable(0), remoteId,
+          RPC.RPC_SERVICE_CLASS_DEFAULT, null);
+
+      // the client stops reading, so that the responses which do not fit in
+      // the socket buffers stay queued on the server.
+      socket.readGate = new CountDownLatch(1);
+      for (int i = 0; i < numCalls; i++) {
+        callers.submit(() -> client.call(RPC.RpcKind.RPC_BUILTIN,
+            new LongWritable(0), remoteId, RPC.RPC_SERVICE_CLASS_DEFAULT,
+            null));
+      }
+      GenericTestUtils.waitFor(
+          () -> callsServed.get() == numCalls + 1, 10, 10000);
+      GenericTestUtils.waitFor(
+          () -> server.getBufferPoolBytesInFlight() > 0, 10, 10000);
+
+      // the server closes the connection once the client is gone.
+      socket.close();
+      GenericTestUtils.waitFor(
+          () -> server.getBufferPoolBytesInFlight() == 0, 10, 10000);
+    } finally {
+      if (socket.readGate != null) {
+        socket.readGate.countDown();
+      }
+      callers.shutdownNow();
+      client.stop();
+      server.stop();
+    }
+  }
+
+  /**
+   * Tests that small responses queued on a connection are written with a
+   * single gathering write.
+   */
+  @Test(timeout=60000)
+  public void testQueuedSmallResponsesGathered() throws Exception {
+    final int numSmall = 10;
+    final ReadGatedSocket socket = new ReadGatedSocket();
+    SocketFactory mockFactory = mock(SocketFactory.class);
+    doAnswer(invocation -> socket).when(mockFactory).createSocket();
+    // a single handler responds to the calls in order.
+    final TestServer server = new TestServer(1, false, BytesWritable.class,
+        null, conf);
+    final Client client = new Client(BytesWritable.class, conf, mockFactory);
+    ExecutorService callers = Executors.newFixedThreadPool(numSmall + 1);
+    try {
+      InetSocketAddress addr = NetUtils.getConnectAddress(server);
+      server.start();
+      final ConnectionId remoteId = getConnectionId(addr, 0, conf);
+      client.call(RPC.RpcKind.RPC_BUILTIN, new BytesWritable(new byte[1]),
+          remoteId, RPC.RPC_SERVICE_CLASS_DEFAULT, null);
+
+      // the client stops reading, so that a response larger than the socket
+      // buffers stays queued on the server, and the small responses after it
+      // are queued behind it.
+      socket.readGate = new CountDownLatch(1);
+      List<Future<Writable>> calls = new ArrayList<>();
+      calls.add(callers.submit(() -> client.call(RPC.RpcKind.RPC_BUILTIN,
+          new BytesWritable(new byte[16 * 1024 * 1024]), remoteId,
+          RPC.RPC_SERVICE_CLASS_DEFAULT, null)));
+      GenericTestUtils.waitFor(
+          () -> server.getResponderQueueLength(0) == 1, 10, 10000);
+      for (int i = 0; i < numSmall; i++) {
+        calls.add(callers.submit(() -> client.call(RPC.RpcKind.RPC_BUILTIN,
+            new BytesWritable(new byte[100]), remoteId,
+            RPC.RPC_SERVICE_CLASS_DEFAULT, null)));
+      }
+      GenericTestUtils.waitFor(
+          () -> server.getResponderQueueLength(0) == numSmall + 1, 10, 10000);
+
+      socket.readGate.countDown();
+      assertEquals(16 * 1024 * 1024,
+          ((BytesWritable) calls.get(0).get()).getLength());
+      for (int i = 1; i <= numSmall; i++) {
+        assertEquals(100, ((BytesWritable) calls.get(i).get()).getLength());
+      }
+      // the small responses, possibly with the end of the large one.
+      double maxResponses = getDoubleGauge(
+          "RpcResponder0WriteResponsesMaxResponses",
+          getMetrics(server.getRpcMetrics().name()));
+      assertTrue("responses per write: " + maxResponses,
+          maxResponses >= numSmall && maxResponses <= numSmall + 1);
+    } finally {
+      if (socket.readGate != null) {
+        socket.readGate.countDown();
+      }
+      callers.shutdownNow();
+      client.stop();
+      server.stop();
+    }
+  }
+
   @Test
   public void testMaxConnections() throws Exception {
     conf.setInt("ipc.server.max.connections", 6);
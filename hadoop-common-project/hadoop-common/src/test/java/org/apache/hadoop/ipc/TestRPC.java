@@ -21,6 +21,7 @@
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
 import org.apache.hadoop.thirdparty.protobuf.ServiceException;
 import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.io.Writable;
@@ -50,6 +51,7 @@
 import org.apache.hadoop.test.MockitoUtil;
 import org.apache.hadoop.test.Whitebox;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -84,6 +86,7 @@
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -1108,6 +1111,89 @@ public TestRpcService run() {
     }
   }
 
+  @Test
+  public void testRpcBufferPool() throws Exception {
+    conf.setBoolean(CommonConfigurationKeys.IPC_SERVER_BUFFER_POOL_ENABLED_KEY,
+        true);
+    final Server server = setupTestServer(conf, 5);
+    TestRpcService proxy = null;
+    try {
+      proxy = getClient(addr, conf);
+      for (int i = 0; i < 1000; i++) {
+        // the messages use buffers of different sizes, beyond the largest
+        // pooled one.
+        int length = i % 250 == 249 ? 2 * 1024 * 1024 : i * 100;
+        String msg = StringUtils.repeat('a', length);
+        assertEquals(msg,
+            proxy.echo(null, newEchoRequest(msg)).getMessage());
+      }
+      MetricsRecordBuilder rpcMetrics =
+          getMetrics(server.getRpcMetrics().name());
+      assertCounterGt("RpcBufferPoolHits", 1000L, rpcMetrics);
+      assertCounterGt("RpcBufferPoolMisses", 0L, rpcMetrics);
+      // the buffers are released once the calls are processed and their
+      // responses sent.
+      GenericTestUtils.waitFor(
+          () -> server.getBufferPoolBytesInFlight() == 0, 10, 10000);
+    } finally {
+      stop(server, proxy);
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testMultipleResponders() throws Exception {
+    final int numResponders = 3;
+    final int numClients = 6;
+    conf.setInt(CommonConfigurationKeys.IPC_SERVER_RPC_RESPONDER_THREADS_KEY,
+        numResponders);
+    final Server server = setupTestServer(conf, 5);
+    final TestRpcService[] proxies = new TestRpcService[numClients];
+    ExecutorService executor = Executors.newFixedThreadPool(2 * numClients);
+    try {
+      assertEquals(numResponders, server.getNumResponders());
+      // the clients of different users use different connections, which are
+      // spread over the responders.
+      for (int i = 0; i < numClients; i++) {
+        UserGroupInformation ugi = UserGroupInformation.createUserForTesting(
+            "user" + i, new String[0]);
+        proxies[i] = ugi.doAs((PrivilegedExceptionAction<TestRpcService>)
+            () -> getClient(addr, conf));
+      }
+      // concurrent large responses are queued on the connections.
+      final String msg = StringUtils.repeat('a', 1024 * 1024);
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 2 * numClients; i++) {
+        final TestRpcService proxy = proxies[i % numClients];
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 10; j++) {
+            assertEquals(msg,
+                proxy.echo(null, newEchoRequest(msg)).getMessage());
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+      for (int i = 0; i < numResponders; i++) {
+        final int responder = i;
+        assertCounterGt("RpcResponder" + i + "WriteTimeNumOps", 0L,
+            getMetrics(server.getRpcMetrics().name()));
+        GenericTestUtils.waitFor(
+            () -> server.getResponderQueueLength(responder) == 0, 100, 10000);
+      }
+    } finally {
+      executor.shutdown();
+      for (TestRpcService proxy : proxies) {
+        if (proxy != null) {
+          RPC.stopProxy(proxy);
+        }
+      }
+      server.stop();
+    }
+  }
+
   @Test
   public void testNumInProcessHandlerMetrics() throws Exception {
     UserGroupInformation ugi = UserGroupInformation.
@@ -1139,6 +1225,51 @@ public void testNumInProcessHandlerMetrics() throws Exception {
     }
   }
 
+  @Test(timeout=60000)
+  public void testVirtualThreadHandlers() throws Exception {
+    final int maxConcurrency = 4;
+    conf.setBoolean(
+        CommonConfigurationKeys.IPC_SERVER_HANDLER_VIRTUAL_THREADS_ENABLED_KEY,
+        true);
+    conf.setInt(CommonConfigurationKeys.
+        IPC_SERVER_HANDLER_VIRTUAL_THREADS_MAX_CONCURRENCY_KEY, maxConcurrency);
+    UserGroupInformation ugi = UserGroupInformation.
+        createUserForTesting("user123", new String[0]);
+    // a single handler, which would not run the calls concurrently.
+    final Server server = setupTestServer(conf, 1);
+    TestRpcService proxy = null;
+    try {
+      // the server falls back to the handler threads on older JVMs.
+      proxy = getClient(addr, conf);
+      assertEquals("hello",
+          proxy.echo(null, newEchoRequest("hello")).getMessage());
+      Assume.assumeTrue("virtual threads are not supported",
+          Server.newVirtualThreadFactory("test") != null);
+
+      final AtomicInteger running = new AtomicInteger();
+      final AtomicInteger maxRunning = new AtomicInteger();
+      final CyclicBarrier barrier = new CyclicBarrier(maxConcurrency);
+      List<ExternalCall<Void>> calls = new ArrayList<>();
+      for (int i = 0; i < 2 * maxConcurrency; i++) {
+        ExternalCall<Void> call = newExtCall(ugi, () -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          // the calls only get past the barrier if they run concurrently.
+          barrier.await();
+          running.decrementAndGet();
+          return null;
+        });
+        server.queueCall(call);
+        calls.add(call);
+      }
+      for (ExternalCall<Void> call : calls) {
+        call.get();
+      }
+      assertEquals(maxConcurrency, maxRunning.get());
+    } finally {
+      stop(server, proxy);
+    }
+  }
+
   /**
    *  Test RPC backoff by queue full.
    */
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test {@link RpcBufferPool}.
+ */
+public class TestRpcBufferPool {
+
+  @Test
+  public void testGetAndPut() {
+    RpcBufferPool pool = new RpcBufferPool(64 * 1024 * 1024);
+    ByteBuffer b1 = pool.getBuffer(100);
+    assertEquals(0, b1.position());
+    assertEquals(100, b1.limit());
+    assertEquals(RpcBufferPool.MIN_BUFFER_SIZE, b1.capacity());
+    ByteBuffer b2 = pool.getBuffer(RpcBufferPool.MIN_BUFFER_SIZE + 1);
+    assertEquals(2 * RpcBufferPool.MIN_BUFFER_SIZE, b2.capacity());
+    assertEquals(0, pool.getHits());
+    assertEquals(2, pool.getMisses());
+    assertEquals(3 * RpcBufferPool.MIN_BUFFER_SIZE, pool.getBytesInFlight());
+
+    b1.position(50);
+    pool.putBuffer(b1);
+    pool.putBuffer(b2);
+    assertEquals(0, pool.getBytesInFlight());
+
+    // the buffers are reused for requests of the same size class.
+    ByteBuffer b3 = pool.getBuffer(RpcBufferPool.MIN_BUFFER_SIZE);
+    assertSame(b1, b3);
+    assertEquals(0, b3.position());
+    assertEquals(RpcBufferPool.MIN_BUFFER_SIZE, b3.limit());
+    assertEquals(1, pool.getHits());
+    pool.putBuffer(b3);
+  }
+
+  @Test
+  public void testLargeBuffers() {
+    RpcBufferPool pool = new RpcBufferPool(64 * 1024 * 1024);
+    int length = RpcBufferPool.MAX_BUFFER_SIZE + 1;
+    ByteBuffer b1 = pool.getBuffer(length);
+    assertEquals(length, b1.capacity());
+    assertEquals(0, pool.getBytesInFlight());
+    pool.putBuffer(b1);
+    assertNotSame(b1, pool.getBuffer(length));
+    assertEquals(2, pool.getMisses());
+  }
+
+  @Test
+  public void testCapacity() {
+    // the pool keeps a single buffer of the largest size.
+    RpcBufferPool pool = new RpcBufferPool(12 * RpcBufferPool.MAX_BUFFER_SIZE);
+    ByteBuffer b1 = pool.getBuffer(RpcBufferPool.MAX_BUFFER_SIZE);
+    ByteBuffer b2 = pool.getBuffer(RpcBufferPool.MAX_BUFFER_SIZE);
+    pool.putBuffer(b1);
+    pool.putBuffer(b2);
+    assertEquals(0, pool.getBytesInFlight());
+    assertSame(b1, pool.getBuffer(RpcBufferPool.MAX_BUFFER_SIZE));
+    assertNotSame(b2, pool.getBuffer(RpcBufferPool.MAX_BUFFER_SIZE));
+  }
+}
@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.ipc.CallQueueManager.CallQueueOverflowException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.LambdaTestUtils;
+import org.junit.Test;
+
+/**
+ * Test {@link ShardedFairCallQueue}.
+ */
+public class TestShardedFairCallQueue {
+  private static final String SHARDS_KEY =
+      "ns." + CommonConfigurationKeys.IPC_CALLQUEUE_SHARDS_KEY;
+
+  private ShardedFairCallQueue<Schedulable> fcq;
+
+  private Schedulable mockCall(String id, int priority) {
+    Schedulable mockCall = mock(Schedulable.class);
+    UserGroupInformation ugi = mock(UserGroupInformation.class);
+
+    when(ugi.getUserName()).thenReturn(id);
+    when(mockCall.getUserGroupInformation()).thenReturn(ugi);
+    when(mockCall.getPriorityLevel()).thenReturn(priority);
+    when(mockCall.toString()).thenReturn("id=" + id + " priority=" + priority);
+
+    return mockCall;
+  }
+
+  /** A call cheaper than a mock, for the tests adding many calls. */
+  private static class NumberedCall implements Schedulable {
+    private final int id;
+    private final int priority;
+
+    NumberedCall(int id, int priority) {
+      this.id = id;
+      this.priority = priority;
+    }
+
+    @Override
+    public UserGroupInformation getUserGroupInformation() {
+      return null;
+    }
+
+    @Override
+    public int getPriorityLevel() {
+      return priority;
+    }
+  }
+
+  private static Configuration confWithShards(int shards) {
+    Configuration conf = new Configuration();
+    conf.setInt(SHARDS_KEY, shards);
+    return conf;
+  }
+
+  @Test
+  public void testTotalCapacityOfSubQueues() {
+    Configuration conf = new Configuration();
+    fcq = new ShardedFairCallQueue<>(1, 1000, "ns", conf);
+    assertEquals(1000, fcq.remainingCapacity());
+    fcq = new ShardedFairCallQueue<>(4, 1025, "ns", conf);
+    assertEquals(1025, fcq.remainingCapacity());
+    fcq = new ShardedFairCallQueue<>(7, 1025, "ns",
+        new int[]{7, 6, 5, 4, 3, 2, 1}, conf);
+    assertEquals(1025, fcq.remainingCapacity());
+    fcq = new ShardedFairCallQueue<>(4, 1025, "ns", confWithShards(7));
+    assertEquals(1025, fcq.remainingCapacity());
+  }
+
+  @Test
+  public void testNumShards() throws Exception {
+    fcq = new ShardedFairCallQueue<>(2, 100, "ns", confWithShards(8));
+    assertEquals(8, fcq.getNumShards());
+    // a level has at most as many shards as calls.
+    fcq = new ShardedFairCallQueue<>(2, 6, "ns", confWithShards(8));
+    assertEquals(3, fcq.getNumShards());
+    assertEquals(6, fcq.remainingCapacity());
+
+    LambdaTestUtils.intercept(IllegalArgumentException.class,
+        () -> new ShardedFairCallQueue<>(2, 6, "ns", confWithShards(0)));
+    LambdaTestUtils.intercept(IllegalArgumentException.class,
+        () -> new ShardedFairCallQueue<>(4, 2, "ns", new Configuration()));
+  }
+
+  @Test
+  public void testPrioritization() {
+    int numQueues = 10;
+    fcq = new ShardedFairCallQueue<>(numQueues, numQueues, "ns",
+        new Configuration());
+
+    List<Schedulable> calls = new ArrayList<>();
+    for (int i = 0; i < numQueues; i++) {
+      Schedulable call = mockCall("u", i);
+      calls.add(call);
+      fcq.add(call);
+    }
+
+    final AtomicInteger currentIndex = new AtomicInteger();
+    fcq.setMultiplexer(new RpcMultiplexer(){
+      @Override
+      public int getAndAdvanceCurrentIndex() {
+        return currentIndex.get();
+      }
+    });
+
+    // if there is no call at a given index, return the next highest
+    // priority call available.
+    currentIndex.set(3);
+    assertSame(calls.get(3), fcq.poll());
+    assertSame(calls.get(0), fcq.poll());
+    assertSame(calls.get(1), fcq.poll());
+    currentIndex.set(6);
+    assertSame(calls.get(6), fcq.poll());
+    assertSame(calls.get(2), fcq.poll());
+    assertSame(calls.get(4), fcq.poll());
+    currentIndex.set(9);
+    assertSame(calls.get(9), fcq.poll());
+    assertSame(calls.get(5), fcq.poll());
+    assertSame(calls.get(7), fcq.poll());
+    assertSame(calls.get(8), fcq.poll());
+    assertNull(fcq.poll());
+    assertNull(fcq.peek());
+  }
+
+  @Test
+  public void testInsertion() {
+    // 3 queues, 2 slots each.
+    fcq = new ShardedFairCallQueue<>(3, 6, "ns", confWithShards(2));
+    Schedulable p0 = mockCall("a", 0);
+    Schedulable p2 = mockCall("c", 2);
+
+    // the calls overflow to the lower priority queues.
+    for (int i = 0; i < 5; i++) {
+      fcq.add(p0);
+    }
+    assertArrayEquals(new int[]{2, 2, 1}, fcq.getQueueSizes());
+    assertArrayEquals(new long[]{3, 1, 0}, fcq.getOverflowedCalls());
+    fcq.add(p2);
+    assertEquals(6, fcq.size());
+    assertEquals(0, fcq.remainingCapacity());
+    assertFalse(fcq.offer(p0));
+
+    try {
+      fcq.add(p0);
+      fail("didn't fail");
+    } catch (CallQueueOverflowException e) {
+      assertSame(CallQueueOverflowException.KEEPALIVE, e);
+    }
+    // only the lowest priority calls disconnect.
+    try {
+      fcq.add(p2);
+      fail("didn't fail");
+    } catch (CallQueueOverflowException e) {
+      assertSame(CallQueueOverflowException.DISCONNECT, e);
+    }
+  }
+
+  @Test
+  public void testInsertionWithFailover() {
+    Configuration conf = confWithShards(2);
+    conf.setBoolean(
+        "ns." + CommonConfigurationKeys.IPC_CALLQUEUE_SERVER_FAILOVER_ENABLE,
+        true);
+    fcq = new ShardedFairCallQueue<>(2, 4, "ns", conf);
+    Schedulable p0 = mockCall("a", 0);
+    for (int i = 0; i < 4; i++) {
+      fcq.add(p0);
+    }
+    try {
+      fcq.add(p0);
+      fail("didn't fail");
+    } catch (CallQueueOverflowException e) {
+      assertSame(CallQueueOverflowException.FAILOVER, e);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testTakeFromOtherShards() throws Exception {
+    // 1 queue of 4 shards of 2 slots each.
+    fcq = new ShardedFairCallQueue<>(1, 8, "ns", confWithShards(4));
+    assertEquals(4, fcq.getNumShards());
+    List<Schedulable> calls = new ArrayList<>();
+    // the calls of a full shard go to the other shards.
+    for (int i = 0; i < 8; i++) {
+      Schedulable call = mockCall("u" + i, 0);
+      calls.add(call);
+      fcq.add(call);
+    }
+    assertEquals(0, fcq.remainingCapacity());
+
+    // a thread assigned to another shard takes all the calls.
+    final List<Schedulable> taken = new ArrayList<>();
+    Thread t = new Thread(() -> {
+      try {
+        for (int i = 0; i < 8; i++) {
+          taken.add(fcq.take());
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    t.start();
+    t.join();
+    assertEquals(8, taken.size());
+    assertTrue(taken.containsAll(calls));
+    assertEquals(0, fcq.size());
+    assertEquals(8, fcq.remainingCapacity());
+  }
+
+  @Test(timeout = 10000)
+  public void testPutBlocksOnFullQueue() throws Exception {
+    fcq = new ShardedFairCallQueue<>(2, 4, "ns", confWithShards(2));
+    Schedulable p0 = mockCall("a", 0);
+    for (int i = 0; i < 4; i++) {
+      fcq.put(p0);
+    }
+    Schedulable p1 = mockCall("b", 1);
+    assertFalse(fcq.offer(p1, 10, TimeUnit.MILLISECONDS));
+
+    Thread t = new Thread(() -> {
+      try {
+        fcq.put(p1);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    t.start();
+    t.join(100);
+    assertTrue(t.isAlive());
+    assertEquals(4, fcq.size());
+
+    assertSame(p0, fcq.take());
+    t.join();
+    assertEquals(4, fcq.size());
+    assertEquals(2, fcq.getQueueSizes()[1]);
+  }
+
+  @Test
+  public void testDrainTo() {
+    fcq = new ShardedFairCallQueue<>(2, 10, "ns", confWithShards(2));
+    for (int i = 0; i < 6; i++) {
+      fcq.add(mockCall("u", i % 2));
+    }
+    List<Schedulable> drained = new ArrayList<>();
+    assertEquals(4, fcq.drainTo(drained, 4));
+    assertEquals(2, fcq.size());
+    // the higher priority calls are drained first.
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, drained.get(i).getPriorityLevel());
+    }
+    assertEquals(2, fcq.drainTo(drained));
+    assertEquals(6, drained.size());
+    assertEquals(0, fcq.size());
+    assertNull(fcq.poll());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentPutAndTake() throws Exception {
+    final int numProducers = 8;
+    final int numConsumers = 8;
+    final int callsPerProducer = 20000;
+    final int numCalls = numProducers * callsPerProducer;
+    fcq = new ShardedFairCallQueue<>(4, 64, "ns", confWithShards(4));
+    final AtomicIntegerArray seen = new AtomicIntegerArray(numCalls);
+    final BlockingQueue<Throwable> errors = new ArrayBlockingQueue<>(16);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final int first = p * callsPerProducer;
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = first; i < first + callsPerProducer; i++) {
+            fcq.put(new NumberedCall(i, i % 4));
+          }
+        } catch (Throwable t) {
+          errors.offer(t);
+        }
+      }));
+    }
+    for (int c = 0; c < numConsumers; c++) {
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < numCalls / numConsumers; i++) {
+            seen.incrementAndGet(((NumberedCall) fcq.take()).id);
+          }
+        } catch (Throwable t) {
+          errors.offer(t);
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue("Unexpected errors " + errors, errors.isEmpty());
+
+    // every call is taken exactly once.
+    for (int i = 0; i < numCalls; i++) {
+      assertEquals("call " + i, 1, seen.get(i));
+    }
+    assertEquals(0, fcq.size());
+    assertEquals(64, fcq.remainingCapacity());
+  }
+}
@@ -61,6 +61,11 @@ private static class Harness {
     ByteBuffer dataBuf, checksumBuf;
 
     Harness(DataChecksum checksum, int dataLength, boolean useDirect) {
+      this(checksum, dataLength, useDirect, useDirect);
+    }
+
+    Harness(DataChecksum checksum, int dataLength, boolean directData,
+        boolean directSums) {
       this.checksum = checksum;
       this.dataLength = dataLength;
 
@@ -79,8 +84,10 @@ private static class Harness {
         checksums, SUMS_OFFSET_IN_BUFFER, sumsLength);
 
       // Swap out for direct buffers if requested.
-      if (useDirect) {
+      if (directData) {
         dataBuf = directify(dataBuf);
+      }
+      if (directSums) {
         checksumBuf = directify(checksumBuf);
       }
     }
@@ -123,6 +130,18 @@ void testCorrectness() throws ChecksumException {
     }
   }
 
+  @Test
+  public void testBulkOpsWithMixedBuffers() throws Exception {
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      DataChecksum checksum = DataChecksum.newDataChecksum(
+          type, BYTES_PER_CHUNK);
+      for (int dataLength : new int[] {1, 1023, 1024, 1025}) {
+        new Harness(checksum, dataLength, true, false).testCorrectness();
+        new Harness(checksum, dataLength, false, true).testCorrectness();
+      }
+    }
+  }
+
   private void doBulkTest(DataChecksum checksum, int dataLength,
       boolean useDirect) throws Exception {
     System.err.println("Testing bulk checksums of length " +
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Testing {@link LongHashSet} */
+public class TestLongHashSet {
+
+  /** Compare random operations on the set with a {@link HashSet}. */
+  private static void check(int range, long seed) {
+    Random random = new Random(seed);
+    LongHashSet set = new LongHashSet(0);
+    Set<Long> expected = new HashSet<>();
+    for (int i = 0; i < 100000; i++) {
+      // keys around 0, which is stored apart from the table.
+      long key = random.nextInt(range) - range / 4;
+      if (random.nextInt(3) < 2) {
+        Assert.assertEquals(expected.add(key), set.add(key));
+      } else {
+        Assert.assertEquals(expected.remove(key), set.remove(key));
+      }
+      long other = random.nextInt(range) - range / 4;
+      Assert.assertEquals(expected.contains(other), set.contains(other));
+      Assert.assertEquals(expected.size(), set.size());
+    }
+
+    long[] array = set.toArray();
+    Arrays.sort(array);
+    long[] expectedArray = new long[expected.size()];
+    int n = 0;
+    for (long key : expected) {
+      expectedArray[n++] = key;
+    }
+    Arrays.sort(expectedArray);
+    Assert.assertArrayEquals(expectedArray, array);
+
+    final Set<Long> visited = new HashSet<>();
+    set.forEach(visited::add);
+    Assert.assertEquals(expected, visited);
+
+    set.clear();
+    Assert.assertTrue(set.isEmpty());
+    Assert.assertFalse(set.contains(0));
+    Assert.assertFalse(set.contains(array.length > 0 ? array[0] : 1));
+  }
+
+  @Test
+  public void testRandomOperations() {
+    check(64, 0);
+    check(10000, 1);
+    check(Integer.MAX_VALUE, 2);
+  }
+
+  @Test
+  public void testSequentialKeys() {
+    // block ids are mostly sequential.
+    LongHashSet set = new LongHashSet();
+    final long base = 1073741825L;
+    for (long i = 0; i < 1 << 16; i++) {
+      Assert.assertTrue(set.add(base + i));
+    }
+    for (long i = 0; i < 1 << 16; i += 2) {
+      Assert.assertTrue(set.remove(base + i));
+    }
+    for (long i = 0; i < 1 << 16; i++) {
+      Assert.assertEquals(i % 2 == 1, set.contains(base + i));
+    }
+    Assert.assertEquals(1 << 15, set.size());
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.HadoopIllegalArgumentException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Testing {@link PartitionedGSet} */
+public class TestPartitionedGSet {
+
+  private static class TestElement
+      implements LightWeightGSet.LinkedElement {
+    private final long id;
+    private LightWeightGSet.LinkedElement next;
+
+    TestElement(long id) {
+      this.id = id;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int)(id^(id>>>32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof TestElement && ((TestElement) o).id == id;
+    }
+
+    @Override
+    public void setNext(LightWeightGSet.LinkedElement next) {
+      this.next = next;
+    }
+
+    @Override
+    public LightWeightGSet.LinkedElement getNext() {
+      return next;
+    }
+  }
+
+  @Test
+  public void testIllegalArguments() {
+    assertThatThrownBy(() -> new PartitionedGSet<TestElement, TestElement>(
+        3, 4, 16)).isInstanceOf(HadoopIllegalArgumentException.class);
+    assertThatThrownBy(() -> new PartitionedGSet<TestElement, TestElement>(
+        0, 4, 16)).isInstanceOf(HadoopIllegalArgumentException.class);
+    assertThatThrownBy(() -> new PartitionedGSet<TestElement, TestElement>(
+        4, 32, 16)).isInstanceOf(HadoopIllegalArgumentException.class);
+  }
+
+  @Test(timeout = 60000)
+  public void testBasicOperations() {
+    final int numElements = 1 << 16;
+    final PartitionedGSet<TestElement, TestElement> set =
+        new PartitionedGSet<>(16, 8, 4);
+    assertThat(set.size()).isZero();
+
+    for (long id = 0; id < numElements; id++) {
+      assertThat(set.put(new TestElement(id))).isNull();
+    }
+    assertThat(set.size()).isEqualTo(numElements);
+    assertThat(set.values()).hasSize(numElements);
+
+    // replacing an element returns the old one
+    TestElement replaced = new TestElement(42);
+    TestElement old = set.put(replaced);
+    assertThat(old).isNotNull().isNotSameAs(replaced);
+    assertThat(set.get(new TestElement(42))).isSameAs(replaced);
+    assertThat(set.size()).isEqualTo(numElements);
+
+    for (long id = 0; id < numElements; id++) {
+      assertThat(set.contains(new TestElement(id))).isTrue();
+    }
+    assertThat(set.contains(new TestElement(numElements))).isFalse();
+
+    for (long id = 0; id < numElements; id += 2) {
+      assertThat(set.remove(new TestElement(id))).isNotNull();
+    }
+    assertThat(set.size()).isEqualTo(numElements / 2);
+    for (long id = 0; id < numElements; id++) {
+      assertThat(set.contains(new TestElement(id))).isEqualTo(id % 2 == 1);
+    }
+
+    set.clear();
+    assertThat(set.size()).isZero();
+    assertThat(set.iterator().hasNext()).isFalse();
+  }
+
+  @Test
+  public void testRangePartitioning() {
+    final PartitionedGSet<TestElement, TestElement> set =
+        new PartitionedGSet<>(4, 8, 4);
+    // consecutive ids within a range share a partition
+    assertThat(set.getPartitionIndex(new TestElement(0)))
+        .isEqualTo(set.getPartitionIndex(new TestElement(255)));
+    // successive ranges are spread round robin
+    for (int range = 0; range < 8; range++) {
+      assertThat(set.getPartitionIndex(new TestElement(range << 8)))
+          .isEqualTo(range % 4);
+    }
+
+    for (long id = 0; id < 4 * 1024; id++) {
+      set.put(new TestElement(id));
+    }
+    for (int i = 0; i < set.getNumPartitions(); i++) {
+      assertThat(set.getPartitionSize(i)).isEqualTo(1024);
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testIteratorRemove() {
+    final PartitionedGSet<TestElement, TestElement> set =
+        new PartitionedGSet<>(8, 2, 1);
+    Set<TestElement> expected = new HashSet<>();
+    for (long id = 0; id < 1000; id++) {
+      TestElement e = new TestElement(id * 7);
+      set.put(e);
+      expected.add(e);
+    }
+
+    Set<TestElement> seen = new HashSet<>();
+    for (Iterator<TestElement> iter = set.iterator(); iter.hasNext(); ) {
+      TestElement e = iter.next();
+      assertThat(seen.add(e)).isTrue();
+      iter.remove();
+      assertThat(set.contains(e)).isFalse();
+    }
+    assertThat(seen).isEqualTo(expected);
+    assertThat(set.size()).isZero();
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentUpdates() throws Exception {
+    final int numThreads = 8;
+    final int perThread = 1 << 14;
+    final PartitionedGSet<TestElement, TestElement> set =
+        new PartitionedGSet<>(32, 4, 1);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        final long base = (long) t * perThread;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (long id = base; id < base + perThread; id++) {
+              set.put(new TestElement(id));
+            }
+            for (long id = base; id < base + perThread; id += 2) {
+              set.remove(new TestElement(id));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(set.size()).isEqualTo(numThreads * perThread / 2);
+    for (long id = 0; id < (long) numThreads * perThread; id++) {
+      assertThat(set.contains(new TestElement(id))).isEqualTo(id % 2 == 1);
+    }
+  }
+}
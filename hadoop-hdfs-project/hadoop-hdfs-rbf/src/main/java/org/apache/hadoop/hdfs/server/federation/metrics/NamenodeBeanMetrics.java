@@ -869,6 +869,16 @@ public String getVerifyECWithTopologyResult() {
     return null;
   }
 
+  @Override
+  public long getPathResolutionCacheHits() {
+    return 0;
+  }
+
+  @Override
+  public long getPathResolutionCacheMisses() {
+    return 0;
+  }
+
   @Override
   public long getCurrentTokensCount() {
     return 0;
@@ -187,6 +187,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.path.based.cache.block.map.allocation.percent";
   public static final float    DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT = 0.25f;
 
+  public static final String  DFS_NAMENODE_INODEMAP_PARTITIONED_ENABLED_KEY =
+      "dfs.namenode.inodemap.partitioned.enabled";
+  public static final boolean DFS_NAMENODE_INODEMAP_PARTITIONED_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_INODEMAP_PARTITIONS_KEY =
+      "dfs.namenode.inodemap.partitions";
+  public static final int     DFS_NAMENODE_INODEMAP_PARTITIONS_DEFAULT = 256;
+
   public static final int     DFS_NAMENODE_HTTP_PORT_DEFAULT =
       HdfsClientConfigKeys.DFS_NAMENODE_HTTP_PORT_DEFAULT;
   public static final String  DFS_NAMENODE_HTTP_ADDRESS_KEY =
@@ -314,6 +322,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.namenode.blockreport.max.lock.hold.time";
   public static final long
       DFS_NAMENODE_BLOCKREPORT_MAX_LOCK_HOLD_TIME_DEFAULT = 4;
+  public static final String DFS_NAMENODE_BLOCKREPORT_DECODE_OUTSIDE_LOCK_KEY
+      = "dfs.namenode.blockreport.decode.outside.lock";
+  public static final boolean
+      DFS_NAMENODE_BLOCKREPORT_DECODE_OUTSIDE_LOCK_DEFAULT = false;
 
   public static final String
       DFS_NAMENODE_CORRUPT_BLOCK_DELETE_IMMEDIATELY_ENABLED =
@@ -399,6 +411,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.edits.asynclogging.pending.queue.size";
   public static final int
       DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT = 4096;
+  public static final String DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED =
+      "dfs.namenode.edits.asynclogging.pipelined";
+  public static final boolean
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_DEFAULT = false;
 
   public static final String DFS_NAMENODE_PROVIDED_ENABLED = "dfs.namenode.provided.enabled";
   public static final boolean DFS_NAMENODE_PROVIDED_ENABLED_DEFAULT = false;
@@ -431,6 +447,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY = "dfs.content-summary.cache.enabled";
+  public static final boolean DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT = false;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String
@@ -590,6 +608,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_COMPONENT_LENGTH_DEFAULT = 255;
   public static final String  DFS_NAMENODE_MAX_DIRECTORY_ITEMS_KEY = "dfs.namenode.fs-limits.max-directory-items";
   public static final int     DFS_NAMENODE_MAX_DIRECTORY_ITEMS_DEFAULT = 1024*1024;
+  public static final String  DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_KEY =
+      "dfs.namenode.large.directory.threshold";
+  public static final int     DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_DEFAULT =
+      64 * 1024;
   public static final String  DFS_NAMENODE_MIN_BLOCK_SIZE_KEY = "dfs.namenode.fs-limits.min-block-size";
   public static final long    DFS_NAMENODE_MIN_BLOCK_SIZE_DEFAULT = 1024*1024;
   public static final String  DFS_NAMENODE_MAX_BLOCKS_PER_FILE_KEY = "dfs.namenode.fs-limits.max-blocks-per-file";
@@ -613,6 +635,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_FSLOCK_FAIR_KEY =
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
+  public static final String DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY =
+      "dfs.namenode.lock.fine-grained.enabled";
+  public static final boolean DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_DEFAULT =
+      false;
 
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
@@ -954,6 +980,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY =
       HdfsClientConfigKeys.DeprecatedKeys.DFS_DATANODE_MAX_RECEIVER_THREADS_KEY;
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
+  public static final String  DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_KEY =
+      "dfs.datanode.transfer.server.nio.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_DEFAULT =
+      false;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 21 * 24;  // 3 weeks.
   public static final String  DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND = "dfs.block.scanner.volume.bytes.per.second";
@@ -972,6 +1002,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       false;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
+  public static final String  DFS_DATANODE_TRANSFER_ASYNC_READ_ENABLED_KEY =
+      "dfs.datanode.transfer.async.read.enabled";
+  public static final boolean DFS_DATANODE_TRANSFER_ASYNC_READ_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_DATANODE_TRANSFER_ASYNC_READ_THREADS_KEY =
+      "dfs.datanode.transfer.async.read.threads";
+  public static final int     DFS_DATANODE_TRANSFER_ASYNC_READ_THREADS_DEFAULT =
+      32;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
   public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY =
@@ -1154,6 +1192,55 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int
       DFS_DATANODE_FILEIO_PROFILING_SAMPLING_PERCENTAGE_DEFAULT = 0;
 
+  // Datanode volume IO scheduler
+  public static final String DFS_DATANODE_IO_SCHEDULER_ENABLED_KEY =
+      "dfs.datanode.io.scheduler.enabled";
+  public static final boolean DFS_DATANODE_IO_SCHEDULER_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_KEY =
+      "dfs.datanode.io.scheduler.max.wait.ms";
+  public static final long DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_DEFAULT = 100;
+  public static final String
+      DFS_DATANODE_IO_SCHEDULER_CLIENT_READ_BANDWIDTHPERSEC_KEY =
+      "dfs.datanode.io.scheduler.client.read.bandwidthPerSec";
+  public static final String
+      DFS_DATANODE_IO_SCHEDULER_PIPELINE_WRITE_BANDWIDTHPERSEC_KEY =
+      "dfs.datanode.io.scheduler.pipeline.write.bandwidthPerSec";
+  public static final String
+      DFS_DATANODE_IO_SCHEDULER_REPLICATION_BANDWIDTHPERSEC_KEY =
+      "dfs.datanode.io.scheduler.replication.bandwidthPerSec";
+  public static final String
+      DFS_DATANODE_IO_SCHEDULER_SCAN_BANDWIDTHPERSEC_KEY =
+      "dfs.datanode.io.scheduler.scan.bandwidthPerSec";
+  public static final long
+      DFS_DATANODE_IO_SCHEDULER_BANDWIDTHPERSEC_DEFAULT = 0; // no limit
+
+  // Datanode volume hsync coalescing
+  public static final String DFS_DATANODE_SYNC_COALESCING_ENABLED_KEY =
+      "dfs.datanode.sync.coalescing.enabled";
+  public static final boolean DFS_DATANODE_SYNC_COALESCING_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY =
+      "dfs.datanode.sync.coalescing.window.us";
+  public static final long DFS_DATANODE_SYNC_COALESCING_WINDOW_US_DEFAULT =
+      0;
+  public static final String DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY =
+      "dfs.datanode.sync.coalescing.max.batch";
+  public static final int DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_DEFAULT = 64;
+  public static final String DFS_DATANODE_SYNC_COALESCING_THREADS_KEY =
+      "dfs.datanode.sync.coalescing.threads";
+  public static final int DFS_DATANODE_SYNC_COALESCING_THREADS_DEFAULT = 8;
+
+  // Datanode compact replica map
+  public static final String DFS_DATANODE_REPLICA_MAP_COMPACT_ENABLED_KEY =
+      "dfs.datanode.replica.map.compact.enabled";
+  public static final boolean
+      DFS_DATANODE_REPLICA_MAP_COMPACT_ENABLED_DEFAULT = false;
+  public static final String DFS_DATANODE_REPLICA_MAP_COMPACT_OFFHEAP_KEY =
+      "dfs.datanode.replica.map.compact.offheap";
+  public static final boolean
+      DFS_DATANODE_REPLICA_MAP_COMPACT_OFFHEAP_DEFAULT = false;
+
   //Keys with no defaults
   public static final String  DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
   public static final String  DFS_DATANODE_FSDATASET_FACTORY_KEY = "dfs.datanode.fsdataset.factory";
@@ -1207,6 +1294,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_SECONDARY_NAMENODE_INTERNAL_SPNEGO_USER_NAME_KEY = DFS_SECONDARY_NAMENODE_KERBEROS_INTERNAL_SPNEGO_PRINCIPAL_KEY;
   public static final String  DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY = "dfs.namenode.name.cache.threshold";
   public static final int     DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_PATH_RESOLUTION_CACHE_SIZE_KEY =
+      "dfs.namenode.path.resolution.cache.size";
+  public static final int     DFS_NAMENODE_PATH_RESOLUTION_CACHE_SIZE_DEFAULT =
+      0;
   public static final String  DFS_NAMENODE_LEGACY_OIV_IMAGE_DIR_KEY = "dfs.namenode.legacy-oiv-image.dir";
 
   public static final String  DFS_NAMESERVICES =
@@ -130,6 +130,21 @@ public static BlockListAsLongs decodeLongs(List<Long> blocksList,
         new LongsDecoder(blocksList, maxDataLength);
   }
 
+  /**
+   * Decode all replicas of the given block list up front into flat arrays.
+   * Iterating the returned instance does no varint decoding, which allows
+   * the decode cost of a large report to be paid by the caller (e.g. outside
+   * of the namesystem lock) rather than by whoever later walks the report.
+   * @param blocks - block list to decode
+   * @return BlockListAsLongs backed by the decoded replicas
+   */
+  public static BlockListAsLongs decodeFully(BlockListAsLongs blocks) {
+    if (blocks == EMPTY || blocks instanceof ArrayDecoder) {
+      return blocks;
+    }
+    return new ArrayDecoder(blocks);
+  }
+
   /**
    * Prepare an instance to encode the collection of replicas into an
    * efficient ByteString.
@@ -274,12 +289,21 @@ public static class Builder {
     }
 
     public void add(Replica replica) {
+      add(replica.getBlockId(), replica.getBytesOnDisk(),
+          replica.getGenerationStamp(), replica.getState());
+    }
+
+    /**
+     * Add a replica from its fields, for the callers which do not keep a
+     * {@link Replica} object per replica.
+     */
+    public void add(long blockId, long bytesOnDisk, long genStamp,
+        ReplicaState state) {
       try {
         // zig-zag to reduce size of legacy blocks
-        cos.writeSInt64NoTag(replica.getBlockId());
-        cos.writeUInt64NoTag(replica.getBytesOnDisk());
-        cos.writeUInt64NoTag(replica.getGenerationStamp());
-        ReplicaState state = replica.getState();
+        cos.writeSInt64NoTag(blockId);
+        cos.writeUInt64NoTag(bytesOnDisk);
+        cos.writeUInt64NoTag(genStamp);
         // although state is not a 64-bit value, using a long varint to
         // allow for future use of the upper bits
         cos.writeUInt64NoTag(state.getValue());
@@ -521,6 +545,74 @@ public void remove() {
     }
   }
   
+  // fully decoded block report, the source is kept to serve the encoded forms
+  private static class ArrayDecoder extends BlockListAsLongs {
+    private final BlockListAsLongs source;
+    private final int numBlocks;
+    // blockId, numBytes, generationStamp per replica
+    private final long[] values;
+    private final byte[] states;
+
+    ArrayDecoder(BlockListAsLongs source) {
+      this.source = source;
+      this.numBlocks = source.getNumberOfBlocks();
+      this.values = new long[3 * numBlocks];
+      this.states = new byte[numBlocks];
+      int i = 0;
+      for (BlockReportReplica replica : source) {
+        values[3 * i] = replica.getBlockId();
+        values[3 * i + 1] = replica.getNumBytes();
+        values[3 * i + 2] = replica.getGenerationStamp();
+        states[i] = (byte) replica.getState().getValue();
+        i++;
+      }
+    }
+
+    @Override
+    public int getNumberOfBlocks() {
+      return numBlocks;
+    }
+
+    @Override
+    public ByteString getBlocksBuffer() {
+      return source.getBlocksBuffer();
+    }
+
+    @Override
+    public long[] getBlockListAsLongs() {
+      return source.getBlockListAsLongs();
+    }
+
+    @Override
+    public Iterator<BlockReportReplica> iterator() {
+      return new Iterator<BlockReportReplica>() {
+        private final BlockReportReplica block = new BlockReportReplica();
+        private int currentBlockIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+          return currentBlockIndex < numBlocks;
+        }
+
+        @Override
+        public BlockReportReplica next() {
+          int idx = 3 * currentBlockIndex;
+          block.setBlockId(values[idx]);
+          block.setNumBytes(values[idx + 1]);
+          block.setGenerationStamp(values[idx + 2]);
+          block.setState(ReplicaState.getState(states[currentBlockIndex]));
+          currentBlockIndex++;
+          return block;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
   @InterfaceAudience.Private
   public static class BlockReportReplica extends Block implements Replica {
     private ReplicaState state;
@@ -44,6 +44,7 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -113,6 +114,7 @@
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicy;
 import org.apache.hadoop.hdfs.server.namenode.CacheManager;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 
 import static org.apache.hadoop.hdfs.util.StripedBlockUtil.getInternalBlockLength;
 
@@ -345,6 +347,12 @@ public int getPendingSPSPaths() {
   /** Block report thread for handling async reports. */
   private final BlockReportProcessingThread blockReportThread;
 
+  /**
+   * Whether the block report thread decodes full block reports before it
+   * takes the write lock to process them.
+   */
+  private final boolean decodeBlockReports;
+
   /**
    * Store blocks {@literal ->} datanodedescriptor(s) map of corrupt replicas.
    */
@@ -584,6 +592,9 @@ public BlockManager(final Namesystem namesystem, boolean haEnabled,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
         DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT);
     this.blockReportThread = new BlockReportProcessingThread(queueSize);
+    this.decodeBlockReports = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DECODE_OUTSIDE_LOCK_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DECODE_OUTSIDE_LOCK_DEFAULT);
 
     this.deleteCorruptReplicaImmediately =
         conf.getBoolean(DFS_NAMENODE_CORRUPT_BLOCK_DELETE_IMMEDIATELY_ENABLED,
@@ -2912,7 +2923,7 @@ public boolean processReport(final DatanodeID nodeID,
 
   public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
       final BlockReportContext context) throws IOException {
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     DatanodeDescriptor node;
     try {
       node = datanodeManager.getDatanode(nodeID);
@@ -2929,7 +2940,7 @@ public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
             context.getTotalRpcs(), Long.toHexString(context.getReportId()));
       }
     } finally {
-      namesystem.writeUnlock("removeBRLeaseIfNeeded");
+      namesystem.writeUnlock(RwLockMode.BM, "removeBRLeaseIfNeeded");
     }
   }
 
@@ -4777,7 +4788,7 @@ public void checkRedundancy(BlockCollection bc) {
   private int invalidateWorkForOneNode(DatanodeInfo dn) {
     final List<Block> toInvalidate;
     
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       // blocks should not be replicated or removed if safe mode is on
       if (namesystem.isInSafeMode()) {
@@ -4801,7 +4812,7 @@ private int invalidateWorkForOneNode(DatanodeInfo dn) {
         return 0;
       }
     } finally {
-      namesystem.writeUnlock("invalidateWorkForOneNode");
+      namesystem.writeUnlock(RwLockMode.BM, "invalidateWorkForOneNode");
     }
     blockLog.debug("BLOCK* {}: ask {} to delete {}", getClass().getSimpleName(),
         dn, toInvalidate);
@@ -5146,12 +5157,12 @@ int computeDatanodeWork() {
     int workFound = this.computeBlockReconstructionWork(blocksToProcess);
 
     // Update counters
-    namesystem.writeLock();
+    namesystem.writeLock(RwLockMode.BM);
     try {
       this.updateState();
       this.scheduledReplicationBlocksCount = workFound;
     } finally {
-      namesystem.writeUnlock("computeDatanodeWork");
+      namesystem.writeUnlock(RwLockMode.BM, "computeDatanodeWork");
     }
     workFound += this.computeInvalidateWork(nodesToProcess);
     return workFound;
@@ -5296,9 +5307,14 @@ public void enqueueBlockOp(final Runnable action) throws IOException {
   public <T> T runBlockOp(final Callable<T> action)
       throws IOException {
     final FutureTask<T> future = new FutureTask<T>(action);
-    enqueueBlockOp(future);
+    return runBlockOp(future, future);
+  }
+
+  private <T> T runBlockOp(final Runnable action, final Future<T> result)
+      throws IOException {
+    enqueueBlockOp(action);
     try {
-      return future.get();
+      return result.get();
     } catch (ExecutionException ee) {
       Throwable cause = ee.getCause();
       if (cause == null) {
@@ -5333,6 +5349,69 @@ public boolean addBlockRecoveryAttempt(BlockInfo b) {
     return pendingRecoveryBlocks.add(b);
   }
 
+  /**
+   * Process the full block report of a storage on the block report thread.
+   * If enabled, the report is decoded by that thread when it is dequeued,
+   * before it takes the write lock, so that decoding does not hold the lock
+   * and the reports waiting in the queue are not held decoded.
+   * @return true if the report of the storage had no stale storages
+   * @throws IOException if the report could not be processed
+   */
+  public boolean runBlockReportOp(final DatanodeID nodeID,
+      final DatanodeStorage storage, final BlockListAsLongs newReport,
+      final BlockReportContext context) throws IOException {
+    if (!decodeBlockReports) {
+      return runBlockOp(
+          () -> processReport(nodeID, storage, newReport, context));
+    }
+    final BlockReportOp op =
+        new BlockReportOp(nodeID, storage, newReport, context);
+    return runBlockOp(op, op.result);
+  }
+
+  /**
+   * A full block report of a storage, decoded by the block report thread
+   * before the write lock is taken.
+   */
+  private final class BlockReportOp implements Runnable {
+    private final FutureTask<Boolean> result;
+    private BlockListAsLongs report;
+    private boolean decoded;
+    private RuntimeException decodeFailure;
+
+    BlockReportOp(final DatanodeID nodeID, final DatanodeStorage storage,
+        BlockListAsLongs report, final BlockReportContext context) {
+      this.report = report;
+      this.result = new FutureTask<>(() -> {
+        if (decodeFailure != null) {
+          throw new IOException("Failed to decode block report",
+              decodeFailure);
+        }
+        return processReport(nodeID, storage, this.report, context);
+      });
+    }
+
+    void decode() {
+      if (decoded) {
+        return;
+      }
+      decoded = true;
+      final long startTime = Time.monotonicNow();
+      try {
+        report = BlockListAsLongs.decodeFully(report);
+      } catch (RuntimeException e) {
+        decodeFailure = e;
+      }
+      NameNode.getNameNodeMetrics().addBlockReportDecode(
+          Time.monotonicNow() - startTime);
+    }
+
+    @Override
+    public void run() {
+      result.run();
+    }
+  }
+
   @VisibleForTesting
   public void flushBlockOps() throws IOException {
     runBlockOp(new Callable<Void>(){
@@ -5375,24 +5454,35 @@ private void processQueue() {
         NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
         try {
           Runnable action = queue.take();
+          if (action instanceof BlockReportOp) {
+            ((BlockReportOp) action).decode();
+          }
           // batch as many operations in the write lock until the queue
           // runs dry, or the max lock hold is reached.
           int processed = 0;
           namesystem.writeLock();
           metrics.setBlockOpsQueued(queue.size() + 1);
+          long start = Time.monotonicNow();
           try {
-            long start = Time.monotonicNow();
-            do {
+            while (true) {
               processed++;
               action.run();
               if (Time.monotonicNow() - start > maxLockHoldTime) {
                 break;
               }
-              action = queue.poll();
-            } while (action != null);
+              // a full block report starts the next batch, to be decoded
+              // outside of the lock. This is the only thread taking
+              // actions, so the head of the queue is the one polled.
+              action = queue.peek();
+              if (action == null || action instanceof BlockReportOp) {
+                break;
+              }
+              queue.poll();
+            }
           } finally {
             namesystem.writeUnlock("processQueue");
             metrics.addBlockOpsBatched(processed - 1);
+            metrics.addBlockOpsBatchLockHold(Time.monotonicNow() - start);
           }
         } catch (InterruptedException e) {
           // ignore unless thread was specifically interrupted.
@@ -24,6 +24,7 @@
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
@@ -48,6 +49,7 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PipelineAck;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaOutputStreams;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodePeerMetrics;
@@ -413,11 +415,15 @@ void flushOrSync(boolean isSync, long seqno) throws IOException {
     long flushTotalNanos = 0;
     long begin = Time.monotonicNow();
     DataNodeFaultInjector.get().delay();
+    // with a coalescer, the files are synced with the other replicas of the
+    // volume once they are both flushed.
+    final VolumeSyncCoalescer syncCoalescer =
+        isSync ? getSyncCoalescer() : null;
     if (checksumOut != null) {
       long flushStartNanos = System.nanoTime();
       checksumOut.flush();
       long flushEndNanos = System.nanoTime();
-      if (isSync) {
+      if (isSync && syncCoalescer == null) {
         streams.syncChecksumOut();
         datanode.metrics.addFsyncNanos(System.nanoTime() - flushEndNanos);
       }
@@ -427,14 +433,26 @@ void flushOrSync(boolean isSync, long seqno) throws IOException {
       long flushStartNanos = System.nanoTime();
       streams.flushDataOut();
       long flushEndNanos = System.nanoTime();
-      if (isSync) {
+      if (isSync && syncCoalescer == null) {
         long fsyncStartNanos = flushEndNanos;
         streams.syncDataOut();
         datanode.metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
       }
       flushTotalNanos += flushEndNanos - flushStartNanos;
     }
-    if (isSync && !dirSyncOnHSyncDone && replicaInfo instanceof LocalReplica) {
+    if (syncCoalescer != null) {
+      File dir = null;
+      if (!dirSyncOnHSyncDone && replicaInfo instanceof LocalReplica) {
+        dir = ((LocalReplica) replicaInfo).getDir();
+      }
+      long fsyncStartNanos = System.nanoTime();
+      streams.syncOut(syncCoalescer, dir);
+      datanode.metrics.addFsyncNanos(System.nanoTime() - fsyncStartNanos);
+      if (dir != null) {
+        dirSyncOnHSyncDone = true;
+      }
+    } else if (isSync && !dirSyncOnHSyncDone
+        && replicaInfo instanceof LocalReplica) {
       ((LocalReplica) replicaInfo).fsyncDirectory();
       dirSyncOnHSyncDone = true;
     }
@@ -1118,6 +1136,17 @@ private void initPerfMonitoring(DatanodeInfo[] downstreams) {
     }
   }
 
+  /**
+   * @return the coalescer of the syncs of the volume of this replica, or null
+   *         if the replica syncs its files itself.
+   */
+  private VolumeSyncCoalescer getSyncCoalescer() {
+    final FsVolumeSpi volume = replicaInfo.getVolume();
+    final VolumeSyncCoalescer coalescer =
+        volume != null ? volume.getSyncCoalescer() : null;
+    return coalescer != null && coalescer.isCoalescing() ? coalescer : null;
+  }
+
   /**
    * Fetch the base URI of the volume on which this replica resides.
    *
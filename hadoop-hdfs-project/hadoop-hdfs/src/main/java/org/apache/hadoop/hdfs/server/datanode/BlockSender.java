@@ -24,12 +24,17 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
@@ -42,6 +47,7 @@
 import org.apache.hadoop.hdfs.protocol.datatransfer.PacketHeader;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.common.DataNodeLockManager.LockLevel;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeReference;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.LengthInputStream;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.ReplicaInputStreams;
@@ -50,6 +56,7 @@
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.ReadaheadPool.ReadaheadRequest;
 import org.apache.hadoop.net.SocketOutputStream;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.hadoop.util.AutoCloseableLock;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.tracing.TraceScope;
@@ -170,6 +177,14 @@ class BlockSender implements java.io.Closeable {
   
   private long lastCacheDropOffset;
   private final FileIoProvider fileIoProvider;
+
+  /**
+   * The buffer of the next packet, read in advance while the current packet
+   * is sent, or null when the packets are read synchronously.
+   */
+  private ByteBuffer nextPktBuf;
+  /** The read in advance of the next packet, or null. */
+  private Future<Void> nextPktRead;
   
   @VisibleForTesting
   static long CACHE_DROP_INTERVAL_BYTES = 1024 * 1024; // 1MB
@@ -478,6 +493,15 @@ private ChunkChecksum getPartialChunkChecksumForFinalized(
    */
   @Override
   public void close() throws IOException {
+    if (nextPktRead != null) {
+      // the streams are still read for the next packet, which is not sent.
+      try {
+        Uninterruptibles.getUninterruptibly(nextPktRead);
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to read the next packet of {}", block, e);
+      }
+      nextPktRead = null;
+    }
     if (ris.getDataInFd() != null &&
         ((dropCacheBehindAllReads) ||
          (dropCacheBehindLargeReads && isLongRead()))) {
@@ -555,7 +579,12 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int numChunks = numberOfChunks(dataLen); // Number of chunks be sent in the packet
     int checksumDataLen = numChunks * checksumSize;
     int packetLen = dataLen + checksumDataLen + 4;
-    boolean lastDataPacket = offset + dataLen == endOffset && dataLen > 0;
+    final boolean readInAdvance = nextPktRead != null;
+    if (readInAdvance) {
+      // the checksums and data of the packet were read in pkt while the
+      // previous packet was sent.
+      awaitNextPacketRead();
+    }
 
     // The packet buffer is organized as follows:
     // _______HHHHCCCCD?D?D?D?
@@ -576,35 +605,14 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     int checksumOff = pkt.position();
     byte[] buf = pkt.array();
     
-    if (checksumSize > 0 && ris.getChecksumIn() != null) {
-      readChecksum(buf, checksumOff, checksumDataLen);
-
-      // write in progress that we need to use to get last checksum
-      if (lastDataPacket && lastChunkChecksum != null) {
-        int start = checksumOff + checksumDataLen - checksumSize;
-        byte[] updatedChecksum = lastChunkChecksum.getChecksum();
-        if (updatedChecksum != null) {
-          System.arraycopy(updatedChecksum, 0, buf, start, checksumSize);
-        }
-      }
+    if (!readInAdvance) {
+      readPacket(buf, checksumOff, offset, dataLen, !transferTo);
     }
-    
-    int dataOff = checksumOff + checksumDataLen;
-    if (!transferTo) { // normal transfer
-      try {
-        ris.readDataFully(buf, dataOff, dataLen);
-      } catch (IOException ioe) {
-        if (ioe.getMessage().startsWith(EIO_ERROR)) {
-          throw new DiskFileCorruptException("A disk IO error occurred", ioe);
-        }
-        throw ioe;
-      }
-
-      if (verifyChecksum) {
-        verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
-      }
+    if (nextPktBuf != null) {
+      readNextPacketAsync(checksumOff, offset + dataLen, maxChunks);
     }
     
+    int dataOff = checksumOff + checksumDataLen;
     try {
       if (transferTo) {
         SocketOutputStream sockOut = (SocketOutputStream)out;
@@ -672,16 +680,117 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
 
     return dataLen;
   }
-  
+
+  /**
+   * Read the checksums and data of a packet into given buffer.
+   * @param buf buffer to read the packet into
+   * @param checksumOff offset at which to write the checksums into buf, the
+   *                    data follows the checksums
+   * @param pktOffset offset of the packet in the block
+   * @param dataLen length of the data of the packet
+   * @param readData false if the data is sent with transferTo
+   * @throws IOException on error
+   */
+  private void readPacket(byte[] buf, int checksumOff, long pktOffset,
+      int dataLen, boolean readData) throws IOException {
+    int numChunks = numberOfChunks(dataLen);
+    int checksumDataLen = numChunks * checksumSize;
+    boolean lastDataPacket = pktOffset + dataLen == endOffset && dataLen > 0;
+
+    if (checksumSize > 0 && ris.getChecksumIn() != null) {
+      readChecksum(buf, checksumOff, checksumDataLen, pktOffset);
+
+      // write in progress that we need to use to get last checksum
+      if (lastDataPacket && lastChunkChecksum != null) {
+        int start = checksumOff + checksumDataLen - checksumSize;
+        byte[] updatedChecksum = lastChunkChecksum.getChecksum();
+        if (updatedChecksum != null) {
+          System.arraycopy(updatedChecksum, 0, buf, start, checksumSize);
+        }
+      }
+    }
+
+    int dataOff = checksumOff + checksumDataLen;
+    if (readData) { // normal transfer
+      try {
+        ris.readDataFully(buf, dataOff, dataLen);
+      } catch (IOException ioe) {
+        if (ioe.getMessage().startsWith(EIO_ERROR)) {
+          throw new DiskFileCorruptException("A disk IO error occurred", ioe);
+        }
+        throw ioe;
+      }
+
+      if (verifyChecksum) {
+        verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff,
+            pktOffset);
+      }
+    }
+  }
+
+  /**
+   * Start reading the next packet into nextPktBuf, on the executor of the
+   * datanode, so that the disk read overlaps with sending the current packet.
+   * @param checksumOff offset of the checksums in the packet buffers
+   * @param pktOffset offset of the next packet in the block
+   * @param maxChunks maximum number of chunks in a packet
+   */
+  private void readNextPacketAsync(final int checksumOff, final long pktOffset,
+      int maxChunks) {
+    final ExecutorService executor = datanode.getAsyncReadExecutor();
+    if (pktOffset >= endOffset || executor == null) {
+      // the last packet is empty, there is nothing to read.
+      return;
+    }
+    final int dataLen = (int) Math.min(endOffset - pktOffset,
+        (chunkSize * (long) maxChunks));
+    final byte[] buf = nextPktBuf.array();
+    // the reads are scheduled in the I/O class of the sender.
+    final IoClass ioClass = VolumeIoScheduler.getIoClass();
+    try {
+      nextPktRead = executor.submit(() -> {
+        final IoClass previous = VolumeIoScheduler.setIoClass(ioClass);
+        try {
+          readPacket(buf, checksumOff, pktOffset, dataLen, true);
+        } finally {
+          VolumeIoScheduler.setIoClass(previous);
+        }
+        return null;
+      });
+    } catch (RejectedExecutionException e) {
+      // the datanode is shutting down, read the next packet synchronously.
+      LOG.debug("Could not read the next packet of {} in advance", block, e);
+    }
+  }
+
+  /** Wait for the read in advance of the packet to send. */
+  private void awaitNextPacketRead() throws IOException {
+    try {
+      nextPktRead.get();
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while reading " + block).initCause(e);
+    } catch (ExecutionException e) {
+      nextPktRead = null;
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to read " + block, cause);
+    }
+    nextPktRead = null;
+  }
+
   /**
    * Read checksum into given buffer
    * @param buf buffer to read the checksum into
    * @param checksumOffset offset at which to write the checksum into buf
    * @param checksumLen length of checksum to write
+   * @param pktOffset offset of the packet in the block
    * @throws IOException on error
    */
   private void readChecksum(byte[] buf, final int checksumOffset,
-      final int checksumLen) throws IOException {
+      final int checksumLen, final long pktOffset) throws IOException {
     if (checksumSize <= 0 && ris.getChecksumIn() == null) {
       return;
     }
@@ -689,7 +798,7 @@ private void readChecksum(byte[] buf, final int checksumOffset,
       ris.readChecksumFully(buf, checksumOffset, checksumLen);
     } catch (IOException e) {
       LOG.warn(" Could not read or failed to verify checksum for data"
-          + " at offset " + offset + " for block " + block, e);
+          + " at offset " + pktOffset + " for block " + block, e);
       ris.closeChecksumStream();
       if (corruptChecksumOk) {
         if (checksumLen > 0) {
@@ -717,6 +826,13 @@ private void readChecksum(byte[] buf, final int checksumOffset,
   public void verifyChecksum(final byte[] buf, final int dataOffset,
       final int datalen, final int numChunks, final int checksumOffset)
       throws ChecksumException {
+    verifyChecksum(buf, dataOffset, datalen, numChunks, checksumOffset,
+        offset);
+  }
+
+  private void verifyChecksum(final byte[] buf, final int dataOffset,
+      final int datalen, final int numChunks, final int checksumOffset,
+      final long pktOffset) throws ChecksumException {
     int dOff = dataOffset;
     int cOff = checksumOffset;
     int dLeft = datalen;
@@ -726,7 +842,7 @@ public void verifyChecksum(final byte[] buf, final int dataOffset,
       int dLen = Math.min(dLeft, chunkSize);
       checksum.update(buf, dOff, dLen);
       if (!checksum.compare(buf, cOff)) {
-        long failedPos = offset + datalen - dLeft;
+        long failedPos = pktOffset + datalen - dLeft;
         StringBuilder replicaInfoString = new StringBuilder();
         if (replica != null) {
           replicaInfoString.append(" for replica: " + replica.toString());
@@ -808,11 +924,20 @@ private long doSendBlock(DataOutputStream out, OutputStream baseStream,
       }
 
       ByteBuffer pktBuf = ByteBuffer.allocate(pktBufSize);
+      if (!transferTo && datanode.getAsyncReadExecutor() != null) {
+        nextPktBuf = ByteBuffer.allocate(pktBufSize);
+      }
 
       while (endOffset > offset && !Thread.currentThread().isInterrupted()) {
         manageOsCache();
         long len = sendPacket(pktBuf, maxChunksPerPacket, streamForSendChunks,
             transferTo, throttler);
+        if (nextPktRead != null) {
+          // send the packet being read in advance next.
+          ByteBuffer sent = pktBuf;
+          pktBuf = nextPktBuf;
+          nextPktBuf = sent;
+        }
         offset += len;
         totalRead += len + (numberOfChunks(len) * checksumSize);
         seqno++;
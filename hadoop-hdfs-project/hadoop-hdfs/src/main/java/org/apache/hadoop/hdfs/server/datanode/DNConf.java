@@ -93,6 +93,8 @@ public class DNConf {
   private final boolean tcpNoDelay;
 
   final boolean transferToAllowed;
+  final boolean asyncReadEnabled;
+  final int asyncReadThreads;
   final boolean dropCacheBehindWrites;
   final boolean syncBehindWrites;
   final boolean syncBehindWritesInBackground;
@@ -167,6 +169,12 @@ public DNConf(final Configurable dn) {
     transferToAllowed = getConf().getBoolean(
         DFS_DATANODE_TRANSFERTO_ALLOWED_KEY,
         DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT);
+    asyncReadEnabled = getConf().getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_ENABLED_DEFAULT);
+    asyncReadThreads = getConf().getInt(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_THREADS_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_THREADS_DEFAULT);
 
     readaheadLength = getConf().getLong(
         HdfsClientConfigKeys.DFS_DATANODE_READAHEAD_BYTES_KEY,
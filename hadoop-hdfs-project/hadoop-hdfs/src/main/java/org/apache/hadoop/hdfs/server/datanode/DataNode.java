@@ -212,6 +212,7 @@
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.SecureDataNodeStarter.SecureResources;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
 import org.apache.hadoop.hdfs.server.datanode.erasurecode.ErasureCodingWorker;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
@@ -258,6 +259,7 @@
 import org.apache.hadoop.thirdparty.com.google.common.cache.CacheBuilder;
 import org.apache.hadoop.thirdparty.com.google.common.cache.CacheLoader;
 import org.apache.hadoop.thirdparty.com.google.common.cache.LoadingCache;
+import org.apache.hadoop.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.thirdparty.protobuf.BlockingService;
 
 import org.slf4j.Logger;
@@ -432,6 +434,8 @@ public static InetSocketAddress createSocketAddr(String target) {
   private final List<String> usersWithLocalPathAccess;
   private final boolean connectToDnViaHostname;
   ReadaheadPool readaheadPool;
+  /** Reads the next packets of the block senders in advance, or null. */
+  private ExecutorService asyncReadExecutor;
   SaslDataTransferClient saslClient;
   SaslDataTransferServer saslServer;
   private ObjectName dataNodeInfoBeanName;
@@ -1819,6 +1823,11 @@ void startDataNode(List<StorageLocation> dataDirectories,
     // Create the ReadaheadPool from the DataNode context so we can
     // exit without having to explicitly shutdown its thread pool.
     readaheadPool = ReadaheadPool.getInstance();
+    if (dnConf.asyncReadEnabled) {
+      asyncReadExecutor = HadoopExecutors.newFixedThreadPool(
+          dnConf.asyncReadThreads, new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("Async block reader #%d").build());
+    }
     saslClient = new SaslDataTransferClient(dnConf.getConf(),
         dnConf.saslPropsResolver, dnConf.trustedChannelResolver);
     saslServer = new SaslDataTransferServer(dnConf, blockPoolTokenSecretManager);
@@ -2457,6 +2466,10 @@ public void shutdown() {
 
     LOG.info("Waiting up to 30 seconds for transfer threads to complete");
     HadoopExecutors.shutdown(this.xferService, LOG, 15L, TimeUnit.SECONDS);
+    if (asyncReadExecutor != null) {
+      // the block senders read synchronously once the executor is shut down.
+      asyncReadExecutor.shutdown();
+    }
 
     // wait for all data receiver threads to exit
     if (this.threadGroup != null) {
@@ -2914,6 +2927,9 @@ public void run() {
       DataInputStream in = null;
       BlockSender blockSender = null;
       final boolean isClient = clientname.length() > 0;
+      // a client transfers a block to recover its pipeline.
+      final IoClass previousIoClass = VolumeIoScheduler.setIoClass(isClient ?
+          IoClass.PIPELINE_WRITE : IoClass.REPLICATION);
       
       try {
         final String dnAddr = targets[0].getXferAddr(connectToDnViaHostname);
@@ -2996,6 +3012,7 @@ public void run() {
         IOUtils.closeStream(out);
         IOUtils.closeStream(in);
         IOUtils.closeSocket(sock);
+        VolumeIoScheduler.setIoClass(previousIoClass);
       }
     }
 
@@ -3822,6 +3839,14 @@ public long getBalancerBandwidth() {
     return dxcs.balanceThrottler.getBandwidth();
   }
   
+  /**
+   * @return the executor of the reads in advance of the block senders, or
+   * null when they read synchronously.
+   */
+  ExecutorService getAsyncReadExecutor() {
+    return asyncReadExecutor;
+  }
+
   public DNConf getDnConf() {
     return dnConf;
   }
@@ -58,10 +58,12 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNode.ShortCircuitFdsUnsupportedException;
 import org.apache.hadoop.hdfs.server.datanode.DataNode.ShortCircuitFdsVersionException;
 import org.apache.hadoop.hdfs.server.datanode.ShortCircuitRegistry.NewShmInfo;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.net.SocketInputStream;
 import org.apache.hadoop.net.unix.DomainSocket;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
@@ -86,6 +88,8 @@
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
@@ -122,6 +126,12 @@ class DataXceiver extends Receiver implements Runnable {
   private final int ioFileBufferSize;
   private final int smallBufferSize;
   private Thread xceiver = null;
+  /** The number of ops processed on the connection. */
+  private int opsProcessed = 0;
+  /** Whether the streams of the connection have been set up. */
+  private boolean initialized = false;
+  /** Whether the keepalive expired while the connection was parked. */
+  private volatile boolean idleTimedOut = false;
 
   /**
    * Client Name used in previous operation. Not available on first request
@@ -221,45 +231,41 @@ private synchronized BlockReceiver getCurrentBlockReceiver() {
    */
   @Override
   public void run() {
-    int opsProcessed = 0;
     Op op = null;
+    boolean parked = false;
+    // resumed by the selector since the channel is readable: the next op
+    // must be read, the buffered stream cannot tell whether it has arrived.
+    boolean resumed = false;
 
     try {
       synchronized(this) {
         xceiver = Thread.currentThread();
       }
-      dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
-      peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
-      InputStream input = socketIn;
-      try {
-        IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
-          socketIn, datanode.getXferAddress().getPort(),
-          datanode.getDatanodeId());
-        input = new BufferedInputStream(saslStreams.in,
-            smallBufferSize);
-        socketOut = saslStreams.out;
-      } catch (InvalidMagicNumberException imne) {
-        if (imne.isHandshake4Encryption()) {
-          LOG.info("Failed to read expected encryption handshake from client " +
-              "at {}. Perhaps the client " +
-              "is running an older version of Hadoop which does not support " +
-              "encryption", peer.getRemoteAddressString(), imne);
-        } else {
-          LOG.info("Failed to read expected SASL data transfer protection " +
-              "handshake from client at {}" +
-              ". Perhaps the client is running an older version of Hadoop " +
-              "which does not support SASL data transfer protection",
-              peer.getRemoteAddressString(), imne);
+      if (initialized) {
+        // resumed by the DataXceiverSelector.
+        if (idleTimedOut) {
+          LOG.debug("Cached {} closing after {} ops.  " +
+              "This message is usually benign.", peer, opsProcessed);
+          return;
+        }
+        dataXceiverServer.setPeerThread(peer, Thread.currentThread());
+        resumed = true;
+      } else {
+        setUpStreams();
+        if (!initialized) {
+          return;
         }
-        return;
       }
-      
-      super.initialize(new DataInputStream(input));
-      
+
       // We process requests in a loop, and stay around for a short timeout.
       // This optimistic behaviour allows the other end to reuse connections.
       // Setting keepalive timeout to 0 disable this behavior.
       do {
+        if (opsProcessed != 0 && !resumed && shouldPark()) {
+          parked = true;
+          return;
+        }
+        resumed = false;
         updateCurrentThreadName("Waiting for operation #" + (opsProcessed + 1));
 
         try {
@@ -290,7 +296,11 @@ public void run() {
         }
 
         opStartTime = monotonicNow();
-        processOp(op);
+        try {
+          processOp(op);
+        } finally {
+          VolumeIoScheduler.setIoClass(null);
+        }
         ++opsProcessed;
       } while ((peer != null) &&
           (!peer.isClosed() && dnConf.socketKeepaliveTimeout > 0));
@@ -326,16 +336,108 @@ public void run() {
       }
     } finally {
       collectThreadLocalStates();
-      LOG.debug("{}:Number of active connections is: {}",
-          datanode.getDisplayName(), datanode.getXceiverCount());
-      updateCurrentThreadName("Cleaning up");
-      if (peer != null) {
-        dataXceiverServer.closePeer(peer);
-        IOUtils.closeStream(in);
+      if (parked) {
+        // the selector resumes the xceiver on another thread.
+        parkOnSelector();
+      } else {
+        LOG.debug("{}:Number of active connections is: {}",
+            datanode.getDisplayName(), datanode.getXceiverCount());
+        updateCurrentThreadName("Cleaning up");
+        if (peer != null) {
+          dataXceiverServer.closePeer(peer);
+          IOUtils.closeStream(in);
+        }
       }
     }
   }
 
+  /**
+   * Set up the streams of the connection.
+   * initialized is left false if the connection is to be closed.
+   */
+  private void setUpStreams() throws IOException {
+    dataXceiverServer.addPeer(peer, Thread.currentThread(), this);
+    peer.setWriteTimeout(datanode.getDnConf().socketWriteTimeout);
+    InputStream input = socketIn;
+    try {
+      IOStreamPair saslStreams = datanode.saslServer.receive(peer, socketOut,
+        socketIn, datanode.getXferAddress().getPort(),
+        datanode.getDatanodeId());
+      input = new BufferedInputStream(saslStreams.in,
+          smallBufferSize);
+      socketOut = saslStreams.out;
+    } catch (InvalidMagicNumberException imne) {
+      if (imne.isHandshake4Encryption()) {
+        LOG.info("Failed to read expected encryption handshake from client " +
+            "at {}. Perhaps the client " +
+            "is running an older version of Hadoop which does not support " +
+            "encryption", peer.getRemoteAddressString(), imne);
+      } else {
+        LOG.info("Failed to read expected SASL data transfer protection " +
+            "handshake from client at {}" +
+            ". Perhaps the client is running an older version of Hadoop " +
+            "which does not support SASL data transfer protection",
+            peer.getRemoteAddressString(), imne);
+      }
+      return;
+    }
+    
+    super.initialize(new DataInputStream(input));
+    initialized = true;
+  }
+
+  /**
+   * Check whether the connection can wait for its next operation on the
+   * selector of the DataXceiverServer rather than on this thread: it must be
+   * a plain selectable channel with no data already buffered.
+   *
+   * @return true if the xceiver must return from run() to park.
+   */
+  private boolean shouldPark() throws IOException {
+    if (!dataXceiverServer.isParkingEnabled() || peer == null
+        || peer.isClosed() || in.available() > 0) {
+      return false;
+    }
+    return getSelectableChannel() != null;
+  }
+
+  private SelectableChannel getSelectableChannel() {
+    if (socketOut != peer.getOutputStream()) {
+      // wrapped by SASL, the wrapping streams may hold data.
+      return null;
+    }
+    ReadableByteChannel channel = peer.getInputStreamChannel();
+    if (channel instanceof SocketInputStream) {
+      channel = ((SocketInputStream) channel).getChannel();
+    }
+    if (channel instanceof SelectableChannel
+        && !((SelectableChannel) channel).isBlocking()) {
+      return (SelectableChannel) channel;
+    }
+    return null;
+  }
+
+  /**
+   * Hand the idle connection to the selector, as the last action of run().
+   */
+  private void parkOnSelector() {
+    updateCurrentThreadName("Parked");
+    synchronized(this) {
+      xceiver = null;
+    }
+    dataXceiverServer.setPeerThread(peer, null);
+    if (!dataXceiverServer.park(this, getSelectableChannel(),
+        dnConf.socketKeepaliveTimeout)) {
+      // the server is shutting down.
+      idleTimedOut = true;
+      run();
+    }
+  }
+
+  void setIdleTimedOut(boolean timedOut) {
+    this.idleTimedOut = timedOut;
+  }
+
   /**
    * In this short living thread, any local states should be collected before
    * the thread dies away.
@@ -578,6 +680,9 @@ public void readBlock(final ExtendedBlock block,
     previousOpClientName = clientName;
     long read = 0;
     updateCurrentThreadName("Sending block " + block);
+    // datanodes read with no client name to reconstruct striped blocks.
+    VolumeIoScheduler.setIoClass(clientName.isEmpty() ?
+        IoClass.REPLICATION : IoClass.CLIENT_READ);
     OutputStream baseStream = getOutputStream();
     DataOutputStream out = getBufferedOutputStream();
     checkAccess(out, true, block, blockToken, Op.READ_BLOCK,
@@ -691,6 +796,8 @@ public void writeBlock(final ExtendedBlock block,
     updateCurrentThreadName("Receiving block " + block);
     final boolean isDatanode = clientname.length() == 0;
     final boolean isClient = !isDatanode;
+    VolumeIoScheduler.setIoClass(isClient ?
+        IoClass.PIPELINE_WRITE : IoClass.REPLICATION);
     final boolean isTransfer = stage == BlockConstructionStage.TRANSFER_RBW
         || stage == BlockConstructionStage.TRANSFER_FINALIZED;
     allowLazyPersist = allowLazyPersist &&
@@ -1081,6 +1188,7 @@ public void blockGroupChecksum(final StripedBlockInfo stripedBlockInfo,
   public void copyBlock(final ExtendedBlock block,
       final Token<BlockTokenIdentifier> blockToken) throws IOException {
     updateCurrentThreadName("Copying block " + block);
+    VolumeIoScheduler.setIoClass(IoClass.REPLICATION);
     DataOutputStream reply = getBufferedOutputStream();
     checkAccess(reply, true, block, blockToken, Op.COPY_BLOCK,
         BlockTokenIdentifier.AccessMode.COPY);
@@ -1161,6 +1269,7 @@ public void replaceBlock(final ExtendedBlock block,
       final DatanodeInfo proxySource,
       final String storageId) throws IOException {
     updateCurrentThreadName("Replacing block " + block + " from " + delHint);
+    VolumeIoScheduler.setIoClass(IoClass.REPLICATION);
     DataOutputStream replyOut = new DataOutputStream(getOutputStream());
     checkAccess(replyOut, true, block, blockToken,
         Op.REPLACE_BLOCK, BlockTokenIdentifier.AccessMode.REPLACE,
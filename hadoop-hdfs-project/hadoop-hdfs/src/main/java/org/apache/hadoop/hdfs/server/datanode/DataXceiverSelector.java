@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.hadoop.io.IOUtils;
+import org.slf4j.Logger;
+
+/**
+ * Waits for the next operation of the idle, kept alive, data transfer
+ * connections on a single selector thread, instead of a thread per
+ * connection blocked in a read. When a connection becomes readable its
+ * {@link DataXceiver} is resumed on the worker pool of the
+ * {@link DataXceiverServer}; when its keepalive timeout expires first, it is
+ * resumed to close the connection.
+ */
+class DataXceiverSelector implements Runnable {
+  public static final Logger LOG = DataNode.LOG;
+
+  /** A parked xceiver and the time its keepalive expires. */
+  private static final class Parked {
+    private final DataXceiver xceiver;
+    private final SelectableChannel channel;
+    private final long deadline;
+
+    private Parked(DataXceiver xceiver, SelectableChannel channel,
+        long deadline) {
+      this.xceiver = xceiver;
+      this.channel = channel;
+      this.deadline = deadline;
+    }
+  }
+
+  private final Selector selector;
+  private final Executor executor;
+  private final Queue<Parked> toRegister = new ConcurrentLinkedQueue<>();
+  private volatile boolean running = true;
+
+  DataXceiverSelector(Executor executor) throws IOException {
+    this.selector = Selector.open();
+    this.executor = executor;
+  }
+
+  /**
+   * Wait for the next operation of a connection.
+   *
+   * @param xceiver the xceiver of the connection, which must no longer run.
+   * @param channel the non-blocking channel of the connection.
+   * @param keepaliveTimeout the keepalive timeout, in milliseconds.
+   */
+  void park(DataXceiver xceiver, SelectableChannel channel,
+      long keepaliveTimeout) {
+    toRegister.add(new Parked(xceiver, channel,
+        monotonicNow() + keepaliveTimeout));
+    selector.wakeup();
+    if (!running) {
+      // the selector was closed meanwhile, nobody would resume the xceiver.
+      resumeRegistrations();
+    }
+  }
+
+  /** @return the number of connections waiting for an operation. */
+  int getNumParked() {
+    try {
+      return selector.keys().size() + toRegister.size();
+    } catch (ClosedSelectorException e) {
+      return 0;
+    }
+  }
+
+  void stop() {
+    running = false;
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        selector.select(nextTimeout());
+        // register first: the keys cancelled by the previous iteration have
+        // been removed by the select, so their channels can be registered.
+        register();
+        long now = monotonicNow();
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+          SelectionKey key = it.next();
+          it.remove();
+          key.cancel();
+          resume(((Parked) key.attachment()).xceiver, false);
+        }
+        for (SelectionKey key : selector.keys()) {
+          Parked parked = (Parked) key.attachment();
+          if (key.isValid() && parked.deadline <= now) {
+            key.cancel();
+            resume(parked.xceiver, true);
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      if (running) {
+        LOG.warn("DataXceiverSelector exiting", e);
+      }
+    } finally {
+      running = false;
+      // resume all the parked xceivers, which will find their connection
+      // closed by the server or close it.
+      try {
+        for (SelectionKey key : selector.keys()) {
+          key.cancel();
+          resume(((Parked) key.attachment()).xceiver, true);
+        }
+      } catch (ClosedSelectorException ignored) {
+        // no key left
+      }
+      resumeRegistrations();
+      IOUtils.cleanupWithLogger(LOG, selector);
+    }
+  }
+
+  private long nextTimeout() {
+    long earliest = Long.MAX_VALUE;
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid()) {
+        earliest = Math.min(earliest, ((Parked) key.attachment()).deadline);
+      }
+    }
+    if (earliest == Long.MAX_VALUE) {
+      return 0; // no timeout
+    }
+    return Math.max(1, earliest - monotonicNow());
+  }
+
+  private void register() {
+    Parked parked;
+    while ((parked = toRegister.poll()) != null) {
+      try {
+        parked.channel.register(selector, SelectionKey.OP_READ, parked);
+      } catch (ClosedChannelException | IllegalBlockingModeException
+          | CancelledKeyException e) {
+        // let the xceiver carry on with a blocking read.
+        LOG.debug("Could not wait on {} with the selector", parked.channel, e);
+        resume(parked.xceiver, false);
+      }
+    }
+  }
+
+  private void resumeRegistrations() {
+    Parked parked;
+    while ((parked = toRegister.poll()) != null) {
+      resume(parked.xceiver, true);
+    }
+  }
+
+  private void resume(DataXceiver xceiver, boolean timedOut) {
+    xceiver.setIdleTimedOut(timedOut);
+    try {
+      executor.execute(xceiver);
+    } catch (RejectedExecutionException e) {
+      // the server is shutting down.
+      xceiver.setIdleTimedOut(true);
+      xceiver.run();
+    }
+  }
+}
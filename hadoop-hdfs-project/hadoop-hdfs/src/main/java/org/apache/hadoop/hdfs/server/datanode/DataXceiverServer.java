@@ -20,8 +20,11 @@
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectableChannel;
 import java.util.HashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -179,6 +182,13 @@ void release() {
    */
   final long estimateBlockSize;
 
+  /**
+   * The worker threads running the xceivers, and the selector the idle
+   * connections wait on, when the NIO transfer server is enabled.
+   */
+  private final ThreadPoolExecutor xceiverExecutor;
+  private volatile DataXceiverSelector xceiverSelector;
+
   DataXceiverServer(PeerServer peerServer, Configuration conf,
       DataNode datanode) {
     this.peerServer = peerServer;
@@ -194,6 +204,17 @@ void release() {
     this.estimateBlockSize = conf.getLongBytes(DFSConfigKeys.DFS_BLOCK_SIZE_KEY,
         DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT);
 
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_DEFAULT)) {
+      // the number of xceivers is bounded by maxXceiverCount at accept.
+      this.xceiverExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+          60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+          r -> new Daemon(datanode.threadGroup, r));
+    } else {
+      this.xceiverExecutor = null;
+    }
+
     //set up parameter for cluster balancing
     this.balanceThrottler = new BlockBalanceThrottler(
         conf.getLongBytes(DFSConfigKeys.DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_KEY,
@@ -223,6 +244,19 @@ void release() {
   @Override
   public void run() {
     Peer peer = null;
+    if (xceiverExecutor != null) {
+      try {
+        xceiverSelector = new DataXceiverSelector(xceiverExecutor);
+        Daemon selectorThread = new Daemon(datanode.threadGroup,
+            xceiverSelector);
+        selectorThread.setName("DataXceiverSelector for " +
+            peerServer.getListeningString());
+        selectorThread.start();
+      } catch (IOException ie) {
+        LOG.warn("{}:DataXceiverServer: idle connections will wait on " +
+            "their thread", datanode.getDisplayName(), ie);
+      }
+    }
     while (datanode.shouldRun && !datanode.shutdownForUpgrade) {
       try {
         peer = peerServer.accept();
@@ -235,9 +269,12 @@ public void run() {
               + maxXceiverCount);
         }
 
-        new Daemon(datanode.threadGroup,
-            DataXceiver.create(peer, datanode, this))
-            .start();
+        DataXceiver xceiver = DataXceiver.create(peer, datanode, this);
+        if (xceiverExecutor != null) {
+          xceiverExecutor.execute(xceiver);
+        } else {
+          new Daemon(datanode.threadGroup, xceiver).start();
+        }
       } catch (SocketTimeoutException ignored) {
         // wake up to see if should continue to run
       } catch (AsynchronousCloseException ace) {
@@ -281,6 +318,14 @@ public void run() {
       lock.unlock();
     }
 
+    if (xceiverSelector != null) {
+      xceiverSelector.stop();
+    }
+    if (xceiverExecutor != null) {
+      // let the running xceivers finish, as the daemon threads do.
+      xceiverExecutor.shutdown();
+    }
+
     // if in restart prep stage, notify peers before closing them.
     if (datanode.shutdownForUpgrade) {
       restartNotifyPeers();
@@ -327,6 +372,61 @@ void addPeer(Peer peer, Thread t, DataXceiver xceiver)
     }
   }
 
+  /**
+   * Update the thread running the xceiver of a peer.
+   *
+   * @param peer the peer.
+   * @param t the thread, or null while the xceiver waits on the selector.
+   */
+  void setPeerThread(Peer peer, Thread t) {
+    lock.lock();
+    try {
+      if (peers.containsKey(peer)) {
+        peers.put(peer, t);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** @return whether idle connections may wait on the selector. */
+  boolean isParkingEnabled() {
+    return xceiverSelector != null;
+  }
+
+  /**
+   * Let the idle connection of an xceiver wait for its next operation on the
+   * selector, without a thread.
+   *
+   * @param xceiver the xceiver, which must return from its run() if parked.
+   * @param channel the channel of the connection.
+   * @param keepaliveTimeout the keepalive timeout, in milliseconds.
+   * @return true if the xceiver has been parked.
+   */
+  boolean park(DataXceiver xceiver, SelectableChannel channel,
+      long keepaliveTimeout) {
+    DataXceiverSelector selector = xceiverSelector;
+    if (selector == null || !datanode.shouldRun ||
+        datanode.shutdownForUpgrade) {
+      return false;
+    }
+    selector.park(xceiver, channel, keepaliveTimeout);
+    return true;
+  }
+
+  /** @return the number of idle connections waiting on the selector. */
+  @VisibleForTesting
+  int getNumParkedXceivers() {
+    DataXceiverSelector selector = xceiverSelector;
+    return selector == null ? 0 : selector.getNumParked();
+  }
+
+  /** @return the number of threads running xceivers, if pooled. */
+  @VisibleForTesting
+  int getNumXceiverThreads() {
+    return xceiverExecutor == null ? 0 : xceiverExecutor.getPoolSize();
+  }
+
   void closePeer(Peer peer) {
     lock.lock();
     try {
@@ -381,8 +481,12 @@ void restartNotifyPeers() {
     assert (datanode.shouldRun && datanode.shutdownForUpgrade);
     lock.lock();
     try {
-      // interrupt each and every DataXceiver thread.
-      peers.values().forEach(t -> t.interrupt());
+      // interrupt each and every DataXceiver thread, the idle ones have none.
+      peers.values().forEach(t -> {
+        if (t != null) {
+          t.interrupt();
+        }
+      });
     } finally {
       lock.unlock();
     }
@@ -531,6 +531,7 @@ private void executePlan() {
       @Override
       public void run() {
         Thread.currentThread().setName("DiskBalancerThread");
+        VolumeIoScheduler.setIoClass(VolumeIoScheduler.IoClass.REPLICATION);
         LOG.info("Executing Disk balancer plan. Plan File: {}, Plan ID: {}",
             planFile, planID);
         for (Map.Entry<VolumePair, DiskBalancerWorkItem> entry :
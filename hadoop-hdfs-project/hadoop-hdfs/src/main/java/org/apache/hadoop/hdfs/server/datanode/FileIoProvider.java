@@ -127,10 +127,12 @@ public enum OPERATION {
    */
   public void flush(
       @Nullable FsVolumeSpi volume, Flushable f) throws IOException {
+    beforeScheduledIo(volume, 0);
     final long begin = profilingEventHook.beforeFileIo(volume, FLUSH, 0);
     try {
       faultInjectorEventHook.beforeFileIo(volume, FLUSH, 0);
       f.flush();
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, FLUSH, begin, 0);
     } catch (Exception e) {
       onFailure(volume, begin);
@@ -146,10 +148,12 @@ public void flush(
    */
   public void sync(
       @Nullable FsVolumeSpi volume, FileOutputStream fos) throws IOException {
+    beforeScheduledIo(volume, 0);
     final long begin = profilingEventHook.beforeFileIo(volume, SYNC, 0);
     try {
       faultInjectorEventHook.beforeFileIo(volume, SYNC, 0);
       IOUtils.fsync(fos.getChannel(), false);
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, SYNC, begin, 0);
     } catch (Exception e) {
       onFailure(volume, begin);
@@ -163,10 +167,12 @@ public void sync(
    */
   public void dirSync(@Nullable FsVolumeSpi volume, File dir)
       throws IOException {
+    beforeScheduledIo(volume, 0);
     final long begin = profilingEventHook.beforeFileIo(volume, SYNC, 0);
     try {
       faultInjectorEventHook.beforeFileIo(volume, SYNC, 0);
       IOUtils.fsync(dir);
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, SYNC, begin, 0);
     } catch (Exception e) {
       onFailure(volume, begin);
@@ -182,10 +188,12 @@ public void dirSync(@Nullable FsVolumeSpi volume, File dir)
   public void syncFileRange(
       @Nullable FsVolumeSpi volume, FileDescriptor outFd,
       long offset, long numBytes, int flags) throws NativeIOException {
+    beforeScheduledIo(volume, 0);
     final long begin = profilingEventHook.beforeFileIo(volume, SYNC, 0);
     try {
       faultInjectorEventHook.beforeFileIo(volume, SYNC, 0);
       NativeIO.POSIX.syncFileRangeIfPossible(outFd, offset, numBytes, flags);
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, SYNC, begin, 0);
     } catch (Exception e) {
       onFailure(volume, begin);
@@ -272,13 +280,16 @@ public void transferToSocketFully(
       @Nullable FsVolumeSpi volume, SocketOutputStream sockOut,
       FileChannel fileCh, long position, int count,
       LongWritable waitTime, LongWritable transferTime) throws IOException {
+    beforeScheduledIo(volume, count);
     final long begin = profilingEventHook.beforeFileIo(volume, TRANSFER, count);
     try {
       faultInjectorEventHook.beforeFileIo(volume, TRANSFER, count);
       sockOut.transferToFully(fileCh, position, count,
           waitTime, transferTime);
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, TRANSFER, begin, count);
     } catch (Exception e) {
+      afterScheduledIo(volume);
       String em = e.getMessage();
       if (em != null) {
         if (!em.startsWith("Broken pipe")
@@ -629,11 +640,13 @@ public void nativeCopyFileUnbuffered(
       @Nullable FsVolumeSpi volume, File src, File target,
       boolean preserveFileDate) throws IOException {
     final long length = src.length();
+    beforeScheduledIo(volume, length);
     final long begin = profilingEventHook.beforeFileIo(volume, NATIVE_COPY,
         length);
     try {
       faultInjectorEventHook.beforeFileIo(volume, NATIVE_COPY, length);
       Storage.nativeCopyFileUnbuffered(src, target, preserveFileDate);
+      afterScheduledIo(volume);
       profilingEventHook.afterFileIo(volume, NATIVE_COPY, begin, length);
     } catch(Exception e) {
       onFailure(volume, begin);
@@ -841,10 +854,12 @@ private WrappedFileInputStream(
      */
     @Override
     public int read() throws IOException {
+      beforeScheduledIo(volume, LEN_INT);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, LEN_INT);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, LEN_INT);
         int b = super.read();
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, LEN_INT);
         return b;
       } catch(Exception e) {
@@ -858,11 +873,13 @@ public int read() throws IOException {
      */
     @Override
     public int read(@Nonnull byte[] b) throws IOException {
+      beforeScheduledIo(volume, b.length);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, b
           .length);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, b.length);
         int numBytesRead = super.read(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, numBytesRead);
         return numBytesRead;
       } catch(Exception e) {
@@ -876,10 +893,12 @@ public int read(@Nonnull byte[] b) throws IOException {
      */
     @Override
     public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+      beforeScheduledIo(volume, len);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, len);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, len);
         int numBytesRead = super.read(b, off, len);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, numBytesRead);
         return numBytesRead;
       } catch(Exception e) {
@@ -920,11 +939,13 @@ private WrappedFileOutputStream(
      */
     @Override
     public void write(int b) throws IOException {
+      beforeScheduledIo(volume, LEN_INT);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE,
           LEN_INT);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, LEN_INT);
         super.write(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, LEN_INT);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -937,11 +958,13 @@ public void write(int b) throws IOException {
      */
     @Override
     public void write(@Nonnull byte[] b) throws IOException {
+      beforeScheduledIo(volume, b.length);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE, b
           .length);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, b.length);
         super.write(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, b.length);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -954,10 +977,12 @@ public void write(@Nonnull byte[] b) throws IOException {
      */
     @Override
     public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+      beforeScheduledIo(volume, len);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE, len);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, len);
         super.write(b, off, len);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, len);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -982,10 +1007,12 @@ public WrappedRandomAccessFile(
 
     @Override
     public int read() throws IOException {
+      beforeScheduledIo(volume, LEN_INT);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, LEN_INT);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, LEN_INT);
         int b = super.read();
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, LEN_INT);
         return b;
       } catch(Exception e) {
@@ -996,10 +1023,12 @@ public int read() throws IOException {
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
+      beforeScheduledIo(volume, len);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, len);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, len);
         int numBytesRead = super.read(b, off, len);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, numBytesRead);
         return numBytesRead;
       } catch(Exception e) {
@@ -1010,11 +1039,13 @@ public int read(byte[] b, int off, int len) throws IOException {
 
     @Override
     public int read(byte[] b) throws IOException {
+      beforeScheduledIo(volume, b.length);
       final long begin = profilingEventHook.beforeFileIo(volume, READ, b
           .length);
       try {
         faultInjectorEventHook.beforeFileIo(volume, READ, b.length);
         int numBytesRead = super.read(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, READ, begin, numBytesRead);
         return numBytesRead;
       } catch(Exception e) {
@@ -1025,11 +1056,13 @@ public int read(byte[] b) throws IOException {
 
     @Override
     public void write(int b) throws IOException {
+      beforeScheduledIo(volume, LEN_INT);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE,
           LEN_INT);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, LEN_INT);
         super.write(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, LEN_INT);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -1039,11 +1072,13 @@ public void write(int b) throws IOException {
 
     @Override
     public void write(@Nonnull byte[] b) throws IOException {
+      beforeScheduledIo(volume, b.length);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE, b
           .length);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, b.length);
         super.write(b);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, b.length);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -1053,10 +1088,12 @@ public void write(@Nonnull byte[] b) throws IOException {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
+      beforeScheduledIo(volume, len);
       final long begin = profilingEventHook.beforeFileIo(volume, WRITE, len);
       try {
         faultInjectorEventHook.beforeFileIo(volume, WRITE, len);
         super.write(b, off, len);
+        afterScheduledIo(volume);
         profilingEventHook.afterFileIo(volume, WRITE, begin, len);
       } catch(Exception e) {
         onFailure(volume, begin);
@@ -1069,9 +1106,31 @@ private void onFailure(@Nullable FsVolumeSpi volume, long begin) {
     if (datanode != null && volume != null) {
       datanode.checkDiskErrorAsync(volume);
     }
+    afterScheduledIo(volume);
     profilingEventHook.onFailure(volume, begin);
   }
 
+  /**
+   * Wait for the turn of a data file IO on the volume, see
+   * {@link VolumeIoScheduler}.
+   */
+  private static void beforeScheduledIo(@Nullable FsVolumeSpi volume,
+      long len) {
+    final VolumeIoScheduler scheduler =
+        volume == null ? null : volume.getIoScheduler();
+    if (scheduler != null) {
+      scheduler.beforeFileIo(len);
+    }
+  }
+
+  private static void afterScheduledIo(@Nullable FsVolumeSpi volume) {
+    final VolumeIoScheduler scheduler =
+        volume == null ? null : volume.getIoScheduler();
+    if (scheduler != null) {
+      scheduler.afterFileIo();
+    }
+  }
+
   public ProfilingFileIoEvents getProfilingEventHook() {
     return profilingEventHook;
   }
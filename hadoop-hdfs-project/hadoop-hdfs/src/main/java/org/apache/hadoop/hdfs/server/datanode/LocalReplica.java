@@ -127,6 +127,23 @@ protected File getDir() {
         getBlockId()) : baseDir;
   }
 
+  /**
+   * Return the base directory of this replica, which contains the
+   * subdirectories of the block id if {@link #hasSubdirs()}.
+   * @return the base directory of this replica
+   */
+  public File getBaseDir() {
+    return baseDir;
+  }
+
+  /**
+   * @return whether the directory of this replica is the subdirectory of its
+   *         block id in the base directory
+   */
+  public boolean hasSubdirs() {
+    return hasSubdirs;
+  }
+
   /**
    * Set the parent directory where this replica is located.
    * @param dir the parent directory where the replica is located
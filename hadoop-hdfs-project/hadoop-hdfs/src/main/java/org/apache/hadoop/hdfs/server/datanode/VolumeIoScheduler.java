@@ -0,0 +1,287 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_BANDWIDTHPERSEC_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_CLIENT_READ_BANDWIDTHPERSEC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_PIPELINE_WRITE_BANDWIDTHPERSEC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_REPLICATION_BANDWIDTHPERSEC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_SCAN_BANDWIDTHPERSEC_KEY;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
+
+/**
+ * Schedules the data file I/O of a volume by priority class, so that the
+ * background I/O of the DataNode yields to the I/O of the clients on the same
+ * disk.
+ *
+ * The class of an I/O is the class of the thread doing it, as set by
+ * {@link #setIoClass(IoClass)}; the I/O of the threads without a class is not
+ * scheduled. An I/O waits while I/O of a higher priority class is in progress
+ * on the volume, for at most the maximum wait so that it is never starved,
+ * and the bandwidth of each class may be limited by a
+ * {@link DataTransferThrottler}.
+ *
+ * The scheduler is called by the {@link FileIoProvider} before and after each
+ * data file I/O.
+ */
+@InterfaceAudience.Private
+public class VolumeIoScheduler {
+
+  /** The priority classes of the data file I/O, highest priority first. */
+  public enum IoClass {
+    /** Reads of the clients. */
+    CLIENT_READ(0, DFS_DATANODE_IO_SCHEDULER_CLIENT_READ_BANDWIDTHPERSEC_KEY),
+    /** Writes of the client pipelines. */
+    PIPELINE_WRITE(0,
+        DFS_DATANODE_IO_SCHEDULER_PIPELINE_WRITE_BANDWIDTHPERSEC_KEY),
+    /** Replication, balancing and erasure coding reconstruction of blocks. */
+    REPLICATION(1, DFS_DATANODE_IO_SCHEDULER_REPLICATION_BANDWIDTHPERSEC_KEY),
+    /** Volume scanning. */
+    SCAN(2, DFS_DATANODE_IO_SCHEDULER_SCAN_BANDWIDTHPERSEC_KEY);
+
+    /** 0 is the highest priority. */
+    private final int priority;
+    private final String bandwidthKey;
+
+    IoClass(int priority, String bandwidthKey) {
+      this.priority = priority;
+      this.bandwidthKey = bandwidthKey;
+    }
+
+    public int getPriority() {
+      return priority;
+    }
+  }
+
+  private static final int NUM_PRIORITIES = 3;
+
+  /** The scheduler of the volumes whose data file I/O is not scheduled. */
+  public static final VolumeIoScheduler NONE =
+      new VolumeIoScheduler(new Configuration(false), null) {
+        @Override
+        void beforeFileIo(long len) {
+        }
+
+        @Override
+        void afterFileIo() {
+        }
+      };
+
+  /** The I/O class of a thread and the start time of its current I/O. */
+  private static final class IoContext {
+    private IoClass ioClass;
+    private VolumeIoScheduler scheduler;
+    private long begin;
+  }
+
+  private static final ThreadLocal<IoContext> CONTEXT =
+      ThreadLocal.withInitial(IoContext::new);
+
+  /**
+   * Set the I/O class of the current thread.
+   *
+   * @param ioClass the I/O class, null for I/O not to be scheduled.
+   * @return the previous I/O class of the thread.
+   */
+  public static IoClass setIoClass(@Nullable IoClass ioClass) {
+    IoContext context = CONTEXT.get();
+    IoClass previous = context.ioClass;
+    context.ioClass = ioClass;
+    return previous;
+  }
+
+  /** @return the I/O class of the current thread, or null. */
+  public static IoClass getIoClass() {
+    return CONTEXT.get().ioClass;
+  }
+
+  private final long maxWaitNanos;
+  /** The throttlers of the classes, null when unlimited. */
+  private final DataTransferThrottler[] throttlers;
+  /** The number of I/O in progress of each priority. */
+  private final AtomicInteger[] inProgress;
+  /** The number of threads waiting for higher priority I/O to complete. */
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final Lock lock = new ReentrantLock();
+  private final Condition completed = lock.newCondition();
+  @Nullable
+  private final DataNodeVolumeMetrics metrics;
+
+  /**
+   * @param conf the configuration.
+   * @param metrics the metrics of the volume, may be null.
+   */
+  public VolumeIoScheduler(Configuration conf,
+      @Nullable DataNodeVolumeMetrics metrics) {
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+        DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_KEY,
+        DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_DEFAULT));
+    this.throttlers = new DataTransferThrottler[IoClass.values().length];
+    for (IoClass ioClass : IoClass.values()) {
+      long bandwidth = conf.getLongBytes(ioClass.bandwidthKey,
+          DFS_DATANODE_IO_SCHEDULER_BANDWIDTHPERSEC_DEFAULT);
+      if (bandwidth > 0) {
+        throttlers[ioClass.ordinal()] = new DataTransferThrottler(bandwidth);
+      }
+    }
+    this.inProgress = new AtomicInteger[NUM_PRIORITIES];
+    for (int i = 0; i < NUM_PRIORITIES; i++) {
+      inProgress[i] = new AtomicInteger();
+    }
+    this.metrics = metrics;
+  }
+
+  /**
+   * Wait for the turn of a data file I/O of the current thread, if the thread
+   * has an I/O class. Each call must be followed by {@link #afterFileIo()}.
+   *
+   * @param len the number of bytes of the I/O.
+   */
+  void beforeFileIo(long len) {
+    IoContext context = CONTEXT.get();
+    if (context.ioClass != null) {
+      context.begin = acquire(context.ioClass, len);
+      context.scheduler = this;
+    }
+  }
+
+  /** Complete the data file I/O of the current thread. */
+  void afterFileIo() {
+    IoContext context = CONTEXT.get();
+    if (context.scheduler == this) {
+      context.scheduler = null;
+      release(context.ioClass, context.begin);
+    }
+  }
+
+  /**
+   * Wait for the turn of an I/O.
+   *
+   * @param ioClass the class of the I/O.
+   * @param len the number of bytes of the I/O.
+   * @return the time the I/O started, in nanoseconds.
+   */
+  @VisibleForTesting
+  long acquire(IoClass ioClass, long len) {
+    final long queued = System.nanoTime();
+    if (metrics != null) {
+      metrics.incrIoClassQueueLength(ioClass);
+    }
+    try {
+      DataTransferThrottler throttler = throttlers[ioClass.ordinal()];
+      if (throttler != null && len > 0) {
+        throttler.throttle(len);
+      }
+      if (isHigherPriorityInProgress(ioClass.priority)) {
+        awaitHigherPriority(ioClass.priority, queued + maxWaitNanos);
+      }
+    } finally {
+      if (metrics != null) {
+        metrics.decrIoClassQueueLength(ioClass);
+      }
+    }
+    inProgress[ioClass.priority].incrementAndGet();
+    final long begin = System.nanoTime();
+    if (metrics != null) {
+      metrics.addIoClassQueueTime(ioClass,
+          TimeUnit.NANOSECONDS.toMillis(begin - queued));
+    }
+    return begin;
+  }
+
+  /**
+   * Complete an I/O.
+   *
+   * @param ioClass the class of the I/O.
+   * @param begin the time the I/O started, as returned by acquire.
+   */
+  @VisibleForTesting
+  void release(IoClass ioClass, long begin) {
+    // the waiters register before checking the I/O in progress, so they are
+    // either signalled or find no I/O in progress.
+    if (inProgress[ioClass.priority].decrementAndGet() == 0
+        && waiters.get() > 0) {
+      lock.lock();
+      try {
+        completed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+    if (metrics != null) {
+      metrics.addIoClassLatency(ioClass,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+  }
+
+  private boolean isHigherPriorityInProgress(int priority) {
+    for (int i = 0; i < priority; i++) {
+      if (inProgress[i].get() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void awaitHigherPriority(int priority, long deadline) {
+    lock.lock();
+    waiters.incrementAndGet();
+    try {
+      long remaining = deadline - System.nanoTime();
+      while (remaining > 0 && isHigherPriorityInProgress(priority)) {
+        remaining = completed.awaitNanos(remaining);
+      }
+    } catch (InterruptedException e) {
+      // stop waiting and leave the interrupt to the I/O or its caller.
+      Thread.currentThread().interrupt();
+    } finally {
+      waiters.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param priority the priority.
+   * @return the number of I/O of the priority in progress.
+   */
+  @VisibleForTesting
+  int getNumInProgress(int priority) {
+    return inProgress[priority].get();
+  }
+
+  /** @return the number of threads waiting for higher priority I/O. */
+  @VisibleForTesting
+  int getNumWaiters() {
+    return waiters.get();
+  }
+}
@@ -638,6 +638,7 @@ public void run() {
     this.startMinute =
         TimeUnit.MINUTES.convert(Time.monotonicNow(), TimeUnit.MILLISECONDS);
     this.curMinute = startMinute;
+    VolumeIoScheduler.setIoClass(VolumeIoScheduler.IoClass.SCAN);
     try {
       LOG.trace("{}: thread starting.", this);
       resultHandler.setup(this);
@@ -0,0 +1,400 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_THREADS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_THREADS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.VisibleForTesting;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.Preconditions;
+import org.slf4j.Logger;
+
+/**
+ * Coalesces the hsync of the replicas being written on a volume.
+ *
+ * The writers queue the files of their replica to sync, and a single sync
+ * thread per volume takes the requests queued while it synced the previous
+ * batch, and within an optional window, as a batch. The syncs of the batch
+ * are issued in parallel, so that the file system can commit them
+ * together. All the writers of the batch are acknowledged once its syncs
+ * are done. A writer waits until its own files are synced, so a packet is
+ * still acknowledged only once its data is durable.
+ *
+ * This does not reduce the number of file syncs: every hsync still syncs
+ * the data and meta files of its replica, since a file system wide sync
+ * would also flush the data of the replicas not being synced, and does not
+ * report the write errors of a file on all kernels. The syncs saved are
+ * the directory syncs of the first hsync of the replicas, which the
+ * replicas of a batch often share and which are then synced once.
+ */
+@InterfaceAudience.Private
+public class VolumeSyncCoalescer implements Runnable {
+  public static final Logger LOG = DataNode.LOG;
+
+  /** How often the idle sync thread checks whether it is stopped. */
+  private static final long POLL_INTERVAL_MS = 100;
+  private static final long THREADS_KEEP_ALIVE_SECONDS = 60;
+
+  /** The files of a replica to sync, and the result of the sync. */
+  private static final class SyncRequest {
+    private final FileOutputStream[] files;
+    @Nullable
+    private final File dir;
+    private final long queued = System.nanoTime();
+    private IOException error;
+    private boolean done;
+
+    private SyncRequest(FileOutputStream[] files, @Nullable File dir) {
+      this.files = files;
+      this.dir = dir;
+    }
+
+    private synchronized void complete(IOException e) {
+      error = e;
+      done = true;
+      notifyAll();
+    }
+
+    private synchronized void await() throws IOException {
+      try {
+        while (!done) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the"
+            + " sync of " + (dir != null ? dir : "a replica"));
+      }
+      if (error != null) {
+        // a copy, so that the stack trace includes the waiting writer.
+        throw new IOException(error.getMessage(), error);
+      }
+    }
+  }
+
+  @Nullable
+  private final FsVolumeSpi volume;
+  private final FileIoProvider fileIoProvider;
+  @Nullable
+  private final DataNodeVolumeMetrics metrics;
+  private final long windowNanos;
+  private final int maxBatch;
+  private final BlockingQueue<SyncRequest> queue = new LinkedBlockingQueue<>();
+  private final Daemon thread;
+  /** Issues the syncs of a batch in parallel. */
+  private final ThreadPoolExecutor syncExecutor;
+  private volatile boolean running = true;
+
+  /**
+   * The coalescer of the volumes whose writers sync their replicas
+   * themselves. It has no sync thread, its syncs are done by the writers.
+   */
+  public static final VolumeSyncCoalescer NONE = createStopped();
+
+  private static VolumeSyncCoalescer createStopped() {
+    VolumeSyncCoalescer coalescer = new VolumeSyncCoalescer(
+        new Configuration(false), null, new FileIoProvider(null, null), null);
+    coalescer.shutdown();
+    return coalescer;
+  }
+
+  /**
+   * @param conf the configuration.
+   * @param volume the volume, may be null.
+   * @param fileIoProvider the provider of the file I/O of the volume.
+   * @param metrics the metrics of the volume, may be null.
+   */
+  public VolumeSyncCoalescer(Configuration conf, @Nullable FsVolumeSpi volume,
+      FileIoProvider fileIoProvider, @Nullable DataNodeVolumeMetrics metrics) {
+    this.volume = volume;
+    this.fileIoProvider = fileIoProvider;
+    this.metrics = metrics;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(conf.getLong(
+        DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        DFS_DATANODE_SYNC_COALESCING_WINDOW_US_DEFAULT));
+    this.maxBatch = conf.getInt(DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY,
+        DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_DEFAULT);
+    Preconditions.checkArgument(maxBatch > 0, "%s must be positive: %s",
+        DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY, maxBatch);
+    final int numThreads = conf.getInt(
+        DFS_DATANODE_SYNC_COALESCING_THREADS_KEY,
+        DFS_DATANODE_SYNC_COALESCING_THREADS_DEFAULT);
+    Preconditions.checkArgument(numThreads > 0, "%s must be positive: %s",
+        DFS_DATANODE_SYNC_COALESCING_THREADS_KEY, numThreads);
+    this.thread = new Daemon(this);
+    thread.setName("VolumeSyncCoalescer-"
+        + (volume != null ? volume.getBaseURI() : ""));
+    final AtomicInteger counter = new AtomicInteger();
+    this.syncExecutor = new ThreadPoolExecutor(numThreads, numThreads,
+        THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), r -> {
+          Thread t = new Daemon(() -> {
+            // the syncs are done for the client pipelines.
+            VolumeIoScheduler.setIoClass(IoClass.PIPELINE_WRITE);
+            r.run();
+          });
+          t.setName(thread.getName() + "-sync-" + counter.getAndIncrement());
+          return t;
+        });
+    // This can reduce the number of running threads
+    syncExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Stop the sync thread, after it synced the requests already queued. The
+   * later requests are synced by their writer.
+   */
+  public void shutdown() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    syncExecutor.shutdown();
+  }
+
+  /**
+   * @return whether the syncs are done by the sync thread, together with the
+   *         syncs of the other writers of the volume.
+   */
+  public boolean isCoalescing() {
+    return running;
+  }
+
+  /**
+   * Sync the given files, and directory, together with the syncs of the
+   * other writers of the volume. The files must be flushed.
+   *
+   * @param dir the directory to sync, or null.
+   * @param files the files to sync.
+   * @throws IOException if a file or the directory could not be synced.
+   */
+  public void sync(@Nullable File dir, FileOutputStream... files)
+      throws IOException {
+    SyncRequest request = new SyncRequest(files, dir);
+    queue.add(request);
+    if (!running && queue.remove(request)) {
+      // the sync thread is stopped, it won't take the request.
+      syncBatch(Collections.singletonList(request));
+    }
+    request.await();
+  }
+
+  @Override
+  public void run() {
+    // the syncs are done for the client pipelines.
+    VolumeIoScheduler.setIoClass(IoClass.PIPELINE_WRITE);
+    final List<SyncRequest> batch = new ArrayList<>(maxBatch);
+    try {
+      while (running) {
+        SyncRequest first = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        collect(batch);
+        syncBatch(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("{} interrupted", thread.getName());
+    } finally {
+      running = false;
+      // sync the requests queued before the shutdown, the writers wait.
+      Thread.interrupted();
+      queue.drainTo(batch);
+      syncBatch(batch);
+    }
+  }
+
+  /** Add the requests queued within the window to the batch. */
+  private void collect(List<SyncRequest> batch) throws InterruptedException {
+    final long deadline = System.nanoTime() + windowNanos;
+    while (batch.size() < maxBatch) {
+      long remaining = deadline - System.nanoTime();
+      SyncRequest request = remaining > 0
+          ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+      if (request == null) {
+        return;
+      }
+      batch.add(request);
+    }
+  }
+
+  /**
+   * Sync the files and directories of the batch, each once, in parallel.
+   */
+  private void syncBatch(List<SyncRequest> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    final long begin = System.nanoTime();
+    // the syncs of the files and directories of the batch, issued at once.
+    final Map<FileOutputStream, FutureTask<IOException>> fileSyncs =
+        new IdentityHashMap<>();
+    final Map<File, FutureTask<IOException>> dirSyncs = new HashMap<>();
+    FutureTask<IOException> last = null;
+    for (SyncRequest request : batch) {
+      for (FileOutputStream file : request.files) {
+        if (!fileSyncs.containsKey(file)) {
+          last = issue(last, new FutureTask<>(() -> syncFile(file)));
+          fileSyncs.put(file, last);
+        }
+      }
+      if (request.dir != null) {
+        // the replicas of a batch often share their directory.
+        File dir = request.dir.getAbsoluteFile();
+        if (!dirSyncs.containsKey(dir)) {
+          last = issue(last, new FutureTask<>(() -> syncDir(dir)));
+          dirSyncs.put(dir, last);
+        }
+      }
+    }
+    // the last sync is done by this thread, saving a hand-off when the
+    // batch has a single sync.
+    if (last != null) {
+      last.run();
+    }
+    final IOException[] errors = new IOException[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      SyncRequest request = batch.get(i);
+      for (FileOutputStream file : request.files) {
+        IOException error = getResult(fileSyncs.get(file));
+        if (errors[i] == null) {
+          errors[i] = error;
+        }
+      }
+      if (request.dir != null) {
+        IOException error =
+            getResult(dirSyncs.get(request.dir.getAbsoluteFile()));
+        if (errors[i] == null) {
+          errors[i] = error;
+        }
+      }
+    }
+    final long end = System.nanoTime();
+    if (metrics != null) {
+      metrics.addSyncBatchLatency(batch.size(),
+          fileSyncs.size() + dirSyncs.size(),
+          TimeUnit.NANOSECONDS.toMillis(end - begin));
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      SyncRequest request = batch.get(i);
+      if (metrics != null) {
+        metrics.addSyncRequestLatency(
+            TimeUnit.NANOSECONDS.toMillis(end - request.queued));
+      }
+      request.complete(errors[i]);
+    }
+  }
+
+  /**
+   * Issue the previous sync on the sync threads, or in the calling thread
+   * once the coalescer is shut down, and keep the next one.
+   *
+   * @return the next sync, not issued yet.
+   */
+  private FutureTask<IOException> issue(
+      @Nullable FutureTask<IOException> previous,
+      FutureTask<IOException> next) {
+    if (previous != null) {
+      try {
+        syncExecutor.execute(previous);
+      } catch (RejectedExecutionException e) {
+        previous.run();
+      }
+    }
+    return next;
+  }
+
+  /** @return the error of a sync, or null. */
+  private static IOException getResult(Future<IOException> sync) {
+    try {
+      return sync.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new InterruptedIOException("Interrupted while waiting for a"
+          + " sync");
+    } catch (ExecutionException e) {
+      return new IOException("Failed to sync", e.getCause());
+    }
+  }
+
+  private IOException syncFile(FileOutputStream file) {
+    try {
+      fileIoProvider.sync(volume, file);
+      return null;
+    } catch (IOException e) {
+      return e;
+    } catch (RuntimeException e) {
+      return new IOException("Failed to sync a file", e);
+    }
+  }
+
+  private IOException syncDir(File dir) {
+    try {
+      fileIoProvider.dirSync(volume, dir);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      return new IOException("Failed to sync " + dir, e);
+    }
+  }
+
+  /** @return the number of requests waiting for the sync thread. */
+  @VisibleForTesting
+  int getQueueLength() {
+    return queue.size();
+  }
+}
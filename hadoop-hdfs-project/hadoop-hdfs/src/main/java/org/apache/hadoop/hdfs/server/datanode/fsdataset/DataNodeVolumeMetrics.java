@@ -21,14 +21,17 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.util.StringUtils;
 
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -84,6 +87,24 @@ public class DataNodeVolumeMetrics {
   @Metric("file io error rate")
   private MutableRate fileIoErrorRate;
 
+  @Metric("number of hsync requests of the sync coalescer")
+  private MutableCounterLong totalSyncRequests;
+  @Metric("number of batches synced by the sync coalescer")
+  private MutableCounterLong totalSyncBatches;
+  @Metric("number of file and directory syncs issued by the sync coalescer")
+  private MutableCounterLong totalSyncs;
+  @Metric("coalesced sync batch rate")
+  private MutableRate syncBatchRate;
+  private MutableQuantiles[] syncBatchLatencyQuantiles;
+  @Metric("coalesced sync request rate")
+  private MutableRate syncRequestRate;
+  private MutableQuantiles[] syncRequestLatencyQuantiles;
+
+  // Indexed by the ordinal of the VolumeIoScheduler.IoClass
+  private final MutableRate[] ioClassRates;
+  private final MutableRate[] ioClassQueueTimes;
+  private final MutableGaugeInt[] ioClassQueueLengths;
+
   public long getTotalMetadataOperations() {
     return totalMetadataOperations.value();
   }
@@ -221,6 +242,57 @@ public double getFileIoErrorStdDev() {
     return fileIoErrorRate.lastStat().stddev();
   }
 
+  // Based on ioClassRates
+  public long getIoClassSampleCount(IoClass ioClass) {
+    return ioClassRates[ioClass.ordinal()].lastStat().numSamples();
+  }
+
+  public double getIoClassMean(IoClass ioClass) {
+    return ioClassRates[ioClass.ordinal()].lastStat().mean();
+  }
+
+  // Based on ioClassQueueTimes
+  public double getIoClassQueueTimeMean(IoClass ioClass) {
+    return ioClassQueueTimes[ioClass.ordinal()].lastStat().mean();
+  }
+
+  public int getIoClassQueueLength(IoClass ioClass) {
+    return ioClassQueueLengths[ioClass.ordinal()].value();
+  }
+
+  public long getTotalSyncRequests() {
+    return totalSyncRequests.value();
+  }
+
+  public long getTotalSyncBatches() {
+    return totalSyncBatches.value();
+  }
+
+  public long getTotalSyncs() {
+    return totalSyncs.value();
+  }
+
+  @Metric("average number of hsync requests per coalesced sync batch")
+  public double getSyncCoalescingRatio() {
+    long batches = totalSyncBatches.value();
+    return batches == 0 ? 0 : (double) totalSyncRequests.value() / batches;
+  }
+
+  @Metric("average number of file and directory syncs per hsync request")
+  public double getSyncsPerRequest() {
+    long requests = totalSyncRequests.value();
+    return requests == 0 ? 0 : (double) totalSyncs.value() / requests;
+  }
+
+  // Based on syncRequestRate
+  public long getSyncRequestSampleCount() {
+    return syncRequestRate.lastStat().numSamples();
+  }
+
+  public double getSyncRequestMean() {
+    return syncRequestRate.lastStat().mean();
+  }
+
   private final String name;
   private final MetricsSystem ms;
 
@@ -237,6 +309,8 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
     writeIoLatencyQuantiles = new MutableQuantiles[len];
     transferIoLatencyQuantiles = new MutableQuantiles[len];
     nativeCopyIoLatencyQuantiles = new MutableQuantiles[len];
+    syncBatchLatencyQuantiles = new MutableQuantiles[len];
+    syncRequestLatencyQuantiles = new MutableQuantiles[len];
     for (int i = 0; i < len; i++) {
       int interval = intervals[i];
       metadataOperationLatencyQuantiles[i] = registry.newQuantiles(
@@ -263,6 +337,26 @@ public DataNodeVolumeMetrics(final MetricsSystem metricsSystem,
       nativeCopyIoLatencyQuantiles[i] = registry.newQuantiles(
           "nativeCopyIoLatency" + interval + "s",
           "Data nativeCopy Io Latency in ms", "ops", "latency", interval);
+      syncBatchLatencyQuantiles[i] = registry.newQuantiles(
+          "syncBatchLatency" + interval + "s",
+          "Coalesced sync batch Latency in ms", "ops", "latency", interval);
+      syncRequestLatencyQuantiles[i] = registry.newQuantiles(
+          "syncRequestLatency" + interval + "s",
+          "Coalesced sync request Latency in ms", "ops", "latency", interval);
+    }
+    final int numIoClasses = IoClass.values().length;
+    ioClassRates = new MutableRate[numIoClasses];
+    ioClassQueueTimes = new MutableRate[numIoClasses];
+    ioClassQueueLengths = new MutableGaugeInt[numIoClasses];
+    for (IoClass ioClass : IoClass.values()) {
+      String prefix = StringUtils.camelize(ioClass.name());
+      int i = ioClass.ordinal();
+      ioClassRates[i] = registry.newRate(prefix + "IoRate",
+          prefix + " scheduled file io rate", false);
+      ioClassQueueTimes[i] = registry.newRate(prefix + "IoQueueTime",
+          prefix + " file io queue time", false);
+      ioClassQueueLengths[i] = registry.newGauge(prefix + "IoQueueLength",
+          prefix + " file io queue length", 0);
     }
   }
 
@@ -350,4 +444,38 @@ public void addFileIoError(final long latency) {
     totalFileIoErrors.incr();
     fileIoErrorRate.add(latency);
   }
+
+  public void addSyncBatchLatency(final int numRequests, final int numSyncs,
+      final long latency) {
+    totalSyncRequests.incr(numRequests);
+    totalSyncBatches.incr();
+    totalSyncs.incr(numSyncs);
+    syncBatchRate.add(latency);
+    for (MutableQuantiles q : syncBatchLatencyQuantiles) {
+      q.add(latency);
+    }
+  }
+
+  public void addSyncRequestLatency(final long latency) {
+    syncRequestRate.add(latency);
+    for (MutableQuantiles q : syncRequestLatencyQuantiles) {
+      q.add(latency);
+    }
+  }
+
+  public void addIoClassLatency(final IoClass ioClass, final long latency) {
+    ioClassRates[ioClass.ordinal()].add(latency);
+  }
+
+  public void addIoClassQueueTime(final IoClass ioClass, final long time) {
+    ioClassQueueTimes[ioClass.ordinal()].add(time);
+  }
+
+  public void incrIoClassQueueLength(final IoClass ioClass) {
+    ioClassQueueLengths[ioClass.ordinal()].incr();
+  }
+
+  public void decrIoClassQueueLength(final IoClass ioClass) {
+    ioClassQueueLengths[ioClass.ordinal()].decr();
+  }
 }
\ No newline at end of file
@@ -36,6 +36,8 @@
 import org.apache.hadoop.hdfs.server.datanode.DirectoryScanner.ReportCompiler;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler;
+import org.apache.hadoop.hdfs.server.datanode.VolumeSyncCoalescer;
 import org.apache.hadoop.hdfs.server.datanode.checker.Checkable;
 import org.apache.hadoop.hdfs.server.datanode.checker.VolumeCheckResult;
 
@@ -448,4 +450,21 @@ class VolumeCheckContext {
   FileIoProvider getFileIoProvider();
 
   DataNodeVolumeMetrics getMetrics();
+
+  /**
+   * @return the scheduler of the data file I/O of the volume, or
+   * {@link VolumeIoScheduler#NONE} when the I/O is not scheduled.
+   */
+  default VolumeIoScheduler getIoScheduler() {
+    return VolumeIoScheduler.NONE;
+  }
+
+  /**
+   * @return the coalescer of the hsync of the replicas being written on the
+   * volume, or {@link VolumeSyncCoalescer#NONE} when each writer syncs its
+   * replica.
+   */
+  default VolumeSyncCoalescer getSyncCoalescer() {
+    return VolumeSyncCoalescer.NONE;
+  }
 }
@@ -18,13 +18,19 @@
 package org.apache.hadoop.hdfs.server.datanode.fsdataset;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
 
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.FileIoProvider;
+import org.apache.hadoop.hdfs.server.datanode.VolumeSyncCoalescer;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.nativeio.NativeIOException;
 import org.apache.hadoop.util.DataChecksum;
@@ -125,6 +131,27 @@ public void syncChecksumOut() throws IOException {
     }
   }
 
+  /**
+   * Sync the data and checksum streams which support it, and the given
+   * directory, together with the other replicas of the volume.
+   *
+   * @param coalescer the sync coalescer of the volume.
+   * @param dir the directory to sync, or null.
+   */
+  public void syncOut(VolumeSyncCoalescer coalescer, @Nullable File dir)
+      throws IOException {
+    List<FileOutputStream> files = new ArrayList<>(2);
+    if (checksumOut instanceof FileOutputStream) {
+      files.add((FileOutputStream) checksumOut);
+    }
+    if (dataOut instanceof FileOutputStream) {
+      files.add((FileOutputStream) dataOut);
+    }
+    if (!files.isEmpty() || dir != null) {
+      coalescer.sync(dir, files.toArray(new FileOutputStream[0]));
+    }
+  }
+
   /**
    * Flush the data stream if it supports it.
    */
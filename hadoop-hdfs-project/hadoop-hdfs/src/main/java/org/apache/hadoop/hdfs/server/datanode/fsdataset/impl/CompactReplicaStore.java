@@ -0,0 +1,442 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.util.LongHashSet;
+
+/**
+ * Stores the finalized replicas of a block pool as primitives rather than as
+ * {@link ReplicaInfo} objects: the block id, generation stamp, length and
+ * the index of the volume and directory of a replica take 24 bytes, in a
+ * table using open addressing with linear probing, which may be kept
+ * off-heap.
+ *
+ * The {@link ReplicaMap} moves the replicas which are not in use into the
+ * store, and moves a replica back into its map, as a new object, when it is
+ * looked up to be modified. The replica objects returned by the read only
+ * lookups and the iterations of the store are copies, which must not be
+ * modified.
+ *
+ * This class is not thread safe.
+ */
+class CompactReplicaStore {
+  private static final int MIN_CAPACITY = 16;
+  /** The largest direct buffer holds 2^26 slots of 24 bytes. */
+  private static final int MAX_CAPACITY = 1 << 26;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** The longs of a slot: block id, generation stamp, location and length. */
+  private static final int STRIDE = 3;
+  private static final int GS = 1;
+  private static final int LOCATION_LENGTH = 2;
+
+  /** 0 marks the free slots, the replicas of block id 0 are not stored. */
+  private static final long FREE = 0L;
+
+  /** The length takes the low bits of a long, the location the high bits. */
+  private static final int LENGTH_BITS = 48;
+  static final long MAX_LENGTH = (1L << LENGTH_BITS) - 1;
+  private static final int MAX_LOCATIONS = 1 << (Long.SIZE - LENGTH_BITS);
+
+  /** Consumer of the fields of the stored replicas. */
+  interface ReplicaConsumer {
+    void accept(long blockId, long numBytes, long genStamp,
+        FsVolumeSpi volume);
+  }
+
+  /** The volume and directory of stored replicas. */
+  private static final class Location {
+    private final FsVolumeSpi volume;
+    private final File baseDir;
+    private final boolean hasSubdirs;
+
+    private Location(FsVolumeSpi volume, File baseDir, boolean hasSubdirs) {
+      this.volume = volume;
+      this.baseDir = baseDir;
+      this.hasSubdirs = hasSubdirs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Location)) {
+        return false;
+      }
+      Location that = (Location) o;
+      return volume == that.volume && hasSubdirs == that.hasSubdirs
+          && baseDir.equals(that.baseDir);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(volume), baseDir,
+          hasSubdirs);
+    }
+  }
+
+  private final boolean offHeap;
+  private final List<Location> locations = new ArrayList<>();
+  private final Map<Location, Integer> locationIndex = new HashMap<>();
+  private LongBuffer table;
+  private int mask;
+  private int shift;
+  private int threshold;
+  private int size;
+
+  /**
+   * @param offHeap whether to keep the table in a direct buffer.
+   */
+  CompactReplicaStore(boolean offHeap) {
+    this.offHeap = offHeap;
+    allocate(MIN_CAPACITY);
+  }
+
+  /**
+   * @param replica a replica.
+   * @return whether the replica can be stored.
+   */
+  static boolean isCompactable(ReplicaInfo replica) {
+    // not the subclasses, e.g. the provided replicas, which have more state.
+    return replica.getClass() == FinalizedReplica.class
+        && replica.getBlockId() != FREE
+        && replica.getNumBytes() >= 0 && replica.getNumBytes() <= MAX_LENGTH
+        && replica.getVolume() != null
+        && !replica.getVolume().isTransientStorage()
+        && ((FinalizedReplica) replica).getBaseDir() != null;
+  }
+
+  /** Spread the bits of the block id, since block ids are sequential. */
+  private int slot(long blockId) {
+    return (int) ((blockId * 0x9E3779B97F4A7C15L) >>> shift);
+  }
+
+  private void allocate(int capacity) {
+    if (offHeap) {
+      table = ByteBuffer.allocateDirect(capacity * STRIDE * Long.BYTES)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+    } else {
+      table = LongBuffer.allocate(capacity * STRIDE);
+    }
+    mask = capacity - 1;
+    shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /** @return the number of replicas. */
+  int size() {
+    return size;
+  }
+
+  /** @return whether the table is off-heap. */
+  boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /** @return the slot of the block id, or -1. */
+  private int find(long blockId) {
+    for (int i = slot(blockId); ; i = (i + 1) & mask) {
+      long id = table.get(i * STRIDE);
+      if (id == blockId) {
+        return i;
+      } else if (id == FREE) {
+        return -1;
+      }
+    }
+  }
+
+  /**
+   * @param blockId a block id.
+   * @return whether the store has a replica of the block.
+   */
+  boolean contains(long blockId) {
+    return blockId != FREE && find(blockId) >= 0;
+  }
+
+  /**
+   * Store a replica, replacing the replica of the same block.
+   *
+   * @param replica a replica which {@link #isCompactable(ReplicaInfo)}.
+   * @return whether the replica was stored; false when the volumes and
+   * directories of the replicas are too many.
+   */
+  boolean add(ReplicaInfo replica) {
+    final FinalizedReplica finalized = (FinalizedReplica) replica;
+    final long blockId = finalized.getBlockId();
+    Location location = new Location(finalized.getVolume(),
+        finalized.getBaseDir(), finalized.hasSubdirs());
+    Integer index = locationIndex.get(location);
+    if (index == null) {
+      if (locations.size() == MAX_LOCATIONS) {
+        return false;
+      }
+      index = locations.size();
+      locations.add(location);
+      locationIndex.put(location, index);
+    }
+    final long locationLength =
+        ((long) index << LENGTH_BITS) | finalized.getNumBytes();
+    for (int i = slot(blockId); ; i = (i + 1) & mask) {
+      long id = table.get(i * STRIDE);
+      if (id == blockId || id == FREE) {
+        table.put(i * STRIDE, blockId);
+        table.put(i * STRIDE + GS, finalized.getGenerationStamp());
+        table.put(i * STRIDE + LOCATION_LENGTH, locationLength);
+        if (id == FREE && ++size > threshold) {
+          resize(2 * (mask + 1));
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @param blockId a block id.
+   * @return a copy of the replica of the block, or null.
+   */
+  ReplicaInfo get(long blockId) {
+    if (blockId == FREE) {
+      return null;
+    }
+    int i = find(blockId);
+    return i < 0 ? null : materialize(i);
+  }
+
+  /**
+   * Remove the replica of a block.
+   *
+   * @param blockId a block id.
+   * @return the replica, as a new object, or null.
+   */
+  ReplicaInfo remove(long blockId) {
+    if (blockId == FREE) {
+      return null;
+    }
+    int i = find(blockId);
+    if (i < 0) {
+      return null;
+    }
+    ReplicaInfo replica = materialize(i);
+    delete(i);
+    return replica;
+  }
+
+  /** Free a slot. */
+  private void delete(int i) {
+    // shift back the following replicas of the run, so that no lookup stops
+    // at the freed slot before reaching its replica.
+    for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+      long id = table.get(j * STRIDE);
+      if (id == FREE) {
+        break;
+      }
+      int home = slot(id);
+      // move the replica to the free slot i unless its home is cyclically in
+      // (i, j].
+      boolean stays = i <= j ? (i < home && home <= j)
+          : (i < home || home <= j);
+      if (!stays) {
+        copySlot(j, i);
+        i = j;
+      }
+    }
+    table.put(i * STRIDE, FREE);
+    size--;
+  }
+
+  private void copySlot(int from, int to) {
+    for (int k = 0; k < STRIDE; k++) {
+      table.put(to * STRIDE + k, table.get(from * STRIDE + k));
+    }
+  }
+
+  private ReplicaInfo materialize(int i) {
+    final long blockId = table.get(i * STRIDE);
+    final long genStamp = table.get(i * STRIDE + GS);
+    final long locationLength = table.get(i * STRIDE + LOCATION_LENGTH);
+    final Location location =
+        locations.get((int) (locationLength >>> LENGTH_BITS));
+    final File dir = location.hasSubdirs
+        ? DatanodeUtil.idToBlockDir(location.baseDir, blockId)
+        : location.baseDir;
+    return new FinalizedReplica(blockId, locationLength & MAX_LENGTH,
+        genStamp, location.volume, dir);
+  }
+
+  /**
+   * Call the consumer on the fields of each replica, without creating the
+   * replica objects. The store must not be modified meanwhile.
+   *
+   * @param consumer the consumer.
+   */
+  void forEach(ReplicaConsumer consumer) {
+    for (int i = 0; i <= mask; i++) {
+      long blockId = table.get(i * STRIDE);
+      if (blockId != FREE) {
+        long locationLength = table.get(i * STRIDE + LOCATION_LENGTH);
+        consumer.accept(blockId, locationLength & MAX_LENGTH,
+            table.get(i * STRIDE + GS),
+            locations.get((int) (locationLength >>> LENGTH_BITS)).volume);
+      }
+    }
+  }
+
+  /**
+   * Add copies of all the replicas to a collection.
+   *
+   * @param replicas the collection.
+   */
+  void addTo(Collection<ReplicaInfo> replicas) {
+    for (int i = 0; i <= mask; i++) {
+      if (table.get(i * STRIDE) != FREE) {
+        replicas.add(materialize(i));
+      }
+    }
+  }
+
+  /**
+   * Call the consumer with an iterator over the given replicas followed by
+   * copies of the replicas of the store. The replicas of the store removed
+   * with the iterator are removed once the consumer returns.
+   *
+   * @param first the iterator over the other replicas.
+   * @param consumer the consumer.
+   */
+  void iterate(Iterator<ReplicaInfo> first,
+      Consumer<Iterator<ReplicaInfo>> consumer) {
+    ReplicaIterator iterator = new ReplicaIterator(first);
+    consumer.accept(iterator);
+    iterator.removed.forEach(blockId -> {
+      int i = find(blockId);
+      if (i >= 0) {
+        delete(i);
+      }
+    });
+  }
+
+  /**
+   * Iterates over other replicas then over the slots of the table, deferring
+   * the removals since they move the replicas in the table.
+   */
+  private final class ReplicaIterator implements Iterator<ReplicaInfo> {
+    private final Iterator<ReplicaInfo> first;
+    private final LongHashSet removed = new LongHashSet();
+    private boolean inFirst = true;
+    /** The slot of the next replica of the store, -1 before the first. */
+    private int next = -1;
+    private ReplicaInfo current;
+
+    private ReplicaIterator(Iterator<ReplicaInfo> first) {
+      this.first = first;
+    }
+
+    /** @return the first used slot from the given slot, or mask + 1. */
+    private int nextUsedSlot(int from) {
+      int i = from;
+      while (i <= mask && table.get(i * STRIDE) == FREE) {
+        i++;
+      }
+      return i;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (inFirst && first.hasNext()) {
+        return true;
+      }
+      if (next < 0) {
+        next = nextUsedSlot(0);
+      }
+      return next <= mask;
+    }
+
+    @Override
+    public ReplicaInfo next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (inFirst && first.hasNext()) {
+        current = first.next();
+        return current;
+      }
+      inFirst = false;
+      current = materialize(next);
+      next = nextUsedSlot(next + 1);
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      if (current == null) {
+        throw new IllegalStateException();
+      }
+      if (inFirst) {
+        first.remove();
+      } else {
+        removed.add(current.getBlockId());
+      }
+      current = null;
+    }
+  }
+
+  private void resize(int capacity) {
+    if (capacity > MAX_CAPACITY) {
+      throw new IllegalStateException("Too many replicas: " + size);
+    }
+    final LongBuffer old = table;
+    final int oldCapacity = mask + 1;
+    allocate(capacity);
+    for (int i = 0; i < oldCapacity; i++) {
+      long blockId = old.get(i * STRIDE);
+      if (blockId != FREE) {
+        int j = slot(blockId);
+        while (table.get(j * STRIDE) != FREE) {
+          j = (j + 1) & mask;
+        }
+        for (int k = 0; k < STRIDE; k++) {
+          table.put(j * STRIDE + k, old.get(i * STRIDE + k));
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(size=" + size
+        + ", capacity=" + (mask + 1) + ", offHeap=" + offHeap + ")";
+  }
+}
@@ -21,16 +21,15 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.LongHashSet;
 import org.apache.hadoop.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,8 +74,8 @@ class FsDatasetAsyncDiskService {
   private final FsDatasetImpl fsdatasetImpl;
   private Map<String, ThreadPoolExecutor> executors
       = new HashMap<String, ThreadPoolExecutor>();
-  private Map<String, Set<Long>> deletedBlockIds 
-      = new HashMap<String, Set<Long>>();
+  private Map<String, LongHashSet> deletedBlockIds
+      = new HashMap<String, LongHashSet>();
   private static final int MAX_DELETED_BLOCKS = 64;
   private int numDeletedBlocks = 0;
   
@@ -358,17 +357,17 @@ public void run() {
   }
   
   private synchronized void updateDeletedBlockId(ExtendedBlock block) {
-    Set<Long> blockIds = deletedBlockIds.get(block.getBlockPoolId());
+    LongHashSet blockIds = deletedBlockIds.get(block.getBlockPoolId());
     if (blockIds == null) {
-      blockIds = new HashSet<Long>();
+      blockIds = new LongHashSet();
       deletedBlockIds.put(block.getBlockPoolId(), blockIds);
     }
     blockIds.add(block.getBlockId());
     numDeletedBlocks++;
     if (numDeletedBlocks == MAX_DELETED_BLOCKS) {
-      for (Entry<String, Set<Long>> e : deletedBlockIds.entrySet()) {
+      for (Entry<String, LongHashSet> e : deletedBlockIds.entrySet()) {
         String bpid = e.getKey();
-        Set<Long> bs = e.getValue();
+        LongHashSet bs = e.getValue();
         fsdatasetImpl.removeDeletedBlocks(bpid, bs);
         bs.clear();
       }
@@ -120,6 +120,7 @@
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
 import org.apache.hadoop.util.Lists;
+import org.apache.hadoop.util.LongHashSet;
 import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.Sets;
 import org.apache.hadoop.util.Time;
@@ -190,8 +191,9 @@ public FsVolumeImpl getVolume(final ExtendedBlock b) {
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl,
         b.getBlockPoolId())) {
       final ReplicaInfo r =
-          volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
-      return r != null ? (FsVolumeImpl) r.getVolume() : null;
+          volumeMap.getReadOnly(b.getBlockPoolId(), b.getBlockId());
+      return r != null && r.getGenerationStamp() == b.getGenerationStamp()
+          ? (FsVolumeImpl) r.getVolume() : null;
     }
   }
 
@@ -200,7 +202,7 @@ public Block getStoredBlock(String bpid, long blkid)
       throws IOException {
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl,
         bpid)) {
-      ReplicaInfo r = volumeMap.get(bpid, blkid);
+      ReplicaInfo r = volumeMap.getReadOnly(bpid, blkid);
       if (r == null) {
         return null;
       }
@@ -267,7 +269,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
   private volatile boolean fsRunning;
 
   final ReplicaMap volumeMap;
-  final Map<String, Set<Long>> deletingBlock;
+  final Map<String, LongHashSet> deletingBlock;
   final RamDiskReplicaTracker ramDiskReplicaTracker;
   final RamDiskAsyncLazyPersistService asyncLazyPersistService;
 
@@ -279,6 +281,8 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
 
   private boolean blockPinningEnabled;
   private final int maxDataLength;
+  private final boolean compactReplicaMap;
+  private final boolean compactReplicaMapOffHeap;
 
   private final DataSetLockManager lockManager;
   private static String blockPoolId = "";
@@ -351,7 +355,7 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
         blockChooserImpl, conf, datanode.getDiskMetrics());
     asyncDiskService = new FsDatasetAsyncDiskService(datanode, this);
     asyncLazyPersistService = new RamDiskAsyncLazyPersistService(datanode, conf);
-    deletingBlock = new HashMap<String, Set<Long>>();
+    deletingBlock = new HashMap<String, LongHashSet>();
 
     for (int idx = 0; idx < storage.getNumStorageDirs(); idx++) {
       addVolume(storage.getStorageDir(idx));
@@ -388,6 +392,12 @@ public LengthInputStream getMetaDataInputStream(ExtendedBlock b)
     maxDataLength = conf.getInt(
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH,
         CommonConfigurationKeys.IPC_MAXIMUM_DATA_LENGTH_DEFAULT);
+    compactReplicaMap = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_ENABLED_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_ENABLED_DEFAULT);
+    compactReplicaMapOffHeap = conf.getBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_OFFHEAP_KEY,
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_OFFHEAP_DEFAULT);
     maxDirScannerNotifyCount = conf.getLong(
         DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_NOTIFY_COUNT_KEY,
         DFSConfigKeys.DFS_DATANODE_DIRECTORYSCAN_MAX_NOTIFY_COUNT_DEFAULT);
@@ -825,7 +835,11 @@ public InputStream getBlockInputStream(ExtendedBlock b,
     ReplicaInfo info;
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl,
         b.getBlockPoolId())) {
-      info = volumeMap.get(b.getBlockPoolId(), b.getLocalBlock());
+      info = volumeMap.getReadOnly(b.getBlockPoolId(), b.getBlockId());
+      if (info != null
+          && info.getGenerationStamp() != b.getGenerationStamp()) {
+        info = null;
+      }
     }
 
     if (info != null && info.getVolume().isTransientStorage()) {
@@ -2142,6 +2156,17 @@ public Map<DatanodeStorage, BlockListAsLongs> getBlockReports(String bpid) {
             }
           }
         }
+      }, (blockId, numBytes, genStamp, v) -> {
+        // the compacted replicas are all finalized and local.
+        String volStorageID = v.getStorageID();
+        BlockListAsLongs.Builder storageBuilder = builders.get(volStorageID);
+        if (storageBuilder != null) {
+          storageBuilder.add(blockId, numBytes, genStamp,
+              ReplicaState.FINALIZED);
+        } else if (missingVolumesReported.add(volStorageID)) {
+          LOG.warn("Storage volume: " + volStorageID + " missing for the"
+              + " replica block: " + blockId + ". Probably being removed!");
+        }
       });
     }
 
@@ -2257,11 +2282,13 @@ private boolean isValid(final ExtendedBlock b, final ReplicaState state) {
 
   /**
    * Find the file corresponding to the block and return it if it exists.
+   * The replica must not be modified, see
+   * {@link ReplicaMap#getReadOnly(String, long)}.
    */
   ReplicaInfo validateBlockFile(String bpid, long blockId) {
     //Should we check for metadata file too?
     final ReplicaInfo r;
-    r = volumeMap.get(bpid, blockId);
+    r = volumeMap.getReadOnly(bpid, blockId);
     if (r != null) {
       if (r.blockDataExists()) {
         return r;
@@ -2510,7 +2537,7 @@ public boolean contains(final ExtendedBlock block) {
         block.getBlockPoolId())) {
       final long blockId = block.getLocalBlock().getBlockId();
       final String bpid = block.getBlockPoolId();
-      final ReplicaInfo r = volumeMap.get(bpid, blockId);
+      final ReplicaInfo r = volumeMap.getReadOnly(bpid, blockId);
       return (r != null && r.blockDataExists());
     }
   }
@@ -2853,13 +2880,13 @@ public void checkAndUpdate(String bpid, ScanInfo scanInfo)
   @Override // FsDatasetSpi
   @Deprecated
   public ReplicaInfo getReplica(String bpid, long blockId) {
-    return volumeMap.get(bpid, blockId);
+    return volumeMap.getReadOnly(bpid, blockId);
   }
 
   @Override 
   public String getReplicaString(String bpid, long blockId) {
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
-      final Replica r = volumeMap.get(bpid, blockId);
+      final Replica r = volumeMap.getReadOnly(bpid, blockId);
       return r == null ? "null" : r.toString();
     }
   }
@@ -3113,8 +3140,13 @@ public long getReplicaVisibleLength(final ExtendedBlock block)
   throws IOException {
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl,
         block.getBlockPoolId())) {
-      final Replica replica = getReplicaInfo(block.getBlockPoolId(),
+      final Replica replica = volumeMap.getReadOnly(block.getBlockPoolId(),
           block.getBlockId());
+      if (replica == null) {
+        throw new ReplicaNotFoundException(
+            ReplicaNotFoundException.NON_EXISTENT_REPLICA
+                + block.getBlockPoolId() + ":" + block.getBlockId());
+      }
       if (replica.getGenerationStamp() < block.getGenerationStamp()) {
         throw new IOException(
             "replica.getGenerationStamp() < block.getGenerationStamp(), block="
@@ -3146,6 +3178,12 @@ public void addBlockPool(String bpid, Configuration conf)
     } catch (AddBlockPoolException e) {
       volumeExceptions.mergeException(e);
     }
+    if (compactReplicaMap) {
+      // the replicas just loaded are not in use yet.
+      int compacted = volumeMap.compact(bpid, compactReplicaMapOffHeap);
+      LOG.info("Compacted {} of the {} replicas of block pool {}", compacted,
+          volumeMap.size(bpid), bpid);
+    }
     if (volumeExceptions.hasExceptions()) {
       throw volumeExceptions;
     }
@@ -3268,7 +3306,7 @@ public BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock block)
       throws IOException {
     try (AutoCloseableLock lock = lockManager.readLock(LockLevel.BLOCK_POOl,
         block.getBlockPoolId())) {
-      final Replica replica = volumeMap.get(block.getBlockPoolId(),
+      final Replica replica = volumeMap.getReadOnly(block.getBlockPoolId(),
           block.getBlockId());
       if (replica == null) {
         throw new ReplicaNotFoundException(block);
@@ -3609,27 +3647,25 @@ public MountVolumeMap getMountVolumeMap() {
   @Override
   public boolean isDeletingBlock(String bpid, long blockId) {
     synchronized(deletingBlock) {
-      Set<Long> s = deletingBlock.get(bpid);
+      LongHashSet s = deletingBlock.get(bpid);
       return s != null ? s.contains(blockId) : false;
     }
   }
   
-  public void removeDeletedBlocks(String bpid, Set<Long> blockIds) {
+  public void removeDeletedBlocks(String bpid, LongHashSet blockIds) {
     synchronized (deletingBlock) {
-      Set<Long> s = deletingBlock.get(bpid);
+      LongHashSet s = deletingBlock.get(bpid);
       if (s != null) {
-        for (Long id : blockIds) {
-          s.remove(id);
-        }
+        blockIds.forEach(s::remove);
       }
     }
   }
   
-  private void addDeletingBlock(String bpid, Long blockId) {
+  private void addDeletingBlock(String bpid, long blockId) {
     synchronized(deletingBlock) {
-      Set<Long> s = deletingBlock.get(bpid);
+      LongHashSet s = deletingBlock.get(bpid);
       if (s == null) {
-        s = new HashSet<Long>();
+        s = new LongHashSet();
         deletingBlock.put(bpid, s);
       }
       s.add(blockId);
@@ -67,6 +67,8 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInPipeline;
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.StorageLocation;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler;
+import org.apache.hadoop.hdfs.server.datanode.VolumeSyncCoalescer;
 import org.apache.hadoop.hdfs.server.datanode.checker.VolumeCheckResult;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
@@ -134,6 +136,8 @@ public class FsVolumeImpl implements FsVolumeSpi {
   protected volatile long configuredCapacity;
   private final FileIoProvider fileIoProvider;
   private final DataNodeVolumeMetrics metrics;
+  private final VolumeIoScheduler ioScheduler;
+  private final VolumeSyncCoalescer syncCoalescer;
   private URI baseURI;
   private boolean enableSameDiskTiering;
   private final String mount;
@@ -187,10 +191,25 @@ public class FsVolumeImpl implements FsVolumeSpi {
       File parent = currentDir.getParentFile();
       cacheExecutor = initializeCacheExecutor(parent);
       this.metrics = DataNodeVolumeMetrics.create(conf, parent.getPath());
+      this.ioScheduler = conf.getBoolean(
+          DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_ENABLED_KEY,
+          DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_ENABLED_DEFAULT)
+          ? new VolumeIoScheduler(conf, metrics) : VolumeIoScheduler.NONE;
       this.baseURI = new File(currentDir.getParent()).toURI();
+      if (conf.getBoolean(
+          DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_ENABLED_KEY,
+          DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_ENABLED_DEFAULT)) {
+        this.syncCoalescer = new VolumeSyncCoalescer(conf, this,
+            fileIoProvider, metrics);
+        syncCoalescer.start();
+      } else {
+        this.syncCoalescer = VolumeSyncCoalescer.NONE;
+      }
     } else {
       cacheExecutor = null;
       this.metrics = null;
+      this.ioScheduler = VolumeIoScheduler.NONE;
+      this.syncCoalescer = VolumeSyncCoalescer.NONE;
     }
     this.conf = conf;
     this.fileIoProvider = fileIoProvider;
@@ -1102,6 +1121,9 @@ void shutdown() {
     if (cacheExecutor != null) {
       cacheExecutor.shutdown();
     }
+    if (syncCoalescer != VolumeSyncCoalescer.NONE) {
+      syncCoalescer.shutdown();
+    }
     Set<Entry<String, BlockPoolSlice>> set = bpSlices.entrySet();
     for (Entry<String, BlockPoolSlice> entry : set) {
       entry.getValue().shutdown(null);
@@ -1409,6 +1431,16 @@ public DataNodeVolumeMetrics getMetrics() {
     return metrics;
   }
 
+  @Override
+  public VolumeIoScheduler getIoScheduler() {
+    return ioScheduler;
+  }
+
+  @Override
+  public VolumeSyncCoalescer getSyncCoalescer() {
+    return syncCoalescer;
+  }
+
   /**
    * Filter for block file names stored on the file system volumes.
    */
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -45,6 +46,12 @@ class ReplicaMap {
   private final Map<String, LightWeightResizableGSet<Block, ReplicaInfo>> map =
       new ConcurrentHashMap<>();
 
+  // Map of block pool Id to the store of its compacted replicas, which are
+  // not in the map of the block pool. The store is also the lock to move a
+  // replica between the store and the map.
+  private final Map<String, CompactReplicaStore> compactMap =
+      new ConcurrentHashMap<>();
+
   ReplicaMap(DataNodeLockManager<AutoCloseDataSetLock> manager) {
     if (manager == null) {
       throw new HadoopIllegalArgumentException(
@@ -105,7 +112,71 @@ ReplicaInfo get(String bpid, long blockId) {
     checkBlockPool(bpid);
     try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
       LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.get(new Block(blockId)) : null;
+      if (m == null) {
+        return null;
+      }
+      ReplicaInfo replicaInfo = m.get(new Block(blockId));
+      return replicaInfo != null ? replicaInfo : restore(bpid, m, blockId);
+    }
+  }
+
+  /**
+   * Get the meta information of the replica that matches the block id,
+   * for the lookups which do not modify the replica, e.g. to read the block.
+   * A compacted replica stays compacted, and a copy of it is returned.
+   * @param bpid block pool id
+   * @param blockId a block's id
+   * @return the replica's meta information, which must not be modified
+   */
+  ReplicaInfo getReadOnly(String bpid, long blockId) {
+    checkBlockPool(bpid);
+    try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
+      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      if (m == null) {
+        return null;
+      }
+      ReplicaInfo replicaInfo = m.get(new Block(blockId));
+      if (replicaInfo != null) {
+        return replicaInfo;
+      }
+      CompactReplicaStore store = compactMap.get(bpid);
+      if (store == null) {
+        return null;
+      }
+      synchronized (store) {
+        // the replica may have been restored meanwhile.
+        replicaInfo = m.get(new Block(blockId));
+        return replicaInfo != null ? replicaInfo : store.get(blockId);
+      }
+    }
+  }
+
+  /**
+   * Move the compacted replica of a block back into the map of its block
+   * pool, so that the replica object is shared by all the users of the
+   * replica from now on.
+   *
+   * @param bpid block pool id
+   * @param m the map of the block pool
+   * @param blockId a block's id
+   * @return the replica in the map, or null
+   */
+  private ReplicaInfo restore(String bpid,
+      LightWeightResizableGSet<Block, ReplicaInfo> m, long blockId) {
+    CompactReplicaStore store = compactMap.get(bpid);
+    if (store == null) {
+      return null;
+    }
+    synchronized (store) {
+      Block key = new Block(blockId);
+      ReplicaInfo replicaInfo = m.get(key);
+      if (replicaInfo == null) {
+        replicaInfo = store.remove(blockId);
+        if (replicaInfo != null) {
+          m.put(replicaInfo);
+        }
+      }
+      return replicaInfo;
     }
   }
 
@@ -127,6 +198,7 @@ ReplicaInfo add(String bpid, ReplicaInfo replicaInfo) {
         map.putIfAbsent(bpid, new LightWeightResizableGSet<Block, ReplicaInfo>());
         m = map.get(bpid);
       }
+      restore(bpid, m, replicaInfo.getBlockId());
       return  m.put(replicaInfo);
     }
   }
@@ -145,6 +217,7 @@ ReplicaInfo addAndGet(String bpid, ReplicaInfo replicaInfo) {
         map.putIfAbsent(bpid, new LightWeightResizableGSet<Block, ReplicaInfo>());
         m = map.get(bpid);
       }
+      restore(bpid, m, replicaInfo.getBlockId());
       ReplicaInfo oldReplicaInfo = m.get(replicaInfo);
       if (oldReplicaInfo != null) {
         return oldReplicaInfo;
@@ -159,6 +232,15 @@ ReplicaInfo addAndGet(String bpid, ReplicaInfo replicaInfo) {
    * Add all entries from the given replica map into the local replica map.
    */
   void addAll(ReplicaMap other) {
+    for (String bpid : other.map.keySet()) {
+      // the compacted replicas of the block pools are replaced as well.
+      CompactReplicaStore store = other.compactMap.get(bpid);
+      if (store != null) {
+        compactMap.put(bpid, store);
+      } else {
+        compactMap.remove(bpid);
+      }
+    }
     map.putAll(other.map);
   }
 
@@ -185,6 +267,7 @@ void mergeAll(ReplicaMap other) {
             curSet = new LightWeightResizableGSet<>();
             map.put(bp, curSet);
           }
+          restore(bp, curSet, replicaInfo.getBlockId());
           curSet.put(replicaInfo);
         }
       }
@@ -205,6 +288,7 @@ ReplicaInfo remove(String bpid, Block block) {
     try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
       LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
       if (m != null) {
+        restore(bpid, m, block.getBlockId());
         ReplicaInfo replicaInfo = m.get(block);
         if (replicaInfo != null &&
             block.getGenerationStamp() == replicaInfo.getGenerationStamp()) {
@@ -227,7 +311,16 @@ ReplicaInfo remove(String bpid, long blockId) {
     try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
       LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
       if (m != null) {
-        return m.remove(new Block(blockId));
+        ReplicaInfo replicaInfo = m.remove(new Block(blockId));
+        if (replicaInfo == null) {
+          CompactReplicaStore store = compactMap.get(bpid);
+          if (store != null) {
+            synchronized (store) {
+              replicaInfo = store.remove(blockId);
+            }
+          }
+        }
+        return replicaInfo;
       }
     }
     return null;
@@ -241,7 +334,16 @@ ReplicaInfo remove(String bpid, long blockId) {
   int size(String bpid) {
     try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
       LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
-      return m != null ? m.size() : 0;
+      if (m == null) {
+        return 0;
+      }
+      CompactReplicaStore store = compactMap.get(bpid);
+      if (store == null) {
+        return m.size();
+      }
+      synchronized (store) {
+        return m.size() + store.size();
+      }
     }
   }
   
@@ -250,13 +352,29 @@ int size(String bpid) {
    * This method is <b>not synchronized</b>. If you want to keep thread safe
    * Use method {@link #replicas(String, Consumer<Iterator<ReplicaInfo>>)}.
    *
+   * If the replicas of the block pool are compacted, the collection is a
+   * snapshot and its compacted replicas are copies.
+   *
    * @param bpid block pool id
    * @return a collection of the replicas belonging to the block pool
    */
   Collection<ReplicaInfo> replicas(String bpid) {
     LightWeightResizableGSet<Block, ReplicaInfo> m = null;
     m = map.get(bpid);
-    return m != null ? m.values() : null;
+    if (m == null) {
+      return null;
+    }
+    CompactReplicaStore store = compactMap.get(bpid);
+    if (store == null) {
+      return m.values();
+    }
+    synchronized (store) {
+      Collection<ReplicaInfo> replicas =
+          new ArrayList<>(m.size() + store.size());
+      replicas.addAll(m.values());
+      store.addTo(replicas);
+      return replicas;
+    }
   }
 
   /**
@@ -270,8 +388,96 @@ void replicas(String bpid, Consumer<Iterator<ReplicaInfo>> consumer) {
     try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
       m = map.get(bpid);
       if (m !=null) {
-        m.getIterator(consumer);
+        CompactReplicaStore store = compactMap.get(bpid);
+        if (store == null) {
+          m.getIterator(consumer);
+        } else {
+          // the compacted replicas are iterated over as copies.
+          synchronized (store) {
+            m.getIterator(iterator -> store.iterate(iterator, consumer));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Execute function for the replicas of one block pool which are not
+   * compacted, and call the compacted consumer on the fields of the
+   * compacted replicas, without creating a replica object per replica, e.g.
+   * to generate the block reports. Each replica is visited once.
+   *
+   * @param bpid block pool id
+   * @param consumer the consumer of the replicas which are not compacted
+   * @param compactedConsumer the consumer of the compacted replicas
+   */
+  void replicas(String bpid, Consumer<Iterator<ReplicaInfo>> consumer,
+      CompactReplicaStore.ReplicaConsumer compactedConsumer) {
+    try (AutoCloseDataSetLock l = lockManager.readLock(LockLevel.BLOCK_POOl, bpid)) {
+      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      if (m != null) {
+        CompactReplicaStore store = compactMap.get(bpid);
+        if (store == null) {
+          m.getIterator(consumer);
+        } else {
+          // no replica moves between the map and the store meanwhile.
+          synchronized (store) {
+            m.getIterator(consumer);
+            store.forEach(compactedConsumer);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param bpid block pool id
+   * @return the number of compacted replicas of the block pool
+   */
+  int compactedSize(String bpid) {
+    CompactReplicaStore store = compactMap.get(bpid);
+    if (store == null) {
+      return 0;
+    }
+    synchronized (store) {
+      return store.size();
+    }
+  }
+
+  /**
+   * Move the finalized replicas of a block pool which can be stored as
+   * primitives to the compact store of the block pool. This must only be
+   * called when no replica object of the block pool is in use, e.g. once the
+   * replicas are loaded from the disks, since the replicas moved back to
+   * the map are new objects.
+   *
+   * @param bpid block pool id
+   * @param offHeap whether to keep a new store off-heap
+   * @return the number of replicas compacted
+   */
+  int compact(String bpid, boolean offHeap) {
+    checkBlockPool(bpid);
+    try (AutoCloseDataSetLock l = lockManager.writeLock(LockLevel.BLOCK_POOl, bpid)) {
+      LightWeightResizableGSet<Block, ReplicaInfo> m = map.get(bpid);
+      if (m == null) {
+        return 0;
+      }
+      CompactReplicaStore store = compactMap.computeIfAbsent(bpid,
+          k -> new CompactReplicaStore(offHeap));
+      final int[] compacted = {0};
+      synchronized (store) {
+        m.getIterator(iterator -> {
+          while (iterator.hasNext()) {
+            ReplicaInfo replicaInfo = iterator.next();
+            if (CompactReplicaStore.isCompactable(replicaInfo)
+                && store.add(replicaInfo)) {
+              iterator.remove();
+              compacted[0]++;
+            }
+          }
+        });
       }
+      return compacted[0];
     }
   }
 
@@ -291,6 +497,7 @@ void cleanUpBlockPool(String bpid) {
     checkBlockPool(bpid);
     try (AutoCloseDataSetLock l = lockManager.writeLock(LockLevel.BLOCK_POOl, bpid)) {
       map.remove(bpid);
+      compactMap.remove(bpid);
     }
   }
 }
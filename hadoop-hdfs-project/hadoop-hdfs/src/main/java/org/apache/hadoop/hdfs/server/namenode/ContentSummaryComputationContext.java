@@ -44,6 +44,7 @@ public class ContentSummaryComputationContext {
   private long nextCountLimit = 0;
   private long limitPerRun = 0;
   private long yieldCount = 0;
+  private long underConstructionFileCount = 0;
   private long sleepMilliSec = 0;
   private int sleepNanoSec = 0;
 
@@ -145,6 +146,28 @@ public boolean yield() {
     return true;
   }
 
+  /** Return the number of files under construction counted so far. */
+  long getUnderConstructionFileCount() {
+    return underConstructionFileCount;
+  }
+
+  void addUnderConstructionFile() {
+    underConstructionFileCount++;
+  }
+
+  /**
+   * Whether the content counts of directories with quota may be served from
+   * and stored to their cache. Cached subtrees are not traversed, so this is
+   * only allowed when no per-directory permission check would be done.
+   */
+  boolean isContentCacheable() {
+    if (dir == null || !dir.isContentSummaryCacheEnabled()) {
+      return false;
+    }
+    return pc == null || !dir.isPermissionEnabled()
+        || (pc.isSuperUser() && pc.getAttributesProvider() == null);
+  }
+
   /** Get the content counts */
   public ContentCounts getCounts() {
     return counts;
@@ -25,6 +25,7 @@
 import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.EnumCounters;
+import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.hadoop.security.AccessControlException;
 
 /**
@@ -37,6 +38,31 @@ public final class DirectoryWithQuotaFeature implements INode.Feature {
   private QuotaCounts quota;
   private QuotaCounts usage;
 
+  /**
+   * Bumped whenever the subtree may have changed, see
+   * {@link #markContentChanged()}.
+   */
+  private long contentVersion = 0;
+  /**
+   * Content counts of the current state of the subtree, cached from the last
+   * complete computation and dropped on any change. Null if not cached.
+   * Content summaries are computed under the read lock, so the cache is
+   * published by concurrent readers and must never be modified once set.
+   */
+  private volatile CachedContent cachedContent;
+
+  /** The immutable cached content counts of a subtree. */
+  private static final class CachedContent {
+    private final ContentCounts counts;
+    private final ContentCounts snapshotCounts;
+
+    private CachedContent(ContentCounts counts,
+        ContentCounts snapshotCounts) {
+      this.counts = counts;
+      this.snapshotCounts = snapshotCounts;
+    }
+  }
+
   public static class Builder {
     private QuotaCounts quota;
     private QuotaCounts usage;
@@ -113,16 +139,61 @@ QuotaCounts AddCurrentSpaceUsage(QuotaCounts counts) {
   ContentSummaryComputationContext computeContentSummary(final INodeDirectory dir,
       final ContentSummaryComputationContext summary)
       throws AccessControlException {
+    final boolean cacheable = summary.isContentCacheable();
+    final CachedContent cached = cacheable ? cachedContent : null;
+    if (cached != null) {
+      summary.getCounts().addContents(cached.counts);
+      summary.getSnapshotCounts().addContents(cached.snapshotCounts);
+      return summary;
+    }
     final long original = summary.getCounts().getStoragespace();
     long oldYieldCount = summary.getYieldCount();
+    final long oldContentVersion = contentVersion;
+    final long oldUcCount = summary.getUnderConstructionFileCount();
+    final ContentCounts counts =
+        cacheable ? copyOf(summary.getCounts()) : null;
+    final ContentCounts snapshotCounts =
+        cacheable ? copyOf(summary.getSnapshotCounts()) : null;
     dir.computeDirectoryContentSummary(summary, Snapshot.CURRENT_STATE_ID);
     // Check only when the content has not changed in the middle.
     if (oldYieldCount == summary.getYieldCount()) {
       checkStoragespace(dir, summary.getCounts().getStoragespace() - original);
+      // Files being written change length without resolving their path for
+      // write, so only a subtree without them is safe to cache.
+      if (cacheable && oldContentVersion == contentVersion
+          && oldUcCount == summary.getUnderConstructionFileCount()) {
+        final ContentCounts subtreeCounts = copyOf(summary.getCounts());
+        subtreeCounts.subtractContents(counts);
+        final ContentCounts subtreeSnapshotCounts =
+            copyOf(summary.getSnapshotCounts());
+        subtreeSnapshotCounts.subtractContents(snapshotCounts);
+        cachedContent = new CachedContent(subtreeCounts,
+            subtreeSnapshotCounts);
+      }
     }
     return summary;
   }
 
+  private static ContentCounts copyOf(ContentCounts counts) {
+    final ContentCounts copy = new ContentCounts.Builder().build();
+    copy.addContents(counts);
+    return copy;
+  }
+
+  /**
+   * Drop the cached content of the subtree. Called for every change that
+   * may affect the content summary of this directory.
+   */
+  void markContentChanged() {
+    contentVersion++;
+    cachedContent = null;
+  }
+
+  @VisibleForTesting
+  boolean isContentCached() {
+    return cachedContent != null;
+  }
+
   private void checkStoragespace(final INodeDirectory dir, final long computed) {
     if (-1 != quota.getStorageSpace() && usage.getStorageSpace() != computed) {
       NameNode.LOG.warn("BUG: Inconsistent storagespace for directory "
@@ -137,6 +208,7 @@ private void checkStoragespace(final INodeDirectory dir, final long computed) {
    */
   public void addSpaceConsumed2Cache(QuotaCounts delta) {
     usage.add(delta);
+    markContentChanged();
   }
 
   /** 
@@ -150,12 +222,14 @@ public void addSpaceConsumed2Cache(QuotaCounts delta) {
    */
   void setSpaceConsumed(long namespace, long storagespace,
       EnumCounters<StorageType> typespaces) {
+    markContentChanged();
     usage.setNameSpace(namespace);
     usage.setStorageSpace(storagespace);
     usage.setTypeSpaces(typespaces);
   }
 
   void setSpaceConsumed(QuotaCounts c) {
+    markContentChanged();
     usage.setNameSpace(c.getNameSpace());
     usage.setStorageSpace(c.getStorageSpace());
     usage.setTypeSpaces(c.getTypeSpaces());
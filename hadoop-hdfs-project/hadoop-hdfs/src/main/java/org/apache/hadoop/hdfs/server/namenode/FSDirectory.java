@@ -156,9 +156,14 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private volatile boolean skipQuotaCheck = false; //skip while consuming edits
   private final int maxComponentLength;
   private final int maxDirItems;
+  // children above which they are stored in a ChunkedList
+  private final int largeDirectoryThreshold;
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final boolean contentSummaryCacheEnabled;
+  // null if path resolution is not cached
+  private final PathResolutionCache pathResolutionCache;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
@@ -317,7 +322,7 @@ public enum DirOp {
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
-    inodeMap = INodeMap.newInstance(rootDir);
+    inodeMap = INodeMap.newInstance(rootDir, conf);
     this.isPermissionEnabled = conf.getBoolean(
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY,
       DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT);
@@ -371,6 +376,14 @@ public enum DirOp {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryCacheEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT);
+    int pathResolutionCacheSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_PATH_RESOLUTION_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_PATH_RESOLUTION_CACHE_SIZE_DEFAULT);
+    this.pathResolutionCache = pathResolutionCacheSize > 0 ?
+        new PathResolutionCache(pathResolutionCacheSize) : null;
     
     // filesystem limits
     this.maxComponentLength = (int) conf.getLongBytes(
@@ -399,6 +412,9 @@ public enum DirOp {
         maxDirItems > 0 && maxDirItems <= MAX_DIR_ITEMS, "Cannot set "
             + DFSConfigKeys.DFS_NAMENODE_MAX_DIRECTORY_ITEMS_KEY
             + " to a value less than 1 or greater than " + MAX_DIR_ITEMS);
+    this.largeDirectoryThreshold = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_DEFAULT);
 
     int threshold = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY,
@@ -634,6 +650,10 @@ int getLsLimit() {
     return lsLimit;
   }
 
+  int getLargeDirectoryThreshold() {
+    return largeDirectoryThreshold;
+  }
+
   int getContentCountLimit() {
     return contentCountLimit;
   }
@@ -642,6 +662,51 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  boolean isContentSummaryCacheEnabled() {
+    return contentSummaryCacheEnabled;
+  }
+
+  /**
+   * Invalidate the cached path resolutions, since a directory is about to
+   * be removed, moved or made snapshottable.
+   */
+  public void invalidatePathResolutionCache() {
+    if (pathResolutionCache != null) {
+      pathResolutionCache.invalidate();
+    }
+  }
+
+  long getPathResolutionCacheHits() {
+    return pathResolutionCache != null ? pathResolutionCache.getHits() : 0;
+  }
+
+  long getPathResolutionCacheMisses() {
+    return pathResolutionCache != null ? pathResolutionCache.getMisses() : 0;
+  }
+
+  /**
+   * Invalidate the content summaries cached by the directories with quota
+   * on the given path, since the subtree below them may be about to change.
+   */
+  void markContentChanged(INodesInPath iip) {
+    if (!contentSummaryCacheEnabled) {
+      return;
+    }
+    for (int i = 0; i < iip.length(); i++) {
+      final INode inode = iip.getINode(i);
+      if (inode != null && inode.isQuotaSet()) {
+        inode.asDirectory().getDirectoryWithQuotaFeature()
+            .markContentChanged();
+      }
+    }
+  }
+
+  private void markContentChanged(INodesInPath iip, DirOp dirOp) {
+    if (dirOp != DirOp.READ && dirOp != DirOp.READ_LINK) {
+      markContentChanged(iip);
+    }
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -718,7 +783,8 @@ public INodesInPath resolvePath(FSPermissionChecker pc, String src,
     byte[][] components = INode.getPathComponents(src);
     boolean isRaw = isReservedRawName(components);
     components = resolveComponents(components, this);
-    INodesInPath iip = INodesInPath.resolve(rootDir, components, isRaw);
+    INodesInPath iip = INodesInPath.resolve(rootDir, components, isRaw,
+        pathResolutionCache);
     if (isPermissionEnabled && pc != null && isRaw) {
       switch(dirOp) {
       case READ_LINK:
@@ -740,6 +806,7 @@ public INodesInPath resolvePath(FSPermissionChecker pc, String src,
       }
       throw pnde;
     }
+    markContentChanged(iip, dirOp);
     return iip;
   }
 
@@ -760,7 +827,8 @@ public INodesInPath unprotectedResolvePath(String src)
     byte[][] components = INode.getPathComponents(src);
     boolean isRaw = isReservedRawName(components);
     components = resolveComponents(components, this);
-    return INodesInPath.resolve(rootDir, components, isRaw);
+    return INodesInPath.resolve(rootDir, components, isRaw,
+        pathResolutionCache);
   }
 
   INodesInPath resolvePath(FSPermissionChecker pc, String src, long fileId)
@@ -1388,6 +1456,7 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
       updateCountNoQuotaCheck(existing, pos, counts.negation());
       return null;
     } else {
+      parent.chunkChildren(largeDirectoryThreshold);
       if (!isRename) {
         copyINodeDefaultAcl(inode, modes);
       }
@@ -1420,6 +1489,9 @@ public long removeLastINode(final INodesInPath iip) {
     final int latestSnapshot = iip.getLatestSnapshotId();
     final INode last = iip.getLastINode();
     final INodeDirectory parent = iip.getINode(-2).asDirectory();
+    if (last.isDirectory()) {
+      invalidatePathResolutionCache();
+    }
     if (!parent.removeChild(last, latestSnapshot)) {
       return -1;
     }
@@ -1589,6 +1661,9 @@ void reset() {
       inodeMap.clear();
       addToInodeMap(rootDir);
       nameCache.reset();
+      if (pathResolutionCache != null) {
+        pathResolutionCache.clear();
+      }
       inodeId.setCurrentValue(INodeId.LAST_RESERVED_ID);
     } finally {
       writeUnlock();
@@ -1820,8 +1895,10 @@ public INodesInPath getINodesInPath(String src, DirOp dirOp)
   public INodesInPath getINodesInPath(byte[][] components, DirOp dirOp)
       throws UnresolvedLinkException, AccessControlException,
       ParentNotDirectoryException {
-    INodesInPath iip = INodesInPath.resolve(rootDir, components);
+    INodesInPath iip = INodesInPath.resolve(rootDir, components, false,
+        pathResolutionCache);
     checkTraverse(null, iip, dirOp);
+    markContentChanged(iip, dirOp);
     return iip;
   }
 
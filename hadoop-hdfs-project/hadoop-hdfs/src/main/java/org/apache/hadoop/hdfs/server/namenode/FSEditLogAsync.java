@@ -55,6 +55,17 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // of the edit log buffer - ie. a sync will eventually be forced.
   private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
 
+  // if pipelined, the edits of batches handed off to the syncer thread and
+  // the txid to sync them to.  guarded by handoffLock.
+  private final boolean pipelined;
+  private Thread syncerThread;
+  private final Object handoffLock = new Object();
+  private Deque<Edit> handoffQ = new ArrayDeque<Edit>();
+  private long handoffTxId;
+  // set once the edit thread is stopped: the syncer syncs the batches left
+  // in handoffQ and exits.
+  private boolean stopSyncer;
+
   private long lastFull = 0;
 
   FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
@@ -67,6 +78,9 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
             DFS_NAMENODE_EDITS_ASYNC_LOGGING_PENDING_QUEUE_SIZE_DEFAULT);
 
     editPendingQ = new ArrayBlockingQueue<>(editPendingQSize);
+    pipelined = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED_DEFAULT);
   }
 
   private boolean isSyncThreadAlive() {
@@ -81,6 +95,15 @@ private void startSyncThread() {
         syncThread = new Thread(this, this.getClass().getSimpleName());
         syncThread.start();
       }
+      if (pipelined &&
+          (syncerThread == null || !syncerThread.isAlive())) {
+        synchronized (handoffLock) {
+          stopSyncer = false;
+        }
+        syncerThread = new Thread(new Syncer(),
+            this.getClass().getSimpleName() + "Syncer");
+        syncerThread.start();
+      }
     }
   }
 
@@ -96,6 +119,21 @@ private void stopSyncThread() {
           syncThread = null;
         }
       }
+      if (syncerThread != null) {
+        // not interrupted, so that the edits already handed off are synced
+        // and their callers notified.
+        synchronized (handoffLock) {
+          stopSyncer = true;
+          handoffLock.notifyAll();
+        }
+        try {
+          syncerThread.join();
+        } catch (InterruptedException e) {
+          // we're quitting anyway.
+        } finally {
+          syncerThread = null;
+        }
+      }
     }
   }
 
@@ -258,7 +296,9 @@ public void run() {
           doSync = !syncWaitQ.isEmpty();
           metrics.setPendingEditsCount(0);
         }
-        if (doSync) {
+        if (doSync && pipelined) {
+          handoff(edit != null);
+        } else if (doSync) {
           // normally edit log exceptions cause the NN to terminate, but tests
           // relying on ExitUtil.terminate need to see the exception.
           RuntimeException syncEx = null;
@@ -274,11 +314,99 @@ public void run() {
       }
     } catch (InterruptedException ie) {
       LOG.info(Thread.currentThread().getName() + " was interrupted, exiting");
+      if (pipelined && !syncWaitQ.isEmpty()) {
+        // the syncer syncs them before it exits.
+        handoffRemaining();
+      }
     } catch (Throwable t) {
       terminate(t);
     }
   }
 
+  /**
+   * Hand the edits awaiting a sync over to the syncer thread and return
+   * without waiting for the sync, so more edits can be written to the
+   * double buffer while it is in flight.  Edits handed off while a sync is
+   * running are batched into the next one.
+   * @param forced whether the sync was forced, ie. the buffer is full.  If
+   *        so, wait for the previous batch to be taken so that at most one
+   *        batch is buffered behind the one being synced.
+   */
+  private void handoff(boolean forced) throws InterruptedException {
+    final long txid = getLastWrittenTxId();
+    synchronized (handoffLock) {
+      while (forced && !handoffQ.isEmpty()) {
+        handoffLock.wait();
+      }
+      handoffQ.addAll(syncWaitQ);
+      handoffTxId = txid;
+      handoffLock.notifyAll();
+    }
+    syncWaitQ.clear();
+  }
+
+  /**
+   * Hand the edits awaiting a sync over to the syncer thread without
+   * waiting for the previous batch to be taken, when the edit thread exits.
+   */
+  private void handoffRemaining() {
+    final long txid = getLastWrittenTxId();
+    synchronized (handoffLock) {
+      handoffQ.addAll(syncWaitQ);
+      handoffTxId = txid;
+      handoffLock.notifyAll();
+    }
+    syncWaitQ.clear();
+  }
+
+  /**
+   * Syncs the batches handed off by the edit thread, in txid order, and
+   * notifies their edits once durable.  Once stopped, it syncs the batch
+   * left, if any, and exits.
+   */
+  private class Syncer implements Runnable {
+    @Override
+    public void run() {
+      try {
+        Deque<Edit> batch = new ArrayDeque<Edit>();
+        while (true) {
+          final long txid;
+          synchronized (handoffLock) {
+            while (handoffQ.isEmpty() && !stopSyncer) {
+              handoffLock.wait();
+            }
+            if (handoffQ.isEmpty()) {
+              LOG.info(Thread.currentThread().getName() + " was stopped, "
+                  + "exiting");
+              return;
+            }
+            // swap the queues to take the whole batch.
+            Deque<Edit> tmp = handoffQ;
+            handoffQ = batch;
+            batch = tmp;
+            txid = handoffTxId;
+            handoffLock.notifyAll();
+          }
+          RuntimeException syncEx = null;
+          try {
+            logSync(txid);
+          } catch (RuntimeException ex) {
+            syncEx = ex;
+          }
+          Edit edit;
+          while ((edit = batch.poll()) != null) {
+            edit.logSyncNotify(syncEx);
+          }
+        }
+      } catch (InterruptedException ie) {
+        LOG.info(Thread.currentThread().getName() +
+            " was interrupted, exiting");
+      } catch (Throwable t) {
+        terminate(t);
+      }
+    }
+  }
+
   private void terminate(Throwable t) {
     String message = "Exception while edit logging: "+t.getMessage();
     LOG.error(message, t);
@@ -487,6 +487,7 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
 
       final INodesInPath iip = fsDir.getINodesInPath(path, DirOp.READ);
       final INodeFile file = INodeFile.valueOf(iip.getLastINode(), path);
+      fsDir.markContentChanged(iip);
 
       // Update the salient file attributes.
       file.setAccessTime(addCloseOp.atime, Snapshot.CURRENT_STATE_ID, false);
@@ -550,6 +551,7 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       }
       INodesInPath iip = fsDir.getINodesInPath(path, DirOp.READ);
       INodeFile oldFile = INodeFile.valueOf(iip.getLastINode(), path);
+      fsDir.markContentChanged(iip);
       // Update in-memory data structures
       ErasureCodingPolicy ecPolicy =
           FSDirErasureCodingOp.unprotectedGetErasureCodingPolicy(
@@ -570,6 +572,7 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
       }
       INodesInPath iip = fsDir.getINodesInPath(path, DirOp.READ);
       INodeFile oldFile = INodeFile.valueOf(iip.getLastINode(), path);
+      fsDir.markContentChanged(iip);
       // add the new block to the INodeFile
       ErasureCodingPolicy ecPolicy =
           FSDirErasureCodingOp.unprotectedGetErasureCodingPolicy(
@@ -799,6 +802,7 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
           renameReservedPathsOnUpgrade(createSnapshotOp.snapshotRoot,
               logVersion);
       INodesInPath iip = fsDir.unprotectedResolvePath(snapshotRoot);
+      fsDir.markContentChanged(iip);
       String path = fsNamesys.getSnapshotManager().createSnapshot(
           fsDir.getFSNamesystem().getLeaseManager(),
           iip, snapshotRoot, createSnapshotOp.snapshotName,
@@ -817,6 +821,7 @@ private long applyEditLogOp(FSEditLogOp op, FSDirectory fsDir,
           renameReservedPathsOnUpgrade(deleteSnapshotOp.snapshotRoot,
               logVersion);
       INodesInPath iip = fsDir.unprotectedResolvePath(snapshotRoot);
+      fsDir.markContentChanged(iip);
       fsNamesys.getSnapshotManager().deleteSnapshot(iip,
           deleteSnapshotOp.snapshotName,
           new INode.ReclaimContext(fsNamesys.dir.getBlockStoragePolicySuite(),
@@ -292,6 +292,7 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
                 ref.getId(), p.getId());
           }
         }
+        p.chunkChildren(dir.getLargeDirectoryThreshold());
       }
     }
 
@@ -746,6 +747,10 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           .getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      if (parent.isSavingInParallel()) {
+        serializeINodeDirectorySectionInParallel(iter, refList);
+        return;
+      }
       int i = 0;
       int outputInodes = 0;
       while (iter.hasNext()) {
@@ -757,32 +762,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
         ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
             Snapshot.CURRENT_STATE_ID);
         if (children.size() > 0) {
-          INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
-              DirEntry.newBuilder().setParent(n.getId());
-          for (INode inode : children) {
-            // Error if the child inode doesn't exist in inodeMap
-            if (dir.getInode(inode.getId()) == null) {
-              FSImage.LOG.error(
-                  "FSImageFormatPBINode#serializeINodeDirectorySection: " +
-                      "Dangling child pointer found. Missing INode in " +
-                      "inodeMap: id=" + inode.getId() +
-                      "; path=" + inode.getFullPathName() +
-                      "; parent=" + (inode.getParent() == null ? "null" :
-                      inode.getParent().getFullPathName()));
-              ++numImageErrors;
-            }
-            if (!inode.isReference()) {
-              // Serialization must ensure that children are in order, related
-              // to HDFS-13693
-              b.addChildren(inode.getId());
-            } else {
-              refList.add(inode.asReference());
-              b.addRefChildren(refList.size() - 1);
-            }
-            outputInodes++;
-          }
-          INodeDirectorySection.DirEntry e = b.build();
-          e.writeDelimitedTo(out);
+          buildDirEntry(n, children, refList).writeDelimitedTo(out);
+          outputInodes += children.size();
         }
 
         ++i;
@@ -800,12 +781,106 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
     }
 
+    private INodeDirectorySection.DirEntry buildDirEntry(INode n,
+        ReadOnlyList<INode> children, List<INodeReference> refList) {
+      FSDirectory dir = fsn.getFSDirectory();
+      INodeDirectorySection.DirEntry.Builder b = INodeDirectorySection.
+          DirEntry.newBuilder().setParent(n.getId());
+      for (INode inode : children) {
+        // Error if the child inode doesn't exist in inodeMap
+        if (dir.getInode(inode.getId()) == null) {
+          FSImage.LOG.error(
+              "FSImageFormatPBINode#serializeINodeDirectorySection: " +
+                  "Dangling child pointer found. Missing INode in " +
+                  "inodeMap: id=" + inode.getId() +
+                  "; path=" + inode.getFullPathName() +
+                  "; parent=" + (inode.getParent() == null ? "null" :
+                  inode.getParent().getFullPathName()));
+          ++numImageErrors;
+        }
+        if (!inode.isReference()) {
+          // Serialization must ensure that children are in order, related
+          // to HDFS-13693
+          b.addChildren(inode.getId());
+        } else {
+          refList.add(inode.asReference());
+          b.addRefChildren(refList.size() - 1);
+        }
+      }
+      return b.build();
+    }
+
+    /**
+     * Build the directory entries in order, as they refer to the reference
+     * list, and serialize and compress them on the parallel save threads.
+     */
+    private void serializeINodeDirectorySectionInParallel(
+        Iterator<INodeWithAdditionalFields> iter,
+        List<INodeReference> refList) throws IOException {
+      int i = 0;
+      int outputInodes = 0;
+      int batchInodes = 0;
+      List<INodeDirectorySection.DirEntry> batch = new ArrayList<>();
+      while (iter.hasNext()) {
+        INodeWithAdditionalFields n = iter.next();
+        if (!n.isDirectory()) {
+          continue;
+        }
+
+        ReadOnlyList<INode> children = n.asDirectory().getChildrenList(
+            Snapshot.CURRENT_STATE_ID);
+        if (children.size() > 0) {
+          batch.add(buildDirEntry(n, children, refList));
+          outputInodes += children.size();
+          batchInodes += children.size();
+        }
+
+        ++i;
+        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+          context.checkCancelled();
+        }
+        boolean endOfSubSection =
+            outputInodes >= parent.getInodesPerSubSection();
+        if (endOfSubSection || batchInodes >=
+            FSImageFormatProtobuf.Saver.PARALLEL_SAVE_BATCH_SIZE) {
+          saveDirEntriesInParallel(batch);
+          batch = new ArrayList<>();
+          batchInodes = 0;
+        }
+        if (endOfSubSection) {
+          outputInodes = 0;
+          parent.commitSubSectionInParallel(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+        }
+      }
+      if (!batch.isEmpty()) {
+        saveDirEntriesInParallel(batch);
+      }
+      parent.commitSectionInParallel(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+    }
+
+    private void saveDirEntriesInParallel(
+        final List<INodeDirectorySection.DirEntry> entries)
+        throws IOException {
+      parent.saveBatchInParallel(out -> {
+        for (INodeDirectorySection.DirEntry e : entries) {
+          e.writeDelimitedTo(out);
+        }
+      });
+    }
+
     void serializeINodeSection(OutputStream out) throws IOException {
       INodeMap inodesMap = fsn.dir.getINodeMap();
 
       INodeSection.Builder b = INodeSection.newBuilder()
           .setLastInodeId(fsn.dir.getLastInodeId()).setNumInodes(inodesMap.size());
       INodeSection s = b.build();
+      if (parent.isSavingInParallel()) {
+        serializeINodeSectionInParallel(s, inodesMap);
+        return;
+      }
       s.writeDelimitedTo(out);
 
       int i = 0;
@@ -827,6 +902,53 @@ void serializeINodeSection(OutputStream out) throws IOException {
           FSImageFormatProtobuf.SectionName.INODE_SUB);
     }
 
+    /**
+     * Serialize the inodes in batches on the parallel save threads. The
+     * section header is written at the start of the first sub-section.
+     */
+    private void serializeINodeSectionInParallel(INodeSection header,
+        INodeMap inodesMap) throws IOException {
+      int i = 0;
+      List<INodeWithAdditionalFields> batch = new ArrayList<>();
+      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+      while (iter.hasNext()) {
+        batch.add(iter.next());
+        ++i;
+        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+          context.checkCancelled();
+        }
+        boolean endOfSubSection = i % parent.getInodesPerSubSection() == 0;
+        if (endOfSubSection || batch.size() >=
+            FSImageFormatProtobuf.Saver.PARALLEL_SAVE_BATCH_SIZE) {
+          saveINodesInParallel(header, batch);
+          header = null;
+          batch = new ArrayList<>();
+        }
+        if (endOfSubSection) {
+          parent.commitSubSectionInParallel(summary,
+              FSImageFormatProtobuf.SectionName.INODE_SUB);
+        }
+      }
+      if (header != null || !batch.isEmpty()) {
+        saveINodesInParallel(header, batch);
+      }
+      parent.commitSectionInParallel(summary,
+          FSImageFormatProtobuf.SectionName.INODE,
+          FSImageFormatProtobuf.SectionName.INODE_SUB);
+    }
+
+    private void saveINodesInParallel(final INodeSection header,
+        final List<INodeWithAdditionalFields> inodes) throws IOException {
+      parent.saveBatchInParallel(out -> {
+        if (header != null) {
+          header.writeDelimitedTo(out);
+        }
+        for (INodeWithAdditionalFields n : inodes) {
+          save(out, n);
+        }
+      });
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
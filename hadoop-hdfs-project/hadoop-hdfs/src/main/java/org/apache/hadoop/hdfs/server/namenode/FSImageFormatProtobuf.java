@@ -22,6 +22,7 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -33,16 +34,20 @@
 import java.nio.channels.FileChannel;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.ErasureCodingPolicyInfo;
@@ -340,14 +345,7 @@ private ArrayList<FileSummary.Section> getSubSectionsOfName(
      * @return ExecutorServie with the correct number of threads
      */
     private ExecutorService getParallelExecutorService() {
-      int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
-          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
-      if (threads < 1) {
-        LOG.warn("Parallel is enabled and {} is set to {}. Setting to the " +
-            "default value {}", DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
-            threads, DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
-        threads = DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT;
-      }
+      int threads = getParallelThreads(conf);
       ExecutorService executorService = Executors.newFixedThreadPool(
           threads);
       LOG.info("The fsimage will be loaded in parallel using {} threads",
@@ -582,21 +580,24 @@ private void loadErasureCodingSection(InputStream in)
     }
   }
 
+  /**
+   * Sub-sections are compressed independently of each other, so they can be
+   * saved and loaded in parallel whether or not image compression is enabled.
+   */
   private static boolean enableParallelSaveAndLoad(Configuration conf) {
-    boolean loadInParallel = enableParallelLoad;
-    boolean compressionEnabled = conf.getBoolean(
-        DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY,
-        DFSConfigKeys.DFS_IMAGE_COMPRESS_DEFAULT);
-
-    if (loadInParallel) {
-      if (compressionEnabled) {
-        LOG.warn("Parallel Image loading and saving is not supported when {}" +
-                " is set to true. Parallel will be disabled.",
-            DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY);
-        loadInParallel = false;
-      }
+    return enableParallelLoad;
+  }
+
+  private static int getParallelThreads(Configuration conf) {
+    int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+    if (threads < 1) {
+      LOG.warn("Parallel is enabled and {} is set to {}. Setting to the " +
+          "default value {}", DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          threads, DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      threads = DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT;
     }
-    return loadInParallel;
+    return threads;
   }
 
   public static void initParallelLoad(Configuration conf) {
@@ -615,9 +616,44 @@ public static boolean getEnableParallelLoad() {
 
   public static final class Saver {
     public static final int CHECK_CANCEL_INTERVAL = 4096;
+    /**
+     * Maximum number of inodes serialized by one task of the parallel save.
+     * Sub-sections are split into batches of at most this many inodes so
+     * that the memory used by the batches in flight is bounded.
+     */
+    public static final int PARALLEL_SAVE_BATCH_SIZE =
+        16 * CHECK_CANCEL_INTERVAL;
     private boolean writeSubSections = false;
     private int inodesPerSubSection = Integer.MAX_VALUE;
 
+    /**
+     * Serializes one batch of a sub-section on the parallel save threads.
+     */
+    @FunctionalInterface
+    public interface BatchSerializer {
+      void serialize(OutputStream out) throws IOException;
+    }
+
+    /**
+     * A batch being serialized in parallel, and the sub-section to commit
+     * once it has been written out, if it is the last one of the
+     * sub-section.
+     */
+    private static final class PendingBatch {
+      private final Future<byte[]> data;
+      private FileSummary.Builder summary;
+      private SectionName subSectionName;
+
+      private PendingBatch(Future<byte[]> data) {
+        this.data = data;
+      }
+    }
+
+    // if not null, sub-sections are serialized in batches on these threads
+    private ExecutorService parallelSaveExecutor;
+    private int maxPendingBatches;
+    private final Deque<PendingBatch> pendingBatches = new ArrayDeque<>();
+
     private final SaveNamespaceContext context;
     private final SaverContext saverContext;
     private long currentOffset = FSImageUtil.MAGIC_HEADER.length;
@@ -625,8 +661,11 @@ public static final class Saver {
     private MD5Hash savedDigest;
 
     private FileChannel fileChannel;
-    // OutputStream for the section data
+    // OutputStream for the section data, created by the first write to the
+    // section, see getSectionOutputStream()
     private OutputStream sectionOutputStream;
+    private final OutputStream lazySectionOutputStream =
+        new LazySectionOutputStream();
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
     private Configuration conf;
@@ -653,6 +692,102 @@ public int getInodesPerSubSection() {
       return inodesPerSubSection;
     }
 
+    /**
+     * @return true if the sections with sub-sections are to be saved with
+     *         {@link #saveBatchInParallel} instead of being written to the
+     *         section output stream.
+     */
+    public boolean isSavingInParallel() {
+      return parallelSaveExecutor != null;
+    }
+
+    /**
+     * Serialize a batch of the current sub-section on the parallel save
+     * threads. Each batch is compressed on its own, so the batches and the
+     * sub-sections made of them can be decompressed independently. The
+     * batches are written to the image in the order they were submitted.
+     * @param serializer writes the batch to the stream it is given
+     * @throws IOException if an earlier batch failed
+     */
+    public void saveBatchInParallel(BatchSerializer serializer)
+        throws IOException {
+      while (pendingBatches.size() >= maxPendingBatches) {
+        writeNextBatch();
+      }
+      pendingBatches.add(new PendingBatch(
+          parallelSaveExecutor.submit(() -> serializeBatch(serializer))));
+    }
+
+    /**
+     * Commit a sub-section once the batches submitted so far with
+     * {@link #saveBatchInParallel} have been written to the image.
+     * @param summary The image summary object
+     * @param name The name of the sub-section to commit
+     * @throws IOException
+     */
+    public void commitSubSectionInParallel(FileSummary.Builder summary,
+        SectionName name) throws IOException {
+      PendingBatch last = pendingBatches.peekLast();
+      if (last == null) {
+        commitSubSection(summary, name);
+      } else {
+        last.summary = summary;
+        last.subSectionName = name;
+      }
+    }
+
+    /**
+     * Write out all the batches of a section saved in parallel and commit
+     * its last sub-section and the section itself.
+     * @param summary The image summary object
+     * @param name The name of the section to commit
+     * @param subSectionName The name of the sub-section to commit
+     * @throws IOException
+     */
+    public void commitSectionInParallel(FileSummary.Builder summary,
+        SectionName name, SectionName subSectionName) throws IOException {
+      commitSubSectionInParallel(summary, subSectionName);
+      while (!pendingBatches.isEmpty()) {
+        writeNextBatch();
+      }
+      // the section output stream is not created for a section saved in
+      // parallel, so there is nothing to finish.
+      underlyingOutputStream.flush();
+      long length = fileChannel.position() - currentOffset;
+      summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
+          .setLength(length).setOffset(currentOffset));
+      currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    private byte[] serializeBatch(BatchSerializer serializer)
+        throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (OutputStream out = codec != null ?
+          codec.createOutputStream(bytes) : bytes) {
+        serializer.serialize(out);
+      }
+      return bytes.toByteArray();
+    }
+
+    private void writeNextBatch() throws IOException {
+      PendingBatch batch = pendingBatches.remove();
+      try {
+        underlyingOutputStream.write(batch.data.get());
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted saving the image in parallel", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to save the image in parallel",
+            e.getCause());
+      }
+      if (batch.subSectionName != null) {
+        commitSubSection(batch.summary, batch.subSectionName);
+      }
+    }
+
     /**
      * Commit the length and offset of a fsimage section to the summary index,
      * including the sub section, which will be committed before the section is
@@ -672,12 +807,11 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
         throws IOException {
       long oldOffset = currentOffset;
       flushSectionOutputStream();
-
-      if (codec != null) {
-        sectionOutputStream = codec.createOutputStream(underlyingOutputStream);
-      } else {
-        sectionOutputStream = underlyingOutputStream;
-      }
+      // The stream of the next section is only created when it is written
+      // to: some codecs, e.g. the pure Java gzip, write a header as soon as
+      // the stream is created, which must not precede the batches of a
+      // section saved in parallel.
+      sectionOutputStream = null;
       long length = fileChannel.position() - oldOffset;
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
@@ -701,7 +835,11 @@ public void commitSubSection(FileSummary.Builder summary, SectionName name)
       LOG.debug("Saving a subsection for {}", name.toString());
       // The output stream must be flushed before the length is obtained
       // as the flush can move the length forward.
-      sectionOutputStream.flush();
+      if (sectionOutputStream != null) {
+        sectionOutputStream.flush();
+      } else {
+        underlyingOutputStream.flush();
+      }
       long length = fileChannel.position() - subSectionOffset;
       if (length == 0) {
         LOG.warn("The requested section for {} is empty. It will not be " +
@@ -714,10 +852,51 @@ public void commitSubSection(FileSummary.Builder summary, SectionName name)
     }
 
     private void flushSectionOutputStream() throws IOException {
+      OutputStream out = getSectionOutputStream();
       if (codec != null) {
-        ((CompressionOutputStream) sectionOutputStream).finish();
+        ((CompressionOutputStream) out).finish();
+      }
+      out.flush();
+    }
+
+    /**
+     * @return the output stream of the current section, created on the
+     *         first call after the previous section was committed.
+     */
+    private OutputStream getSectionOutputStream() throws IOException {
+      if (sectionOutputStream == null) {
+        if (codec != null) {
+          sectionOutputStream =
+              codec.createOutputStream(underlyingOutputStream);
+        } else {
+          sectionOutputStream = underlyingOutputStream;
+        }
+      }
+      return sectionOutputStream;
+    }
+
+    /**
+     * Writes to the output stream of the current section, so that the stream
+     * is only created if the section is written to, and not for a section
+     * saved in parallel.
+     */
+    private final class LazySectionOutputStream extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        getSectionOutputStream().write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        getSectionOutputStream().write(b, off, len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        if (sectionOutputStream != null) {
+          sectionOutputStream.flush();
+        }
       }
-      sectionOutputStream.flush();
     }
 
     /**
@@ -728,6 +907,13 @@ long save(File file, FSImageCompression compression) throws IOException {
       enableSubSectionsIfRequired();
       FileOutputStream fout = new FileOutputStream(file);
       fileChannel = fout.getChannel();
+      if (writeSubSections) {
+        int threads = getParallelThreads(conf);
+        parallelSaveExecutor = Executors.newFixedThreadPool(threads);
+        maxPendingBatches = 2 * threads;
+        LOG.info("The fsimage will be saved in parallel using {} threads",
+            threads);
+      }
       try {
         LOG.info("Saving image file {} using {}", file, compression);
         long startTime = monotonicNow();
@@ -738,6 +924,11 @@ long save(File file, FSImageCompression compression) throws IOException {
             (numErrors > 0 ? (" with" + numErrors + " errors") : ""));
         return numErrors;
       } finally {
+        if (parallelSaveExecutor != null) {
+          parallelSaveExecutor.shutdownNow();
+          parallelSaveExecutor = null;
+          pendingBatches.clear();
+        }
         fout.close();
       }
     }
@@ -796,9 +987,9 @@ private long saveInodes(FileSummary.Builder summary) throws IOException {
       FSImageFormatPBINode.Saver saver = new FSImageFormatPBINode.Saver(this,
           summary);
 
-      saver.serializeINodeSection(sectionOutputStream);
-      saver.serializeINodeDirectorySection(sectionOutputStream);
-      saver.serializeFilesUCSection(sectionOutputStream);
+      saver.serializeINodeSection(lazySectionOutputStream);
+      saver.serializeINodeDirectorySection(lazySectionOutputStream);
+      saver.serializeFilesUCSection(lazySectionOutputStream);
 
       return saver.getNumImageErrors();
     }
@@ -811,13 +1002,13 @@ private long saveSnapshots(FileSummary.Builder summary) throws IOException {
       FSImageFormatPBSnapshot.Saver snapshotSaver = new FSImageFormatPBSnapshot.Saver(
           this, summary, context, context.getSourceNamesystem());
 
-      snapshotSaver.serializeSnapshotSection(sectionOutputStream);
+      snapshotSaver.serializeSnapshotSection(lazySectionOutputStream);
       // Skip snapshot-related sections when there is no snapshot.
       if (context.getSourceNamesystem().getSnapshotManager()
           .getNumSnapshots() > 0) {
-        snapshotSaver.serializeSnapshotDiffSection(sectionOutputStream);
+        snapshotSaver.serializeSnapshotDiffSection(lazySectionOutputStream);
       }
-      snapshotSaver.serializeINodeReferenceSection(sectionOutputStream);
+      snapshotSaver.serializeINodeReferenceSection(lazySectionOutputStream);
       return snapshotSaver.getNumImageErrors();
     }
 
@@ -846,10 +1037,8 @@ private long saveInternal(FileOutputStream fout,
       codec = compression.getImageCodec();
       if (codec != null) {
         b.setCodec(codec.getClass().getCanonicalName());
-        sectionOutputStream = codec.createOutputStream(underlyingOutputStream);
-      } else {
-        sectionOutputStream = underlyingOutputStream;
       }
+      sectionOutputStream = null;
 
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
@@ -889,7 +1078,9 @@ private long saveInternal(FileOutputStream fout,
 
       // We use the underlyingOutputStream to write the header. Therefore flush
       // the buffered stream (which is potentially compressed) first.
-      flushSectionOutputStream();
+      if (sectionOutputStream != null) {
+        flushSectionOutputStream();
+      }
 
       FileSummary summary = b.build();
       saveFileSummary(underlyingOutputStream, summary);
@@ -903,12 +1094,12 @@ private void saveSecretManagerSection(FileSummary.Builder summary)
       final FSNamesystem fsn = context.getSourceNamesystem();
       DelegationTokenSecretManager.SecretManagerState state = fsn
           .saveSecretManagerState();
-      state.section.writeDelimitedTo(sectionOutputStream);
+      state.section.writeDelimitedTo(lazySectionOutputStream);
       for (SecretManagerSection.DelegationKey k : state.keys)
-        k.writeDelimitedTo(sectionOutputStream);
+        k.writeDelimitedTo(lazySectionOutputStream);
 
       for (SecretManagerSection.PersistToken t : state.tokens)
-        t.writeDelimitedTo(sectionOutputStream);
+        t.writeDelimitedTo(lazySectionOutputStream);
 
       commitSection(summary, SectionName.SECRET_MANAGER);
     }
@@ -917,13 +1108,13 @@ private void saveCacheManagerSection(FileSummary.Builder summary)
         throws IOException {
       final FSNamesystem fsn = context.getSourceNamesystem();
       CacheManager.PersistState state = fsn.getCacheManager().saveState();
-      state.section.writeDelimitedTo(sectionOutputStream);
+      state.section.writeDelimitedTo(lazySectionOutputStream);
 
       for (CachePoolInfoProto p : state.pools)
-        p.writeDelimitedTo(sectionOutputStream);
+        p.writeDelimitedTo(lazySectionOutputStream);
 
       for (CacheDirectiveInfoProto p : state.directives)
-        p.writeDelimitedTo(sectionOutputStream);
+        p.writeDelimitedTo(lazySectionOutputStream);
 
       commitSection(summary, SectionName.CACHE_MANAGER);
     }
@@ -941,14 +1132,14 @@ private void saveErasureCodingSection(
 
       ErasureCodingSection section = ErasureCodingSection.newBuilder().
           addAllPolicies(ecPolicyProtoes).build();
-      section.writeDelimitedTo(sectionOutputStream);
+      section.writeDelimitedTo(lazySectionOutputStream);
       commitSection(summary, SectionName.ERASURE_CODING);
     }
 
     private void saveNameSystemSection(FileSummary.Builder summary)
         throws IOException {
       final FSNamesystem fsn = context.getSourceNamesystem();
-      OutputStream out = sectionOutputStream;
+      OutputStream out = lazySectionOutputStream;
       BlockIdManager blockIdManager = fsn.getBlockManager().getBlockIdManager();
       NameSystemSection.Builder b = NameSystemSection.newBuilder()
           .setGenstampV1(blockIdManager.getLegacyGenerationStamp())
@@ -975,7 +1166,7 @@ private void saveNameSystemSection(FileSummary.Builder summary)
 
     private void saveStringTableSection(FileSummary.Builder summary)
         throws IOException {
-      OutputStream out = sectionOutputStream;
+      OutputStream out = lazySectionOutputStream;
 
       SerialNumberManager.StringTable stringTable =
           SerialNumberManager.getStringTable();
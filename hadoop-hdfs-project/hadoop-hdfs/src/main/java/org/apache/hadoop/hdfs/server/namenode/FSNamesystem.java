@@ -86,6 +86,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERMISSIONS_ENABLED_DEFAULT;
@@ -316,6 +318,7 @@
 import org.apache.hadoop.hdfs.server.protocol.StorageReport;
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.hdfs.util.LightWeightHashSet;
+import org.apache.hadoop.hdfs.util.RwLockMode;
 import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.Text;
@@ -618,6 +621,13 @@ private boolean isClientPortInfoAbsent(CallerContext ctx){
   /** Lock to protect FSNamesystem. */
   private final FSNamesystemLock fsLock;
 
+  /**
+   * Lock to protect BlockManager state. This is the same instance as fsLock
+   * unless {@link DFSConfigKeys#DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY}
+   * is set. It is always acquired after fsLock when both are needed.
+   */
+  private final FSNamesystemLock bmLock;
+
   /** 
    * Checkpoint lock to protect FSNamesystem modification on standby NNs.
    * Unlike fsLock, it does not affect block updates. On active NNs, this lock
@@ -873,6 +883,15 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
         conf.get(HADOOP_CALLER_CONTEXT_SEPARATOR_KEY,
             HADOOP_CALLER_CONTEXT_SEPARATOR_DEFAULT);
     fsLock = new FSNamesystemLock(conf, detailedLockHoldTimeMetrics);
+    if (conf.getBoolean(DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY,
+        DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_DEFAULT)) {
+      bmLock = new FSNamesystemLock(conf, FSNamesystemLock.BM_LOCK_NAME,
+          detailedLockHoldTimeMetrics);
+    } else {
+      bmLock = fsLock;
+    }
+    LOG.info("Fine-grained namesystem locking enabled: {}",
+        isFineGrainedLockEnabled());
     cond = fsLock.newWriteLockCondition();
     cpLock = new ReentrantLock();
 
@@ -1779,64 +1798,171 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
   @Override
   public void readLock() {
     this.fsLock.readLock();
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.readLock();
+    }
   }
 
   @Override
   public void readLockInterruptibly() throws InterruptedException {
     this.fsLock.readLockInterruptibly();
+    if (isFineGrainedLockEnabled()) {
+      try {
+        this.bmLock.readLockInterruptibly();
+      } catch (InterruptedException e) {
+        this.fsLock.readUnlock("readLockInterruptibly", true);
+        throw e;
+      }
+    }
   }
 
   @Override
   public void readUnlock() {
-    this.fsLock.readUnlock();
+    readUnlock(FSNamesystemLock.OP_NAME_OTHER);
   }
 
   @Override
   public void readUnlock(String opName) {
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.readUnlock(opName, true);
+    }
     this.fsLock.readUnlock(opName);
   }
 
   public void readUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.readUnlock(opName, true);
+    }
     this.fsLock.readUnlock(opName, lockReportInfoSupplier);
   }
 
   @Override
   public void writeLock() {
     this.fsLock.writeLock();
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.writeLock();
+    }
   }
 
   @Override
   public void writeLockInterruptibly() throws InterruptedException {
     this.fsLock.writeLockInterruptibly();
+    if (isFineGrainedLockEnabled()) {
+      try {
+        this.bmLock.writeLockInterruptibly();
+      } catch (InterruptedException e) {
+        this.fsLock.writeUnlock("writeLockInterruptibly", true);
+        throw e;
+      }
+    }
   }
 
   @Override
   public void writeUnlock() {
-    this.fsLock.writeUnlock();
+    writeUnlock(FSNamesystemLock.OP_NAME_OTHER);
   }
 
   @Override
   public void writeUnlock(String opName) {
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.writeUnlock(opName, true);
+    }
     this.fsLock.writeUnlock(opName);
   }
 
   public void writeUnlock(String opName, boolean suppressWriteLockReport) {
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.writeUnlock(opName, true);
+    }
     this.fsLock.writeUnlock(opName, suppressWriteLockReport);
   }
 
   public void writeUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
+    if (isFineGrainedLockEnabled()) {
+      this.bmLock.writeUnlock(opName, true);
+    }
     this.fsLock.writeUnlock(opName, lockReportInfoSupplier);
   }
 
   @Override
   public boolean hasWriteLock() {
-    return this.fsLock.isWriteLockedByCurrentThread();
+    return this.fsLock.isWriteLockedByCurrentThread() &&
+        this.bmLock.isWriteLockedByCurrentThread();
   }
+
   @Override
   public boolean hasReadLock() {
-    return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
+    return hasReadLock(fsLock) && hasReadLock(bmLock);
+  }
+
+  @Override
+  public void readLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      readLock();
+    } else {
+      getPartitionLock(lockMode).readLock();
+    }
+  }
+
+  @Override
+  public void readUnlock(RwLockMode lockMode, String opName) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      readUnlock(opName);
+    } else {
+      getPartitionLock(lockMode).readUnlock(opName);
+    }
+  }
+
+  @Override
+  public boolean hasReadLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      return hasReadLock();
+    }
+    return hasReadLock(getPartitionLock(lockMode));
+  }
+
+  @Override
+  public void writeLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      writeLock();
+    } else {
+      getPartitionLock(lockMode).writeLock();
+    }
+  }
+
+  @Override
+  public void writeUnlock(RwLockMode lockMode, String opName) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      writeUnlock(opName);
+    } else {
+      getPartitionLock(lockMode).writeUnlock(opName);
+    }
+  }
+
+  @Override
+  public boolean hasWriteLock(RwLockMode lockMode) {
+    if (lockMode == RwLockMode.GLOBAL) {
+      return hasWriteLock();
+    }
+    return getPartitionLock(lockMode).isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * @return true if the namespace and block manager state are protected by
+   * separate locks.
+   */
+  public boolean isFineGrainedLockEnabled() {
+    return fsLock != bmLock;
+  }
+
+  private FSNamesystemLock getPartitionLock(RwLockMode lockMode) {
+    return lockMode == RwLockMode.BM ? bmLock : fsLock;
+  }
+
+  private static boolean hasReadLock(FSNamesystemLock lock) {
+    return lock.getReadHoldCount() > 0 || lock.isWriteLockedByCurrentThread();
   }
 
   public int getReadHoldCount() {
@@ -4889,6 +5015,19 @@ public int getFsLockQueueLength() {
     return fsLock.getQueueLength();
   }
 
+  /**
+   * Returns the number of threads waiting to acquire the block manager lock.
+   * This is the same as {@link #getFsLockQueueLength()} unless fine-grained
+   * locking is enabled.
+   *
+   * @return int - Number of Threads waiting to acquire the block manager lock
+   */
+  @Metric({"BMLockQueueLength", "Number of threads waiting to " +
+      "acquire the block manager lock"})
+  public int getBmLockQueueLength() {
+    return bmLock.getQueueLength();
+  }
+
   @Metric(value = {"ReadLockLongHoldCount", "The number of time " +
           "the read lock has been held for longer than the threshold"},
           type = Metric.Type.COUNTER)
@@ -8949,6 +9088,16 @@ public int getNumEnteringMaintenanceDataNodes() {
         .size();
   }
 
+  @Override // NameNodeMXBean
+  public long getPathResolutionCacheHits() {
+    return dir.getPathResolutionCacheHits();
+  }
+
+  @Override // NameNodeMXBean
+  public long getPathResolutionCacheMisses() {
+    return dir.getPathResolutionCacheMisses();
+  }
+
   @Override // NameNodeMXBean
   public String getVerifyECWithTopologyResult() {
     ECTopologyVerifierResult result =
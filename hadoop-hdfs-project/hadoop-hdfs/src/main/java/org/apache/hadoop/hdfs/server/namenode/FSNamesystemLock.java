@@ -63,11 +63,19 @@
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ * <p>
+ * When fine-grained locking is enabled the FSNamesystem holds one instance
+ * per {@link org.apache.hadoop.hdfs.util.RwLockMode} partition. Each instance
+ * is given a name which prefixes its metrics and lock reports, the namespace
+ * lock keeps the historical FSN prefix.
  */
 class FSNamesystemLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
 
+  private final String lockName;
+  private final String readLockMetricPrefix;
+  private final String writeLockMetricPrefix;
   private final boolean metricsEnabled;
   private final MutableRatesWithAggregation detailedHoldTimeMetrics;
   private final Timer timer;
@@ -123,8 +131,12 @@ public Long initialValue() {
 
   @VisibleForTesting
   static final String OP_NAME_OTHER = "OTHER";
-  private static final String READ_LOCK_METRIC_PREFIX = "FSNReadLock";
-  private static final String WRITE_LOCK_METRIC_PREFIX = "FSNWriteLock";
+  @VisibleForTesting
+  static final String FS_LOCK_NAME = "FSN";
+  @VisibleForTesting
+  static final String BM_LOCK_NAME = "BM";
+  private static final String READ_LOCK_METRIC_PREFIX = "ReadLock";
+  private static final String WRITE_LOCK_METRIC_PREFIX = "WriteLock";
   private static final String LOCK_METRIC_SUFFIX = "Nanos";
 
   private static final String OVERALL_METRIC_NAME = "Overall";
@@ -137,9 +149,23 @@ public Long initialValue() {
   @VisibleForTesting
   FSNamesystemLock(Configuration conf,
       MutableRatesWithAggregation detailedHoldTimeMetrics, Timer timer) {
+    this(conf, FS_LOCK_NAME, detailedHoldTimeMetrics, timer);
+  }
+
+  FSNamesystemLock(Configuration conf, String lockName,
+      MutableRatesWithAggregation detailedHoldTimeMetrics) {
+    this(conf, lockName, detailedHoldTimeMetrics, new Timer());
+  }
+
+  @VisibleForTesting
+  FSNamesystemLock(Configuration conf, String lockName,
+      MutableRatesWithAggregation detailedHoldTimeMetrics, Timer timer) {
+    this.lockName = lockName;
+    this.readLockMetricPrefix = lockName + READ_LOCK_METRIC_PREFIX;
+    this.writeLockMetricPrefix = lockName + WRITE_LOCK_METRIC_PREFIX;
     boolean fair = conf.getBoolean(DFS_NAMENODE_FSLOCK_FAIR_KEY,
         DFS_NAMENODE_FSLOCK_FAIR_DEFAULT);
-    FSNamesystem.LOG.info("fsLock is fair: " + fair);
+    FSNamesystem.LOG.info("{} lock is fair: {}", lockName, fair);
     this.coarseLock = new ReentrantReadWriteLock(fair);
     this.timer = timer;
 
@@ -180,15 +206,34 @@ public void readUnlock(String opName) {
 
   public void readUnlock(String opName,
       Supplier<String> lockReportInfoSupplier) {
-    final boolean needReport = coarseLock.getReadHoldCount() == 1;
+    readUnlock(opName, false, lockReportInfoSupplier);
+  }
+
+  /**
+   * Unlocks FSNameSystem read lock.
+   *
+   * @param opName Operation name.
+   * @param suppressReadLockReport When false, event of read lock being held
+   * for long time will be logged in logs and metrics.
+   */
+  public void readUnlock(String opName, boolean suppressReadLockReport) {
+    readUnlock(opName, suppressReadLockReport, null);
+  }
+
+  private void readUnlock(String opName, boolean suppressReadLockReport,
+      Supplier<String> lockReportInfoSupplier) {
+    final boolean needReport = !suppressReadLockReport &&
+        coarseLock.getReadHoldCount() == 1;
     final long readLockIntervalNanos =
         timer.monotonicNowNanos() - readLockHeldTimeStampNanos.get();
     final long currentTimeMs = timer.now();
     coarseLock.readLock().unlock();
 
+    if (coarseLock.getReadHoldCount() == 0) {
+      readLockHeldTimeStampNanos.remove();
+    }
     if (needReport) {
       addMetric(opName, readLockIntervalNanos, false);
-      readLockHeldTimeStampNanos.remove();
     }
     final long readLockIntervalMs =
         TimeUnit.NANOSECONDS.toMillis(readLockIntervalNanos);
@@ -231,9 +276,9 @@ public void readUnlock(String opName,
       LockHeldInfo lockHeldInfo =
           longestReadLockHeldInfo.getAndSet(new LockHeldInfo());
       FSNamesystem.LOG.info(
-          "\tNumber of suppressed read-lock reports: {}"
+          "\tNumber of suppressed {} read-lock reports: {}"
               + "\n\tLongest read-lock held at {} for {}ms by {}{} via {}",
-          numSuppressedWarnings, Time.formatTime(lockHeldInfo.getStartTimeMs()),
+          lockName, numSuppressedWarnings, Time.formatTime(lockHeldInfo.getStartTimeMs()),
           lockHeldInfo.getIntervalMs(), lockHeldInfo.getOpName(),
           lockHeldInfo.getLockReportInfo(), lockHeldInfo.getStackTrace());
     }
@@ -337,10 +382,10 @@ private void writeUnlock(String opName, boolean suppressWriteLockReport,
 
     if (logAction.shouldLog()) {
       FSNamesystem.LOG.info(
-          "\tNumber of suppressed write-lock reports: {}"
+          "\tNumber of suppressed {} write-lock reports: {}"
               + "\n\tLongest write-lock held at {} for {}ms by {}{} via {}"
               + "\n\tTotal suppressed write-lock held time: {}",
-          logAction.getCount() - 1,
+          lockName, logAction.getCount() - 1,
           Time.formatTime(lockHeldInfo.getStartTimeMs()),
           lockHeldInfo.getIntervalMs(), lockHeldInfo.getOpName(),
           lockHeldInfo.getLockReportInfo(), lockHeldInfo.getStackTrace(),
@@ -348,6 +393,10 @@ private void writeUnlock(String opName, boolean suppressWriteLockReport,
     }
   }
 
+  public String getLockName() {
+    return lockName;
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
@@ -456,8 +505,8 @@ private static void updateProcessingDetails(Timing type, long deltaNanos) {
     }
   }
 
-  private static String getMetricName(String operationName, boolean isWrite) {
-    return (isWrite ? WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX) +
+  private String getMetricName(String operationName, boolean isWrite) {
+    return (isWrite ? writeLockMetricPrefix : readLockMetricPrefix) +
         org.apache.commons.lang3.StringUtils.capitalize(operationName) +
         LOCK_METRIC_SUFFIX;
   }
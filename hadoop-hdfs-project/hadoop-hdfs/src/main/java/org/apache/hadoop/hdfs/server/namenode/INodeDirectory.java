@@ -40,6 +40,7 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature.DirectoryDiffList;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.SnapshotManager;
+import org.apache.hadoop.hdfs.util.ChunkedList;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
 import org.apache.hadoop.classification.VisibleForTesting;
@@ -802,6 +803,27 @@ public void undoRename4DstParent(final BlockStoragePolicySuite bsps,
     }
   }
 
+  /**
+   * Move the children from an ArrayList to a {@link ChunkedList} if there
+   * are more of them than the given threshold, so that an insertion or a
+   * removal does not copy all the following children.
+   * @param threshold the number of children of a large directory of the
+   *                  owning FSDirectory, a non-positive one disables it.
+   */
+  void chunkChildren(int threshold) {
+    if (threshold > 0 && children != null && children.size() > threshold
+        && !(children instanceof ChunkedList)) {
+      children = new ChunkedList<>(ChunkedList.DEFAULT_MAX_CHUNK_SIZE,
+          children);
+    }
+  }
+
+  /** @return true if the children are stored in a {@link ChunkedList}. */
+  @VisibleForTesting
+  boolean hasChunkedChildren() {
+    return children instanceof ChunkedList;
+  }
+
   /** Set the children list to null. */
   public void clearChildren() {
     this.children = null;
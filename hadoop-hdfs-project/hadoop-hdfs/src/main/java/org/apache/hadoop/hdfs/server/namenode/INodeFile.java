@@ -882,6 +882,9 @@ public final ContentSummaryComputationContext computeContentSummary(
       int snapshotId, final ContentSummaryComputationContext summary) {
     final ContentCounts counts = summary.getCounts();
     counts.addContent(Content.FILE, 1);
+    if (isUnderConstruction()) {
+      summary.addUnderConstructionFile();
+    }
     final long fileLen = computeFileSize(snapshotId);
     counts.addContent(Content.LENGTH, fileLen);
 
@@ -19,12 +19,15 @@
 
 import java.util.Iterator;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.util.GSet;
 import org.apache.hadoop.util.LightWeightGSet;
+import org.apache.hadoop.util.PartitionedGSet;
 
 import org.apache.hadoop.util.Preconditions;
 
@@ -33,12 +36,32 @@
  * and INode.  
  */
 public class INodeMap {
-  
-  static INodeMap newInstance(INodeDirectory rootDir) {
-    // Compute the map capacity by allocating 1% of total memory
-    int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
-    GSet<INode, INodeWithAdditionalFields> map =
-        new LightWeightGSet<>(capacity);
+
+  /** Initial number of slots of each partition of a partitioned map. */
+  private static final int INITIAL_PARTITION_CAPACITY = 1 << 10;
+
+  static INodeMap newInstance(INodeDirectory rootDir, Configuration conf) {
+    final GSet<INode, INodeWithAdditionalFields> map;
+    if (conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_INODEMAP_PARTITIONED_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INODEMAP_PARTITIONED_ENABLED_DEFAULT)) {
+      int partitions = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_PARTITIONS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_PARTITIONS_DEFAULT);
+      Preconditions.checkArgument(partitions > 0,
+          "%s must be positive: %s",
+          DFSConfigKeys.DFS_NAMENODE_INODEMAP_PARTITIONS_KEY, partitions);
+      // Round up to a power of two
+      int numPartitions =
+          partitions == 1 ? 1 : Integer.highestOneBit(partitions - 1) << 1;
+      // INode ids are allocated sequentially, keep ranges of them together
+      map = new PartitionedGSet<>(numPartitions,
+          PartitionedGSet.DEFAULT_RANGE_BITS, INITIAL_PARTITION_CAPACITY);
+    } else {
+      // Compute the map capacity by allocating 1% of total memory
+      int capacity = LightWeightGSet.computeCapacity(1, "INodeMap");
+      map = new LightWeightGSet<>(capacity);
+    }
     map.put(rootDir);
     return new INodeMap(map);
   }
@@ -137,6 +137,17 @@ static INodesInPath resolve(final INodeDirectory startingDir,
 
   static INodesInPath resolve(final INodeDirectory startingDir,
       byte[][] components, final boolean isRaw) {
+    return resolve(startingDir, components, isRaw, null);
+  }
+
+  /**
+   * Resolve the components of a path, starting from the inodes of its parent
+   * directory if they are in the given cache.
+   * @param cache the cache of resolved parent directories, may be null.
+   */
+  static INodesInPath resolve(final INodeDirectory startingDir,
+      byte[][] components, final boolean isRaw,
+      final PathResolutionCache cache) {
     Preconditions.checkArgument(startingDir.compareTo(components[0]) == 0);
 
     INode curNode = startingDir;
@@ -146,6 +157,21 @@ static INodesInPath resolve(final INodeDirectory startingDir,
     boolean isSnapshot = false;
     int snapshotId = CURRENT_STATE_ID;
 
+    // only cache the parents of paths at least two levels below the root
+    final int parentLength = components.length - 1;
+    final boolean useCache = cache != null && parentLength >= 2;
+    final INode[] cached = useCache ? cache.get(components, parentLength)
+        : null;
+    if (cached != null) {
+      // the cached directories have no snapshot features and are not
+      // references, so they would not change the snapshot id. Continue the
+      // resolution from the parent.
+      count = parentLength - 1;
+      inodeNum = count;
+      System.arraycopy(cached, 0, inodes, 0, count);
+      curNode = cached[count];
+    }
+
     while (count < components.length && curNode != null) {
       final boolean lastComp = (count == components.length - 1);
       inodes[inodeNum++] = curNode;
@@ -225,6 +251,9 @@ static INodesInPath resolve(final INodeDirectory startingDir,
             isSnapshot ? snapshotId : CURRENT_STATE_ID);
       }
     }
+    if (useCache && cached == null && !isSnapshot) {
+      cache.put(components, inodes, parentLength);
+    }
     return new INodesInPath(inodes, components, isRaw, isSnapshot, snapshotId);
   }
 
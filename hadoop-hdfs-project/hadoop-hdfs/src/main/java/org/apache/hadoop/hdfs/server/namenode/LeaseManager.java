@@ -22,7 +22,6 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -48,6 +47,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Lists;
+import org.apache.hadoop.util.LongHashSet;
 import org.apache.hadoop.util.Time;
 
 import org.apache.hadoop.classification.VisibleForTesting;
@@ -446,7 +446,7 @@ synchronized void renewAllLeases() {
   class Lease {
     private final String holder;
     private long lastUpdate;
-    private final HashSet<Long> files = new HashSet<>();
+    private final LongHashSet files = new LongHashSet();
 
     /** Only LeaseManager object can create a lease */
     private Lease(String h) {
@@ -490,8 +490,8 @@ public int hashCode() {
       return holder.hashCode();
     }
 
-    private Collection<Long> getFiles() {
-      return Collections.unmodifiableCollection(files);
+    private long[] getFiles() {
+      return files.toArray();
     }
 
     String getHolder() {
@@ -589,12 +589,11 @@ private synchronized boolean checkLeases(Collection<Lease> leasesToCheck) {
       // internalReleaseLease() removes files corresponding to empty files,
       // i.e. it needs to modify the collection being iterated over
       // causing ConcurrentModificationException
-      Collection<Long> files = leaseToCheck.getFiles();
-      Long[] leaseINodeIds = files.toArray(new Long[files.size()]);
+      long[] leaseINodeIds = leaseToCheck.getFiles();
       FSDirectory fsd = fsnamesystem.getFSDirectory();
       String p = null;
       String newHolder = getInternalLeaseHolder();
-      for(Long id : leaseINodeIds) {
+      for(long id : leaseINodeIds) {
         try {
           INodesInPath iip = INodesInPath.fromINode(fsd.getInode(id));
           p = iip.getPath();
@@ -331,4 +331,20 @@ public interface NameNodeMXBean {
    */
   String getVerifyECWithTopologyResult();
 
+  /**
+   * Get the number of path resolutions that found the inodes of the parent
+   * directory in the path resolution cache.
+   *
+   * @return the number of path resolution cache hits.
+   */
+  long getPathResolutionCacheHits();
+
+  /**
+   * Get the number of path resolutions that looked up the parent directory
+   * in the path resolution cache without finding it.
+   *
+   * @return the number of path resolution cache misses.
+   */
+  long getPathResolutionCacheMisses();
+
 }
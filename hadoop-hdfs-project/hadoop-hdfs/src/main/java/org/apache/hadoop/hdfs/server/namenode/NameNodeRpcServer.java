@@ -223,6 +223,7 @@
 import org.apache.hadoop.tools.protocolPB.GetUserMappingsProtocolPB;
 import org.apache.hadoop.tools.protocolPB.GetUserMappingsProtocolServerSideTranslatorPB;
 import org.apache.hadoop.util.Lists;
+import org.apache.hadoop.util.Time;
 import org.apache.hadoop.util.VersionInfo;
 import org.apache.hadoop.util.VersionUtil;
 import org.slf4j.Logger;
@@ -1640,10 +1641,11 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
           // for the same node and storage, so the value returned by the last
           // call of this loop is the final updated value for noStaleStorage.
           //
-          final int index = r;
-          noStaleStorages = bm.runBlockOp(() ->
-            bm.processReport(nodeReg, reports[index].getStorage(),
-                blocks, context));
+          final long startTime = Time.monotonicNow();
+          noStaleStorages = bm.runBlockReportOp(nodeReg,
+              reports[r].getStorage(), blocks, context);
+          metrics.addFullBlockReportProcessing(
+              Time.monotonicNow() - startTime);
         }
       }
     } catch (UnregisteredNodeException une) {
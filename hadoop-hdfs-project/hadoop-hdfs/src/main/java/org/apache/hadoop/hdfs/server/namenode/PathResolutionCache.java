@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A bounded cache of the inodes along frequently resolved directory paths,
+ * used by {@link INodesInPath#resolve} to skip the per-level child lookups
+ * of a path's parent directories.
+ *
+ * The cache is direct-mapped: a path prefix can only be stored in the slot
+ * its hash maps to, and a newer prefix simply replaces the older one. Reads
+ * and writes are lock-free so they can be done by concurrent readers of the
+ * namespace.
+ *
+ * Only chains of plain directories are cached, i.e. no references and no
+ * directories with snapshot features, whose resolution also depends on the
+ * snapshot state. Entries are invalidated all at once, by
+ * {@link #invalidate()}, whenever a directory is removed or moved, or made
+ * snapshottable.
+ */
+@InterfaceAudience.Private
+class PathResolutionCache {
+  private static final class Entry {
+    private final byte[][] components;
+    private final INode[] inodes;
+    private final int hash;
+    private final long version;
+
+    private Entry(byte[][] components, INode[] inodes, int hash,
+        long version) {
+      this.components = components;
+      this.inodes = inodes;
+      this.hash = hash;
+      this.version = version;
+    }
+
+    private boolean matches(byte[][] path, int length, int h, long v) {
+      if (hash != h || version != v || components.length != length) {
+        return false;
+      }
+      // compare the deepest components first, they are the most likely to
+      // differ.
+      for (int i = length - 1; i >= 0; i--) {
+        if (!Arrays.equals(components[i], path[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+  private volatile long version;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param capacity the maximum number of cached paths, rounded up to a
+   *                 power of two.
+   */
+  PathResolutionCache(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    entries = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+  }
+
+  private static int hash(byte[][] components, int length) {
+    int h = length;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + Arrays.hashCode(components[i]);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Get the inodes of the first length components of a path.
+   * @return the inodes, or null if they are not cached.
+   */
+  INode[] get(byte[][] components, int length) {
+    final int h = hash(components, length);
+    final Entry e = entries.get(h & mask);
+    if (e != null && e.matches(components, length, h, version)) {
+      hits.increment();
+      return e.inodes;
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Cache the inodes of the first length components of a path, if they
+   * are all plain directories.
+   */
+  void put(byte[][] components, INode[] inodes, int length) {
+    // read the version first, so that entries put concurrently with an
+    // invalidation are invalid too.
+    final long v = version;
+    for (int i = 0; i < length; i++) {
+      final INode inode = inodes[i];
+      if (inode == null || inode.isReference() || !inode.isDirectory()
+          || inode.asDirectory().isWithSnapshot()) {
+        return;
+      }
+    }
+    final int h = hash(components, length);
+    entries.set(h & mask, new Entry(Arrays.copyOf(components, length),
+        Arrays.copyOf(inodes, length), h, v));
+  }
+
+  /**
+   * Invalidate all the cached paths. Called with the write lock held.
+   */
+  void invalidate() {
+    version++;
+  }
+
+  /**
+   * Drop all the cached paths, e.g. when the namespace is reset.
+   */
+  void clear() {
+    invalidate();
+    for (int i = 0; i < entries.length(); i++) {
+      entries.set(i, null);
+    }
+  }
+
+  long getHits() {
+    return hits.sum();
+  }
+
+  long getMisses() {
+    return misses.sum();
+  }
+}
@@ -87,6 +87,9 @@ public class NameNodeMetrics {
   MutableGaugeInt blockOpsQueued;
   @Metric("Number of blockReports and blockReceivedAndDeleted batch processed")
   MutableCounterLong blockOpsBatched;
+  @Metric("Write lock hold time of each blockReports and " +
+      "blockReceivedAndDeleted batch")
+  MutableRate blockOpsBatchLockHold;
   @Metric("Number of pending edits")
   MutableGaugeInt pendingEditsCount;
   @Metric("Number of delete blocks Queued")
@@ -130,6 +133,11 @@ public long totalFileOps(){
   @Metric("Number of blockReports from individual storages")
   MutableRate storageBlockReport;
   final MutableQuantiles[] storageBlockReportQuantiles;
+  @Metric("Full block report processing time including queueing")
+  MutableRate fullBlockReportProcessing;
+  final MutableQuantiles[] fullBlockReportProcessingQuantiles;
+  @Metric("Time spent decoding full block reports outside the lock")
+  MutableRate blockReportDecode;
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
   @Metric("Generate EDEK time") private MutableRate generateEDEKTime;
@@ -176,6 +184,7 @@ public long totalFileOps(){
     syncsQuantiles = new MutableQuantiles[len];
     numTransactionsBatchedInSync = new MutableQuantiles[len];
     storageBlockReportQuantiles = new MutableQuantiles[len];
+    fullBlockReportProcessingQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
     warmUpEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -197,6 +206,9 @@ public long totalFileOps(){
       storageBlockReportQuantiles[i] = registry.newQuantiles(
           "storageBlockReport" + interval + "s",
           "Storage block report", "ops", "latency", interval);
+      fullBlockReportProcessingQuantiles[i] = registry.newQuantiles(
+          "fullBlockReportProcessing" + interval + "s",
+          "Full block report processing", "ops", "latency", interval);
       cacheReportQuantiles[i] = registry.newQuantiles(
           "cacheReport" + interval + "s",
           "Cache report", "ops", "latency", interval);
@@ -361,6 +373,10 @@ public void addBlockOpsBatched(int count) {
     blockOpsBatched.incr(count);
   }
 
+  public void addBlockOpsBatchLockHold(long latency) {
+    blockOpsBatchLockHold.add(latency);
+  }
+
   public void setPendingEditsCount(int size) {
     pendingEditsCount.set(size);
   }
@@ -406,6 +422,17 @@ public void addStorageBlockReport(long latency) {
     }
   }
 
+  public void addFullBlockReportProcessing(long latency) {
+    fullBlockReportProcessing.add(latency);
+    for (MutableQuantiles q : fullBlockReportProcessingQuantiles) {
+      q.add(latency);
+    }
+  }
+
+  public void addBlockReportDecode(long latency) {
+    blockReportDecode.add(latency);
+  }
+
   public void addCacheBlockReport(long latency) {
     cacheReport.add(latency);
     for (MutableQuantiles q : cacheReportQuantiles) {
@@ -23,6 +23,7 @@
 import static org.apache.hadoop.hdfs.server.namenode.FSImageFormatPBINode.Saver.buildINodeDirectory;
 import static org.apache.hadoop.hdfs.server.namenode.FSImageFormatPBINode.Saver.buildINodeFile;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -516,6 +517,10 @@ public void serializeSnapshotDiffSection(OutputStream out)
       INodeMap inodesMap = fsn.getFSDirectory().getINodeMap();
       final List<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      if (parent.isSavingInParallel()) {
+        serializeSnapshotDiffSectionInParallel(inodesMap, refList);
+        return;
+      }
       int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
       while (iter.hasNext()) {
@@ -539,6 +544,50 @@ public void serializeSnapshotDiffSection(OutputStream out)
           FSImageFormatProtobuf.SectionName.SNAPSHOT_DIFF_SUB);
     }
 
+    /**
+     * The diffs refer to the reference list, so they are serialized in order
+     * into batches, which are then compressed on the parallel save threads.
+     */
+    private void serializeSnapshotDiffSectionInParallel(INodeMap inodesMap,
+        List<INodeReference> refList) throws IOException {
+      int i = 0;
+      ByteArrayOutputStream batch = new ByteArrayOutputStream();
+      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+      while (iter.hasNext()) {
+        INodeWithAdditionalFields inode = iter.next();
+        if (inode.isFile()) {
+          serializeFileDiffList(inode.asFile(), batch);
+        } else if (inode.isDirectory()) {
+          serializeDirDiffList(inode.asDirectory(), refList, batch);
+        }
+        ++i;
+        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+          context.checkCancelled();
+        }
+        boolean endOfSubSection = i % parent.getInodesPerSubSection() == 0;
+        if (endOfSubSection ||
+            i % FSImageFormatProtobuf.Saver.PARALLEL_SAVE_BATCH_SIZE == 0) {
+          saveBatchInParallel(batch);
+          batch = new ByteArrayOutputStream();
+        }
+        if (endOfSubSection) {
+          parent.commitSubSectionInParallel(headers,
+              FSImageFormatProtobuf.SectionName.SNAPSHOT_DIFF_SUB);
+        }
+      }
+      saveBatchInParallel(batch);
+      parent.commitSectionInParallel(headers,
+          FSImageFormatProtobuf.SectionName.SNAPSHOT_DIFF,
+          FSImageFormatProtobuf.SectionName.SNAPSHOT_DIFF_SUB);
+    }
+
+    private void saveBatchInParallel(final ByteArrayOutputStream batch)
+        throws IOException {
+      if (batch.size() > 0) {
+        parent.saveBatchInParallel(batch::writeTo);
+      }
+    }
+
     private void serializeFileDiffList(INodeFile file, OutputStream out)
         throws IOException {
       FileWithSnapshotFeature sf = file.getFileWithSnapshotFeature();
@@ -255,6 +255,8 @@ public void setSnapshottable(final String path, boolean checkNestedSnapshottable
       //The directory is already a snapshottable directory.
       d.setSnapshotQuota(DirectorySnapshottableFeature.SNAPSHOT_QUOTA_DEFAULT);
     } else {
+      // paths below the directory now depend on its snapshots.
+      fsdir.invalidatePathResolutionCache();
       d.addSnapshottableFeature();
     }
     addSnapshottable(d);
@@ -30,6 +30,7 @@
 import java.util.List;
 import java.util.Map;
 
+import org.apache.hadoop.classification.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.XAttr;
 import org.apache.hadoop.fs.permission.AclEntry;
@@ -71,8 +72,11 @@ class FSImageLoader {
       LoggerFactory.getLogger(FSImageHandler.class);
 
   private final SerialNumberManager.StringTable stringTable;
-  // byte representation of inodes, sorted by id
+  // byte representation of inodes, sorted by id. Only used if the inodes
+  // could not be mapped.
   private final byte[][] inodes;
+  // the memory-mapped inodes of an uncompressed image
+  private final MappedINodeSection mappedInodes;
   private final Map<Long, long[]> dirmap;
   private static final Comparator<byte[]> INODE_BYTES_COMPARATOR = new
           Comparator<byte[]>() {
@@ -97,19 +101,36 @@ public int compare(byte[] o1, byte[] o2) {
   };
 
   private FSImageLoader(SerialNumberManager.StringTable stringTable,
-                        byte[][] inodes, Map<Long, long[]> dirmap) {
+                        byte[][] inodes, MappedINodeSection mappedInodes,
+                        Map<Long, long[]> dirmap) {
     this.stringTable = stringTable;
     this.inodes = inodes;
+    this.mappedInodes = mappedInodes;
     this.dirmap = dirmap;
   }
 
   /**
-   * Load fsimage into the memory.
+   * Load fsimage into the memory. The inodes of an uncompressed fsimage are
+   * memory-mapped and decoded on demand instead of being loaded.
    * @param inputFile the filepath of the fsimage to load.
    * @return FSImageLoader
    * @throws IOException if failed to load fsimage.
    */
   static FSImageLoader load(String inputFile) throws IOException {
+    return load(inputFile, true);
+  }
+
+  /**
+   * Load fsimage into the memory.
+   * @param inputFile the filepath of the fsimage to load.
+   * @param mapINodes whether to memory-map the inodes if the fsimage is not
+   *                  compressed.
+   * @return FSImageLoader
+   * @throws IOException if failed to load fsimage.
+   */
+  @VisibleForTesting
+  static FSImageLoader load(String inputFile, boolean mapINodes)
+      throws IOException {
     Configuration conf = new Configuration();
     RandomAccessFile file = new RandomAccessFile(inputFile, "r");
     if (!FSImageUtil.checkFileFormat(file)) {
@@ -124,6 +145,7 @@ static FSImageLoader load(String inputFile) throws IOException {
       ImmutableList<Long> refIdList = null;
       SerialNumberManager.StringTable stringTable = null;
       byte[][] inodes = null;
+      MappedINodeSection mappedInodes = null;
       Map<Long, long[]> dirmap = null;
 
       ArrayList<FsImageProto.FileSummary.Section> sections =
@@ -168,7 +190,11 @@ public int compare(FsImageProto.FileSummary.Section s1,
             stringTable = loadStringTable(is);
             break;
           case INODE:
-            inodes = loadINodeSection(is);
+            if (mapINodes && summary.getCodec().isEmpty()) {
+              mappedInodes = MappedINodeSection.load(fin, s);
+            } else {
+              inodes = loadINodeSection(is);
+            }
             break;
           case INODE_REFERENCE:
             refIdList = loadINodeReferenceSection(is);
@@ -180,7 +206,7 @@ public int compare(FsImageProto.FileSummary.Section s1,
             break;
         }
       }
-      return new FSImageLoader(stringTable, inodes, dirmap);
+      return new FSImageLoader(stringTable, inodes, mappedInodes, dirmap);
     }
   }
 
@@ -668,6 +694,9 @@ private String toString(FsPermission permission) {
 
   private FsImageProto.INodeSection.INode fromINodeId(final long id)
           throws IOException {
+    if (mappedInodes != null) {
+      return mappedInodes.get(id);
+    }
     int l = 0, r = inodes.length;
     while (l < r) {
       int mid = l + (r - l) / 2;
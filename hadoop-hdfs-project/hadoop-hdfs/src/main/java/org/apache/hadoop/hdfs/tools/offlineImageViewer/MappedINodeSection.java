@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.INodeSection.INode;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.LimitInputStream;
+import org.apache.hadoop.util.QuickSort;
+import org.apache.hadoop.thirdparty.protobuf.CodedInputStream;
+import org.apache.hadoop.thirdparty.protobuf.WireFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The INode section of an uncompressed fsimage, memory-mapped and indexed by
+ * inode id. Only the id and the file offset of each inode are kept on the
+ * heap; the inodes themselves are decoded on demand from the mapped file.
+ */
+class MappedINodeSection implements IndexedSortable {
+  private static final Logger LOG =
+      LoggerFactory.getLogger(MappedINodeSection.class);
+
+  /** Maximum size of a single mapping. */
+  private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  // inode ids in ascending order, and the file offsets of the inodes
+  private final long[] ids;
+  private final long[] offsets;
+  // the file offsets the mappings start at, in ascending order. A mapping
+  // always starts and ends at an inode boundary.
+  private final long[] segmentOffsets;
+  private final MappedByteBuffer[] segments;
+
+  private MappedINodeSection(long[] ids, long[] offsets,
+      long[] segmentOffsets, MappedByteBuffer[] segments) {
+    this.ids = ids;
+    this.offsets = offsets;
+    this.segmentOffsets = segmentOffsets;
+    this.segments = segments;
+  }
+
+  /**
+   * Index and map the INode section of an uncompressed fsimage.
+   * @param fin the fsimage
+   * @param section the INode section of the fsimage
+   * @return the mapped section
+   * @throws IOException if the section can not be read
+   */
+  static MappedINodeSection load(FileInputStream fin,
+      FsImageProto.FileSummary.Section section) throws IOException {
+    FileChannel channel = fin.getChannel();
+    channel.position(section.getOffset());
+    CodedInputStream in = CodedInputStream.newInstance(new BufferedInputStream(
+        new LimitInputStream(fin, section.getLength())));
+    long offset = section.getOffset();
+    final long end = offset + section.getLength();
+
+    int size = in.readRawVarint32();
+    FsImageProto.INodeSection s =
+        FsImageProto.INodeSection.parseFrom(in.readRawBytes(size));
+    offset += in.getTotalBytesRead();
+    LOG.info("Indexing " + s.getNumInodes() + " inodes.");
+
+    long[] ids = new long[(int) s.getNumInodes()];
+    long[] offsets = new long[ids.length];
+    List<Long> segmentStarts = new ArrayList<>();
+    segmentStarts.add(offset);
+    for (int i = 0; i < ids.length; i++) {
+      // the counter is an int, so reset it for every inode.
+      in.resetSizeCounter();
+      size = in.readRawVarint32();
+      long next = offset + in.getTotalBytesRead() + size;
+      if (next - segmentStarts.get(segmentStarts.size() - 1) >
+          MAX_SEGMENT_SIZE) {
+        segmentStarts.add(offset);
+      }
+      int oldLimit = in.pushLimit(size);
+      ids[i] = readId(in);
+      in.skipRawBytes(in.getBytesUntilLimit());
+      in.popLimit(oldLimit);
+      offsets[i] = offset;
+      offset = next;
+    }
+
+    MappedByteBuffer[] segments = new MappedByteBuffer[segmentStarts.size()];
+    long[] segmentOffsets = new long[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      segmentOffsets[i] = segmentStarts.get(i);
+      long segmentEnd = i + 1 < segments.length ?
+          segmentStarts.get(i + 1) : end;
+      segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+          segmentOffsets[i], segmentEnd - segmentOffsets[i]);
+    }
+
+    MappedINodeSection inodes =
+        new MappedINodeSection(ids, offsets, segmentOffsets, segments);
+    LOG.debug("Sorting inodes");
+    new QuickSort().sort(inodes, 0, ids.length);
+    LOG.debug("Finished sorting inodes");
+    return inodes;
+  }
+
+  /**
+   * Read the id of an inode without parsing the rest of it.
+   */
+  private static long readId(CodedInputStream in) throws IOException {
+    while (true) {
+      int tag = in.readTag();
+      if (tag == 0) {
+        throw new IOException("INode without an id in the fsimage");
+      }
+      if (WireFormat.getTagFieldNumber(tag) == INode.ID_FIELD_NUMBER) {
+        return in.readUInt64();
+      }
+      in.skipField(tag);
+    }
+  }
+
+  /**
+   * @return the number of inodes in the section.
+   */
+  int size() {
+    return ids.length;
+  }
+
+  /**
+   * Decode an inode from the mapped section.
+   * @param id the id of the inode
+   * @return the inode, or null if there is no inode with the id.
+   * @throws IOException if the inode can not be decoded
+   */
+  INode get(long id) throws IOException {
+    int i = Arrays.binarySearch(ids, id);
+    if (i < 0) {
+      return null;
+    }
+    long offset = offsets[i];
+    int segment = Arrays.binarySearch(segmentOffsets, offset);
+    if (segment < 0) {
+      segment = -segment - 2;
+    }
+    ByteBuffer buf = segments[segment].duplicate();
+    buf.position((int) (offset - segmentOffsets[segment]));
+    int size = readRawVarint32(buf);
+    buf.limit(buf.position() + size);
+    return INode.parseFrom(buf);
+  }
+
+  /**
+   * Read the varint length prefix of a delimited message.
+   */
+  private static int readRawVarint32(ByteBuffer buf) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buf.get();
+      result |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed varint in the fsimage");
+  }
+
+  @Override
+  public int compare(int i, int j) {
+    return Long.compare(ids[i], ids[j]);
+  }
+
+  @Override
+  public void swap(int i, int j) {
+    long id = ids[i];
+    ids[i] = ids[j];
+    ids[j] = id;
+    long offset = offsets[i];
+    offsets[i] = offsets[j];
+    offsets[j] = offset;
+  }
+}
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.util.Preconditions;
+
+/**
+ * A list of elements stored in a sequence of bounded chunks.
+ *
+ * Unlike an {@link ArrayList}, inserting or removing an element in the middle
+ * of the list only moves the elements of one chunk, at most maxChunkSize of
+ * them, plus an update of the offsets of the following chunks, instead of all
+ * the elements after it. For very large sorted lists, such as the children
+ * of a directory with millions of entries, an update then costs about
+ * size / maxChunkSize offset updates rather than size element moves.
+ * Random access is a binary search over the chunk offsets.
+ *
+ * This class is not thread safe.
+ *
+ * @param <E> The type of the list elements.
+ */
+@InterfaceAudience.Private
+public class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+  /** The default maximum number of elements in a chunk. */
+  public static final int DEFAULT_MAX_CHUNK_SIZE = 4096;
+
+  private final int maxChunkSize;
+  private final ArrayList<ArrayList<E>> chunks = new ArrayList<>();
+  /** offsets[i] is the index in the list of the first element of chunk i. */
+  private int[] offsets = new int[16];
+  private int size = 0;
+
+  public ChunkedList(int maxChunkSize) {
+    Preconditions.checkArgument(maxChunkSize > 1,
+        "maxChunkSize = %s <= 1", maxChunkSize);
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /**
+   * Create a list containing the given elements, in the same order.
+   */
+  public ChunkedList(int maxChunkSize, Collection<? extends E> c) {
+    this(maxChunkSize);
+    addAll(c);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public E get(int index) {
+    rangeCheck(index);
+    final int c = chunkOf(index);
+    return chunks.get(c).get(index - offsets[c]);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    rangeCheck(index);
+    final int c = chunkOf(index);
+    return chunks.get(c).set(index - offsets[c], element);
+  }
+
+  @Override
+  public boolean add(E element) {
+    add(size, element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, E element) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+    final int last = chunks.size() - 1;
+    int c;
+    if (index == size) {
+      // appending, e.g. when loading a sorted list: start a new chunk rather
+      // than splitting the last one, so that the chunks stay full.
+      if (last < 0 || chunks.get(last).size() >= maxChunkSize) {
+        c = last + 1;
+        addChunk(c, new ArrayList<E>());
+        offsets[c] = size;
+      } else {
+        c = last;
+      }
+    } else {
+      c = chunkOf(index);
+    }
+
+    final ArrayList<E> chunk = chunks.get(c);
+    chunk.add(index - offsets[c], element);
+    size++;
+    modCount++;
+    if (chunk.size() > maxChunkSize) {
+      // split the chunk in two halves
+      final int half = chunk.size() / 2;
+      final ArrayList<E> upper = new ArrayList<>(maxChunkSize);
+      upper.addAll(chunk.subList(half, chunk.size()));
+      chunk.subList(half, chunk.size()).clear();
+      addChunk(c + 1, upper);
+    }
+    updateOffsets(c + 1);
+  }
+
+  @Override
+  public E remove(int index) {
+    rangeCheck(index);
+    int c = chunkOf(index);
+    final ArrayList<E> chunk = chunks.get(c);
+    final E removed = chunk.remove(index - offsets[c]);
+    size--;
+    modCount++;
+    if (chunk.isEmpty()) {
+      chunks.remove(c);
+    } else if (c + 1 < chunks.size()
+        && chunk.size() + chunks.get(c + 1).size() <= maxChunkSize / 2) {
+      // merge small neighbours, so that the number of chunks stays bounded
+      // after the removal of many elements.
+      chunk.addAll(chunks.remove(c + 1));
+    }
+    updateOffsets(Math.max(c, 1));
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    chunks.clear();
+    size = 0;
+    modCount++;
+  }
+
+  /** @return the number of chunks of the list. */
+  int getNumChunks() {
+    return chunks.size();
+  }
+
+  private void addChunk(int c, ArrayList<E> chunk) {
+    if (chunks.size() == offsets.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    chunks.add(c, chunk);
+  }
+
+  /** Recompute the offsets of the chunks, starting from the given chunk. */
+  private void updateOffsets(int from) {
+    offsets[0] = 0;
+    for (int i = Math.max(from, 1); i < chunks.size(); i++) {
+      offsets[i] = offsets[i - 1] + chunks.get(i - 1).size();
+    }
+  }
+
+  /** @return the chunk containing the element at the given index. */
+  private int chunkOf(int index) {
+    final int c = Arrays.binarySearch(offsets, 0, chunks.size(), index);
+    return c >= 0 ? c : -c - 2;
+  }
+
+  private void rangeCheck(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+  }
+
+  private String outOfBoundsMsg(int index) {
+    return "Index: " + index + ", Size: " + size;
+  }
+}
@@ -22,6 +22,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
@@ -165,6 +166,15 @@ private BlockListAsLongs checkReport(Replica...replicas) {
     // decode the long and verify its contents
     BlockListAsLongs decodedList = BlockListAsLongs.decodeLongs(longs);
     checkReplicas(expectedReplicas, decodedList);
+
+    // fully decode both forms and verify the contents and encodings
+    BlockListAsLongs fullyDecoded =
+        BlockListAsLongs.decodeFully(decodedBlocks);
+    checkReplicas(expectedReplicas, fullyDecoded);
+    assertEquals(blocks.getBlocksBuffer(), fullyDecoded.getBlocksBuffer());
+    assertSame(fullyDecoded, BlockListAsLongs.decodeFully(fullyDecoded));
+    checkReplicas(expectedReplicas,
+        BlockListAsLongs.decodeFully(decodedList));
     return blocks;
   }
   
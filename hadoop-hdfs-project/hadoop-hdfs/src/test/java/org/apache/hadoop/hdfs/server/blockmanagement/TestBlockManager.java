@@ -1499,6 +1499,33 @@ public void run() {
     }
   }
 
+  @Test(timeout = 60000)
+  public void testDecodeBlockReportsOutsideLock() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DECODE_OUTSIDE_LOCK_KEY, true);
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, new Path("/decoded"), 1024, (short) 3, 0L);
+      cluster.triggerBlockReports();
+      cluster.getNamesystem().getBlockManager().flushBlockOps();
+
+      MetricsRecordBuilder rb = getMetrics("NameNodeActivity");
+      assertTrue(MetricsAsserts.getLongCounter(
+          "BlockReportDecodeNumOps", rb) > 0);
+      assertTrue(MetricsAsserts.getLongCounter(
+          "FullBlockReportProcessingNumOps", rb) > 0);
+      assertTrue(MetricsAsserts.getLongCounter(
+          "BlockOpsBatchLockHoldNumOps", rb) > 0);
+      DFSTestUtil.waitReplication(fs, new Path("/decoded"), (short) 3);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test(timeout = 60000)
   public void testBlockManagerMachinesArray() throws Exception {
     final Configuration conf = new HdfsConfiguration();
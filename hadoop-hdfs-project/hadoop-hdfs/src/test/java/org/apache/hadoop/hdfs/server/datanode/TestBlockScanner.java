@@ -58,6 +58,7 @@
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi.BlockIterator;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsDatasetTestUtil;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.impl.FsVolumeImpl;
 import org.apache.hadoop.hdfs.server.datanode.VolumeScanner.Statistics;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -1034,6 +1035,44 @@ public void testSkipRecentAccessFile() throws Exception {
     ctx.close();
   }
 
+  /**
+   * Test the block scanner reads the compacted replicas without moving them
+   * back into the replica map.
+   */
+  @Test(timeout=120000)
+  public void testScanCompactedReplicas() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(DFS_BLOCK_SCANNER_VOLUME_BYTES_PER_SECOND, 1048576L);
+    conf.setLong(INTERNAL_DFS_DATANODE_SCAN_PERIOD_MS, 100L);
+    conf.set(INTERNAL_VOLUME_SCANNER_SCAN_RESULT_HANDLER,
+        TestScanResultHandler.class.getName());
+    final TestContext ctx = new TestContext(conf, 1);
+    final int numExpectedBlocks = 10;
+    ctx.createFiles(0, numExpectedBlocks, 1);
+    assertEquals(numExpectedBlocks,
+        FsDatasetTestUtil.compactReplicas(ctx.data, ctx.bpids[0]));
+
+    final TestScanResultHandler.Info info =
+        TestScanResultHandler.getInfo(ctx.volumes.get(0));
+    synchronized (info) {
+      info.shouldRun = true;
+      info.notify();
+    }
+    // scan all the blocks twice.
+    GenericTestUtils.waitFor(() -> {
+      synchronized (info) {
+        return info.goodBlocks.size() == numExpectedBlocks
+            && info.blocksScanned >= 2 * numExpectedBlocks;
+      }
+    }, 10, 60000);
+    synchronized (info) {
+      assertTrue(info.badBlocks.isEmpty());
+    }
+    assertEquals(numExpectedBlocks,
+        FsDatasetTestUtil.getNumCompactedReplicas(ctx.data, ctx.bpids[0]));
+    ctx.close();
+  }
+
   /**
    * Test a DN does not wait for the VolumeScanners to finish before shutting
    * down.
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link BlockSender} reading the next packets in advance.
+ */
+public class TestBlockSenderAsyncRead {
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int IO_BUFFER_SIZE = 4096;
+
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_TRANSFER_ASYNC_READ_THREADS_KEY, 2);
+    // the data is read through the packet buffers without transferTo.
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_TRANSFERTO_ALLOWED_KEY, false);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt("io.file.buffer.size", IO_BUFFER_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(2).build();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private byte[] writeFile(Path file, int length, short replication)
+      throws IOException {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    try (FSDataOutputStream out = fs.create(file, replication)) {
+      out.write(data);
+    }
+    return data;
+  }
+
+  @Test(timeout = 120000)
+  public void testRead() throws Exception {
+    assertNotNull(cluster.getDataNodes().get(0).getAsyncReadExecutor());
+    // lengths around the packet, chunk and block boundaries.
+    for (int length : new int[] {1, 511, IO_BUFFER_SIZE, 3 * IO_BUFFER_SIZE + 7,
+        BLOCK_SIZE, 2 * BLOCK_SIZE + 513}) {
+      Path file = new Path("/testRead" + length);
+      byte[] data = writeFile(file, length, (short) 1);
+      assertArrayEquals("length " + length, data,
+          DFSTestUtil.readFileBuffer(fs, file));
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testPositionalRead() throws Exception {
+    Path file = new Path("/testPositionalRead");
+    byte[] data = writeFile(file, 2 * BLOCK_SIZE + 100, (short) 1);
+    Random random = new Random(0);
+    try (FSDataInputStream in = fs.open(file)) {
+      for (int i = 0; i < 100; i++) {
+        int position = random.nextInt(data.length);
+        int length = Math.min(data.length - position,
+            1 + random.nextInt(5 * IO_BUFFER_SIZE));
+        byte[] buf = new byte[length];
+        in.readFully(position, buf);
+        for (int j = 0; j < length; j++) {
+          assertEquals(data[position + j], buf[j]);
+        }
+      }
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testReadBeingWritten() throws Exception {
+    Path file = new Path("/testReadBeingWritten");
+    byte[] data = new byte[5 * IO_BUFFER_SIZE + 11];
+    new Random(1).nextBytes(data);
+    try (FSDataOutputStream out = fs.create(file, (short) 1)) {
+      out.write(data);
+      out.hflush();
+      // the last chunk of the replica being written is partial.
+      byte[] read = new byte[data.length];
+      try (FSDataInputStream in = fs.open(file)) {
+        in.readFully(0, read);
+      }
+      assertArrayEquals(data, read);
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testReplication() throws Exception {
+    Path file = new Path("/testReplication");
+    byte[] data = writeFile(file, BLOCK_SIZE + 1000, (short) 1);
+    fs.setReplication(file, (short) 2);
+    DFSTestUtil.waitReplication(fs, file, (short) 2);
+    cluster.stopDataNode(0);
+    assertArrayEquals(data, DFSTestUtil.readFileBuffer(fs, file));
+  }
+}
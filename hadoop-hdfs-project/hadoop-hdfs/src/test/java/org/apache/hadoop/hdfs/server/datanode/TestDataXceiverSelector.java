@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CONTEXT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.BlockChecksumOptions;
+import org.apache.hadoop.hdfs.protocol.BlockChecksumType;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.Sender;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BlockOpResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.Status;
+import org.apache.hadoop.hdfs.protocolPB.PBHelperClient;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the idle connections of the NIO transfer server wait on the
+ * {@link DataXceiverSelector} and are resumed for their next operation.
+ */
+public class TestDataXceiverSelector {
+  private static final Path TEST_FILE = new Path("/test");
+  private static final int KEEPALIVE_TIMEOUT = 2000;
+
+  private final Configuration conf = new HdfsConfiguration();
+  private MiniDFSCluster cluster;
+  private DataXceiverServer xserver;
+
+  @Before
+  public void setup() throws Exception {
+    conf.setBoolean(DFS_DATANODE_TRANSFER_SERVER_NIO_ENABLED_KEY, true);
+    conf.setInt(DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY, KEEPALIVE_TIMEOUT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    xserver = cluster.getDataNodes().get(0).getXferServer();
+  }
+
+  @After
+  public void teardown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  private DistributedFileSystem newClient(String context) throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.setLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY, 60000L);
+    clientConf.set(DFS_CLIENT_CONTEXT, context);
+    return (DistributedFileSystem) FileSystem.newInstance(cluster.getURI(),
+        clientConf);
+  }
+
+  @Test(timeout = 60000)
+  public void testIdleConnectionsAreParked() throws Exception {
+    DistributedFileSystem fs = newClient("testIdleConnectionsAreParked");
+    try {
+      DFSTestUtil.createFile(fs, TEST_FILE, 4096L, (short) 1, 0L);
+      byte[] expected = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+
+      // the cached connection waits for its next op on the selector.
+      GenericTestUtils.waitFor(() -> xserver.getNumParkedXceivers() == 1,
+          10, 10000);
+      assertEquals(1, xserver.getNumPeers());
+
+      // the next reads reuse the connection, which is resumed.
+      for (int i = 0; i < 10; i++) {
+        assertArrayEquals(expected, DFSTestUtil.readFileAsBytes(fs, TEST_FILE));
+      }
+      GenericTestUtils.waitFor(() -> xserver.getNumParkedXceivers() == 1,
+          10, 10000);
+      assertEquals(1, xserver.getNumPeers());
+
+      // the connection is closed once its keepalive expires.
+      GenericTestUtils.waitFor(() -> xserver.getNumParkedXceivers() == 0
+          && xserver.getNumPeers() == 0, 100, 3 * KEEPALIVE_TIMEOUT);
+    } finally {
+      fs.close();
+    }
+  }
+
+  /**
+   * Send ops one at a time on a connection, waiting for it to be parked
+   * between them: the op which wakes the parked xceiver must be processed.
+   */
+  @Test(timeout = 60000)
+  public void testNextOpOnParkedConnection() throws Exception {
+    final ExtendedBlock block;
+    DistributedFileSystem fs = newClient("testNextOpOnParkedConnection");
+    try {
+      DFSTestUtil.createFile(fs, TEST_FILE, 4096L, (short) 1, 0L);
+      block = DFSTestUtil.getFirstBlock(fs, TEST_FILE);
+    } finally {
+      fs.close();
+    }
+    GenericTestUtils.waitFor(() -> xserver.getNumPeers() == 0, 10, 10000);
+
+    DataNode dn = cluster.getDataNodes().get(0);
+    try (Socket s = NetUtils.getDefaultSocketFactory(conf).createSocket()) {
+      NetUtils.connect(s, dn.getXferAddress(), 10000);
+      s.setSoTimeout(10000);
+      DataOutputStream out = new DataOutputStream(s.getOutputStream());
+      DataInputStream in = new DataInputStream(s.getInputStream());
+      for (int i = 0; i < 3; i++) {
+        new Sender(out).blockChecksum(block,
+            BlockTokenSecretManager.DUMMY_TOKEN,
+            new BlockChecksumOptions(BlockChecksumType.MD5CRC));
+        BlockOpResponseProto response =
+            BlockOpResponseProto.parseFrom(PBHelperClient.vintPrefixed(in));
+        assertEquals(Status.SUCCESS, response.getStatus());
+        GenericTestUtils.waitFor(() -> xserver.getNumParkedXceivers() == 1,
+            10, 10000);
+      }
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentReads() throws Exception {
+    final int numReaders = 8;
+    final DistributedFileSystem fs = newClient("testConcurrentReads");
+    ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+    try {
+      DFSTestUtil.createFile(fs, TEST_FILE, 1024 * 1024L, (short) 1, 0L);
+      final byte[] expected = DFSTestUtil.readFileAsBytes(fs, TEST_FILE);
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numReaders; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < 20; j++) {
+              assertArrayEquals(expected,
+                  DFSTestUtil.readFileAsBytes(fs, TEST_FILE));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      // all the idle connections are parked, the worker threads are only
+      // needed while an op is processed.
+      GenericTestUtils.waitFor(
+          () -> xserver.getNumParkedXceivers() == xserver.getNumPeers(),
+          10, 10000);
+      assertTrue(xserver.getNumXceiverThreads() <= numReaders + 1);
+    } finally {
+      executor.shutdownNow();
+      fs.close();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.VolumeIoScheduler.IoClass;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link VolumeIoScheduler}.
+ */
+public class TestVolumeIoScheduler {
+  private Configuration conf;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+    conf = new HdfsConfiguration();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdownNow();
+    VolumeIoScheduler.setIoClass(null);
+  }
+
+  private Future<Long> acquireAsync(final VolumeIoScheduler scheduler,
+      final IoClass ioClass) {
+    return executor.submit(() -> scheduler.acquire(ioClass, 0));
+  }
+
+  @Test(timeout = 60000)
+  public void testLowerPriorityWaitsForHigher() throws Exception {
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_KEY,
+        60000);
+    final VolumeIoScheduler scheduler = new VolumeIoScheduler(conf, null);
+    long read = scheduler.acquire(IoClass.CLIENT_READ, 4096);
+
+    // the same and higher priorities do not wait.
+    long write = scheduler.acquire(IoClass.PIPELINE_WRITE, 4096);
+    scheduler.release(IoClass.PIPELINE_WRITE, write);
+
+    Future<Long> replication = acquireAsync(scheduler, IoClass.REPLICATION);
+    Future<Long> scan = acquireAsync(scheduler, IoClass.SCAN);
+    GenericTestUtils.waitFor(() -> scheduler.getNumWaiters() == 2, 10, 10000);
+    assertEquals(1, scheduler.getNumInProgress(0));
+
+    // the replication resumes when the read completes, the scan then waits
+    // for the replication.
+    scheduler.release(IoClass.CLIENT_READ, read);
+    long begin = replication.get(10, TimeUnit.SECONDS);
+    assertEquals(1, scheduler.getNumInProgress(1));
+    assertEquals(1, scheduler.getNumWaiters());
+    scheduler.release(IoClass.REPLICATION, begin);
+    scheduler.release(IoClass.SCAN, scan.get(10, TimeUnit.SECONDS));
+
+    assertEquals(0, scheduler.getNumWaiters());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, scheduler.getNumInProgress(i));
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testMaxWait() throws Exception {
+    final long maxWait = 200;
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_MAX_WAIT_MS_KEY,
+        maxWait);
+    VolumeIoScheduler scheduler = new VolumeIoScheduler(conf, null);
+    long read = scheduler.acquire(IoClass.CLIENT_READ, 0);
+    long start = Time.monotonicNow();
+    long scan = acquireAsync(scheduler, IoClass.SCAN).get();
+    assertTrue(Time.monotonicNow() - start >= maxWait);
+    scheduler.release(IoClass.SCAN, scan);
+    scheduler.release(IoClass.CLIENT_READ, read);
+  }
+
+  @Test(timeout = 60000)
+  public void testBandwidth() throws Exception {
+    conf.setLong(
+        DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_SCAN_BANDWIDTHPERSEC_KEY,
+        1024 * 1024);
+    VolumeIoScheduler scheduler = new VolumeIoScheduler(conf, null);
+    // the other classes are not limited.
+    long start = Time.monotonicNow();
+    for (int i = 0; i < 4; i++) {
+      scheduler.release(IoClass.CLIENT_READ,
+          scheduler.acquire(IoClass.CLIENT_READ, 1024 * 1024));
+    }
+    assertTrue(Time.monotonicNow() - start < 1000);
+
+    start = Time.monotonicNow();
+    for (int i = 0; i < 4; i++) {
+      scheduler.release(IoClass.SCAN,
+          scheduler.acquire(IoClass.SCAN, 1024 * 1024));
+    }
+    assertTrue(Time.monotonicNow() - start >= 2000);
+  }
+
+  @Test(timeout = 60000)
+  public void testThreadIoClass() throws Exception {
+    DataNodeVolumeMetrics metrics =
+        DataNodeVolumeMetrics.create(conf, "TestVolumeIoScheduler");
+    try {
+      VolumeIoScheduler scheduler = new VolumeIoScheduler(conf, metrics);
+      // the I/O of the threads without a class is not scheduled.
+      assertNull(VolumeIoScheduler.getIoClass());
+      scheduler.beforeFileIo(4096);
+      assertEquals(0, scheduler.getNumInProgress(0));
+      scheduler.afterFileIo();
+
+      assertNull(VolumeIoScheduler.setIoClass(IoClass.SCAN));
+      scheduler.beforeFileIo(4096);
+      assertEquals(1, scheduler.getNumInProgress(2));
+      scheduler.afterFileIo();
+      assertEquals(0, scheduler.getNumInProgress(2));
+      // a completed I/O is not released twice.
+      scheduler.afterFileIo();
+      assertEquals(0, scheduler.getNumInProgress(2));
+
+      MetricsRecordBuilder rb = getMetrics(metrics.name());
+      assertEquals(1L, getLongCounter("ScanIoRateNumOps", rb));
+      assertEquals(1L, getLongCounter("ScanIoQueueTimeNumOps", rb));
+      assertEquals(0L, getLongCounter("ClientReadIoRateNumOps", rb));
+      assertGauge("ScanIoQueueLength", 0, rb);
+    } finally {
+      metrics.unRegister();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testNoScheduler() throws Exception {
+    VolumeIoScheduler.setIoClass(IoClass.SCAN);
+    VolumeIoScheduler.NONE.beforeFileIo(4096);
+    assertEquals(0, VolumeIoScheduler.NONE.getNumInProgress(2));
+    VolumeIoScheduler.NONE.afterFileIo();
+
+    // the I/O of the volumes is not scheduled unless enabled.
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/test");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0L);
+      ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+      assertSame(VolumeIoScheduler.NONE, cluster.getDataNodes().get(0)
+          .getFSDataset().getVolume(block).getIoScheduler());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testScheduledDataNode() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_IO_SCHEDULER_ENABLED_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      FileSystem fs = cluster.getFileSystem();
+      Path file = new Path("/test");
+      DFSTestUtil.createFile(fs, file, 1024 * 1024, (short) 1, 0L);
+      DFSTestUtil.readFile(fs, file);
+
+      ExtendedBlock block = DFSTestUtil.getFirstBlock(fs, file);
+      FsVolumeSpi volume = cluster.getDataNodes().get(0).getFSDataset()
+          .getVolume(block);
+      VolumeIoScheduler scheduler = volume.getIoScheduler();
+      assertNotSame(VolumeIoScheduler.NONE, scheduler);
+      for (int i = 0; i < 3; i++) {
+        assertEquals(0, scheduler.getNumInProgress(i));
+      }
+      MetricsRecordBuilder rb = getMetrics(volume.getMetrics().name());
+      assertTrue(getLongCounter("PipelineWriteIoRateNumOps", rb) > 0);
+      assertTrue(getLongCounter("ClientReadIoRateNumOps", rb) > 0);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.DataNodeVolumeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link VolumeSyncCoalescer}.
+ */
+public class TestVolumeSyncCoalescer {
+  private Configuration conf;
+  private ExecutorService executor;
+  private File testDir;
+  private DataNodeVolumeMetrics metrics;
+  private VolumeSyncCoalescer coalescer;
+
+  @Before
+  public void setup() {
+    conf = new HdfsConfiguration();
+    executor = Executors.newCachedThreadPool();
+    testDir = GenericTestUtils.getTestDir(getClass().getSimpleName());
+    assertTrue(testDir.isDirectory() || testDir.mkdirs());
+  }
+
+  @After
+  public void teardown() {
+    if (coalescer != null) {
+      coalescer.shutdown();
+    }
+    if (metrics != null) {
+      metrics.unRegister();
+    }
+    executor.shutdownNow();
+  }
+
+  private void startCoalescer() {
+    startCoalescer(new FileIoProvider(conf, null));
+  }
+
+  private void startCoalescer(FileIoProvider fileIoProvider) {
+    metrics = DataNodeVolumeMetrics.create(conf,
+        "TestVolumeSyncCoalescer" + System.nanoTime());
+    coalescer = new VolumeSyncCoalescer(conf, null, fileIoProvider, metrics);
+    coalescer.start();
+  }
+
+  private FileOutputStream createFile(String name) throws IOException {
+    FileOutputStream out = new FileOutputStream(new File(testDir, name));
+    out.write(new byte[4096]);
+    return out;
+  }
+
+  /**
+   * Sync the data and meta files of replicas concurrently, each replica
+   * from its own thread, with their directory if not null.
+   */
+  private List<Future<Void>> syncReplicasConcurrently(final File dir,
+      final FileOutputStream[][] replicas) {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> syncs = new ArrayList<>();
+    for (final FileOutputStream[] files : replicas) {
+      syncs.add(executor.submit(() -> {
+        start.await();
+        coalescer.sync(dir, files);
+        return null;
+      }));
+    }
+    start.countDown();
+    return syncs;
+  }
+
+  /**
+   * Sync the files concurrently, each from its own thread.
+   */
+  private List<Future<Void>> syncConcurrently(FileOutputStream... files) {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> syncs = new ArrayList<>();
+    for (final FileOutputStream file : files) {
+      syncs.add(executor.submit(() -> {
+        start.await();
+        coalescer.sync(testDir, file);
+        return null;
+      }));
+    }
+    start.countDown();
+    return syncs;
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentSyncsAreCoalesced() throws Exception {
+    // a window long enough for all the writers to join the first batch.
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        1000000);
+    startCoalescer();
+    final int numWriters = 8;
+    FileOutputStream[] files = new FileOutputStream[numWriters];
+    try {
+      for (int i = 0; i < numWriters; i++) {
+        files[i] = createFile("file" + i);
+      }
+      for (Future<Void> sync : syncConcurrently(files)) {
+        sync.get();
+      }
+    } finally {
+      IOUtils.closeStreams(files);
+    }
+    assertEquals(numWriters, metrics.getTotalSyncRequests());
+    assertTrue("batches: " + metrics.getTotalSyncBatches(),
+        metrics.getTotalSyncBatches() < numWriters);
+    assertTrue(metrics.getSyncCoalescingRatio() > 1);
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncsPerHSync() throws Exception {
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        1000000);
+    final AtomicInteger fileSyncs = new AtomicInteger();
+    final AtomicInteger dirSyncs = new AtomicInteger();
+    startCoalescer(new FileIoProvider(conf, null) {
+      @Override
+      public void sync(FsVolumeSpi volume, FileOutputStream fos)
+          throws IOException {
+        fileSyncs.incrementAndGet();
+        super.sync(volume, fos);
+      }
+
+      @Override
+      public void dirSync(FsVolumeSpi volume, File dir) throws IOException {
+        dirSyncs.incrementAndGet();
+        super.dirSync(volume, dir);
+      }
+    });
+    final int numWriters = 8;
+    FileOutputStream[][] replicas = new FileOutputStream[numWriters][];
+    try {
+      for (int i = 0; i < numWriters; i++) {
+        replicas[i] = new FileOutputStream[] {
+            createFile("blk_" + i), createFile("blk_" + i + ".meta")};
+      }
+      // the first hsync of a replica also syncs its directory: without the
+      // coalescer, each writer issues 3 syncs, its data and meta files and
+      // the directory, which the replicas of a batch share.
+      for (Future<Void> sync : syncReplicasConcurrently(testDir, replicas)) {
+        sync.get();
+      }
+      assertEquals(2 * numWriters, fileSyncs.get());
+      assertEquals(metrics.getTotalSyncBatches(), dirSyncs.get());
+      assertTrue("directory syncs: " + dirSyncs.get(),
+          dirSyncs.get() < numWriters);
+
+      // the next hsyncs only sync the files: each writer still issues the
+      // 2 syncs it would issue without the coalescer.
+      final int dirSyncsBefore = dirSyncs.get();
+      for (int round = 0; round < 5; round++) {
+        final int fileSyncsBefore = fileSyncs.get();
+        for (Future<Void> sync : syncReplicasConcurrently(null, replicas)) {
+          sync.get();
+        }
+        assertEquals(2 * numWriters, fileSyncs.get() - fileSyncsBefore);
+      }
+      assertEquals(dirSyncsBefore, dirSyncs.get());
+    } finally {
+      for (FileOutputStream[] files : replicas) {
+        if (files != null) {
+          IOUtils.closeStreams(files);
+        }
+      }
+    }
+    assertEquals(fileSyncs.get() + dirSyncs.get(), metrics.getTotalSyncs());
+    assertEquals(6 * numWriters, metrics.getTotalSyncRequests());
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncsOfBatchAreParallel() throws Exception {
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        60000000);
+    final int numWriters = 4;
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY,
+        numWriters);
+    // each sync waits for the syncs of all the files, which only completes
+    // if they are issued in parallel.
+    final CountDownLatch syncing = new CountDownLatch(numWriters);
+    startCoalescer(new FileIoProvider(conf, null) {
+      @Override
+      public void sync(FsVolumeSpi volume, FileOutputStream fos)
+          throws IOException {
+        syncing.countDown();
+        try {
+          syncing.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+        super.sync(volume, fos);
+      }
+    });
+    FileOutputStream[] files = new FileOutputStream[numWriters];
+    try {
+      for (int i = 0; i < numWriters; i++) {
+        files[i] = createFile("file" + i);
+      }
+      for (Future<Void> sync : syncConcurrently(files)) {
+        sync.get();
+      }
+    } finally {
+      IOUtils.closeStreams(files);
+    }
+    assertEquals(1, metrics.getTotalSyncBatches());
+  }
+
+  @Test(timeout = 60000)
+  public void testMaxBatch() throws Exception {
+    // the batches are synced as soon as they are full.
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        60000000);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_MAX_BATCH_KEY, 2);
+    startCoalescer();
+    FileOutputStream[] files = new FileOutputStream[4];
+    try {
+      for (int i = 0; i < files.length; i++) {
+        files[i] = createFile("file" + i);
+      }
+      for (Future<Void> sync : syncConcurrently(files)) {
+        sync.get();
+      }
+    } finally {
+      IOUtils.closeStreams(files);
+    }
+    assertEquals(4, metrics.getTotalSyncRequests());
+    assertEquals(2, metrics.getTotalSyncBatches());
+  }
+
+  @Test(timeout = 60000)
+  public void testFailedSyncOnlyFailsItsRequest() throws Exception {
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_WINDOW_US_KEY,
+        1000000);
+    startCoalescer();
+    FileOutputStream good = createFile("good");
+    FileOutputStream closed = createFile("closed");
+    closed.close();
+    try {
+      List<Future<Void>> syncs = syncConcurrently(good, closed);
+      syncs.get(0).get();
+      try {
+        syncs.get(1).get();
+        fail("The sync of a closed file should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      good.close();
+    }
+    assertEquals(2, metrics.getTotalSyncRequests());
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncAfterShutdown() throws Exception {
+    startCoalescer();
+    coalescer.shutdown();
+    try (FileOutputStream file = createFile("file")) {
+      // synced by the writer.
+      coalescer.sync(testDir, file);
+    }
+    assertEquals(1, metrics.getTotalSyncRequests());
+  }
+
+  @Test(timeout = 60000)
+  public void testNoCoalescer() throws Exception {
+    assertFalse(VolumeSyncCoalescer.NONE.isCoalescing());
+    try (FileOutputStream file = createFile("file")) {
+      // synced by the writer.
+      VolumeSyncCoalescer.NONE.sync(testDir, file);
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testHSyncWithCoalescing() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_SYNC_COALESCING_ENABLED_KEY,
+        true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).storagesPerDatanode(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      final int numWriters = 4;
+      final byte[] data = new byte[1024];
+      new Random(0).nextBytes(data);
+      List<Future<Path>> writers = new ArrayList<>();
+      for (int i = 0; i < numWriters; i++) {
+        final Path file = new Path("/testHSyncWithCoalescing" + i);
+        writers.add(executor.submit(() -> {
+          try (FSDataOutputStream out = fs.create(file)) {
+            for (int j = 0; j < 10; j++) {
+              out.write(data);
+              out.hsync();
+            }
+          }
+          return file;
+        }));
+      }
+      byte[] expected = new byte[10 * data.length];
+      for (int j = 0; j < 10; j++) {
+        System.arraycopy(data, 0, expected, j * data.length, data.length);
+      }
+      for (Future<Path> writer : writers) {
+        assertArrayEquals(expected,
+            DFSTestUtil.readFileBuffer(fs, writer.get()));
+      }
+
+      DataNode dn = cluster.getDataNodes().get(0);
+      try (FsDatasetSpi.FsVolumeReferences volumes =
+          dn.getFSDataset().getFsVolumeReferences()) {
+        FsVolumeSpi volume = volumes.get(0);
+        assertTrue(volume.getSyncCoalescer().isCoalescing());
+        assertTrue(volume.getMetrics().getTotalSyncRequests()
+            >= numWriters * 10);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
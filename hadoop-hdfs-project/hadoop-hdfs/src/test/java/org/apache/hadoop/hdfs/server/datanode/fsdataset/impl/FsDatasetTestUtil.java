@@ -81,6 +81,20 @@ public static Collection<ReplicaInfo> getReplicas(FsDatasetSpi<?> fsd,
     return ((FsDatasetImpl)fsd).volumeMap.replicas(bpid);
   }
 
+  /**
+   * Compact the finalized replicas of a block pool, as the block pools are
+   * when dfs.datanode.replica.map.compact.enabled is set.
+   * @return the number of replicas compacted
+   */
+  public static int compactReplicas(FsDatasetSpi<?> fsd, String bpid) {
+    return ((FsDatasetImpl)fsd).volumeMap.compact(bpid, false);
+  }
+
+  public static int getNumCompactedReplicas(FsDatasetSpi<?> fsd,
+      String bpid) {
+    return ((FsDatasetImpl)fsd).volumeMap.compactedSize(bpid);
+  }
+
   /**
    * Stop the lazy writer daemon that saves RAM disk files to persistent storage.
    * @param dn
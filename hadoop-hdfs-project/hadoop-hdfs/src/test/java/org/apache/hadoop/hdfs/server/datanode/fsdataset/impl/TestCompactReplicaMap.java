@@ -0,0 +1,341 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
+import org.apache.hadoop.hdfs.server.datanode.DatanodeUtil;
+import org.apache.hadoop.hdfs.server.datanode.FinalizedReplica;
+import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Test the compaction of the replicas of the {@link ReplicaMap} in a
+ * {@link CompactReplicaStore}.
+ */
+@RunWith(Parameterized.class)
+public class TestCompactReplicaMap {
+  private static final String BPID = "BP-TEST";
+  private static final int NUM_REPLICAS = 1000;
+
+  private final boolean offHeap;
+  private final File finalizedDir = new File("/data1/current/" + BPID
+      + "/current/finalized");
+  private final File otherDir = new File("/data2/blocks");
+  private FsVolumeSpi volume;
+  private FsVolumeSpi ramDisk;
+  private ReplicaMap map;
+
+  @Parameters(name = "offHeap={0}")
+  public static Object[] data() {
+    return new Object[] {false, true};
+  }
+
+  public TestCompactReplicaMap(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  @Before
+  public void setup() {
+    volume = mock(FsVolumeSpi.class);
+    when(volume.getStorageID()).thenReturn("DS-1");
+    ramDisk = mock(FsVolumeSpi.class);
+    when(ramDisk.isTransientStorage()).thenReturn(true);
+    map = new ReplicaMap();
+    map.initBlockPool(BPID);
+  }
+
+  private FinalizedReplica newReplica(long blockId, FsVolumeSpi vol) {
+    return new FinalizedReplica(blockId, blockId * 3, blockId + 1000, vol,
+        DatanodeUtil.idToBlockDir(finalizedDir, blockId));
+  }
+
+  private static void assertReplica(ReplicaInfo expected, ReplicaInfo actual) {
+    assertNotNull(actual);
+    assertEquals(FinalizedReplica.class, actual.getClass());
+    assertEquals(expected.getBlockId(), actual.getBlockId());
+    assertEquals(expected.getNumBytes(), actual.getNumBytes());
+    assertEquals(expected.getGenerationStamp(),
+        actual.getGenerationStamp());
+    assertSame(expected.getVolume(), actual.getVolume());
+    assertEquals(((FinalizedReplica) expected).getBlockFile(),
+        ((FinalizedReplica) actual).getBlockFile());
+  }
+
+  @Test
+  public void testCompactAndRestore() {
+    Map<Long, ReplicaInfo> replicas = new HashMap<>();
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      FinalizedReplica replica = newReplica(id, volume);
+      replicas.put(id, replica);
+      map.add(BPID, replica);
+    }
+    // neither the replicas of transient storage, nor those of block id 0.
+    map.add(BPID, newReplica(NUM_REPLICAS + 1, ramDisk));
+    map.add(BPID, newReplica(0, volume));
+    // a replica outside the subdirectories of the block id.
+    FinalizedReplica flat = new FinalizedReplica(NUM_REPLICAS + 2, 10, 10,
+        volume, otherDir);
+    replicas.put(flat.getBlockId(), flat);
+    map.add(BPID, flat);
+
+    assertEquals(NUM_REPLICAS + 1, map.compact(BPID, offHeap));
+    assertEquals(NUM_REPLICAS + 3, map.size(BPID));
+
+    for (ReplicaInfo replica : replicas.values()) {
+      ReplicaInfo restored = map.get(BPID, replica.getBlockId());
+      assertReplica(replica, restored);
+      // the restored replica is the one of the map from now on.
+      assertSame(restored, map.get(BPID, replica));
+    }
+    assertEquals(NUM_REPLICAS + 3, map.size(BPID));
+    // the restored replicas can be compacted again.
+    assertEquals(NUM_REPLICAS + 1, map.compact(BPID, offHeap));
+  }
+
+  @Test
+  public void testAddAndRemove() {
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      map.add(BPID, newReplica(id, volume));
+    }
+    map.compact(BPID, offHeap);
+
+    // add replaces the compacted replica.
+    FinalizedReplica replaced = new FinalizedReplica(1, 1, 5000, volume,
+        otherDir);
+    ReplicaInfo previous = map.add(BPID, replaced);
+    assertReplica(newReplica(1, volume), previous);
+    assertSame(replaced, map.get(BPID, 1));
+
+    // addAndGet returns the compacted replica.
+    ReplicaInfo existing = map.addAndGet(BPID, newReplica(2, ramDisk));
+    assertReplica(newReplica(2, volume), existing);
+    assertSame(existing, map.get(BPID, 2));
+
+    // remove with a generation stamp mismatch.
+    assertNull(map.remove(BPID, new FinalizedReplica(3, 9, 1, volume,
+        otherDir)));
+    assertReplica(newReplica(3, volume), map.remove(BPID, newReplica(3,
+        volume)));
+    assertReplica(newReplica(4, volume), map.remove(BPID, 4));
+    assertNull(map.get(BPID, 3));
+    assertNull(map.get(BPID, 4));
+    assertNull(map.remove(BPID, 4));
+    assertEquals(NUM_REPLICAS - 2, map.size(BPID));
+  }
+
+  @Test
+  public void testIterate() {
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      map.add(BPID, newReplica(id, id % 2 == 0 ? volume : ramDisk));
+    }
+    map.compact(BPID, offHeap);
+
+    final Set<Long> ids = new HashSet<>();
+    map.replicas(BPID, iterator -> {
+      while (iterator.hasNext()) {
+        ReplicaInfo replica = iterator.next();
+        assertTrue(ids.add(replica.getBlockId()));
+        // remove a third of the replicas, compacted or not.
+        if (replica.getBlockId() % 3 == 0) {
+          iterator.remove();
+        }
+      }
+    });
+    assertEquals(NUM_REPLICAS, ids.size());
+    assertEquals(NUM_REPLICAS - NUM_REPLICAS / 3, map.size(BPID));
+    assertEquals(map.size(BPID), map.replicas(BPID).size());
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      assertEquals(id % 3 != 0, map.get(BPID, id) != null);
+    }
+  }
+
+  @Test
+  public void testCompactedReplicas() {
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      map.add(BPID, newReplica(id, volume));
+    }
+    map.compact(BPID, offHeap);
+    // the restored replicas are no longer compacted.
+    map.get(BPID, 1);
+    map.add(BPID, newReplica(NUM_REPLICAS + 1, ramDisk));
+
+    final Set<Long> ids = new HashSet<>();
+    final Set<Long> compactedIds = new HashSet<>();
+    map.replicas(BPID, iterator -> {
+      while (iterator.hasNext()) {
+        assertTrue(ids.add(iterator.next().getBlockId()));
+      }
+    }, (blockId, numBytes, genStamp, vol) -> {
+      assertTrue(compactedIds.add(blockId));
+      assertEquals(blockId * 3, numBytes);
+      assertEquals(blockId + 1000, genStamp);
+      assertSame(volume, vol);
+    });
+    // each replica is visited once.
+    assertEquals(2, ids.size());
+    assertTrue(ids.contains(1L));
+    assertEquals(NUM_REPLICAS - 1, compactedIds.size());
+    assertFalse(compactedIds.contains(1L));
+    assertEquals(NUM_REPLICAS - 1, map.compactedSize(BPID));
+  }
+
+  @Test
+  public void testGetReadOnly() {
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      map.add(BPID, newReplica(id, volume));
+    }
+    map.compact(BPID, offHeap);
+    for (long id = 1; id <= NUM_REPLICAS; id++) {
+      assertReplica(newReplica(id, volume), map.getReadOnly(BPID, id));
+    }
+    assertNull(map.getReadOnly(BPID, NUM_REPLICAS + 1));
+    // the replicas read stay compacted.
+    assertEquals(NUM_REPLICAS, map.compactedSize(BPID));
+
+    // a restored replica is returned itself.
+    ReplicaInfo restored = map.get(BPID, 1);
+    assertSame(restored, map.getReadOnly(BPID, 1));
+    assertEquals(NUM_REPLICAS - 1, map.compactedSize(BPID));
+  }
+
+  @Test
+  public void testGetBlockReports() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_ENABLED_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_DATANODE_REPLICA_MAP_COMPACT_OFFHEAP_KEY, offHeap);
+    final int numFiles = 20;
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).storagesPerDatanode(2).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < numFiles; i++) {
+        DFSTestUtil.createFile(fs, new Path("/file" + i), 1024, (short) 1,
+            i);
+      }
+      // the replicas are compacted when the block pool is loaded.
+      cluster.restartDataNode(0);
+      cluster.waitActive();
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      FsDatasetImpl dataset =
+          (FsDatasetImpl) cluster.getDataNodes().get(0).getFSDataset();
+      assertEquals(numFiles, dataset.volumeMap.compactedSize(bpid));
+
+      // restore a replica, which is then reported from the replica map.
+      dataset.volumeMap.get(bpid,
+          DFSTestUtil.getFirstBlock(fs, new Path("/file0")).getBlockId());
+      assertEquals(numFiles - 1, dataset.volumeMap.compactedSize(bpid));
+
+      Map<DatanodeStorage, BlockListAsLongs> reports =
+          dataset.getBlockReports(bpid);
+      assertEquals(2, reports.size());
+      Set<Long> ids = new HashSet<>();
+      for (BlockListAsLongs report : reports.values()) {
+        for (BlockReportReplica replica : report) {
+          assertTrue(ids.add(replica.getBlockId()));
+          assertEquals(ReplicaState.FINALIZED, replica.getState());
+          assertEquals(1024, replica.getNumBytes());
+        }
+      }
+      assertEquals(numFiles, ids.size());
+      assertEquals(numFiles, dataset.volumeMap.size(bpid));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testStore() {
+    CompactReplicaStore store = new CompactReplicaStore(offHeap);
+    assertEquals(offHeap, store.isOffHeap());
+    Map<Long, ReplicaInfo> expected = new HashMap<>();
+    Random random = new Random(0);
+    for (int i = 0; i < 20 * NUM_REPLICAS; i++) {
+      // sequential and random block ids, as the legacy ones.
+      long blockId = random.nextBoolean()
+          ? 1 + random.nextInt(2 * NUM_REPLICAS) : random.nextLong();
+      if (blockId == 0) {
+        continue;
+      }
+      if (random.nextInt(3) == 0) {
+        ReplicaInfo removed = store.remove(blockId);
+        ReplicaInfo replica = expected.remove(blockId);
+        if (replica == null) {
+          assertNull(removed);
+        } else {
+          assertReplica(replica, removed);
+        }
+      } else {
+        FinalizedReplica replica = newReplica(blockId, volume);
+        replica.setNumBytes(random.nextInt(Integer.MAX_VALUE));
+        assertTrue(CompactReplicaStore.isCompactable(replica));
+        assertTrue(store.add(replica));
+        expected.put(blockId, replica);
+      }
+      assertEquals(expected.size(), store.size());
+    }
+    for (ReplicaInfo replica : expected.values()) {
+      assertTrue(store.contains(replica.getBlockId()));
+      assertReplica(replica, store.get(replica.getBlockId()));
+    }
+  }
+
+  @Test
+  public void testCleanUpBlockPool() {
+    map.add(BPID, newReplica(1, volume));
+    map.compact(BPID, offHeap);
+    map.cleanUpBlockPool(BPID);
+    assertNull(map.get(BPID, 1));
+    map.initBlockPool(BPID);
+    assertNull(map.get(BPID, 1));
+    assertEquals(0, map.size(BPID));
+  }
+}
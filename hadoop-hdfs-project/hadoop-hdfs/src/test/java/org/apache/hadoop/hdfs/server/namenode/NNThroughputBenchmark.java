@@ -26,6 +26,7 @@
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.util.Preconditions;
 
@@ -51,7 +52,9 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManagerTestUtil;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataStorage;
@@ -107,10 +110,13 @@ public class NNThroughputBenchmark implements Tool {
       LoggerFactory.getLogger(NNThroughputBenchmark.class);
   private static final int BLOCK_SIZE = 16;
   private static final String GENERAL_OPTIONS_USAGE =
-      "[-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G]";
+      "[-keepResults] | [-logLevel L] | [-UGCacheRefreshCount G] | " +
+      "[-journalNodes J]";
+  private static final String JOURNAL_ID = "nnThroughputBenchmark";
 
   static Configuration config;
   static NameNode nameNode;
+  static MiniJournalCluster journalCluster;
   static NamenodeProtocol nameNodeProto;
   static ClientProtocol clientProto;
   static DatanodeProtocol dataNodeProto;
@@ -143,6 +149,28 @@ public class NNThroughputBenchmark implements Tool {
   void close() {
     if(nameNode != null)
       nameNode.stop();
+    if (journalCluster != null) {
+      try {
+        journalCluster.shutdown();
+      } catch (IOException e) {
+        LOG.warn("Failed to shut down the journal cluster", e);
+      }
+      journalCluster = null;
+    }
+  }
+
+  /**
+   * Start an in-process quorum of journal nodes, point the standalone
+   * name-node's edits at it and format the name-node on it.
+   */
+  private static void startJournalCluster(int numJournalNodes)
+      throws IOException {
+    journalCluster = new MiniJournalCluster.Builder(config)
+        .numJournalNodes(numJournalNodes).build();
+    journalCluster.waitActive();
+    config.set(DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_KEY,
+        journalCluster.getQuorumJournalURI(JOURNAL_ID).toString());
+    DFSTestUtil.formatNameNode(config);
   }
 
   static void setNameNodeLoggingLevel(Level logLevel) {
@@ -519,11 +547,12 @@ class CreateFileStats extends OperationStatsBase {
     static final String OP_CREATE_NAME = "create";
     static final String OP_CREATE_USAGE = 
         "-op create [-threads T] [-files N] [-blockSize S] [-filesPerDir P]"
-        + " [-close]";
+        + " [-preloadFiles L] [-close]";
 
     protected FileNameGenerator nameGenerator;
     protected String[][] fileNames;
     private boolean closeUponCreate;
+    private int numPreloadFiles;
 
     CreateFileStats(List<String> args) {
       super();
@@ -540,6 +569,7 @@ void parseArguments(List<String> args) {
       boolean ignoreUnrelatedOptions = verifyOpArgument(args);
       int nrFilesPerDir = 4;
       closeUponCreate = false;
+      numPreloadFiles = 0;
       for (int i = 2; i < args.size(); i++) {       // parse command line
         if(args.get(i).equals("-files")) {
           if(i+1 == args.size())  printUsage();
@@ -553,6 +583,9 @@ void parseArguments(List<String> args) {
         } else if(args.get(i).equals("-filesPerDir")) {
           if(i+1 == args.size())  printUsage();
           nrFilesPerDir = Integer.parseInt(args.get(++i));
+        } else if(args.get(i).equals("-preloadFiles")) {
+          if(i+1 == args.size())  printUsage();
+          numPreloadFiles = Integer.parseInt(args.get(++i));
         } else if(args.get(i).equals("-close")) {
           closeUponCreate = true;
         } else if(!ignoreUnrelatedOptions)
@@ -570,6 +603,7 @@ void generateInputs(int[] opsPerThread) throws IOException {
       LOG.info("Generate " + numOpsRequired + " intputs for " + getOpName());
       fileNames = new String[numThreads][];
       try {
+        preloadFiles();
         for(int idx=0; idx < numThreads; idx++) {
           int threadOps = opsPerThread[idx];
           fileNames[idx] = new String[threadOps];
@@ -586,6 +620,32 @@ void generateInputs(int[] opsPerThread) throws IOException {
       }
     }
 
+    /**
+     * Create the first files of the benchmark directories before the
+     * benchmark starts, so that the measured creates are done in directories
+     * that already hold many files, e.g. with -filesPerDir larger than
+     * -preloadFiles + -files to measure the creates in a single huge
+     * directory.
+     */
+    private void preloadFiles() throws IOException {
+      if (numPreloadFiles <= 0) {
+        return;
+      }
+      LOG.info("Preload " + numPreloadFiles + " files for " + getOpName());
+      String clientName = getClientName(numThreads);
+      for (int i = 0; i < numPreloadFiles; i++) {
+        String fileName = nameGenerator.getNextFileName("ThroughputBench");
+        clientProto.create(fileName, FsPermission.getDefault(), clientName,
+            new EnumSetWritable<CreateFlag>(EnumSet
+                .of(CreateFlag.CREATE, CreateFlag.OVERWRITE)), true,
+            replication, blockSize, CryptoProtocolVersion.supported(), null,
+            null);
+        while (!clientProto.complete(fileName, clientName, null,
+            HdfsConstants.GRANDFATHER_INODE_ID)) {
+        }
+      }
+    }
+
     /**
      * returns client name
      */
@@ -621,6 +681,9 @@ void printResults() {
       LOG.info("nrFiles = " + numOpsRequired);
       LOG.info("nrThreads = " + numThreads);
       LOG.info("nrFilesPerDir = " + nameGenerator.getFilesPerDirectory());
+      if (numPreloadFiles > 0) {
+        LOG.info("nrPreloadFiles = " + numPreloadFiles);
+      }
       printStats();
     }
   }
@@ -958,6 +1021,121 @@ long executeOp(int daemonId, int inputIdx, String ignore)
     }
   }
 
+  /**
+   * Lock scaling statistics.
+   *
+   * Run the create benchmark with 1, 2, 4, ... up to T threads, while
+   * B threads keep computing the block manager work of a standalone
+   * name-node, to measure how the creates scale with the number of cores
+   * with and without fine-grained namesystem locking.
+   */
+  class LockScalingStats extends CreateFileStats {
+    // Operation types
+    static final String OP_LOCK_SCALING_NAME = "lockScaling";
+    static final String OP_LOCK_SCALING_USAGE =
+        "-op " + OP_LOCK_SCALING_NAME + " [-threads T] [-files N]"
+        + " [-filesPerDir P] [-blockManagerThreads B]";
+
+    private int numBlockManagerThreads;
+    private List<Integer> threadCounts;
+    private List<Double> opsPerSecond;
+
+    LockScalingStats(List<String> args) {
+      super(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_LOCK_SCALING_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      numBlockManagerThreads = 1;
+      int bmtIndex = args.indexOf("-blockManagerThreads");
+      if (bmtIndex >= 0) {
+        if (args.size() <= bmtIndex + 1) {
+          printUsage();
+        }
+        numBlockManagerThreads = Integer.parseInt(args.get(bmtIndex + 1));
+        args.remove(bmtIndex + 1);
+        args.remove(bmtIndex);
+      }
+      super.parseArguments(args);
+    }
+
+    @Override
+    void benchmark() throws IOException {
+      final int maxThreads = numThreads;
+      threadCounts = new ArrayList<Integer>();
+      opsPerSecond = new ArrayList<Double>();
+      final AtomicBoolean running = new AtomicBoolean(true);
+      List<Thread> blockManagerDaemons = new ArrayList<Thread>();
+      if (nameNode != null) {
+        final BlockManager bm = nameNode.getNamesystem().getBlockManager();
+        for (int i = 0; i < numBlockManagerThreads; i++) {
+          Thread t = new Thread(() -> {
+            try {
+              while (running.get()) {
+                BlockManagerTestUtil.getComputedDatanodeWork(bm);
+              }
+            } catch (IOException e) {
+              LOG.error("Block manager work failed", e);
+            }
+          }, "BlockManagerWork-" + i);
+          t.setDaemon(true);
+          t.start();
+          blockManagerDaemons.add(t);
+        }
+      } else if (numBlockManagerThreads > 0) {
+        LOG.warn("-blockManagerThreads is ignored against a remote name-node.");
+      }
+      try {
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+          threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+        for (int threads : threadCounts) {
+          numThreads = threads;
+          super.benchmark();
+          opsPerSecond.add(getOpsPerSecond());
+        }
+      } finally {
+        numThreads = maxThreads;
+        running.set(false);
+        for (Thread t : blockManagerDaemons) {
+          try {
+            t.join();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      }
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("nrFiles = " + numOpsRequired);
+      LOG.info("nrThreads = " + numThreads);
+      LOG.info("nrFilesPerDir = " + nameGenerator.getFilesPerDirectory());
+      LOG.info("nrBlockManagerThreads = " + (nameNode == null ? 0
+          : numBlockManagerThreads));
+      LOG.info("fineGrainedLocking = " + config.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY,
+          DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_DEFAULT));
+      printStats();
+      for (int i = 0; i < threadCounts.size(); i++) {
+        double speedup = opsPerSecond.get(0) == 0 ? 0
+            : opsPerSecond.get(i) / opsPerSecond.get(0);
+        LOG.info(String.format("%4d threads: %10.2f ops per sec, speedup %.2f",
+            threadCounts.get(i), opsPerSecond.get(i), speedup));
+      }
+    }
+
+  }
+
   /**
    * Minimal data-node simulator.
    */
@@ -1512,6 +1690,7 @@ static void printUsage() {
         + " | \n\t" + AppendFileStats.OP_APPEND_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
         + " | \n\t" + RenameFileStats.OP_RENAME_USAGE
+        + " | \n\t" + LockScalingStats.OP_LOCK_SCALING_USAGE
         + " | \n\t" + BlockReportStats.OP_BLOCK_REPORT_USAGE
         + " | \n\t" + ReplicationStats.OP_REPLICATION_USAGE
         + " | \n\t" + CleanAllStats.OP_CLEAN_USAGE
@@ -1549,6 +1728,17 @@ public int run(String[] aArgs) throws Exception {
     String type = args.get(1);
     boolean runAll = OperationStatsBase.OP_ALL_NAME.equals(type);
 
+    int numJournalNodes = 0;
+    int jnIndex = args.indexOf("-journalNodes");
+    if (jnIndex >= 0) {
+      if (args.size() <= jnIndex + 1) {
+        printUsage();
+      }
+      numJournalNodes = Integer.parseInt(args.get(jnIndex + 1));
+      args.remove(jnIndex + 1);
+      args.remove(jnIndex);
+    }
+
     final URI nnUri = FileSystem.getDefaultUri(config);
     // Start the NameNode
     String[] argv = new String[] {};
@@ -1584,6 +1774,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new RenameFileStats(args);
         ops.add(opStat);
       }
+      if (runAll || LockScalingStats.OP_LOCK_SCALING_NAME.equals(type)) {
+        opStat = new LockScalingStats(args);
+        ops.add(opStat);
+      }
       if(runAll || BlockReportStats.OP_BLOCK_REPORT_NAME.equals(type)) {
         opStat = new BlockReportStats(args);
         ops.add(opStat);
@@ -1609,6 +1803,9 @@ public int run(String[] aArgs) throws Exception {
         LOG.info("Remote NameNode is not specified. Creating one.");
         FileSystem.setDefaultUri(config, "hdfs://localhost:0");
         config.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+        if (numJournalNodes > 0) {
+          startJournalCluster(numJournalNodes);
+        }
         nameNode = NameNode.createNameNode(argv, config);
         NamenodeProtocols nnProtos = nameNode.getRpcServer();
         nameNodeProto = nnProtos;
@@ -1617,6 +1814,9 @@ public int run(String[] aArgs) throws Exception {
         refreshUserMappingsProto = nnProtos;
         bpid = nameNode.getNamesystem().getBlockPoolId();
       } else {
+        if (numJournalNodes > 0) {
+          LOG.warn("-journalNodes is ignored against a remote name-node.");
+        }
         DistributedFileSystem dfs = (DistributedFileSystem)
             FileSystem.get(getConf());
         nameNodeProto = DFSTestUtil.getNamenodeProtocolProxy(config, nnUri,
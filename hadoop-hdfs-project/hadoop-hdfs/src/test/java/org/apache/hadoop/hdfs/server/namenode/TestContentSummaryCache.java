@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class tests the content summary cache of directories with quota.
+ */
+public class TestContentSummaryCache {
+  private static final short REPLICATION = 3;
+  private static final long BLOCKSIZE = 1024;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private FSDirectory fsdir;
+
+  private final Path parent = new Path("/parent");
+  private final Path quota1 = new Path(parent, "quota1");
+  private final Path quota2 = new Path(parent, "quota2");
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_CONTENT_SUMMARY_CACHE_ENABLED_KEY, true);
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    fsdir = cluster.getNamesystem().getFSDirectory();
+
+    for (Path dir : new Path[] {quota1, quota2}) {
+      dfs.mkdirs(new Path(dir, "sub"));
+      dfs.setQuota(dir, 1000, HdfsConstants.QUOTA_DONT_SET);
+      DFSTestUtil.createFile(dfs, new Path(dir, "f"), 100, REPLICATION, 0L);
+      DFSTestUtil.createFile(dfs, new Path(dir, "sub/g"), 2000, REPLICATION,
+          0L);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testSummaryServedFromCache() throws Exception {
+    assertFalse(isCached(quota1));
+    assertFalse(isCached(quota2));
+
+    verifySummary(parent);
+    assertTrue(isCached(quota1));
+    assertTrue(isCached(quota2));
+
+    // a summary computed from the cached counts is unchanged.
+    verifySummary(parent);
+    verifySummary(quota1);
+  }
+
+  @Test
+  public void testCacheDroppedOnChange() throws Exception {
+    verifySummary(parent);
+
+    DFSTestUtil.createFile(dfs, new Path(quota1, "sub/h"), 500, REPLICATION,
+        0L);
+    assertFalse(isCached(quota1));
+    assertTrue(isCached(quota2));
+    verifySummary(parent);
+
+    dfs.rename(new Path(quota1, "sub/h"), new Path(quota2, "h"));
+    assertFalse(isCached(quota1));
+    assertFalse(isCached(quota2));
+    verifySummary(parent);
+
+    dfs.setReplication(new Path(quota2, "h"), (short) 2);
+    assertFalse(isCached(quota2));
+    verifySummary(parent);
+
+    dfs.delete(new Path(quota1, "sub"), true);
+    assertFalse(isCached(quota1));
+    verifySummary(parent);
+
+    dfs.setStoragePolicy(quota2, HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+    assertFalse(isCached(quota2));
+    verifySummary(parent);
+  }
+
+  @Test
+  public void testUnderConstructionNotCached() throws Exception {
+    final Path file = new Path(quota1, "sub/open");
+    FSDataOutputStream out = dfs.create(file, REPLICATION);
+    try {
+      out.write(new byte[300]);
+      out.hflush();
+      verifySummary(parent);
+      assertFalse(isCached(quota1));
+      assertTrue(isCached(quota2));
+    } finally {
+      out.close();
+    }
+    verifySummary(parent);
+    assertTrue(isCached(quota1));
+  }
+
+  @Test
+  public void testCacheDroppedOnSnapshotChange() throws Exception {
+    dfs.allowSnapshot(quota1);
+    dfs.createSnapshot(quota1, "s1");
+    verifySummary(parent);
+
+    dfs.delete(new Path(quota1, "sub/g"), false);
+    verifySummary(parent);
+
+    dfs.deleteSnapshot(quota1, "s1");
+    verifySummary(parent);
+  }
+
+  private boolean isCached(Path dir) throws Exception {
+    return fsdir.getINode(dir.toString()).asDirectory()
+        .getDirectoryWithQuotaFeature().isContentCached();
+  }
+
+  /**
+   * Verify the summary returned by the NameNode against a full traversal
+   * that bypasses the cache.
+   */
+  private void verifySummary(Path path) throws Exception {
+    final ContentSummary summary =
+        cluster.getNameNodeRpc().getContentSummary(path.toString());
+    final ContentSummary expected;
+    fsdir.readLock();
+    try {
+      expected = fsdir.getINode(path.toString()).computeContentSummary(
+          fsdir.getBlockStoragePolicySuite());
+    } finally {
+      fsdir.readUnlock();
+    }
+    assertEquals(expected.getLength(), summary.getLength());
+    assertEquals(expected.getFileCount(), summary.getFileCount());
+    assertEquals(expected.getDirectoryCount(), summary.getDirectoryCount());
+    assertEquals(expected.getSpaceConsumed(), summary.getSpaceConsumed());
+    assertEquals(expected.getSnapshotLength(), summary.getSnapshotLength());
+    assertEquals(expected.getSnapshotFileCount(),
+        summary.getSnapshotFileCount());
+    for (StorageType t : StorageType.values()) {
+      assertEquals(expected.getTypeConsumed(t), summary.getTypeConsumed(t));
+    }
+  }
+}
@@ -19,8 +19,10 @@
 
 import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_SET_OWNER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.spy;
@@ -85,15 +87,18 @@ public class TestEditLogRace {
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{ false });
-    params.add(new Object[]{ true });
+    params.add(new Object[]{ false, false });
+    params.add(new Object[]{ true, false });
+    params.add(new Object[]{ true, true });
     return params;
   }
 
   private static boolean useAsyncEditLog;
+  private static boolean usePipelinedSync;
 
-  public TestEditLogRace(boolean useAsyncEditLog) {
+  public TestEditLogRace(boolean useAsyncEditLog, boolean usePipelinedSync) {
     TestEditLogRace.useAsyncEditLog = useAsyncEditLog;
+    TestEditLogRace.usePipelinedSync = usePipelinedSync;
   }
 
   private static final String NAME_DIR = MiniDFSCluster.getBaseDirectory() + "name-0-1";
@@ -376,6 +381,8 @@ private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEditLog);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_PIPELINED,
+        usePipelinedSync);
     FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
     conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY, NAME_DIR);
@@ -496,6 +503,85 @@ public Void answer(InvocationOnMock invocation) throws Throwable {
     }
   }
   
+  /**
+   * Restart the edit log threads while a batch is being synced and another
+   * one is handed off to the syncer: both batches must be synced and their
+   * callers notified before the threads exit.
+   */
+  @Test(timeout=60000)
+  public void testRestartWhileBatchHandedOff() throws Exception {
+    assumeTrue(useAsyncEditLog && usePipelinedSync);
+    Configuration conf = getConf();
+    NameNode.initMetrics(conf, NamenodeRole.NAMENODE);
+    DFSTestUtil.formatNameNode(conf);
+    final FSNamesystem namesystem = FSNamesystem.loadFromDisk(conf);
+
+    try {
+      final FSEditLog editLog = namesystem.getFSImage().getEditLog();
+      JournalAndStream jas = editLog.getJournals().get(0);
+      EditLogFileOutputStream spyElos =
+          spy((EditLogFileOutputStream)jas.getCurrentStream());
+      jas.setCurrentStreamForTests(spyElos);
+
+      final AtomicBoolean blockFlush = new AtomicBoolean(true);
+      final CountDownLatch flushEntered = new CountDownLatch(1);
+      final CountDownLatch flushRelease = new CountDownLatch(1);
+      doAnswer(invocation -> {
+        if (blockFlush.getAndSet(false)) {
+          flushEntered.countDown();
+          flushRelease.await();
+        }
+        invocation.callRealMethod();
+        return null;
+      }).when(spyElos).flush();
+
+      final AtomicReference<Throwable> deferredException =
+          new AtomicReference<Throwable>();
+      Thread[] mkdirsThreads = new Thread[2];
+      for (int i = 0; i < mkdirsThreads.length; i++) {
+        final String dir = "/test" + i;
+        mkdirsThreads[i] = new Thread(() -> {
+          try {
+            namesystem.mkdirs(dir, new PermissionStatus("test", "test",
+                new FsPermission((short)00755)), true);
+          } catch (Throwable t) {
+            LOG.error("Got exception", t);
+            deferredException.set(t);
+          }
+        });
+      }
+      // the first batch is being synced.
+      mkdirsThreads[0].start();
+      flushEntered.await();
+      // the second one is handed off to the syncer, which is busy.
+      final long txid = editLog.getLastWrittenTxId();
+      mkdirsThreads[1].start();
+      GenericTestUtils.waitFor(
+          () -> editLog.getLastWrittenTxId() > txid, 10, 10000);
+
+      final Thread restartThread = new Thread(editLog::restart);
+      restartThread.start();
+      GenericTestUtils.waitFor(
+          () -> restartThread.getState() == Thread.State.WAITING, 10, 10000);
+      flushRelease.countDown();
+      restartThread.join();
+
+      for (Thread t : mkdirsThreads) {
+        t.join(10000);
+        assertFalse(t.isAlive());
+      }
+      assertNull(deferredException.get());
+      assertEquals(editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+
+      // the restarted threads keep syncing edits.
+      namesystem.mkdirs("/test2", new PermissionStatus("test", "test",
+          new FsPermission((short)00755)), true);
+      assertEquals(editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+    } finally {
+      namesystem.close();
+    }
+  }
+
   /**
    * Most of the FSNamesystem methods have a synchronized section where they
    * update the name system itself and write to the edit log, and then
@@ -32,8 +32,10 @@
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.hdfs.StripedFileTestUtil;
@@ -50,6 +52,8 @@
 import org.apache.hadoop.hdfs.protocol.BlockType;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.SnapshotTestHelper;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.erasurecode.ECSchema;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.util.Lists;
@@ -58,6 +62,7 @@
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
@@ -1121,7 +1126,7 @@ public void testParallelSaveAndLoad() throws IOException {
   }
 
   @Test
-  public void testNoParallelSectionsWithCompressionEnabled()
+  public void testParallelSaveAndLoadWithCompressionEnabled()
       throws IOException {
     Configuration conf = new Configuration();
     conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
@@ -1143,11 +1148,28 @@ public void testNoParallelSectionsWithCompressionEnabled()
           getSubSectionsOfName(sections, SectionName.INODE_SUB);
       ArrayList<Section> dirSubSections =
           getSubSectionsOfName(sections, SectionName.INODE_DIR_SUB);
+      Section inodeSection =
+          getSubSectionsOfName(sections, SectionName.INODE).get(0);
+      Section dirSection = getSubSectionsOfName(sections,
+          SectionName.INODE_DIR).get(0);
+
+      // Each sub-section is compressed on its own, so they are written
+      // even though compression is enabled.
+      assertEquals(4, inodeSubSections.size());
+      assertEquals(4, dirSubSections.size());
+      ensureSubSectionsAlignWithParent(inodeSubSections, inodeSection);
+      ensureSubSectionsAlignWithParent(dirSubSections, dirSection);
 
-      // As compression is enabled, there should be no sub-sections in the
-      // image header
-      assertEquals(0, inodeSubSections.size());
-      assertEquals(0, dirSubSections.size());
+      // The sections made of separately compressed sub-sections can also be
+      // loaded serially.
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, false);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        assertTrue(fs.getFileStatus(new Path("/abc/def/" + i)).isDirectory());
+      }
     } finally {
       if (cluster != null) {
         cluster.shutdown();
@@ -1155,6 +1177,142 @@ public void testNoParallelSectionsWithCompressionEnabled()
     }
   }
 
+  /**
+   * A gzip codec whose streams write the gzip header as soon as they are
+   * created, like codecs backed by java.util.zip.
+   */
+  public static class EagerHeaderGzipCodec extends GzipCodec {
+    @Override
+    public CompressionOutputStream createOutputStream(OutputStream out)
+        throws IOException {
+      return new CompressionOutputStream(new GZIPOutputStream(out)) {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+        }
+
+        @Override
+        public void finish() throws IOException {
+          ((GZIPOutputStream) out).finish();
+        }
+
+        @Override
+        public void resetState() {
+        }
+      };
+    }
+  }
+
+  @Test
+  public void testParallelSaveAndLoadWithEagerHeaderCodec()
+      throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(CommonConfigurationKeys.IO_COMPRESSION_CODECS_KEY,
+        EagerHeaderGzipCodec.class.getName());
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_IMAGE_COMPRESSION_CODEC_KEY,
+        EagerHeaderGzipCodec.class.getName());
+
+    MiniDFSCluster cluster = null;
+    try {
+      // No header of the stream of a section saved in parallel may land
+      // between its sub-sections, or the parallel load fails.
+      cluster = createAndLoadParallelFSImage(conf);
+
+      FsImageProto.FileSummary summary = FSImageTestUtil.
+          getLatestImageSummary(cluster);
+      ArrayList<Section> sections = Lists.newArrayList(
+          summary.getSectionsList());
+      ArrayList<Section> inodeSubSections =
+          getSubSectionsOfName(sections, SectionName.INODE_SUB);
+      ArrayList<Section> dirSubSections =
+          getSubSectionsOfName(sections, SectionName.INODE_DIR_SUB);
+      assertEquals(4, inodeSubSections.size());
+      assertEquals(4, dirSubSections.size());
+      ensureSubSectionsAlignWithParent(inodeSubSections,
+          getSubSectionsOfName(sections, SectionName.INODE).get(0));
+      ensureSubSectionsAlignWithParent(dirSubSections,
+          getSubSectionsOfName(sections, SectionName.INODE_DIR).get(0));
+
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, false);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 5; j++) {
+          assertTrue(fs.exists(new Path("/abc/def/" + i + "/" + j)));
+        }
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void testParallelSaveAndLoadWithSnapshots() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, "true");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, "1");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, "4");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, "4");
+
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      Path baseDir = new Path("/snapshots");
+      fs.mkdirs(baseDir);
+      fs.allowSnapshot(baseDir);
+      for (int i = 0; i < 5; i++) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        for (int j = 0; j < 5; j++) {
+          DFSTestUtil.createFile(fs, new Path(dir, Integer.toString(j)), 1,
+              (short) 1, 0L);
+        }
+        fs.createSnapshot(baseDir, "s" + i);
+        fs.rename(new Path(dir, "0"), new Path(dir, "renamed"));
+        fs.delete(new Path(dir, "1"), false);
+      }
+
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+
+      FsImageProto.FileSummary summary = FSImageTestUtil.
+          getLatestImageSummary(cluster);
+      ArrayList<Section> sections = Lists.newArrayList(
+          summary.getSectionsList());
+      ArrayList<Section> diffSubSections =
+          getSubSectionsOfName(sections, SectionName.SNAPSHOT_DIFF_SUB);
+      assertTrue(diffSubSections.size() > 0);
+      ensureSubSectionsAlignWithParent(diffSubSections,
+          getSubSectionsOfName(sections, SectionName.SNAPSHOT_DIFF).get(0));
+
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 5; i++) {
+        Path dir = new Path(baseDir, Integer.toString(i));
+        assertTrue(fs.exists(new Path(dir, "renamed")));
+        assertFalse(fs.exists(new Path(dir, "1")));
+        Path snapshotDir = new Path(baseDir,
+            ".snapshot/s" + i + "/" + i);
+        assertTrue(fs.exists(new Path(snapshotDir, "0")));
+        assertTrue(fs.exists(new Path(snapshotDir, "1")));
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   private void ensureSubSectionsAlignWithParent(ArrayList<Section> subSec,
       Section parent) {
     // For each sub-section, check its offset + length == the next section
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.util.RwLockMode;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.test.MetricsAsserts;
+import org.apache.hadoop.util.FakeTimer;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests the partitioned namespace / block manager locking of FSNamesystem.
+ */
+public class TestFineGrainedFSNamesystemLock {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static FSNamesystem createNamesystem(boolean fineGrained)
+      throws IOException {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY, fineGrained);
+    FSImage fsImage = Mockito.mock(FSImage.class);
+    FSEditLog fsEditLog = Mockito.mock(FSEditLog.class);
+    Mockito.when(fsImage.getEditLog()).thenReturn(fsEditLog);
+    return new FSNamesystem(conf, fsImage);
+  }
+
+  @Test
+  public void testAllModesShareOneLockByDefault() throws Exception {
+    final FSNamesystem fsn = createNamesystem(false);
+    assertFalse(fsn.isFineGrainedLockEnabled());
+
+    Future<?> fsLocked;
+    fsn.writeLock(RwLockMode.BM);
+    try {
+      assertTrue(fsn.hasWriteLock());
+      assertTrue(fsn.hasWriteLock(RwLockMode.FS));
+      // A namespace operation must wait for the block manager operation.
+      fsLocked = executor.submit(() -> lockAndUnlock(fsn, RwLockMode.FS));
+      Thread.sleep(100);
+      assertFalse(fsLocked.isDone());
+    } finally {
+      fsn.writeUnlock(RwLockMode.BM, "testAllModesShareOneLockByDefault");
+    }
+    fsLocked.get(10, TimeUnit.SECONDS);
+    assertFalse(fsn.hasWriteLock(RwLockMode.BM));
+  }
+
+  @Test
+  public void testPartitionsAreIndependent() throws Exception {
+    final FSNamesystem fsn = createNamesystem(true);
+    assertTrue(fsn.isFineGrainedLockEnabled());
+
+    Future<?> globalLocked;
+    fsn.writeLock(RwLockMode.BM);
+    try {
+      assertTrue(fsn.hasWriteLock(RwLockMode.BM));
+      assertFalse(fsn.hasWriteLock(RwLockMode.FS));
+      assertFalse(fsn.hasWriteLock());
+      assertFalse(fsn.hasReadLock());
+      // A namespace operation proceeds while the block manager is locked.
+      executor.submit(() -> lockAndUnlock(fsn, RwLockMode.FS))
+          .get(10, TimeUnit.SECONDS);
+      // A global operation still has to wait for the block manager lock.
+      globalLocked =
+          executor.submit(() -> lockAndUnlock(fsn, RwLockMode.GLOBAL));
+      Thread.sleep(100);
+      assertFalse(globalLocked.isDone());
+    } finally {
+      fsn.writeUnlock(RwLockMode.BM, "testPartitionsAreIndependent");
+    }
+    globalLocked.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testGlobalModeHoldsBothPartitions() throws Exception {
+    FSNamesystem fsn = createNamesystem(true);
+
+    fsn.writeLock();
+    try {
+      assertTrue(fsn.hasWriteLock(RwLockMode.FS));
+      assertTrue(fsn.hasWriteLock(RwLockMode.BM));
+      assertTrue(fsn.hasWriteLock(RwLockMode.GLOBAL));
+    } finally {
+      fsn.writeUnlock("testGlobalModeHoldsBothPartitions");
+    }
+    assertFalse(fsn.hasWriteLock(RwLockMode.FS));
+    assertFalse(fsn.hasWriteLock(RwLockMode.BM));
+
+    fsn.readLock(RwLockMode.GLOBAL);
+    try {
+      assertTrue(fsn.hasReadLock(RwLockMode.FS));
+      assertTrue(fsn.hasReadLock(RwLockMode.BM));
+      assertTrue(fsn.hasReadLock());
+    } finally {
+      fsn.readUnlock(RwLockMode.GLOBAL, "testGlobalModeHoldsBothPartitions");
+    }
+    assertFalse(fsn.hasReadLock(RwLockMode.FS));
+    assertFalse(fsn.hasReadLock(RwLockMode.BM));
+  }
+
+  @Test
+  public void testBlockManagerLockMetrics() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY, true);
+    FakeTimer timer = new FakeTimer();
+    MetricsRegistry registry = new MetricsRegistry("Test");
+    MutableRatesWithAggregation rates =
+        registry.newRatesWithAggregation("Test");
+    FSNamesystemLock bmLock = new FSNamesystemLock(conf,
+        FSNamesystemLock.BM_LOCK_NAME, rates, timer);
+    assertEquals(FSNamesystemLock.BM_LOCK_NAME, bmLock.getLockName());
+
+    bmLock.writeLock();
+    timer.advance(1);
+    bmLock.writeUnlock("foo");
+    bmLock.readLock();
+    timer.advance(1);
+    bmLock.readUnlock("bar");
+    // Reports of a partition released as part of a global unlock are
+    // suppressed so they are not double counted.
+    bmLock.readLock();
+    timer.advance(1);
+    bmLock.readUnlock("bar", true);
+
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    rates.snapshot(rb, true);
+    assertCounter("BMWriteLockFooNanosNumOps", 1L, rb);
+    assertCounter("BMReadLockBarNanosNumOps", 1L, rb);
+    assertCounter("BMReadLockOverallNanosNumOps", 1L, rb);
+  }
+
+  private static void lockAndUnlock(FSNamesystem fsn, RwLockMode mode) {
+    fsn.writeLock(mode);
+    try {
+      assertTrue(fsn.hasWriteLock(mode));
+    } finally {
+      fsn.writeUnlock(mode, "lockAndUnlock");
+    }
+  }
+}
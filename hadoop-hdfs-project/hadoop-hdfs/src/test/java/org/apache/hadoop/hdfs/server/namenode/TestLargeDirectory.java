@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.util.ChunkedList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests directories whose children are stored in a {@link ChunkedList}.
+ */
+public class TestLargeDirectory {
+  private static final int THRESHOLD = 16;
+  private static final int NUM_FILES = 500;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private final Path dir = new Path("/large");
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_KEY,
+        THRESHOLD);
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 37);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testListingAndSnapshotDiff() throws Exception {
+    TreeSet<String> names = new TreeSet<>();
+    // create the files out of order, so that they are inserted in the middle
+    // of the list.
+    for (int i = 0; i < NUM_FILES; i++) {
+      String name = "f" + ((i * 7919) % NUM_FILES);
+      DFSTestUtil.createFile(dfs, new Path(dir, name), 0, (short) 1, 0L);
+      names.add(name);
+    }
+    assertTrue(isChunked());
+    verifyListing(names);
+
+    dfs.allowSnapshot(dir);
+    dfs.createSnapshot(dir, "s0");
+    TreeSet<String> snapshotNames = new TreeSet<>(names);
+    for (int i = 0; i < NUM_FILES; i += 3) {
+      assertTrue(dfs.delete(new Path(dir, "f" + i), false));
+      names.remove("f" + i);
+    }
+    DFSTestUtil.createFile(dfs, new Path(dir, "g"), 0, (short) 1, 0L);
+    names.add("g");
+    verifyListing(names);
+    assertEquals(snapshotNames.size(),
+        dfs.listStatus(new Path(dir, ".snapshot/s0")).length);
+
+    SnapshotDiffReport report = dfs.getSnapshotDiffReport(dir, "s0", "");
+    int deleted = 0;
+    int created = 0;
+    for (SnapshotDiffReport.DiffReportEntry entry : report.getDiffList()) {
+      if (entry.getType() == DiffType.DELETE) {
+        deleted++;
+      } else if (entry.getType() == DiffType.CREATE) {
+        created++;
+      }
+    }
+    assertEquals((NUM_FILES + 2) / 3, deleted);
+    assertEquals(1, created);
+
+    // the children are read back in order from the fsimage.
+    dfs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    dfs.saveNamespace();
+    dfs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    cluster.restartNameNode();
+    dfs = cluster.getFileSystem();
+    assertTrue(isChunked());
+    verifyListing(names);
+  }
+
+  @Test
+  public void testBelowThreshold() throws Exception {
+    for (int i = 0; i < THRESHOLD; i++) {
+      DFSTestUtil.createFile(dfs, new Path(dir, "f" + i), 0, (short) 1, 0L);
+    }
+    assertFalse(isChunked());
+  }
+
+  private boolean isChunked() throws Exception {
+    return cluster.getNamesystem().getFSDirectory().getINode(dir.toString())
+        .asDirectory().hasChunkedChildren();
+  }
+
+  /**
+   * Verify that the paged listing of the directory returns all the children
+   * in order.
+   */
+  private void verifyListing(TreeSet<String> expected) throws Exception {
+    List<String> listed = new ArrayList<>();
+    for (FileStatus status : dfs.listStatus(dir)) {
+      listed.add(status.getPath().getName());
+    }
+    assertEquals(new ArrayList<>(expected), listed);
+  }
+}
@@ -28,6 +28,7 @@
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.util.ExitUtil;
 import org.junit.After;
 import org.junit.Assert;
@@ -187,4 +188,50 @@ public void testNNThroughputForBlockReportOp() throws Exception {
               "blockReport", "-datanodes", "3", "-reports", "2"});
     }
   }
+
+  /**
+   * This test runs the lock scaling benchmark of
+   * {@link NNThroughputBenchmark} with fine-grained namesystem locking.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForLockScalingOp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_FINE_GRAINED_ENABLED_KEY,
+        true);
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf,
+        new String[] {"-op", "lockScaling", "-threads", "4", "-files", "40",
+            "-filesPerDir", "10", "-blockManagerThreads", "2"});
+  }
+
+  /**
+   * This test runs {@link NNThroughputBenchmark} create operation in a
+   * directory preloaded with files.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputForCreateInLargeDirectory() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 16);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LARGE_DIRECTORY_THRESHOLD_KEY, 10);
+    try (MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).
+        numDataNodes(0).build()) {
+      cluster.waitActive();
+      final Configuration benchConf = new HdfsConfiguration();
+      benchConf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 16);
+      NNThroughputBenchmark.runBenchmark(benchConf,
+          new String[]{"-fs", cluster.getURI().toString(), "-op", "create",
+              "-keepResults", "-threads", "2", "-files", "20",
+              "-preloadFiles", "50", "-filesPerDir", "100"});
+      INodeDirectory dir = cluster.getNamesystem().getFSDirectory()
+          .getINode("/nnThroughputBenchmark/create/ThroughputBenchDir0")
+          .asDirectory();
+      Assert.assertEquals(70,
+          dir.getChildrenList(Snapshot.CURRENT_STATE_ID).size());
+      Assert.assertTrue(dir.hasChunkedChildren());
+    }
+  }
 }
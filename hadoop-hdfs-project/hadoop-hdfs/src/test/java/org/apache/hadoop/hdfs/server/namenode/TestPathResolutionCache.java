@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that path resolution through the path resolution cache follows the
+ * changes to the namespace.
+ */
+public class TestPathResolutionCache {
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private FSNamesystem fsn;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_PATH_RESOLUTION_CACHE_SIZE_KEY,
+        1024);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    fsn = cluster.getNamesystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  @Test
+  public void testCacheHits() throws Exception {
+    final Path file = new Path("/warehouse/db/table/part=1/f");
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0L);
+
+    long hits = fsn.getPathResolutionCacheHits();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(dfs.exists(file));
+    }
+    assertTrue(fsn.getPathResolutionCacheHits() >= hits + 10);
+
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name =
+        new ObjectName("Hadoop:service=NameNode,name=NameNodeInfo");
+    assertEquals(fsn.getPathResolutionCacheHits(),
+        (long) (Long) mbs.getAttribute(name, "PathResolutionCacheHits"));
+    assertTrue((Long) mbs.getAttribute(name, "PathResolutionCacheMisses")
+        > 0);
+  }
+
+  @Test
+  public void testRenameAndDelete() throws Exception {
+    final Path dir = new Path("/warehouse/db/table");
+    final Path file = new Path(dir, "part=1/f");
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0L);
+    assertTrue(dfs.exists(file));
+
+    // the cached parents of the old path must not be used any more.
+    final Path renamed = new Path("/warehouse/db/renamed");
+    assertTrue(dfs.rename(dir, renamed));
+    assertFalse(dfs.exists(file));
+    assertTrue(dfs.exists(new Path(renamed, "part=1/f")));
+
+    // a directory created with the same name is a different inode.
+    DFSTestUtil.createFile(dfs, file, 20, (short) 1, 0L);
+    assertEquals(20, dfs.getFileStatus(file).getLen());
+    assertTrue(dfs.delete(new Path(dir, "part=1"), true));
+    assertFalse(dfs.exists(file));
+    DFSTestUtil.createFile(dfs, file, 30, (short) 1, 0L);
+    assertEquals(30, dfs.getFileStatus(file).getLen());
+  }
+
+  @Test
+  public void testSnapshots() throws Exception {
+    final Path dir = new Path("/warehouse/db/table");
+    final Path file = new Path(dir, "part=1/f");
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0L);
+    assertTrue(dfs.exists(file));
+
+    dfs.allowSnapshot(dir);
+    dfs.createSnapshot(dir, "s0");
+    assertTrue(dfs.delete(file, false));
+    assertFalse(dfs.exists(file));
+    assertTrue(dfs.exists(new Path(dir, ".snapshot/s0/part=1/f")));
+
+    DFSTestUtil.createFile(dfs, file, 20, (short) 1, 0L);
+    assertEquals(20, dfs.getFileStatus(file).getLen());
+    assertEquals(10, dfs.getFileStatus(
+        new Path(dir, ".snapshot/s0/part=1/f")).getLen());
+  }
+}
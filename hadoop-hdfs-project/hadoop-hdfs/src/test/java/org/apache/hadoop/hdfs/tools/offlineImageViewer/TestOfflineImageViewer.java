@@ -655,6 +655,27 @@ public void testWebImageViewer() throws Exception {
     }
   }
 
+  @Test
+  public void testFSImageLoaderWithMappedINodes() throws Exception {
+    FSImageLoader mapped = FSImageLoader.load(
+        originalFsimage.getAbsolutePath(), true);
+    FSImageLoader loaded = FSImageLoader.load(
+        originalFsimage.getAbsolutePath(), false);
+    for (Map.Entry<String, FileStatus> e : writtenFiles.entrySet()) {
+      String path = e.getKey();
+      // skip the escaped names and the snapshot paths
+      if (!path.startsWith("/") || path.contains(".snapshot")) {
+        continue;
+      }
+      assertEquals(loaded.getFileStatus(path), mapped.getFileStatus(path));
+      if (e.getValue().isDirectory()) {
+        assertEquals(loaded.listStatus(path), mapped.listStatus(path));
+      }
+    }
+    assertEquals(loaded.getContentSummary("/"),
+        mapped.getContentSummary("/"));
+  }
+
   @Test
   public void testWebImageViewerNullOp() throws Exception {
     WebImageViewer viewer = new WebImageViewer(
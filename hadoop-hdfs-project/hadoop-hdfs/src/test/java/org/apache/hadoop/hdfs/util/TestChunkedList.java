@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test {@link ChunkedList} against an {@link ArrayList}.
+ */
+public class TestChunkedList {
+  private static final Random RANDOM = new Random();
+  private static final int MAX_CHUNK_SIZE = 8;
+
+  @Test(timeout=60000)
+  public void testAppend() {
+    ChunkedList<Integer> list = new ChunkedList<>(MAX_CHUNK_SIZE);
+    for (int i = 0; i < 100; i++) {
+      list.add(i);
+    }
+    Assert.assertEquals(100, list.size());
+    // appended elements fill the chunks.
+    Assert.assertEquals(13, list.getNumChunks());
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(i, (int) list.get(i));
+    }
+    int i = 0;
+    for (Integer e : list) {
+      Assert.assertEquals(i++, (int) e);
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testSortedInsertAndRemove() {
+    final long seed = RANDOM.nextLong();
+    final Random r = new Random(seed);
+    List<Integer> expected = new ArrayList<>();
+    ChunkedList<Integer> list = new ChunkedList<>(MAX_CHUNK_SIZE);
+    try {
+      for (int i = 0; i < 10000; i++) {
+        Integer e = r.nextInt(2000);
+        int pos = Collections.binarySearch(list, e);
+        Assert.assertEquals(Collections.binarySearch(expected, e), pos);
+        if (pos < 0) {
+          list.add(-pos - 1, e);
+          expected.add(-pos - 1, e);
+        } else if (r.nextBoolean()) {
+          Assert.assertEquals(expected.remove(pos), list.remove(pos));
+        } else {
+          Assert.assertEquals(expected.set(pos, e), list.set(pos, e));
+        }
+        Assert.assertEquals(expected.size(), list.size());
+      }
+      Assert.assertEquals(expected, list);
+
+      // remove all but a few elements, the chunks are merged.
+      while (list.size() > 10) {
+        int pos = r.nextInt(list.size());
+        Assert.assertEquals(expected.remove(pos), list.remove(pos));
+      }
+      Assert.assertEquals(expected, list);
+      Assert.assertTrue(list.getNumChunks() <= 10);
+    } catch (AssertionError e) {
+      throw new AssertionError("seed = " + seed, e);
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testCopyAndClear() {
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      expected.add(i);
+    }
+    ChunkedList<Integer> list = new ChunkedList<>(MAX_CHUNK_SIZE, expected);
+    Assert.assertEquals(expected, list);
+    list.clear();
+    Assert.assertTrue(list.isEmpty());
+    Assert.assertEquals(0, list.getNumChunks());
+    list.add(0, 1);
+    list.add(0, 0);
+    Assert.assertEquals(expected.subList(0, 2), list);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfBounds() {
+    ChunkedList<Integer> list = new ChunkedList<>(MAX_CHUNK_SIZE);
+    list.add(0);
+    list.get(1);
+  }
+}